@@ -23,6 +23,7 @@ package simplex3d.algorithm.intersection
 import simplex3d.math._
 import simplex3d.math.double._
 import simplex3d.math.double.functions._
+import simplex3d.data._
 
 
 /** Oriented bounding box. 2d case is orineted bounding rectangle (obr).
@@ -49,4 +50,291 @@ object Obb {
   :Vec3 = {
     Vec3(0)
   }
+  
+  
+  // Directions used to collect extremal points: 3 axes, 6 face diagonals, and 4 corner diagonals.
+  private[this] final val Directions = Array[Double](
+    1, 0, 0,   0, 1, 0,   0, 0, 1,
+    1, 1, 0,   1, -1, 0,   1, 0, 1,   1, 0, -1,   0, 1, 1,   0, 1, -1,
+    1, 1, 1,   1, 1, -1,   1, -1, 1,   1, -1, -1
+  )
+  private[this] final val DirectionCount = 13
+  
+  private[this] final val RefinementRounds = 8
+  private[this] final val RefinementAngle = radians(22.5)
+  
+  
+  /** Fits an oriented box around the vertices. The orientation is initialized with the principal axes
+   * of the vertex covariance (or identity if that is tighter), and then refined by small rotations
+   * that reduce the volume of the box around the extremal points. The final extents are computed
+   * over all the vertices.
+   * 
+   * The result transformation is a pure rotation with columns set to the box axes, and the box
+   * (resultMin, resultMax) is defined in the rotated space.
+   */
+  def fitObb(vertices: inData[Vec3])(resultMin: Vec3, resultMax: Vec3, resultTransformation: Mat4x3) {
+    resultTransformation := Mat4x3.Identity
+    
+    val size = vertices.size
+    if (size == 0) {
+      resultMin := Vec3.Zero
+      resultMax := Vec3.Zero
+      return
+    }
+    
+    val partitions = Util.partitionCount(size)
+    
+    // Single pass collecting raw moments and extremal points.
+    val moments = new Array[Double](partitions*9)
+    val extremes = new Array[Int](partitions*DirectionCount*2)
+    
+    Util.foreachPartition(partitions) { p =>
+      val first = Util.partitionStart(size, partitions, p)
+      val end = Util.partitionStart(size, partitions, p + 1)
+      val e = p*DirectionCount*2
+      
+      val minDot = Array.fill(DirectionCount)(Double.PositiveInfinity)
+      val maxDot = Array.fill(DirectionCount)(Double.NegativeInfinity)
+      
+      var sx = 0.0; var sy = 0.0; var sz = 0.0
+      var sxx = 0.0; var sxy = 0.0; var sxz = 0.0
+      var syy = 0.0; var syz = 0.0; var szz = 0.0
+      
+      var i = first; while (i < end) {
+        val v = vertices(i)
+        val x = v.x; val y = v.y; val z = v.z
+        
+        sx += x; sy += y; sz += z
+        sxx += x*x; sxy += x*y; sxz += x*z
+        syy += y*y; syz += y*z; szz += z*z
+        
+        var d = 0; while (d < DirectionCount) {
+          val dot = x*Directions(d*3) + y*Directions(d*3 + 1) + z*Directions(d*3 + 2)
+          if (dot < minDot(d)) { minDot(d) = dot; extremes(e + d*2) = i }
+          if (dot > maxDot(d)) { maxDot(d) = dot; extremes(e + d*2 + 1) = i }
+          d += 1
+        }
+        
+        i += 1
+      }
+      
+      val m = p*9
+      moments(m) = sx; moments(m + 1) = sy; moments(m + 2) = sz
+      moments(m + 3) = sxx; moments(m + 4) = sxy; moments(m + 5) = sxz
+      moments(m + 6) = syy; moments(m + 7) = syz; moments(m + 8) = szz
+    }
+    
+    
+    val sum = new Array[Double](9)
+    var part = 0; while (part < partitions) {
+      var j = 0; while (j < 9) {
+        sum(j) += moments(part*9 + j)
+        j += 1
+      }
+      part += 1
+    }
+    
+    val inv = 1.0/size
+    val mx = sum(0)*inv; val my = sum(1)*inv; val mz = sum(2)*inv
+    
+    val covariance = Array[Double](
+      sum(3)*inv - mx*mx, sum(4)*inv - mx*my, sum(5)*inv - mx*mz,
+      sum(4)*inv - mx*my, sum(6)*inv - my*my, sum(7)*inv - my*mz,
+      sum(5)*inv - mx*mz, sum(7)*inv - my*mz, sum(8)*inv - mz*mz
+    )
+    
+    
+    // Extremal points are the only ones that can touch the box, use them to pick the orientation.
+    val points = {
+      val indices = extremes.distinct
+      val result = new Array[Double](indices.length*3)
+      
+      var i = 0; while (i < indices.length) {
+        val v = vertices(indices(i))
+        result(i*3) = v.x; result(i*3 + 1) = v.y; result(i*3 + 2) = v.z
+        i += 1
+      }
+      
+      result
+    }
+    
+    val identity = Array[Double](1, 0, 0, 0, 1, 0, 0, 0, 1)
+    var axes = principalAxes(covariance)
+    var volume = boxVolume(points, axes)
+    
+    {
+      val identityVolume = boxVolume(points, identity)
+      if (identityVolume <= volume) {
+        axes = identity
+        volume = identityVolume
+      }
+    }
+    
+    var angle = RefinementAngle
+    var round = 0; while (round < RefinementRounds) {
+      var axis = 0; while (axis < 3) {
+        
+        var direction = -1; while (direction <= 1) {
+          val rotated = rotateAxes(axes, axis, direction*angle)
+          val rotatedVolume = boxVolume(points, rotated)
+          
+          if (rotatedVolume < volume) {
+            axes = rotated
+            volume = rotatedVolume
+          }
+          
+          direction += 2
+        }
+        
+        axis += 1
+      }
+      
+      angle *= 0.5
+      round += 1
+    }
+    
+    
+    // Final extents over all the vertices.
+    val extents = new Array[Double](partitions*6)
+    val finalAxes = axes
+    
+    Util.foreachPartition(partitions) { p =>
+      val first = Util.partitionStart(size, partitions, p)
+      val end = Util.partitionStart(size, partitions, p + 1)
+      
+      val low = Array.fill(3)(Double.PositiveInfinity)
+      val high = Array.fill(3)(Double.NegativeInfinity)
+      
+      var i = first; while (i < end) {
+        val v = vertices(i)
+        
+        var k = 0; while (k < 3) {
+          val dot = v.x*finalAxes(k*3) + v.y*finalAxes(k*3 + 1) + v.z*finalAxes(k*3 + 2)
+          if (dot < low(k)) low(k) = dot
+          if (dot > high(k)) high(k) = dot
+          k += 1
+        }
+        
+        i += 1
+      }
+      
+      var k = 0; while (k < 3) {
+        extents(p*6 + k) = low(k)
+        extents(p*6 + 3 + k) = high(k)
+        k += 1
+      }
+    }
+    
+    resultMin := Vec3(Double.PositiveInfinity)
+    resultMax := Vec3(Double.NegativeInfinity)
+    
+    part = 0; while (part < partitions) {
+      var k = 0; while (k < 3) {
+        resultMin(k) = min(resultMin(k), extents(part*6 + k))
+        resultMax(k) = max(resultMax(k), extents(part*6 + 3 + k))
+        k += 1
+      }
+      part += 1
+    }
+    
+    // Each axis is a column, so the transformation maps the box space to the model space.
+    resultTransformation.m00 = axes(0); resultTransformation.m01 = axes(1); resultTransformation.m02 = axes(2)
+    resultTransformation.m10 = axes(3); resultTransformation.m11 = axes(4); resultTransformation.m12 = axes(5)
+    resultTransformation.m20 = axes(6); resultTransformation.m21 = axes(7); resultTransformation.m22 = axes(8)
+  }
+  
+  /** Volume of the box enclosing the points in the space defined by axes.
+   */
+  private[this] def boxVolume(points: Array[Double], axes: Array[Double]) :Double = {
+    var volume = 1.0
+    
+    var k = 0; while (k < 3) {
+      val ax = axes(k*3); val ay = axes(k*3 + 1); val az = axes(k*3 + 2)
+      var low = Double.PositiveInfinity
+      var high = Double.NegativeInfinity
+      
+      var i = 0; while (i < points.length) {
+        val dot = points(i)*ax + points(i + 1)*ay + points(i + 2)*az
+        if (dot < low) low = dot
+        if (dot > high) high = dot
+        i += 3
+      }
+      
+      volume *= (high - low)
+      k += 1
+    }
+    
+    volume
+  }
+  
+  /** Rotates the other two axes around the given axis.
+   */
+  private[this] def rotateAxes(axes: Array[Double], axis: Int, angle: Double) :Array[Double] = {
+    val result = axes.clone
+    val a = ((axis + 1) % 3)*3
+    val b = ((axis + 2) % 3)*3
+    val c = cos(angle)
+    val s = sin(angle)
+    
+    var j = 0; while (j < 3) {
+      result(a + j) = c*axes(a + j) + s*axes(b + j)
+      result(b + j) = -s*axes(a + j) + c*axes(b + j)
+      j += 1
+    }
+    
+    result
+  }
+  
+  /** Eigenvectors of the symmetric 3x3 matrix (row-major) found with cyclic Jacobi rotations.
+   * The result is a right-handed set of unit axes, stored one axis per row.
+   */
+  private[this] def principalAxes(matrix: Array[Double]) :Array[Double] = {
+    val a = matrix.clone
+    val v = Array[Double](1, 0, 0, 0, 1, 0, 0, 0, 1)
+    
+    def rotate(p: Int, q: Int) {
+      val apq = a(p*3 + q)
+      if (abs(apq) < 1e-30) return
+      
+      val theta = (a(q*3 + q) - a(p*3 + p))/(2*apq)
+      val t = (if (theta < 0) -1 else 1)/(abs(theta) + sqrt(theta*theta + 1))
+      val c = 1/sqrt(t*t + 1)
+      val s = t*c
+      
+      var k = 0; while (k < 3) {
+        val akp = a(k*3 + p); val akq = a(k*3 + q)
+        a(k*3 + p) = c*akp - s*akq
+        a(k*3 + q) = s*akp + c*akq
+        k += 1
+      }
+      
+      k = 0; while (k < 3) {
+        val apk = a(p*3 + k); val aqk = a(q*3 + k)
+        a(p*3 + k) = c*apk - s*aqk
+        a(q*3 + k) = s*apk + c*aqk
+        k += 1
+      }
+      
+      k = 0; while (k < 3) {
+        val vkp = v(k*3 + p); val vkq = v(k*3 + q)
+        v(k*3 + p) = c*vkp - s*vkq
+        v(k*3 + q) = s*vkp + c*vkq
+        k += 1
+      }
+    }
+    
+    var sweep = 0; while (sweep < 32 && (a(1)*a(1) + a(2)*a(2) + a(5)*a(5)) > 1e-24) {
+      rotate(0, 1)
+      rotate(0, 2)
+      rotate(1, 2)
+      sweep += 1
+    }
+    
+    // Eigenvectors are the columns of v.
+    val x = normalize(Vec3(v(0), v(3), v(6)))
+    val y = normalize(Vec3(v(1), v(4), v(7)))
+    val z = cross(x, y)
+    
+    Array[Double](x.x, x.y, x.z, y.x, y.y, y.z, z.x, z.y, z.z)
+  }
 }
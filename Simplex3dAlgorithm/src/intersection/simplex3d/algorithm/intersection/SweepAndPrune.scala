@@ -0,0 +1,500 @@
+/*
+ * Simplex3dAlgorithm - Intersection Module
+ * Copyright (C) 2011, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dAlgorithm.
+ *
+ * Simplex3dAlgorithm is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dAlgorithm is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.algorithm.intersection
+
+import simplex3d.math._
+import simplex3d.math.double._
+
+
+/** Receives pair events from SweepAndPrune.sweep().
+ * 
+ * @author Aleksey Nikiforov (lex)
+ */ 
+trait PairListener {
+  def pairAdded(a: Int, b: Int) :Unit
+  def pairRemoved(a: Int, b: Int) :Unit
+}
+
+
+/** Incremental sweep-and-prune broadphase over axis aligned boxes.
+ * 
+ * Endpoints are kept sorted on each axis between calls to sweep(), so the insertion sort only has
+ * to move the endpoints of boxes that have changed order since the last frame. When a min endpoint
+ * crosses a max endpoint, the pair is recorded as a candidate only if its overlap may have changed:
+ * the boxes now overlap on all three axes, or they were overlapping before. Candidates then produce
+ * pair added/removed events.
+ * 
+ * When many boxes were added since the last sweep, the axes are fully sorted instead, and the pairs
+ * are found with a single sweep along the x axis.
+ * 
+ * Box bounds must be finite. Box ids are reused only after the removal has been processed by sweep().
+ * 
+ * With multithreaded enabled, the three axes are sorted concurrently.
+ * 
+ * @author Aleksey Nikiforov (lex)
+ */ 
+final class SweepAndPrune(initialCapacity: Int = 256, var multithreaded: Boolean = false) {
+  import SweepAndPrune._
+  
+  private[this] var capacity = if (initialCapacity > 1) initialCapacity else 1
+  
+  // (minX, minY, minZ, maxX, maxY, maxZ) for each box.
+  private[this] var bounds = new Array[Double](capacity*6)
+  private[this] var alive = new Array[Boolean](capacity)
+  private[this] var boxCount = 0
+  
+  private[this] var freeIds = new Array[Int](16)
+  private[this] var freeCount = 0
+  
+  private[this] var removedIds = new Array[Int](16)
+  private[this] var removedCount = 0
+  
+  private[this] var addedCount = 0
+  
+  // Endpoints encoded as (box << 1 | isMax).
+  private[this] var endpointCount = 0
+  private[this] val endpoints = Array.fill(3)(new Array[Int](capacity*2))
+  private[this] val values = Array.fill(3)(new Array[Double](capacity*2))
+  private[this] val candidates = Array.fill(3)(new LongBuffer)
+  
+  private[this] val pairs = new LongSet
+  private[this] val keys = new LongBuffer
+  
+  
+  def size: Int = boxCount - freeCount - removedCount
+  def pairCount: Int = pairs.size
+  
+  def isOverlapping(a: Int, b: Int) :Boolean = pairs.contains(pairKey(a, b))
+  
+  
+  def add(min: inVec3, max: inVec3) :Int = {
+    val id =
+      if (freeCount > 0) {
+        freeCount -= 1
+        freeIds(freeCount)
+      }
+      else {
+        if (boxCount == capacity) grow()
+        boxCount += 1
+        boxCount - 1
+      }
+    
+    alive(id) = true
+    update(id, min, max)
+    
+    var axis = 0; while (axis < 3) {
+      endpoints(axis)(endpointCount) = id << 1
+      endpoints(axis)(endpointCount + 1) = (id << 1) | 1
+      axis += 1
+    }
+    endpointCount += 2
+    addedCount += 1
+    
+    id
+  }
+  
+  def update(id: Int, min: inVec3, max: inVec3) {
+    if (!alive(id)) throw new IllegalArgumentException("Box " + id + " is not registered.")
+    
+    val i = id*6
+    bounds(i) = min.x; bounds(i + 1) = min.y; bounds(i + 2) = min.z
+    bounds(i + 3) = max.x; bounds(i + 4) = max.y; bounds(i + 5) = max.z
+  }
+  
+  def remove(id: Int) {
+    if (!alive(id)) throw new IllegalArgumentException("Box " + id + " is not registered.")
+    alive(id) = false
+    
+    // Removed boxes are swept to the end of every axis, generating removal events on the way.
+    val i = id*6
+    var j = 0; while (j < 6) {
+      bounds(i + j) = Double.PositiveInfinity
+      j += 1
+    }
+    
+    if (removedCount == removedIds.length) removedIds = java.util.Arrays.copyOf(removedIds, removedCount*2)
+    removedIds(removedCount) = id
+    removedCount += 1
+  }
+  
+  
+  def sweep(listener: PairListener) {
+    // Inserting many new endpoints one at a time is quadratic.
+    if (addedCount*4 > endpointCount/2) rebuild(listener)
+    else incremental(listener)
+    
+    addedCount = 0
+    
+    if (removedCount > 0) removePairs(listener)
+    
+    // Removed endpoints are now at the end of every axis.
+    endpointCount -= removedCount*2
+    
+    var i = 0; while (i < removedCount) {
+      if (freeCount == freeIds.length) freeIds = java.util.Arrays.copyOf(freeIds, freeCount*2)
+      freeIds(freeCount) = removedIds(i)
+      freeCount += 1
+      i += 1
+    }
+    removedCount = 0
+  }
+  
+  /** Drops the remaining pairs of the removed boxes. When both boxes of a pair are removed,
+   * their endpoints never cross, so the sort alone does not report the pair.
+   */
+  private[this] def removePairs(listener: PairListener) {
+    val keys = this.keys
+    keys.clear()
+    pairs.keys(keys)
+    
+    var i = 0; while (i < keys.size) {
+      val key = keys(i)
+      val a = (key >>> 32).toInt
+      val b = key.toInt
+      
+      if (!alive(a) || !alive(b)) {
+        pairs.remove(key)
+        listener.pairRemoved(a, b)
+      }
+      
+      i += 1
+    }
+    keys.clear()
+  }
+  
+  private[this] def incremental(listener: PairListener) {
+    if (multithreaded) (0 until 3).par.foreach(sortAxis)
+    else {
+      sortAxis(0); sortAxis(1); sortAxis(2)
+    }
+    
+    var axis = 0; while (axis < 3) {
+      val buffer = candidates(axis)
+      
+      var i = 0; while (i < buffer.size) {
+        val key = buffer(i)
+        val a = (key >>> 32).toInt
+        val b = key.toInt
+        
+        if (overlaps(a, b)) {
+          if (pairs.add(key)) listener.pairAdded(a, b)
+        }
+        else {
+          if (pairs.remove(key)) listener.pairRemoved(a, b)
+        }
+        
+        i += 1
+      }
+      
+      buffer.clear()
+      axis += 1
+    }
+  }
+  
+  /** Sorts all the axes from scratch, then finds the overlapping pairs by sweeping the x axis
+   * and reports the differences with the previous pairs.
+   */
+  private[this] def rebuild(listener: PairListener) {
+    if (multithreaded) (0 until 3).par.foreach(fullSortAxis)
+    else {
+      fullSortAxis(0); fullSortAxis(1); fullSortAxis(2)
+    }
+    
+    val found = new LongSet
+    val endpoints = this.endpoints(0)
+    
+    // Boxes with the min endpoint passed and the max endpoint not yet reached.
+    val active = new Array[Int](endpointCount/2)
+    val activeIndex = new Array[Int](boxCount)
+    var activeCount = 0
+    
+    var i = 0; while (i < endpointCount) {
+      val e = endpoints(i)
+      val box = e >> 1
+      
+      if ((e & 1) == 0) {
+        var j = 0; while (j < activeCount) {
+          if (overlaps(box, active(j))) found.add(pairKey(box, active(j)))
+          j += 1
+        }
+        active(activeCount) = box
+        activeIndex(box) = activeCount
+        activeCount += 1
+      }
+      else {
+        activeCount -= 1
+        val last = active(activeCount)
+        val index = activeIndex(box)
+        active(index) = last
+        activeIndex(last) = index
+      }
+      
+      i += 1
+    }
+    
+    val keys = new LongBuffer
+    pairs.keys(keys)
+    i = 0; while (i < keys.size) {
+      val key = keys(i)
+      if (!found.contains(key)) {
+        pairs.remove(key)
+        listener.pairRemoved((key >>> 32).toInt, key.toInt)
+      }
+      i += 1
+    }
+    
+    keys.clear()
+    found.keys(keys)
+    i = 0; while (i < keys.size) {
+      val key = keys(i)
+      if (pairs.add(key)) listener.pairAdded((key >>> 32).toInt, key.toInt)
+      i += 1
+    }
+  }
+  
+  
+  private[this] def overlaps(a: Int, b: Int) :Boolean = {
+    if (!alive(a) || !alive(b)) return false
+    
+    val i = a*6
+    val j = b*6
+    
+    bounds(i) <= bounds(j + 3) && bounds(j) <= bounds(i + 3) &&
+    bounds(i + 1) <= bounds(j + 4) && bounds(j + 1) <= bounds(i + 4) &&
+    bounds(i + 2) <= bounds(j + 5) && bounds(j + 2) <= bounds(i + 5)
+  }
+  
+  private[this] def sortAxis(axis: Int) {
+    val endpoints = this.endpoints(axis)
+    val values = this.values(axis)
+    val candidates = this.candidates(axis)
+    val bounds = this.bounds
+    val count = endpointCount
+    
+    var i = 0; while (i < count) {
+      val e = endpoints(i)
+      values(i) = bounds((e >> 1)*6 + axis + (e & 1)*3)
+      i += 1
+    }
+    
+    // Ties are ordered with min endpoints first, so touching boxes are considered overlapping.
+    i = 1; while (i < count) {
+      val e = endpoints(i)
+      val v = values(i)
+      
+      var j = i - 1
+      while (j >= 0 && (v < values(j) || (v == values(j) && (e & 1) == 0 && (endpoints(j) & 1) == 1))) {
+        val other = endpoints(j)
+        
+        // A min moving below a max can start an overlap, a max moving below a min can end one.
+        if (((e ^ other) & 1) == 1) {
+          val a = e >> 1
+          val b = other >> 1
+          val key = pairKey(a, b)
+          if (if ((e & 1) == 0) overlaps(a, b) else pairs.contains(key)) candidates += key
+        }
+        
+        endpoints(j + 1) = other
+        values(j + 1) = values(j)
+        j -= 1
+      }
+      
+      endpoints(j + 1) = e
+      values(j + 1) = v
+      
+      i += 1
+    }
+  }
+  
+  /** Sorts the endpoints of the axis with a merge sort, ordering the min endpoints first on ties.
+   */
+  private[this] def fullSortAxis(axis: Int) {
+    val endpoints = this.endpoints(axis)
+    val values = this.values(axis)
+    val bounds = this.bounds
+    val count = endpointCount
+    
+    var i = 0; while (i < count) {
+      val e = endpoints(i)
+      values(i) = bounds((e >> 1)*6 + axis + (e & 1)*3)
+      i += 1
+    }
+    
+    var srcEndpoints = endpoints
+    var srcValues = values
+    var dstEndpoints = new Array[Int](count)
+    var dstValues = new Array[Double](count)
+    
+    var width = 1; while (width < count) {
+      var first = 0; while (first < count) {
+        val middle = math.min(first + width, count)
+        val end = math.min(first + width*2, count)
+        
+        var a = first; var b = middle; var k = first
+        while (k < end) {
+          val takeA = b >= end || (a < middle && {
+            val va = srcValues(a); val vb = srcValues(b)
+            va < vb || (va == vb && !((srcEndpoints(a) & 1) == 1 && (srcEndpoints(b) & 1) == 0))
+          })
+          
+          if (takeA) {
+            dstEndpoints(k) = srcEndpoints(a); dstValues(k) = srcValues(a); a += 1
+          }
+          else {
+            dstEndpoints(k) = srcEndpoints(b); dstValues(k) = srcValues(b); b += 1
+          }
+          k += 1
+        }
+        
+        first += width*2
+      }
+      
+      val swapEndpoints = srcEndpoints; srcEndpoints = dstEndpoints; dstEndpoints = swapEndpoints
+      val swapValues = srcValues; srcValues = dstValues; dstValues = swapValues
+      width *= 2
+    }
+    
+    if (srcEndpoints ne endpoints) {
+      System.arraycopy(srcEndpoints, 0, endpoints, 0, count)
+      System.arraycopy(srcValues, 0, values, 0, count)
+    }
+  }
+  
+  private[this] def grow() {
+    capacity *= 2
+    bounds = java.util.Arrays.copyOf(bounds, capacity*6)
+    alive = java.util.Arrays.copyOf(alive, capacity)
+    
+    var axis = 0; while (axis < 3) {
+      endpoints(axis) = java.util.Arrays.copyOf(endpoints(axis), capacity*2)
+      values(axis) = java.util.Arrays.copyOf(values(axis), capacity*2)
+      axis += 1
+    }
+  }
+}
+
+
+object SweepAndPrune {
+  
+  private def pairKey(a: Int, b: Int) :Long = {
+    if (a < b) (a.toLong << 32) | b
+    else (b.toLong << 32) | a
+  }
+  
+  
+  private final class LongBuffer {
+    private[this] var array = new Array[Long](64)
+    private[this] var count = 0
+    
+    def size = count
+    def apply(i: Int) = array(i)
+    def clear() { count = 0 }
+    
+    def +=(value: Long) {
+      if (count == array.length) array = java.util.Arrays.copyOf(array, count*2)
+      array(count) = value
+      count += 1
+    }
+  }
+  
+  
+  /** Open addressing set of pair keys with linear probing. Zero is used as the empty marker,
+   * which is never a valid key since a box cannot pair with itself.
+   */
+  private final class LongSet {
+    private[this] var table = new Array[Long](1024)
+    private[this] var mask = table.length - 1
+    private[this] var count = 0
+    
+    def size = count
+    
+    def keys(result: LongBuffer) {
+      var i = 0; while (i < table.length) {
+        if (table(i) != 0) result += table(i)
+        i += 1
+      }
+    }
+    
+    private[this] def slot(key: Long) :Int = {
+      val h = key*0x9E3779B97F4A7C15L
+      (h ^ (h >>> 32)).toInt & mask
+    }
+    
+    def contains(key: Long) :Boolean = {
+      var i = slot(key)
+      while (table(i) != 0) {
+        if (table(i) == key) return true
+        i = (i + 1) & mask
+      }
+      false
+    }
+    
+    def add(key: Long) :Boolean = {
+      if ((count + 1)*2 > table.length) rehash(table.length*2)
+      
+      var i = slot(key)
+      while (table(i) != 0) {
+        if (table(i) == key) return false
+        i = (i + 1) & mask
+      }
+      
+      table(i) = key
+      count += 1
+      true
+    }
+    
+    def remove(key: Long) :Boolean = {
+      var i = slot(key)
+      while (table(i) != key) {
+        if (table(i) == 0) return false
+        i = (i + 1) & mask
+      }
+      
+      // Backward shift deletion keeps probe sequences intact without tombstones.
+      var hole = i
+      i = (i + 1) & mask
+      while (table(i) != 0) {
+        val home = slot(table(i))
+        if (((i - home) & mask) >= ((i - hole) & mask)) {
+          table(hole) = table(i)
+          hole = i
+        }
+        i = (i + 1) & mask
+      }
+      
+      table(hole) = 0
+      count -= 1
+      true
+    }
+    
+    private[this] def rehash(newLength: Int) {
+      val old = table
+      table = new Array[Long](newLength)
+      mask = newLength - 1
+      count = 0
+      
+      var i = 0; while (i < old.length) {
+        if (old(i) != 0) add(old(i))
+        i += 1
+      }
+    }
+  }
+}
@@ -46,4 +46,19 @@ private[intersection] object Util {
     }
   }
   
+  
+  // Data sets smaller than this are processed on the calling thread.
+  final val SerialThreshold = 4096
+  final val Partitions = Runtime.getRuntime.availableProcessors*4
+  
+  def partitionCount(size: Int) :Int = if (size < SerialThreshold) 1 else Partitions
+  
+  def partitionStart(size: Int, partitions: Int, partition: Int) :Int = {
+    (size.toLong*partition/partitions).toInt
+  }
+  
+  def foreachPartition(partitions: Int)(process: Int => Unit) {
+    if (partitions == 1) process(0)
+    else (0 until partitions).par.foreach(process)
+  }
 }
@@ -342,6 +342,158 @@ object Util {
     }
   }
 
+  /** Parallel version of buildNormals(). Face normals are computed over partitioned triangle ranges,
+   * then each vertex gathers the normals of its adjacent triangles. Every pass writes only to its own
+   * range, so no synchronization is required.
+   */
+  def buildNormals(
+    indices: inIndex,
+    vertices: inData[Vec3],
+    normals: Data[Vec3],
+    adjacency: VertexAdjacency
+  ) {
+    checkAdjacency(normals, adjacency)
+
+    val vertexCount = adjacency.vertexCount
+    val triangleCount = adjacency.triangleCount
+    val faceNormals = new Array[Double](triangleCount*3)
+
+    def computeFaces(partition: Int) {
+      val first = partitionStart(triangleCount, partition)
+      val end = partitionStart(triangleCount, partition + 1)
+
+      var t = first; while (t < end) {
+        val i = t*3
+        val v0 = vertices(indices(i))
+        val v1 = vertices(indices(i + 1))
+        val v2 = vertices(indices(i + 2))
+
+        val normal = normalize(cross(v1 - v0, v2 - v0))
+        faceNormals(i) = normal.x
+        faceNormals(i + 1) = normal.y
+        faceNormals(i + 2) = normal.z
+
+        t += 1
+      }
+    }
+
+    def gatherVertices(partition: Int) {
+      val first = partitionStart(vertexCount, partition)
+      val end = partitionStart(vertexCount, partition + 1)
+
+      var v = first; while (v < end) {
+        normals(v) = gatherNormal(faceNormals, adjacency, v)
+        v += 1
+      }
+    }
+
+    (0 until Partitions).par.foreach(computeFaces)
+    (0 until Partitions).par.foreach(gatherVertices)
+  }
+
+  /** Recomputes only the normals affected by vertices in the range [first, first + count).
+   * Normals are rebuilt for every vertex that shares a triangle with the dirty range.
+   * Adjacency must be built from the same indices. Not thread-safe with respect to the adjacency.
+   */
+  def rebuildNormals(
+    indices: inIndex,
+    vertices: inData[Vec3],
+    normals: Data[Vec3],
+    adjacency: VertexAdjacency,
+    first: Int, count: Int
+  ) {
+    checkAdjacency(normals, adjacency)
+    if (first < 0 || count < 0 || first + count > adjacency.vertexCount) throw new IndexOutOfBoundsException(
+      "Range [" + first + ", " + (first + count) + ") is outside of " + adjacency.vertexCount + " vertices."
+    )
+
+    val marks = adjacency.marks
+    val stamp = adjacency.nextStamp()
+
+    var affected = new Array[Int](count*4)
+    var affectedCount = 0
+
+    var v = first; while (v < first + count) {
+      var j = 0; while (j < adjacency.adjacentCount(v)) {
+        val i = adjacency.adjacentTriangle(v, j)*3
+
+        var k = 0; while (k < 3) {
+          val u = indices(i + k)
+          if (marks(u) != stamp) {
+            marks(u) = stamp
+
+            if (affectedCount == affected.length) affected = java.util.Arrays.copyOf(affected, affectedCount*2)
+            affected(affectedCount) = u
+            affectedCount += 1
+          }
+
+          k += 1
+        }
+
+        j += 1
+      }
+
+      v += 1
+    }
+
+    def process(start: Int, end: Int) {
+      val sum = Vec3(0)
+
+      var a = start; while (a < end) {
+        val u = affected(a)
+        sum := Vec3.Zero
+
+        var j = 0; while (j < adjacency.adjacentCount(u)) {
+          val i = adjacency.adjacentTriangle(u, j)*3
+          val v0 = vertices(indices(i))
+          val v1 = vertices(indices(i + 1))
+          val v2 = vertices(indices(i + 2))
+
+          sum += normalize(cross(v1 - v0, v2 - v0))
+
+          j += 1
+        }
+
+        normals(u) = normalize(sum)
+
+        a += 1
+      }
+    }
+
+    if (affectedCount < IncrementalParallelThreshold) process(0, affectedCount)
+    else (0 until Partitions).par.foreach { p =>
+      process(partitionStart(affectedCount, p), partitionStart(affectedCount, p + 1))
+    }
+  }
+
+  private[this] final val Partitions = Runtime.getRuntime.availableProcessors*4
+  private[this] final val IncrementalParallelThreshold = 8192
+
+  private[this] def partitionStart(size: Int, partition: Int) :Int = {
+    (size.toLong*partition/Partitions).toInt
+  }
+
+  private[this] def checkAdjacency(normals: Data[Vec3], adjacency: VertexAdjacency) {
+    if (normals.size != adjacency.vertexCount) throw new IllegalArgumentException(
+      "Adjacency is built for " + adjacency.vertexCount + " vertices, but there are " + normals.size + " normals."
+    )
+  }
+
+  private[this] def gatherNormal(faceNormals: Array[Double], adjacency: VertexAdjacency, vertex: Int) :Vec3 = {
+    var x = 0.0; var y = 0.0; var z = 0.0
+
+    var j = 0; while (j < adjacency.adjacentCount(vertex)) {
+      val i = adjacency.adjacentTriangle(vertex, j)*3
+      x += faceNormals(i)
+      y += faceNormals(i + 1)
+      z += faceNormals(i + 2)
+
+      j += 1
+    }
+
+    normalize(Vec3(x, y, z))
+  }
+
   def genNormalLines(
     vertices: inData[Vec3],
     normals: inData[Vec3],
@@ -0,0 +1,89 @@
+/*
+ * Simplex3dAlgorithm - Mesh Module
+ * Copyright (C) 2011, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dAlgorithm.
+ *
+ * Simplex3dAlgorithm is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dAlgorithm is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package simplex3d.algorithm.mesh
+
+import simplex3d.math._
+import simplex3d.data._
+
+
+/** Vertex-to-triangle adjacency stored in compressed rows: triangles adjacent to vertex v are
+ * triangles(offsets(v)) until triangles(offsets(v + 1)).
+ *
+ * @author Aleksey Nikiforov (lex)
+ */
+final class VertexAdjacency private (
+  val vertexCount: Int,
+  val triangleCount: Int,
+  private[mesh] val offsets: Array[Int],
+  private[mesh] val triangles: Array[Int]
+) {
+  
+  // Scratch space for incremental updates, not thread-safe.
+  private[mesh] val marks = new Array[Int](vertexCount)
+  private[mesh] var stamp = 0
+  
+  private[mesh] def nextStamp() :Int = {
+    if (stamp == Int.MaxValue) {
+      java.util.Arrays.fill(marks, 0)
+      stamp = 0
+    }
+    stamp += 1
+    stamp
+  }
+  
+  def adjacentCount(vertex: Int) :Int = offsets(vertex + 1) - offsets(vertex)
+  def adjacentTriangle(vertex: Int, i: Int) :Int = triangles(offsets(vertex) + i)
+}
+
+
+object VertexAdjacency {
+  
+  def apply(indices: inIndex, vertexCount: Int) :VertexAdjacency = {
+    val triangleCount = indices.size/3
+    val indexCount = triangleCount*3
+    
+    val offsets = new Array[Int](vertexCount + 1)
+    
+    var i = 0; while (i < indexCount) {
+      offsets(indices(i) + 1) += 1
+      i += 1
+    }
+    
+    i = 0; while (i < vertexCount) {
+      offsets(i + 1) += offsets(i)
+      i += 1
+    }
+    
+    val cursor = java.util.Arrays.copyOf(offsets, vertexCount)
+    val triangles = new Array[Int](indexCount)
+    
+    i = 0; while (i < indexCount) {
+      val vertex = indices(i)
+      triangles(cursor(vertex)) = i/3
+      cursor(vertex) += 1
+      
+      i += 1
+    }
+    
+    new VertexAdjacency(vertexCount, triangleCount, offsets, triangles)
+  }
+}
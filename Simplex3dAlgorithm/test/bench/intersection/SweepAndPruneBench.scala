@@ -0,0 +1,110 @@
+/*
+ * Simplex3dAlgorithm - Test Package
+ * Copyright (C) 2011, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dAlgorithmTest.
+ *
+ * Simplex3dAlgorithmTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dAlgorithmTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package bench.intersection
+
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.algorithm.intersection._
+
+
+object SweepAndPruneBench {
+
+  def main() {
+    test()
+    test()
+    test()
+    test()
+  }
+
+  val boxCount = 50*1000
+  val frames = 100
+
+  object Listener extends PairListener {
+    var events = 0L
+    def pairAdded(a: Int, b: Int) { events += 1 }
+    def pairRemoved(a: Int, b: Int) { events += 1 }
+  }
+
+  def test() {
+    println("\nTesting...")
+    var start = 0L
+
+    start = System.currentTimeMillis
+    val serial = testBulkAdd(false)
+    val bulkTime = System.currentTimeMillis - start
+
+    start = System.currentTimeMillis
+    testFrames(serial, false)
+    val framesTime = System.currentTimeMillis - start
+
+    start = System.currentTimeMillis
+    val parallel = testBulkAdd(true)
+    val parallelBulkTime = System.currentTimeMillis - start
+
+    start = System.currentTimeMillis
+    testFrames(parallel, true)
+    val parallelFramesTime = System.currentTimeMillis - start
+
+
+    println("\nResults:")
+    println("Bulk add time: " + bulkTime + ".")
+    println("Frames time: " + framesTime + ".")
+    println("Multithreaded bulk add time: " + parallelBulkTime + ".")
+    println("Multithreaded frames time: " + parallelFramesTime + ".")
+    println("Events: " + Listener.events + ".")
+  }
+
+  def testBulkAdd(multithreaded: Boolean) :SweepAndPrune = {
+    val random = new java.util.Random(0)
+    val sap = new SweepAndPrune(boxCount, multithreaded)
+
+    var i = 0; while (i < boxCount) {
+      val min = Vec3(random.nextDouble, random.nextDouble, random.nextDouble)*1000
+      sap.add(min, min + 4)
+      i += 1
+    }
+    sap.sweep(Listener)
+
+    sap
+  }
+
+  def testFrames(sap: SweepAndPrune, multithreaded: Boolean) {
+    val random = new java.util.Random(0)
+    val positions = new Array[Vec3](boxCount)
+
+    var i = 0; while (i < boxCount) {
+      positions(i) = Vec3(random.nextDouble, random.nextDouble, random.nextDouble)*1000
+      i += 1
+    }
+
+    var frame = 0; while (frame < frames) {
+      var i = 0; while (i < boxCount) {
+        val p = positions(i)
+        p += Vec3(random.nextDouble - 0.5, random.nextDouble - 0.5, random.nextDouble - 0.5)
+        sap.update(i, p, p + 4)
+        i += 1
+      }
+      sap.sweep(Listener)
+      frame += 1
+    }
+  }
+}
@@ -67,6 +67,7 @@ object ArbEquivalents {
     @inline def glGetAttribLocation(programObj:Int, name:java.lang.CharSequence) = glGetAttribLocationARB(programObj,name)
     @inline def glGetActiveAttrib(programObj:Int, index:Int, maxLength:Int, sizeType:java.nio.IntBuffer) = glGetActiveAttribARB(programObj,index,maxLength,sizeType)
     @inline def glEnableVertexAttribArray(index:Int) = glEnableVertexAttribArrayARB(index)
+    @inline def glDisableVertexAttribArray(index:Int) = glDisableVertexAttribArrayARB(index)
     @inline def glVertexAttribPointer(index:Int, size:Int, `type`:Int, normalized:Boolean, stride:Int, buffer_buffer_offset:Long) = glVertexAttribPointerARB(index, size, `type`, normalized, stride, buffer_buffer_offset)
     @inline def glGetShaderInfoLog(obj:Int, maxLength:Int) = glGetInfoLogARB(obj,maxLength)
     @inline def glGetProgramInfoLog(obj:Int, maxLength:Int) = glGetInfoLogARB(obj,maxLength)
@@ -160,7 +160,13 @@ class FixedResolutionLauncher extends simplex3d.engine.Launcher {
       maxFragmentUniformComponents = glGetInteger(GL_MAX_FRAGMENT_UNIFORM_COMPONENTS),
       maxAttributes = glGetInteger(GL_MAX_VERTEX_ATTRIBS),
       maxVertexTextures = glGetInteger(GL_MAX_VERTEX_TEXTURE_IMAGE_UNITS),
-      maxFragmentTextures = glGetInteger(GL_MAX_TEXTURE_IMAGE_UNITS)
+      maxFragmentTextures = glGetInteger(GL_MAX_TEXTURE_IMAGE_UNITS),
+      instancing =
+        extensions.contains("GL_ARB_instanced_arrays") && extensions.contains("GL_ARB_draw_instanced"),
+      uniformBuffers = extensions.contains("GL_ARB_uniform_buffer_object"),
+      vertexArrays = extensions.contains("GL_ARB_vertex_array_object"),
+      mapBufferRange = extensions.contains("GL_ARB_map_buffer_range"),
+      fences = extensions.contains("GL_ARB_sync")
     )
   }
   
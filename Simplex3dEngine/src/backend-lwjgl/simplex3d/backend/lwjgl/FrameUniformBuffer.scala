@@ -0,0 +1,84 @@
+/*
+ * Simplex3dEngine - LWJGL Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.backend.lwjgl
+
+import org.lwjgl.BufferUtils
+import org.lwjgl.opengl._
+import simplex3d.engine.util._
+import simplex3d.engine.graphics._
+
+
+/** Uploads the per-frame uniforms into a uniform buffer once per frame, and binds the frame block range.
+ * 
+ * The buffer holds several frames, each upload writes the next slot, so the driver does not have to
+ * wait for the draw calls that still read the previous frame.
+ */
+private[lwjgl] final class FrameUniformBuffer(offsetAlignment: Int, slots: Int = 3) {
+  import ARBUniformBufferObject._
+  
+  private[this] val size = PredefinedUniforms.FrameBlock.size
+  private[this] val stride = {
+    val alignment = if (offsetAlignment > 0) offsetAlignment else 256
+    (size + alignment - 1)/alignment*alignment
+  }
+  
+  private[this] val data = BufferUtils.createByteBuffer(size)
+  private[this] var id = 0
+  private[this] var slot = 0
+  
+  
+  def upload(uniforms: ReadPredefinedUniforms) {
+    if (id == 0) {
+      id = GL15.glGenBuffers()
+      GL15.glBindBuffer(GL_UNIFORM_BUFFER, id)
+      GL15.glBufferData(GL_UNIFORM_BUFFER, stride*slots, GL15.GL_STREAM_DRAW)
+    }
+    else GL15.glBindBuffer(GL_UNIFORM_BUFFER, id)
+    
+    PredefinedUniforms.packFrameBlock(uniforms, data, 0)
+    
+    val offset = slot*stride
+    GL15.glBufferSubData(GL_UNIFORM_BUFFER, offset, data)
+    glBindBufferRange(GL_UNIFORM_BUFFER, PredefinedUniforms.FrameBlockBinding, id, offset, size)
+    Profiler.count(Profiler.BytesUploaded, size)
+    
+    slot = (slot + 1) % slots
+  }
+  
+  /** Binds the frame block of the program to the frame block binding point.
+   * @return true if the program uses the frame block.
+   */
+  def bindProgram(programId: Int) :Boolean = {
+    val index = glGetUniformBlockIndex(programId, PredefinedUniforms.FrameBlock.name)
+    if (index == GL_INVALID_INDEX) false
+    else {
+      glUniformBlockBinding(programId, index, PredefinedUniforms.FrameBlockBinding)
+      true
+    }
+  }
+  
+  def release() {
+    if (id != 0) {
+      GL15.glDeleteBuffers(id)
+      id = 0
+    }
+  }
+}
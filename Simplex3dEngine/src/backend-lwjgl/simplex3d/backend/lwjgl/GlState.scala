@@ -0,0 +1,277 @@
+/*
+ * Simplex3dEngine - LWJGL Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.backend.lwjgl
+
+import org.lwjgl.opengl._
+import simplex3d.engine.util._
+
+
+/** Fixed-function GL state calls, allows the call stream to be recorded without a GL context.
+ */
+trait StateGl {
+  def glEnable(cap: Int) :Unit
+  def glDisable(cap: Int) :Unit
+  def glBlendFunc(src: Int, dst: Int) :Unit
+  def glBlendEquation(mode: Int) :Unit
+  def glDepthFunc(func: Int) :Unit
+  def glDepthMask(flag: Boolean) :Unit
+  def glCullFace(mode: Int) :Unit
+  def glPointSize(size: Float) :Unit
+  def glLineWidth(width: Float) :Unit
+  def glPointParameteri(name: Int, value: Int) :Unit
+  def glEnableVertexAttribArray(index: Int) :Unit
+  def glDisableVertexAttribArray(index: Int) :Unit
+}
+
+
+object LwjglStateGl extends StateGl {
+  def glEnable(cap: Int) { GL11.glEnable(cap) }
+  def glDisable(cap: Int) { GL11.glDisable(cap) }
+  def glBlendFunc(src: Int, dst: Int) { GL11.glBlendFunc(src, dst) }
+  def glBlendEquation(mode: Int) { GL14.glBlendEquation(mode) }
+  def glDepthFunc(func: Int) { GL11.glDepthFunc(func) }
+  def glDepthMask(flag: Boolean) { GL11.glDepthMask(flag) }
+  def glCullFace(mode: Int) { GL11.glCullFace(mode) }
+  def glPointSize(size: Float) { GL11.glPointSize(size) }
+  def glLineWidth(width: Float) { GL11.glLineWidth(width) }
+  def glPointParameteri(name: Int, value: Int) { GL14.glPointParameteri(name, value) }
+  def glEnableVertexAttribArray(index: Int) { ArbEquivalents.GL20.glEnableVertexAttribArray(index) }
+  def glDisableVertexAttribArray(index: Int) { ArbEquivalents.GL20.glDisableVertexAttribArray(index) }
+}
+
+
+/** Shadows the GL state, so that only the actual changes reach the driver.
+ * 
+ * Every state change either issues a GL call or is elided when the state already matches.
+ * Both are counted, bindings shadowed by the RenderContext are counted as well.
+ * 
+ * Vertex attribute arrays are requested while binding a mesh, applyAttribArrays() enables the requested
+ * arrays and disables the rest before the draw call.
+ */
+final class GlState(gl: StateGl, maxAttributes: Int) {
+  
+  private[this] final val Unknown = -1
+  
+  // Only a few capabilities are ever used, so they are kept in small arrays.
+  private[this] var capabilityKeys = new Array[Int](8)
+  private[this] var capabilityValues = new Array[Int](8)
+  private[this] var capabilityCount = 0
+  
+  private[this] var blendSrc = Unknown
+  private[this] var blendDst = Unknown
+  private[this] var blendEquationMode = Unknown
+  private[this] var depthFuncValue = Unknown
+  private[this] var depthMaskValue = Unknown
+  private[this] var cullFaceMode = Unknown
+  private[this] var pointSizeValue = Float.NaN
+  private[this] var lineWidthValue = Float.NaN
+  private[this] var pointSpriteOrigin = Unknown
+  
+  private[this] val attribArrays = new Array[Int](maxAttributes)
+  private[this] val requestedArrays = new Array[Boolean](maxAttributes)
+  
+  private[this] var issued = 0L
+  private[this] var elided = 0L
+  
+  reset()
+  
+  
+  /** Number of state changes that were sent to the driver.
+   */
+  def issuedCalls: Long = issued
+  
+  /** Number of redundant state changes that were skipped.
+   */
+  def elidedCalls: Long = elided
+  
+  def resetCounters() {
+    issued = 0
+    elided = 0
+  }
+  
+  def recordIssued() {
+    issued += 1
+    Profiler.count(Profiler.StateChanges, 1)
+  }
+  
+  def recordElided() {
+    elided += 1
+  }
+  
+  /** Forgets the shadowed state, must be called when the GL state is changed outside of this class.
+   */
+  def reset() {
+    java.util.Arrays.fill(capabilityValues, Unknown)
+    
+    blendSrc = Unknown
+    blendDst = Unknown
+    blendEquationMode = Unknown
+    depthFuncValue = Unknown
+    depthMaskValue = Unknown
+    cullFaceMode = Unknown
+    pointSizeValue = Float.NaN
+    lineWidthValue = Float.NaN
+    pointSpriteOrigin = Unknown
+    
+    resetAttribArrays()
+  }
+  
+  /** Forgets the vertex attribute array state, must be called when a different vertex array object is bound.
+   */
+  def resetAttribArrays() {
+    java.util.Arrays.fill(attribArrays, Unknown)
+    java.util.Arrays.fill(requestedArrays, false)
+  }
+  
+  
+  private[this] def capabilityIndex(cap: Int) :Int = {
+    var i = 0; while (i < capabilityCount) {
+      if (capabilityKeys(i) == cap) return i
+      i += 1
+    }
+    
+    if (capabilityCount == capabilityKeys.length) {
+      capabilityKeys = java.util.Arrays.copyOf(capabilityKeys, capabilityCount*2)
+      capabilityValues = java.util.Arrays.copyOf(capabilityValues, capabilityCount*2)
+      java.util.Arrays.fill(capabilityValues, capabilityCount, capabilityValues.length, Unknown)
+    }
+    
+    capabilityKeys(capabilityCount) = cap
+    capabilityValues(capabilityCount) = Unknown
+    capabilityCount += 1
+    capabilityCount - 1
+  }
+  
+  def setCapability(cap: Int, enabled: Boolean) {
+    val index = capabilityIndex(cap)
+    val value = if (enabled) 1 else 0
+    
+    if (capabilityValues(index) != value) {
+      if (enabled) gl.glEnable(cap) else gl.glDisable(cap)
+      capabilityValues(index) = value
+      recordIssued()
+    }
+    else recordElided()
+  }
+  
+  def enable(cap: Int) { setCapability(cap, true) }
+  def disable(cap: Int) { setCapability(cap, false) }
+  
+  def blendFunc(src: Int, dst: Int) {
+    if (blendSrc != src || blendDst != dst) {
+      gl.glBlendFunc(src, dst)
+      blendSrc = src
+      blendDst = dst
+      recordIssued()
+    }
+    else recordElided()
+  }
+  
+  def blendEquation(mode: Int) {
+    if (blendEquationMode != mode) {
+      gl.glBlendEquation(mode)
+      blendEquationMode = mode
+      recordIssued()
+    }
+    else recordElided()
+  }
+  
+  def depthFunc(func: Int) {
+    if (depthFuncValue != func) {
+      gl.glDepthFunc(func)
+      depthFuncValue = func
+      recordIssued()
+    }
+    else recordElided()
+  }
+  
+  def depthMask(flag: Boolean) {
+    val value = if (flag) 1 else 0
+    if (depthMaskValue != value) {
+      gl.glDepthMask(flag)
+      depthMaskValue = value
+      recordIssued()
+    }
+    else recordElided()
+  }
+  
+  def cullFace(mode: Int) {
+    if (cullFaceMode != mode) {
+      gl.glCullFace(mode)
+      cullFaceMode = mode
+      recordIssued()
+    }
+    else recordElided()
+  }
+  
+  def pointSize(size: Float) {
+    if (pointSizeValue != size) {
+      gl.glPointSize(size)
+      pointSizeValue = size
+      recordIssued()
+    }
+    else recordElided()
+  }
+  
+  def lineWidth(width: Float) {
+    if (lineWidthValue != width) {
+      gl.glLineWidth(width)
+      lineWidthValue = width
+      recordIssued()
+    }
+    else recordElided()
+  }
+  
+  def pointSpriteCoordOrigin(origin: Int) {
+    if (pointSpriteOrigin != origin) {
+      gl.glPointParameteri(GL20.GL_POINT_SPRITE_COORD_ORIGIN, origin)
+      pointSpriteOrigin = origin
+      recordIssued()
+    }
+    else recordElided()
+  }
+  
+  
+  /** Marks the vertex attribute array as used by the next draw call.
+   */
+  def requestAttribArray(index: Int) {
+    requestedArrays(index) = true
+  }
+  
+  /** Enables the requested vertex attribute arrays and disables the ones that were not requested
+   * since the last call.
+   */
+  def applyAttribArrays() {
+    var i = 0; while (i < maxAttributes) {
+      val value = if (requestedArrays(i)) 1 else 0
+      
+      if (attribArrays(i) != value) {
+        if (value == 1) gl.glEnableVertexAttribArray(i) else gl.glDisableVertexAttribArray(i)
+        attribArrays(i) = value
+        recordIssued()
+      }
+      else if (value == 1) recordElided()
+      
+      requestedArrays(i) = false
+      i += 1
+    }
+  }
+}
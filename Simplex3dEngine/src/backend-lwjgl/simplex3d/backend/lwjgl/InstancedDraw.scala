@@ -0,0 +1,171 @@
+/*
+ * Simplex3dEngine - LWJGL Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.backend.lwjgl
+
+import scala.collection.mutable.ArrayBuffer
+import org.lwjgl.opengl._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine.graphics._
+
+
+/** GL calls issued for instanced drawing, allows the call stream to be recorded without a GL context.
+ */
+trait InstancingGl {
+  def glVertexAttribDivisor(index: Int, divisor: Int) :Unit
+  def glDisableVertexAttribArray(index: Int) :Unit
+  def glVertexAttrib3f(index: Int, x: Float, y: Float, z: Float) :Unit
+  def glVertexAttrib4f(index: Int, x: Float, y: Float, z: Float, w: Float) :Unit
+  
+  def glDrawArrays(mode: Int, first: Int, count: Int) :Unit
+  def glDrawArraysInstanced(mode: Int, first: Int, count: Int, instances: Int) :Unit
+  def glDrawElements(mode: Int, count: Int, indexType: Int, offset: Long) :Unit
+  def glDrawElementsInstanced(mode: Int, count: Int, indexType: Int, offset: Long, instances: Int) :Unit
+}
+
+
+object LwjglInstancingGl extends InstancingGl {
+  def glVertexAttribDivisor(index: Int, divisor: Int) { ARBInstancedArrays.glVertexAttribDivisorARB(index, divisor) }
+  def glDisableVertexAttribArray(index: Int) { ARBVertexShader.glDisableVertexAttribArrayARB(index) }
+  def glVertexAttrib3f(index: Int, x: Float, y: Float, z: Float) { ARBVertexShader.glVertexAttrib3fARB(index, x, y, z) }
+  def glVertexAttrib4f(index: Int, x: Float, y: Float, z: Float, w: Float) {
+    ARBVertexShader.glVertexAttrib4fARB(index, x, y, z, w)
+  }
+  
+  def glDrawArrays(mode: Int, first: Int, count: Int) { GL11.glDrawArrays(mode, first, count) }
+  def glDrawArraysInstanced(mode: Int, first: Int, count: Int, instances: Int) {
+    ARBDrawInstanced.glDrawArraysInstancedARB(mode, first, count, instances)
+  }
+  def glDrawElements(mode: Int, count: Int, indexType: Int, offset: Long) {
+    GL11.glDrawElements(mode, count, indexType, offset)
+  }
+  def glDrawElementsInstanced(mode: Int, count: Int, indexType: Int, offset: Long, instances: Int) {
+    ARBDrawInstanced.glDrawElementsInstancedARB(mode, count, indexType, offset, instances)
+  }
+}
+
+
+/** Issues the draw calls for meshes, with or without instancing.
+ * 
+ * When instancing is supported, per-instance attributes are bound as arrays with a divisor and
+ * drawn with a single instanced call. Otherwise the per-instance arrays are disabled, and the values
+ * for each instance are set as constant attributes before drawing the instance with a regular call.
+ */
+final class InstancedDraw(gl: InstancingGl, val supported: Boolean, maxAttributes: Int) {
+  
+  private[this] val divisors = new Array[Int](maxAttributes)
+  
+  private[this] val deferredLocations = new ArrayBuffer[Int]
+  private[this] val deferredRows = new ArrayBuffer[Int]
+  private[this] val deferredAttributes = new ArrayBuffer[Attributes[_ <: Format, Raw]]
+  
+  
+  /** Must be called when the GL state is reset outside of this class.
+   */
+  def resetState() {
+    java.util.Arrays.fill(divisors, -1)
+  }
+  
+  /** Updates the divisor for all the columns of an attribute that is bound as an array.
+   * Redundant calls are elided.
+   */
+  def setDivisor(location: Int, columns: Int, divisor: Int) {
+    if (!supported) return
+    
+    var i = 0; while (i < columns) {
+      val index = location + i
+      if (divisors(index) != divisor) {
+        gl.glVertexAttribDivisor(index, divisor)
+        divisors(index) = divisor
+      }
+      
+      i += 1
+    }
+  }
+  
+  /** Without instancing support, per-instance attributes are not bound as arrays.
+   * Their values are set for each instance during the next draw call instead.
+   */
+  def defer(location: Int, rows: Int, attributes: Attributes[_ <: Format, Raw]) {
+    if (rows != 3 && rows != 4) throw new UnsupportedOperationException(
+      "Only Vec3 and Vec4 per-instance attributes can be used without instancing support."
+    )
+    
+    deferredLocations += location
+    deferredRows += rows
+    deferredAttributes += attributes
+  }
+  
+  
+  def drawArrays(mode: Int, first: Int, count: Int, instances: Int) {
+    if (instances == 0) gl.glDrawArrays(mode, first, count)
+    else if (supported) gl.glDrawArraysInstanced(mode, first, count, instances)
+    else {
+      var i = 0; while (i < instances) {
+        setInstanceValues(i)
+        gl.glDrawArrays(mode, first, count)
+        i += 1
+      }
+    }
+    
+    clearDeferred()
+  }
+  
+  def drawElements(mode: Int, count: Int, indexType: Int, offset: Long, instances: Int) {
+    if (instances == 0) gl.glDrawElements(mode, count, indexType, offset)
+    else if (supported) gl.glDrawElementsInstanced(mode, count, indexType, offset, instances)
+    else {
+      var i = 0; while (i < instances) {
+        setInstanceValues(i)
+        gl.glDrawElements(mode, count, indexType, offset)
+        i += 1
+      }
+    }
+    
+    clearDeferred()
+  }
+  
+  
+  private def setInstanceValues(instance: Int) {
+    var i = 0; while (i < deferredAttributes.size) {
+      val location = deferredLocations(i)
+      val attributes = deferredAttributes(i)
+      
+      if (deferredRows(i) == 4) {
+        val v = attributes.read.asInstanceOf[inData[Vec4]](instance)
+        gl.glVertexAttrib4f(location, v.x.toFloat, v.y.toFloat, v.z.toFloat, v.w.toFloat)
+      }
+      else {
+        val v = attributes.read.asInstanceOf[inData[Vec3]](instance)
+        gl.glVertexAttrib3f(location, v.x.toFloat, v.y.toFloat, v.z.toFloat)
+      }
+      
+      i += 1
+    }
+  }
+  
+  private def clearDeferred() {
+    deferredLocations.clear()
+    deferredRows.clear()
+    deferredAttributes.clear()
+  }
+}
@@ -24,10 +24,22 @@ import org.lwjgl.opengl._
 import org.lwjgl.input.{Keyboard => RawKeyboard, Mouse => RawMouse }
 import simplex3d.math._
 import simplex3d.engine._
+import simplex3d.engine.util._
 import simplex3d.engine.input._
 import simplex3d.engine.graphics._
 
 
+/** Runs the update on a worker thread, while the render thread swaps the buffers of the previous frame.
+ * 
+ * After each update the worker publishes a packet from a FrameRing, the render thread always takes
+ * the latest completed packet. The number of packets is configured with AdvancedSettings.framePipelineDepth.
+ * Time spent waiting on each side is reported by updateStallNanos and renderStallNanos.
+ * 
+ * Culling, sorting, and rendering run on the render thread while the scene is locked. Culling writes
+ * the attribute data of the instanced and batched meshes and assigns the techniques, which the render
+ * thread reads while uploading, so the frame cannot be prepared on the worker until the packet also
+ * captures the changed regions and the uniforms.
+ */
 final class ParallelLoop extends simplex3d.engine.MainLoop {
   val driver = "lwjgl"//XXX replace driver with Backend
   
@@ -36,49 +48,62 @@ final class ParallelLoop extends simplex3d.engine.MainLoop {
   private val input = new Input
   private var lastFps = 0.0
   
-  private[this] object Stage extends Enumeration { val Processing, WaitingForSync, Synchronizing, WaitingToProccess = Value }
+  private[this] var ring: FrameRing[FramePacket] = _
+  
+  // Input is polled on the render thread and consumed on the worker thread.
+  private[this] val inputLock = new Object
+  
+  // Guards the scene while it is updated, and when the app does not support frame packets.
+  private[this] val sceneLock = new Object
+  
   private[this] final class Worker {
-    var stage: Stage.type#Value = Stage.Processing
     var terminated = false
   }
   private[this] val worker = new Worker
   
+  private[this] var lastUpdateStall = 0L
+  private[this] var lastRenderStall = 0L
+  
+  
+  /** Total time the worker thread has waited for a free frame packet.
+   */
+  def updateStallNanos: Long = if (ring == null) 0 else ring.producerStallNanos
+  
+  /** Total time the render thread has waited for a completed frame packet.
+   */
+  def renderStallNanos: Long = if (ring == null) 0 else ring.consumerStallNanos
+  
+  /** Number of completed frame packets that were never rendered.
+   */
+  def droppedFrames: Long = if (ring == null) 0 else ring.droppedFrames
+  
+  
   def init(app: App#Subtext) {
+    ring = new FrameRing[FramePacket](app.settings.advanced.framePipelineDepth, () => new FramePacket)
+    
     new Thread { override def run() {
       
-      while (!disposed) {
+      var packet = ring.acquireWrite()
+      while (!disposed && packet != null) {
         
-        val stage = worker.synchronized {
-          worker.notifyAll()
-          worker.wait()
-          worker.stage
+        app.timer.update()
+        val time = app.timer.timeStamp
+        
+        inputLock.synchronized {
+          handleInput(time, app)
         }
         
-        stage match {
+        sceneLock.synchronized {
+          val updateStart = Profiler.start()
+          app.preUpdate(time)
+          app.update(time)
+          Profiler.stop(Profiler.Update, updateStart)
           
-          case Stage.Processing =>
-            app.timer.update()
-            val time = app.timer.timeStamp
-            
-            handleInput(time, app)
-            
-            app.preUpdate(time)
-            app.update(time)
-            
-            worker.synchronized {
-              worker.stage = Stage.WaitingForSync
-            }
-            
-          case Stage.Synchronizing =>
-            // XXX copy properties
-            
-            worker.synchronized {
-              worker.stage = Stage.WaitingToProccess
-            }
-            
-          case _ =>
-            // do nothing
+          packet.clear(time)
         }
+        
+        ring.publish(packet)
+        packet = ring.acquireWrite()
       }
       
       worker.synchronized {
@@ -92,62 +117,44 @@ final class ParallelLoop extends simplex3d.engine.MainLoop {
   def body(app: App#Subtext) :Boolean = {
     import app._
     
-    // Wait for sync.
-    worker.synchronized {
-      while (!worker.terminated && worker.stage != Stage.WaitingForSync) {
-        worker.notifyAll()
-        worker.wait()
-      }
-    }
-
-    
-    // Joined stage.
+    val packet = ring.acquireLatest()
+    if (packet == null) return true
     
     val renderManager = app.renderManager.asInstanceOf[RenderManager]
-    renderManager.renderContext.resetState()
-    
-    manage()
     
-    // XXX init shader programs
-    // XXX perform shader property binding
-    
-    
-    // Trigger sync phase.
-    worker.synchronized {
-      worker.stage = Stage.Synchronizing
-      worker.notifyAll()
+    // The scene must not change while the frame is prepared and rendered.
+    sceneLock.synchronized {
+      renderManager.renderContext.resetState()
+      manage()
+      
+      if (prepareFrame(packet.time, packet)) renderFrame(packet)
+      else render(packet.time)
     }
+    ring.release(packet)
     
+    val swapStart = Profiler.start()
+    Display.update(false)
+    Profiler.stop(Profiler.Swap, swapStart)
     
-    // Sync stage.
-    
-    // XXX load texture and mesh data onto GPU
-    
-    
-    // Wait for worker to finish sync, poll input, and move on to processing stage.
-    worker.synchronized {
-      while (!worker.terminated && worker.stage != Stage.WaitingToProccess) {
-        worker.notifyAll()
-        worker.wait()
-      }
-      
+    inputLock.synchronized {
       Display.processMessages() // Poll input.
-      
-      worker.stage = Stage.Processing
-      worker.notifyAll()
     }
     
-    
-    // Processing stage: worker performs update while synced copy is rendered.
-    
-    render(app.timer.timeStamp)
-    Display.update(false)
-    
     renderManager.renderContext.manage()
+    Profiler.endFrame()
     
     if (settings.logPerformance && lastFps != timer.fps) {
       lastFps = timer.fps
-      println("fps: " + lastFps)
+      
+      val updateStall = updateStallNanos; val renderStall = renderStallNanos
+      println(
+        "fps: " + lastFps +
+        ", update stall: " + (updateStall - lastUpdateStall)/1000000 + " ms" +
+        ", render stall: " + (renderStall - lastRenderStall)/1000000 + " ms" +
+        ", dropped frames: " + droppedFrames
+      )
+      lastUpdateStall = updateStall; lastRenderStall = renderStall
+      if (Profiler.Enabled) println(Profiler.report())
     }
     
     Display.isCloseRequested()
@@ -156,10 +163,11 @@ final class ParallelLoop extends simplex3d.engine.MainLoop {
   
   def dispose() {
     disposed = true
+    if (ring == null) return
+    ring.close()
     
     worker.synchronized {
       while (!worker.terminated) {
-        worker.notifyAll()
         worker.wait()
       }
     }
@@ -47,15 +47,18 @@ private[backend] final class ProgramMapping(val program: Technique, val context:
   
   private[this] val uniformMatrixLocations = uniformMatrices.map(_.location).toArray
   private[this] val uniformMatrixTypes = uniformMatrices.map(_.dataType).toArray
+  private[this] val uniformMatrixColumnsRows = uniformMatrices.map(binding => columnsRows(binding.dataType)).toArray
   
   private[this] val uniformTextureLocations = uniformTextures.map(_.location).toArray
   private[this] val uniformTextureTypes = uniformTextures.map(_.dataType).toArray
   private[this] val uniformTextureUnits = uniformTextures.map(_.asInstanceOf[ActiveTexture].textureUnit).toArray
   
   private[this] val attributeLocations = attributes.map(_.location).toArray
-  private[this] val attributeColumnsRows = attributes.map {
+  private[this] val attributeColumnsRows = attributes.map(binding => columnsRows(binding.dataType)).toArray
+  
+  private[this] def columnsRows(dataType: Int) :Int = {
     def zip(columns: Int, rows: Int) :Int = (columns << 4) | rows
-    _.dataType match {
+    dataType match {
         case EngineBindingTypes.Float => zip(1, 1)
         case EngineBindingTypes.Vec2 => zip(1, 2)
         case EngineBindingTypes.Vec3 => zip(1, 3)
@@ -74,19 +77,27 @@ private[backend] final class ProgramMapping(val program: Technique, val context:
         case EngineBindingTypes.Mat4x3 => zip(4, 3)
         case EngineBindingTypes.Mat4x4 => zip(4, 4)
     }
-  }.toArray
+  }
+  
+  // Last values uploaded to the program, unchanged uniforms are skipped.
+  private[this] val vectorShadow = new UniformShadow(uniformVectors.length, 4)
+  private[this] val matrixShadow = new UniformShadow(uniformMatrices.length, 16)
+  
+  // Values are converted into the staging arrays, compared with the shadow, and uploaded from there.
+  private[this] val vectorStaging = new Array[Int](4)
+  private[this] val matrixStaging = new Array[Float](16)
   
   
   private[this] def bindUniformVectors(uniforms: ReadArray[VectorLike]) {
     var i = 0; while (i < uniformVectors.length) {
-      setUniformVector(uniformVectorLocations(i), uniformVectorTypes(i), uniforms(i))
+      setUniformVector(i, uniforms(i))
       i += 1
     }
   }
   
   private[this] def bindUniformMatrices(uniforms: ReadArray[AnyMat[_]]) {
     var i = 0; while (i < uniformMatrices.length) {
-      setUniformMatrix(uniformMatrixLocations(i), uniformMatrixTypes(i), uniforms(i))
+      setUniformMatrix(i, uniforms(i))
       i += 1
     }
   }
@@ -101,29 +112,27 @@ private[backend] final class ProgramMapping(val program: Technique, val context:
     }
   }
   
-  private[this] def bindAttributes(
-    attributeBindings: ReadArray[ActiveAttribute],
-    attributes: ReadArray[Attributes[_, _]]
-  ) {
-    var i = 0; while (i < attributeBindings.length) {
+  
+  def bindUniforms(meshMapping: MeshMapping) {
+    bindUniformVectors(meshMapping.uniformVectors)
+    bindUniformMatrices(meshMapping.uniformMatrices)
+    bindUniformTextures(meshMapping.uniformTextures)
+  }
+  
+  def bindAttributes(meshMapping: MeshMapping) {
+    val mapped = meshMapping.attributes
+    
+    var i = 0; while (i < attributes.length) {
       val columnsRows = attributeColumnsRows(i)
       val columns = (columnsRows >> 4)
       val rows = (columnsRows & 0x00000007)
-      setAttributes(attributeLocations(i), columns, rows, attributes(i))
+      setAttributes(attributeLocations(i), columns, rows, mapped(i))
       
       i += 1
     }
   }
   
   
-  def bind(meshMapping: MeshMapping) {
-    bindUniformVectors(meshMapping.uniformVectors)
-    bindUniformMatrices(meshMapping.uniformMatrices)
-    bindUniformTextures(meshMapping.uniformTextures)
-    bindAttributes(attributes, meshMapping.attributes)
-  }
-  
-  
   // *** State ********************************************************************************************************
   
   import GL20._; import GL21._;
@@ -135,41 +144,29 @@ private[backend] final class ProgramMapping(val program: Technique, val context:
     }
   }
   
-  def setUniformVector(location: Int, dataType: Int, value: VectorLike) {
+  def setUniformVector(index: Int, value: VectorLike) {
     if (value != null) {
-      (dataType: @switch) match {
-        case EngineBindingTypes.Float => uniform(location, value.asInstanceOf[ReadDoubleRef])
-        case EngineBindingTypes.Vec2 => uniform(location, value.asInstanceOf[ReadVec2])
-        case EngineBindingTypes.Vec3 => uniform(location, value.asInstanceOf[ReadVec3])
-        case EngineBindingTypes.Vec4 => {
-          if (value.isInstanceOf[ReadQuat4]) uniform(location, value.asInstanceOf[ReadQuat4])
-          else uniform(location, value.asInstanceOf[ReadVec4])
-        }
-        case EngineBindingTypes.Int => uniform(location, value.asInstanceOf[ReadIntRef])
-        case EngineBindingTypes.Vec2i => uniform(location, value.asInstanceOf[ReadVec2i])
-        case EngineBindingTypes.Vec3i => uniform(location, value.asInstanceOf[ReadVec3i])
-        case EngineBindingTypes.Vec4i => uniform(location, value.asInstanceOf[ReadVec4i])
-        case EngineBindingTypes.Boolean => uniform(location, value.asInstanceOf[ReadBooleanRef])
-        case EngineBindingTypes.Vec2b => uniform(location, value.asInstanceOf[ReadVec2b])
-        case EngineBindingTypes.Vec3b => uniform(location, value.asInstanceOf[ReadVec3b])
-        case EngineBindingTypes.Vec4b => uniform(location, value.asInstanceOf[ReadVec4b])
+      val dataType = uniformVectorTypes(index)
+      val size = stageVector(dataType, value)
+      
+      if (vectorShadow.update(index, vectorStaging, size)) {
+        uploadVector(uniformVectorLocations(index), dataType, size)
+        context.recordUniformUpload(true)
       }
+      else context.recordUniformUpload(false)
     }
   }
   
-  def setUniformMatrix(location: Int, dataType: Int, value: AnyMat[_]) {
+  def setUniformMatrix(index: Int, value: AnyMat[_]) {
     if (value != null) {
-      (dataType: @switch) match {
-        case EngineBindingTypes.Mat2x2 => uniformMat2(location, value)
-        case EngineBindingTypes.Mat2x3 => uniform(location, value.asInstanceOf[ReadMat2x3])
-        case EngineBindingTypes.Mat2x4 => uniform(location, value.asInstanceOf[ReadMat2x4])
-        case EngineBindingTypes.Mat3x2 => uniform(location, value.asInstanceOf[ReadMat3x2])
-        case EngineBindingTypes.Mat3x3 => uniformMat3(location, value)
-        case EngineBindingTypes.Mat3x4 => uniform(location, value.asInstanceOf[ReadMat3x4])
-        case EngineBindingTypes.Mat4x2 => uniform(location, value.asInstanceOf[ReadMat4x2])
-        case EngineBindingTypes.Mat4x3 => uniform(location, value.asInstanceOf[ReadMat4x3])
-        case EngineBindingTypes.Mat4x4 => uniformMat4(location, value)
+      val columnsRows = uniformMatrixColumnsRows(index)
+      val size = stageMatrix(value, columnsRows >> 4, columnsRows & 0x00000007)
+      
+      if (matrixShadow.update(index, matrixStaging, size)) {
+        uploadMatrix(uniformMatrixLocations(index), uniformMatrixTypes(index), size)
+        context.recordUniformUpload(true)
       }
+      else context.recordUniformUpload(false)
     }
   }
   
@@ -187,32 +184,133 @@ private[backend] final class ProgramMapping(val program: Technique, val context:
   }
   
   
-  private def uniform(location: Int, r: ReadDoubleRef) { glUniform1f(location, r.toConst.toFloat) }
-  private def uniform(location: Int, u: inVec2) { glUniform2f(location, u.x.toFloat, u.y.toFloat) }
-  private def uniform(location: Int, u: inVec3) { glUniform3f(location, u.x.toFloat, u.y.toFloat, u.z.toFloat) }
-  private def uniform(location: Int, u: inVec4) { glUniform4f(location, u.x.toFloat, u.y.toFloat, u.z.toFloat, u.w.toFloat) }
-  private def uniform(location: Int, q: inQuat4) { glUniform4f(location, q.b.toFloat, q.c.toFloat, q.d.toFloat, q.a.toFloat) }
-  
-  private def uniform(location: Int, r: ReadIntRef) { glUniform1i(location, r.toConst) }
-  private def uniform(location: Int, u: inVec2i) { glUniform2i(location, u.x, u.y) }
-  private def uniform(location: Int, u: inVec3i) { glUniform3i(location, u.x, u.y, u.z) }
-  private def uniform(location: Int, u: inVec4i) { glUniform4i(location, u.x, u.y, u.z, u.w) }
-  
-  private def uniform(location: Int, r: ReadBooleanRef) { glUniform1i(location, toInt(r.toConst)) }
-  private def uniform(location: Int, u: inVec2b) { glUniform2i(location, toInt(u.x), toInt(u.y)) }
-  private def uniform(location: Int, u: inVec3b) { glUniform3i(location, toInt(u.x), toInt(u.y), toInt(u.z)) }
-  private def uniform(location: Int, u: inVec4b) { glUniform4i(location, toInt(u.x), toInt(u.y), toInt(u.z), toInt(u.w)) }
-  
-  
-  private def uniformMat2(location: Int, m: AnyMat[_]) { glUniformMatrix2(location, false, context.mat2x2ToBuffer(m)) }
-  private def uniform(location: Int, m: inMat2x3) { glUniformMatrix2x3(location, false, context.mat2x3ToBuffer(m)) }
-  private def uniform(location: Int, m: inMat2x4) { glUniformMatrix2x4(location, false, context.mat2x4ToBuffer(m)) }
-  private def uniform(location: Int, m: inMat3x2) { glUniformMatrix3x2(location, false, context.mat3x2ToBuffer(m)) }
-  private def uniformMat3(location: Int, m: AnyMat[_]) { glUniformMatrix3(location, false, context.mat3x3ToBuffer(m)) }
-  private def uniform(location: Int, m: inMat3x4) { glUniformMatrix3x4(location, false, context.mat3x4ToBuffer(m)) }
-  private def uniform(location: Int, m: inMat4x2) { glUniformMatrix4x2(location, false, context.mat4x2ToBuffer(m)) }
-  private def uniform(location: Int, m: inMat4x3) { glUniformMatrix4x3(location, false, context.mat4x3ToBuffer(m)) }
-  private def uniformMat4(location: Int, m: AnyMat[_]) { glUniformMatrix4(location, false, context.mat4x4ToBuffer(m)) }
+  // *** Staging ******************************************************************************************************
+  
+  @inline private[this] def bits(d: Double) :Int = java.lang.Float.floatToRawIntBits(d.toFloat)
+  @inline private[this] def stagedFloat(i: Int) :Float = java.lang.Float.intBitsToFloat(vectorStaging(i))
+  
+  /** Writes the vector components into vectorStaging, floats are stored as raw bits.
+   * @return the number of components.
+   */
+  private[this] def stageVector(dataType: Int, value: VectorLike) :Int = {
+    val s = vectorStaging
+    
+    (dataType: @switch) match {
+      case EngineBindingTypes.Float =>
+        s(0) = bits(value.asInstanceOf[ReadDoubleRef].toConst)
+        1
+      case EngineBindingTypes.Vec2 =>
+        val u = value.asInstanceOf[ReadVec2]
+        s(0) = bits(u.x); s(1) = bits(u.y)
+        2
+      case EngineBindingTypes.Vec3 =>
+        val u = value.asInstanceOf[ReadVec3]
+        s(0) = bits(u.x); s(1) = bits(u.y); s(2) = bits(u.z)
+        3
+      case EngineBindingTypes.Vec4 =>
+        if (value.isInstanceOf[ReadQuat4]) {
+          val q = value.asInstanceOf[ReadQuat4]
+          s(0) = bits(q.b); s(1) = bits(q.c); s(2) = bits(q.d); s(3) = bits(q.a)
+        }
+        else {
+          val u = value.asInstanceOf[ReadVec4]
+          s(0) = bits(u.x); s(1) = bits(u.y); s(2) = bits(u.z); s(3) = bits(u.w)
+        }
+        4
+      case EngineBindingTypes.Int =>
+        s(0) = value.asInstanceOf[ReadIntRef].toConst
+        1
+      case EngineBindingTypes.Vec2i =>
+        val u = value.asInstanceOf[ReadVec2i]
+        s(0) = u.x; s(1) = u.y
+        2
+      case EngineBindingTypes.Vec3i =>
+        val u = value.asInstanceOf[ReadVec3i]
+        s(0) = u.x; s(1) = u.y; s(2) = u.z
+        3
+      case EngineBindingTypes.Vec4i =>
+        val u = value.asInstanceOf[ReadVec4i]
+        s(0) = u.x; s(1) = u.y; s(2) = u.z; s(3) = u.w
+        4
+      case EngineBindingTypes.Boolean =>
+        s(0) = toInt(value.asInstanceOf[ReadBooleanRef].toConst)
+        1
+      case EngineBindingTypes.Vec2b =>
+        val u = value.asInstanceOf[ReadVec2b]
+        s(0) = toInt(u.x); s(1) = toInt(u.y)
+        2
+      case EngineBindingTypes.Vec3b =>
+        val u = value.asInstanceOf[ReadVec3b]
+        s(0) = toInt(u.x); s(1) = toInt(u.y); s(2) = toInt(u.z)
+        3
+      case EngineBindingTypes.Vec4b =>
+        val u = value.asInstanceOf[ReadVec4b]
+        s(0) = toInt(u.x); s(1) = toInt(u.y); s(2) = toInt(u.z); s(3) = toInt(u.w)
+        4
+    }
+  }
+  
+  private[this] def uploadVector(location: Int, dataType: Int, size: Int) {
+    val s = vectorStaging
+    
+    (dataType: @switch) match {
+      case EngineBindingTypes.Float | EngineBindingTypes.Vec2 | EngineBindingTypes.Vec3 | EngineBindingTypes.Vec4 =>
+        (size: @switch) match {
+          case 1 => glUniform1f(location, stagedFloat(0))
+          case 2 => glUniform2f(location, stagedFloat(0), stagedFloat(1))
+          case 3 => glUniform3f(location, stagedFloat(0), stagedFloat(1), stagedFloat(2))
+          case 4 => glUniform4f(location, stagedFloat(0), stagedFloat(1), stagedFloat(2), stagedFloat(3))
+        }
+      case _ =>
+        (size: @switch) match {
+          case 1 => glUniform1i(location, s(0))
+          case 2 => glUniform2i(location, s(0), s(1))
+          case 3 => glUniform3i(location, s(0), s(1), s(2))
+          case 4 => glUniform4i(location, s(0), s(1), s(2), s(3))
+        }
+    }
+  }
+  
+  /** Writes the matrix into matrixStaging in column-major order.
+   * @return the number of components.
+   */
+  private[this] def stageMatrix(m: AnyMat[_], columns: Int, rows: Int) :Int = {
+    import simplex3d.math.Accessors._
+    val s = matrixStaging
+    var o = 0
+    
+    s(o) = f00(m); s(o + 1) = f01(m); if (rows > 2) s(o + 2) = f02(m); if (rows > 3) s(o + 3) = f03(m)
+    o += rows
+    s(o) = f10(m); s(o + 1) = f11(m); if (rows > 2) s(o + 2) = f12(m); if (rows > 3) s(o + 3) = f13(m)
+    o += rows
+    
+    if (columns > 2) {
+      s(o) = f20(m); s(o + 1) = f21(m); if (rows > 2) s(o + 2) = f22(m); if (rows > 3) s(o + 3) = f23(m)
+      o += rows
+    }
+    if (columns > 3) {
+      s(o) = f30(m); s(o + 1) = f31(m); if (rows > 2) s(o + 2) = f32(m); if (rows > 3) s(o + 3) = f33(m)
+      o += rows
+    }
+    
+    o
+  }
+  
+  private[this] def uploadMatrix(location: Int, dataType: Int, size: Int) {
+    val buffer = context.stagingBuffer(matrixStaging, size)
+    
+    (dataType: @switch) match {
+      case EngineBindingTypes.Mat2x2 => glUniformMatrix2(location, false, buffer)
+      case EngineBindingTypes.Mat2x3 => glUniformMatrix2x3(location, false, buffer)
+      case EngineBindingTypes.Mat2x4 => glUniformMatrix2x4(location, false, buffer)
+      case EngineBindingTypes.Mat3x2 => glUniformMatrix3x2(location, false, buffer)
+      case EngineBindingTypes.Mat3x3 => glUniformMatrix3(location, false, buffer)
+      case EngineBindingTypes.Mat3x4 => glUniformMatrix3x4(location, false, buffer)
+      case EngineBindingTypes.Mat4x2 => glUniformMatrix4x2(location, false, buffer)
+      case EngineBindingTypes.Mat4x3 => glUniformMatrix4x3(location, false, buffer)
+      case EngineBindingTypes.Mat4x4 => glUniformMatrix4(location, false, buffer)
+    }
+  }
   
   
   private def sampler2d(location: Int, textureUnit: Int, textureType: Int, texture: ReadTextureBinding[Texture2d[_]]) {
@@ -43,7 +43,7 @@ import simplex3d.backend.opengl._
 import simplex3d.backend.opengl.api._
 
 
-private[lwjgl] class ActiveAttributeId(var id: Int)
+private[lwjgl] class ActiveAttributeId(var id: Int) { var offset = -1L }
 private[lwjgl] class ActiveTextureId(var unit: Int, var id: Int)
 
 
@@ -100,18 +100,38 @@ extends graphics.RenderContext {
   private val resourceManager = new GlResourceManager(
     attributeManager = new IdManager(100)(glGenBuffers(_), glDeleteBuffers(_)),
     textureManager = new IdManager(20)(glGenTextures(_), glDeleteTextures(_)),
+    vertexArrayManager = new IdManager(20)(
+      LwjglVertexArrayGl.glGenVertexArrays(_), LwjglVertexArrayGl.glDeleteVertexArrays(_)
+    ),
     glDeleteShader(_),
     glDeleteProgram(_)
   )
   
   val predefinedUniforms = new PredefinedUniforms
   
+  val instancedDraw = new InstancedDraw(LwjglInstancingGl, capabilities.instancing, capabilities.maxAttributes)
+  val glState = new GlState(LwjglStateGl, capabilities.maxAttributes)
+  val vertexArrays = new VertexArrays(LwjglVertexArrayGl, capabilities.vertexArrays, resourceManager)
+  
+  /** Ring buffer for the attributes with Caching.Stream, null when streaming is not supported or disabled.
+   */
+  val streamingBuffer = {
+    if (!capabilities.mapBufferRange || settings.streamingBufferSize <= 0) null
+    else new StreamingBuffer(this, settings.streamingBufferSize/16*16, capabilities.fences)
+  }
+  
+  /** Per-frame uniforms buffer, null when uniform buffers are not supported.
+   */
+  val frameUniformBuffer = {
+    if (!capabilities.uniformBuffers) null
+    else new FrameUniformBuffer(glGetInteger(ARBUniformBufferObject.GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT))
+  }
+  
   
   // ******************************************************************************************************************
   
   private var invalidateState = false
 
-  private var faceCullingState: Int = 0
   private var mipmapHintEnabled = false
   
   private final var activeProgramId = 0
@@ -120,11 +140,12 @@ extends graphics.RenderContext {
   
   private final var activeTextureUnit = 0
   
-  private final def textureUnits = new Array[Int](32)
+  private final val textureUnits = new Array[Int](32)
   private final def boundTexture = textureUnits(activeTextureUnit)
   private final def boundTexture_=(id: Int) { textureUnits(activeTextureUnit) = id }
   
   private final val activeAttributes = new HashMap[Int, ActiveAttributeId] //XXX possibly use different data structures
+  private final var attributeStateArray = -1 // Vertex array described by the attribute state.
   private final val activeTextures = new HashMap[Int, ActiveTextureId]
   
   final def requiresReset = invalidateState
@@ -138,14 +159,11 @@ extends graphics.RenderContext {
       }
     }
     
-    if (resolved != faceCullingState) {
-      if (resolved > 0) {
-        if (faceCullingState <= 0) glEnable(GL_CULL_FACE)
-        glCullFace(resolved)
-      }
-      else glDisable(GL_CULL_FACE)
-      faceCullingState = resolved
+    if (resolved > 0) {
+      glState.enable(GL_CULL_FACE)
+      glState.cullFace(resolved)
     }
+    else glState.disable(GL_CULL_FACE)
   }
   
   final def mipmapHint() {
@@ -156,40 +174,49 @@ extends graphics.RenderContext {
     if (activeProgramId != id) {
       glUseProgram(id)
       activeProgramId = id
+      glState.recordIssued()
     }
+    else glState.recordElided()
   }
   
   final def bindBuffer(id: Int) {
     if (boundBufferId != id) {
       glBindBuffer(GL_ARRAY_BUFFER, id)
       boundBufferId = id
+      glState.recordIssued()
     }
+    else glState.recordElided()
   }
   
   final def bindIndex(id: Int) {
     if (boundIndexId != id) {
       glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, id)
       boundIndexId = id
+      glState.recordIssued()
     }
+    else glState.recordElided()
   }
   
   final def activeTextureUnit(textureUnit: Int) {
     if (activeTextureUnit != textureUnit) {
       glActiveTexture(GL_TEXTURE0 + textureUnit)
       activeTextureUnit = textureUnit
+      glState.recordIssued()
     }
+    else glState.recordElided()
   }
   
   final def bindTexture(glTarget: Int, id: Int) {
     if (boundTexture != id) {
       glBindTexture(glTarget, id)
       boundTexture = id
+      glState.recordIssued()
     }
+    else glState.recordElided()
   }
   
   final def resetState() {
-    faceCullingState = -1
-  
+    glState.reset()
     mipmapHintEnabled = false
     
     activeProgramId = 0
@@ -205,10 +232,29 @@ extends graphics.RenderContext {
     
     activeAttributes.clear()
     activeTextures.clear()
+    instancedDraw.resetState()
+    vertexArrays.resetState()
+    attributeStateArray = -1
     
     invalidateState = false
   }
   
+  /** Attribute pointers, enabled arrays, divisors, and the index buffer binding are kept
+   * in the bound vertex array. Their state is forgotten when the bound array changes.
+   */
+  private[this] def syncAttributeState() {
+    val bound = vertexArrays.boundArray
+    
+    if (attributeStateArray != bound) {
+      glState.resetAttribArrays()
+      activeAttributes.clear()
+      instancedDraw.resetState()
+      boundIndexId = -1
+      
+      attributeStateArray = bound
+    }
+  }
+  
   
   // ******************************************************************************************************************
   
@@ -217,9 +263,11 @@ extends graphics.RenderContext {
   }
   
   private def initUpdateAttributes(attributes: Attributes[_, _]) :Int = {
+    val start = Profiler.start()
     var id = attributes.managedFields.id
     if (id == 0) id = initialize(attributes)
     else if (attributes.sharedState.hasDataChanges) update(id, attributes)
+    Profiler.stop(Profiler.BufferUpload, start)
     
     id
   }
@@ -238,6 +286,7 @@ extends graphics.RenderContext {
         case Caching.Stream => GL_STREAM_DRAW
       }
     )
+    Profiler.count(Profiler.BytesUploaded, attributes.src.byteCapacity)
     
     attributes.sharedState.clearDataChanges()
     id
@@ -261,6 +310,7 @@ extends graphics.RenderContext {
         first*data.byteStride,
         data.bindingBufferSubData(first, count)
       )
+      Profiler.count(Profiler.BytesUploaded, count*data.byteStride)
       
       i += 1
     }
@@ -268,26 +318,108 @@ extends graphics.RenderContext {
     attributes.sharedState.clearDataChanges()
   }
   
+  private[this] var vertexArrayBuffers = new Array[Int](16)
+  
+  /** Binds the mesh attributes and index buffer for the next draw call, changed data is uploaded first.
+   * 
+   * With vertex arrays, the attribute setup is recorded in the vertex array of the mesh and
+   * the following draws only bind the array, until the mapping, the attributes, or the buffers change.
+   */
+  def bindVertexArray(mesh: AbstractMesh, programMapping: simplex3d.backend.opengl.ProgramMapping) {
+    val geometry = mesh.geometry
+    val attributes = mesh.mapping.attributes
+    
+    // Reassigned attributes are consumed here to prevent triggering related updates every frame.
+    var refChanges = false
+    val bindings = geometry.attributes
+    var i = 0; while (i < bindings.size) {
+      if (bindings(i).hasRefChanges) {
+        refChanges = true
+        bindings(i).clearRefChanges()
+      }
+      i += 1
+    }
+    
+    val indexId = if (geometry.indices.isDefined) initUpdateAttributes(geometry.indices.get) else 0
+    
+    if (vertexArrays.supported && !hasTransientAttributes(attributes)) {
+      if (vertexArrayBuffers.length < attributes.length) vertexArrayBuffers = new Array[Int](attributes.length)
+      
+      i = 0; while (i < attributes.length) {
+        val attrib = attributes(i)
+        vertexArrayBuffers(i) = if (attrib == null) 0 else initUpdateAttributes(attrib)
+        i += 1
+      }
+      
+      if (vertexArrays.bind(mesh, vertexArrayBuffers, attributes.length, indexId, refChanges)) return
+    }
+    else {
+      // Deferred per-instance attributes and streamed attributes change between draws, so they are not recorded.
+      vertexArrays.bindDefault()
+    }
+    
+    syncAttributeState()
+    programMapping.bindAttributes(mesh.mapping)
+    if (indexId != 0) bindIndex(indexId)
+    glState.applyAttribArrays()
+  }
+  
+  private[this] def hasTransientAttributes(attributes: ReadArray[Attributes[_, _]]) :Boolean = {
+    var i = 0; while (i < attributes.length) {
+      val attrib = attributes(i)
+      if (attrib != null) {
+        if (!instancedDraw.supported && attrib.sharedState.divisor != 0) return true
+        if (isStreamed(attrib)) return true
+      }
+      i += 1
+    }
+    false
+  }
+  
+  private[this] def isStreamed(attributes: Attributes[_, _]) :Boolean = {
+    streamingBuffer != null && streamingBuffer.accepts(attributes)
+  }
+  
   def bind(location: Int, columns: Int, rows: Int, attributes: Attributes[_ <: Format, Raw]) {
-    val id = initUpdateAttributes(attributes)
+    val divisor = attributes.sharedState.divisor
+    
+    if (divisor != 0 && !instancedDraw.supported) {
+      var i = 0; while (i < columns) {
+        activeAttributes.remove(location + i) // Not requested, so the array is disabled before drawing.
+        i += 1
+      }
+      instancedDraw.defer(location, rows, attributes)
+      return
+    }
+    
+    instancedDraw.setDivisor(location, columns, divisor)
+    
+    var id = 0
+    var offset = 0L
+    if (isStreamed(attributes)) {
+      offset = streamingBuffer.upload(attributes)
+      id = streamingBuffer.bufferId
+    }
+    else {
+      id = initUpdateAttributes(attributes)
+    }
     
     val src = attributes.src
     bindBuffer(id)
     
     def bindColumn(location: Int, column: Int) {
       var activeAttribute = activeAttributes.get(location)
-      val disabled = (activeAttribute == null)
-      if (disabled) {
+      if (activeAttribute == null) {
         activeAttribute = new ActiveAttributeId(0)
         activeAttributes.put(location, activeAttribute)
-        
-        glEnableVertexAttribArray(location)
       }
+      glState.requestAttribArray(location)
       
-      if (activeAttribute.id != id) {
-        val byteOffset = src.byteOffset + column*src.bytesPerComponent*rows
+      val byteOffset = offset + src.byteOffset + column*src.bytesPerComponent*rows
+      if (activeAttribute.id != id || activeAttribute.offset != byteOffset) {
         glVertexAttribPointer(location, rows, src.rawEnum, src.isNormalized, src.byteStride, byteOffset)
         activeAttribute.id = id
+        activeAttribute.offset = byteOffset
       }
     }
     
@@ -307,22 +439,34 @@ extends graphics.RenderContext {
     
     val generateMipmap = (texture.mipMapFilter != MipMapFilter.Disabled)
     
-    val src = texture.src
-    val internalFormat = resolveInternalFormat(src.formatTag)
-    val format = resolveFormat(src.accessorTag)
-    val ftype = resolveType(src.formatTag, src.rawEnum)
-    
-    glTexImage2D(
-      GL_TEXTURE_2D, 0, //level
-      internalFormat, texture.dimensions.x, texture.dimensions.y, 0, //border
-      format, ftype, texture.src.bindingBuffer()
-    )
-    
-    if (generateMipmap) { //XXX reuse this chunk of code. also detect ATI drivers and call glEnable(GL_TEXTURE_2D) only for ATI cards.
-      glEnable(GL_TEXTURE_2D) // FIX for ATI's glGenerateMipmapEXT() bug.
-      glGenerateMipmapEXT(GL_TEXTURE_2D)
+    if (texture.isStreamed) {
+      // Streamed textures start with the coarsest level, the finer levels are uploaded by updateResidency().
+      val coarsest = texture.levelCount - 1
+      uploadLevel(texture, coarsest)
+      glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_BASE_LEVEL, coarsest)
+      glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, coarsest)
+      texture.updateResidentLevel(coarsest)
       texture.hasMatchingMipmaps = true
     }
+    else {
+      val src = texture.src
+      val internalFormat = resolveInternalFormat(src.formatTag)
+      val format = resolveFormat(src.accessorTag)
+      val ftype = resolveType(src.formatTag, src.rawEnum)
+      
+      glTexImage2D(
+        GL_TEXTURE_2D, 0, //level
+        internalFormat, texture.dimensions.x, texture.dimensions.y, 0, //border
+        format, ftype, texture.src.bindingBuffer()
+      )
+      Profiler.count(Profiler.BytesUploaded, texture.src.byteCapacity)
+      
+      if (generateMipmap) { //XXX reuse this chunk of code. also detect ATI drivers and call glEnable(GL_TEXTURE_2D) only for ATI cards.
+        glState.enable(GL_TEXTURE_2D) // FIX for ATI's glGenerateMipmapEXT() bug.
+        glGenerateMipmapEXT(GL_TEXTURE_2D)
+        texture.hasMatchingMipmaps = true
+      }
+    }
     
     if (true) {
       glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT)
@@ -342,6 +486,15 @@ extends graphics.RenderContext {
   private def update(id: Int, texture: Texture2d[_ <: Accessor]) {
     bindTexture(GL_TEXTURE_2D, id)
     
+    if (texture.isStreamed) {
+      var level = texture.residentLevel; while (level < texture.levelCount) {
+        uploadLevel(texture, level)
+        level += 1
+      }
+      texture.clearDataChanges()
+      return
+    }
+    
     val generateMipmap = (texture.mipMapFilter != MipMapFilter.Disabled)
     
     val src = texture.src
@@ -355,9 +508,10 @@ extends graphics.RenderContext {
       texture.dimensions.x, texture.dimensions.y,
       format, ftype, texture.src.bindingBuffer()
     )
+    Profiler.count(Profiler.BytesUploaded, texture.src.byteCapacity)
     
     if (generateMipmap) {
-      glEnable(GL_TEXTURE_2D) // FIX for ATI's glGenerateMipmapEXT() bug.
+      glState.enable(GL_TEXTURE_2D) // FIX for ATI's glGenerateMipmapEXT() bug.
       glGenerateMipmapEXT(GL_TEXTURE_2D)
       texture.hasMatchingMipmaps = true
     }
@@ -365,6 +519,71 @@ extends graphics.RenderContext {
     texture.clearDataChanges()
   }
   
+  /** Specifies one level of a streamed texture from its data, the texture must be bound.
+   */
+  private def uploadLevel(texture: Texture2d[_ <: Accessor], level: Int) {
+    val src = texture.levelSrc(level)
+    val dimensions = texture.levelDimensions(level)
+    
+    glPixelStorei(GL_UNPACK_ALIGNMENT, 1) // The rows of the small RGB levels are not aligned.
+    glTexImage2D(
+      GL_TEXTURE_2D, level,
+      resolveInternalFormat(src.formatTag), dimensions.x, dimensions.y, 0, //border
+      resolveFormat(src.accessorTag), resolveType(src.formatTag, src.rawEnum), src.bindingBuffer()
+    )
+    Profiler.count(Profiler.BytesUploaded, src.byteCapacity)
+  }
+  
+  /** Levels are released by respecifying them with zero size, the base level keeps the texture complete.
+   */
+  def updateResidency(texture: Texture2d[_], level: Int) :Long = {
+    val tex = texture.asInstanceOf[Texture2d[_ <: Accessor]]
+    if (!tex.isStreamed) return 0
+    
+    val previous = tex.residentLevel
+    val target = min(max(level, 0), tex.levelCount - 1)
+    
+    activeTextureUnit(0)
+    val id = initUpdateTexture2d(tex)
+    
+    val start = Profiler.start()
+    bindTexture(GL_TEXTURE_2D, id)
+    
+    var resident = tex.residentLevel
+    
+    if (target < resident) {
+      while (resident > target) {
+        resident -= 1
+        uploadLevel(tex, resident)
+      }
+      glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_BASE_LEVEL, target)
+    }
+    else if (target > resident) {
+      glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_BASE_LEVEL, target)
+      
+      val src = tex.src
+      val internalFormat = resolveInternalFormat(src.formatTag)
+      val format = resolveFormat(src.accessorTag)
+      val ftype = resolveType(src.formatTag, src.rawEnum)
+      
+      while (resident < target) {
+        glTexImage2D(GL_TEXTURE_2D, resident, internalFormat, 0, 0, 0, format, ftype, null: ByteBuffer)
+        resident += 1
+      }
+    }
+    
+    tex.updateResidentLevel(target)
+    Profiler.stop(Profiler.BufferUpload, start)
+    
+    // Includes the coarsest level when the texture was initialized here.
+    var uploaded = 0L
+    var l = target; while (l < previous) {
+      uploaded += tex.levelBytes(l)
+      l += 1
+    }
+    uploaded
+  }
+  
   private def resolveInternalFormat(tag: ClassTag[_ <: Format]) :Int = {
     tag match {
       case Vec3.Tag => GL_RGB8
@@ -390,7 +609,7 @@ extends graphics.RenderContext {
   private def updateMipmaps(texture: Texture[_]) {
     texture.asInstanceOf[Texture[Accessor]] match {
       case t: Texture2d[_] =>
-        glEnable(GL_TEXTURE_2D) // FIX for ATI's glGenerateMipmapEXT() bug.
+        glState.enable(GL_TEXTURE_2D) // FIX for ATI's glGenerateMipmapEXT() bug.
         glGenerateMipmapEXT(GL_TEXTURE_2D) // TODO Test on ATI cards.
         texture.hasMatchingMipmaps = true
     }
@@ -479,10 +698,12 @@ extends graphics.RenderContext {
   }
   
   private def initUpdateTexture2d(texture: Texture2d[_ <: Accessor]) :Int = {
+    val start = Profiler.start()
     var id = texture.managedFields.id
     if (id == 0) id = initialize(texture)
     else if (texture.hasDataChanges) update(id, texture)
     if (texture.hasParameterChanges) updateTextureParameters(GL_TEXTURE_2D, id, texture)
+    Profiler.stop(Profiler.BufferUpload, start)
     
     id
   }
@@ -599,6 +820,8 @@ extends graphics.RenderContext {
     program.managedFields.id = progId
     resourceManager.register(program)
     
+    if (frameUniformBuffer != null) frameUniformBuffer.bindProgram(progId)
+    
     
     // Query GL for program bindings.
     var uniformBindings = ArrayBuffer[ActiveUniform]()
@@ -660,7 +883,9 @@ extends graphics.RenderContext {
           }
           else {
             val location = glGetUniformLocation(progId, path)
-            uniformBindings += new ActiveUniform(path, dataType, location)
+            
+            // Uniform block members do not have a location, they are set through the uniform buffer.
+            if (location >= 0) uniformBindings += new ActiveUniform(path, dataType, location)
           }
         }
       }
@@ -705,15 +930,41 @@ extends graphics.RenderContext {
   
   def release(texture: Texture[_]) {
     resourceManager.delete(texture)
+    texture match {
+      case t: Texture2d[_] => t.updateResidentLevel(t.levelCount)
+      case _ => // Only 2d textures are streamed.
+    }
     invalidateState = true
   }
   
   def release(attributes: Attributes[_, _]) {
     resourceManager.delete(attributes)
+    vertexArrays.invalidate() // Buffer ids can be reused.
     invalidateState = true
   }
   
   
+  private[this] var uniformsIssued = 0L
+  private[this] var uniformsSkipped = 0L
+  
+  /** Number of uniform values uploaded to programs.
+   */
+  def uniformUploadsIssued: Long = uniformsIssued
+  
+  /** Number of uniform uploads skipped because the program already held the same value.
+   */
+  def uniformUploadsSkipped: Long = uniformsSkipped
+  
+  def resetUniformCounters() {
+    uniformsIssued = 0
+    uniformsSkipped = 0
+  }
+  
+  private[lwjgl] def recordUniformUpload(issued: Boolean) {
+    if (issued) uniformsIssued += 1 else uniformsSkipped += 1
+  }
+  
+  
   def clearFrameBuffer() {
     glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT | GL_STENCIL_BUFFER_BIT)
   }
@@ -726,10 +977,17 @@ extends graphics.RenderContext {
 
   
   def manage() {
+    if (streamingBuffer != null) streamingBuffer.endFrame()
     resourceManager.manage()
+    
+    // Deleted vertex arrays revert the binding to the default one, and their ids can be reused.
+    vertexArrays.resetState()
+    attributeStateArray = -1
   }
   
   def cleanup() {
+    if (frameUniformBuffer != null) frameUniformBuffer.release()
+    if (streamingBuffer != null) streamingBuffer.release()
     resourceManager.cleanup()
   }
   
@@ -739,104 +997,12 @@ extends graphics.RenderContext {
   private val intBuffer = DataBuffer[SInt, SInt](16).buffer()
   private val floatBuffer = DataBuffer[RDouble, RFloat](16).buffer()
   
-  import simplex3d.math.Accessors._
-  
-  def mat2x2ToBuffer(m: AnyMat[_]) :FloatBuffer = {
-    floatBuffer.limit(4)
-    
-    floatBuffer.put(f00(m)); floatBuffer.put(f01(m))
-    floatBuffer.put(f10(m)); floatBuffer.put(f11(m))
-    
-    floatBuffer.rewind()
-    floatBuffer
-  }
-  
-  def mat2x3ToBuffer(m: AnyMat2x3[_]) :FloatBuffer = {
-    floatBuffer.limit(6)
-    
-    floatBuffer.put(f00(m)); floatBuffer.put(f01(m)); floatBuffer.put(f02(m))
-    floatBuffer.put(f10(m)); floatBuffer.put(f11(m)); floatBuffer.put(f12(m))
-    
-    floatBuffer.rewind()
-    floatBuffer
-  }
-  
-  def mat2x4ToBuffer(m: AnyMat2x4[_]) :FloatBuffer = {
-    floatBuffer.limit(8)
-    
-    floatBuffer.put(f00(m)); floatBuffer.put(f01(m)); floatBuffer.put(f02(m)); floatBuffer.put(f03(m))
-    floatBuffer.put(f10(m)); floatBuffer.put(f11(m)); floatBuffer.put(f12(m)); floatBuffer.put(f13(m))
-    
-    floatBuffer.rewind()
-    floatBuffer
-  }
-  
-  def mat3x2ToBuffer(m: AnyMat3x2[_]) :FloatBuffer = {
-    floatBuffer.limit(6)
-    
-    floatBuffer.put(f00(m)); floatBuffer.put(f01(m))
-    floatBuffer.put(f10(m)); floatBuffer.put(f11(m))
-    floatBuffer.put(f20(m)); floatBuffer.put(f21(m))
-    
-    floatBuffer.rewind()
-    floatBuffer
-  }
-  
-  def mat3x3ToBuffer(m: AnyMat[_]) :FloatBuffer = {
-    floatBuffer.limit(9)
-    
-    floatBuffer.put(f00(m)); floatBuffer.put(f01(m)); floatBuffer.put(f02(m))
-    floatBuffer.put(f10(m)); floatBuffer.put(f11(m)); floatBuffer.put(f12(m))
-    floatBuffer.put(f20(m)); floatBuffer.put(f21(m)); floatBuffer.put(f22(m))
-    
-    floatBuffer.rewind()
-    floatBuffer
-  }
-  
-  def mat3x4ToBuffer(m: AnyMat3x4[_]) :FloatBuffer = {
-    floatBuffer.limit(12)
-    
-    floatBuffer.put(f00(m)); floatBuffer.put(f01(m)); floatBuffer.put(f02(m)); floatBuffer.put(f03(m))
-    floatBuffer.put(f10(m)); floatBuffer.put(f11(m)); floatBuffer.put(f12(m)); floatBuffer.put(f13(m))
-    floatBuffer.put(f20(m)); floatBuffer.put(f21(m)); floatBuffer.put(f22(m)); floatBuffer.put(f23(m))
-    
-    floatBuffer.rewind()
-    floatBuffer
-  }
-  
-  def mat4x2ToBuffer(m: AnyMat4x2[_]) :FloatBuffer = {
-    floatBuffer.limit(8)
-    
-    floatBuffer.put(f00(m)); floatBuffer.put(f01(m))
-    floatBuffer.put(f10(m)); floatBuffer.put(f11(m))
-    floatBuffer.put(f20(m)); floatBuffer.put(f21(m))
-    floatBuffer.put(f30(m)); floatBuffer.put(f31(m))
-    
-    floatBuffer.rewind()
-    floatBuffer
-  }
-  
-  def mat4x3ToBuffer(m: AnyMat4x3[_]) :FloatBuffer = {
-    floatBuffer.limit(12)
-    
-    floatBuffer.put(f00(m)); floatBuffer.put(f01(m)); floatBuffer.put(f02(m))
-    floatBuffer.put(f10(m)); floatBuffer.put(f11(m)); floatBuffer.put(f12(m))
-    floatBuffer.put(f20(m)); floatBuffer.put(f21(m)); floatBuffer.put(f22(m))
-    floatBuffer.put(f30(m)); floatBuffer.put(f31(m)); floatBuffer.put(f32(m))
-    
-    floatBuffer.rewind()
-    floatBuffer
-  }
-  
-  def mat4x4ToBuffer(m: AnyMat[_]) :FloatBuffer = {
-    floatBuffer.limit(16)
-    
-    floatBuffer.put(f00(m)); floatBuffer.put(f01(m)); floatBuffer.put(f02(m)); floatBuffer.put(f03(m))
-    floatBuffer.put(f10(m)); floatBuffer.put(f11(m)); floatBuffer.put(f12(m)); floatBuffer.put(f13(m))
-    floatBuffer.put(f20(m)); floatBuffer.put(f21(m)); floatBuffer.put(f22(m)); floatBuffer.put(f23(m))
-    floatBuffer.put(f30(m)); floatBuffer.put(f31(m)); floatBuffer.put(f32(m)); floatBuffer.put(f33(m))
-    
-    floatBuffer.rewind()
+  /** Copies the staged values into the reusable float buffer, ready to be uploaded.
+   */
+  def stagingBuffer(values: Array[Float], count: Int) :FloatBuffer = {
+    floatBuffer.clear()
+    floatBuffer.put(values, 0, count)
+    floatBuffer.flip()
     floatBuffer
   }
   
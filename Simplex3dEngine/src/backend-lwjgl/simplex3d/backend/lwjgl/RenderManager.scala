@@ -69,31 +69,56 @@ final class RenderManager extends graphics.RenderManager {
     
   
   def render(time: TimeStamp, camera: AbstractCamera, renderArray: SortBuffer[AbstractMesh]) {
+    render(time, camera.projection, camera.view, renderArray, null)
+  }
+  
+  def render(packet: FramePacket) {
+    render(packet.time, packet.projection, packet.view, packet.renderArray, packet)
+  }
+  
+  private val packetWorldMatrix = Mat4x3(1)
+  
+  /** @param packet when not null, world matrices are taken from the packet instead of the meshes.
+   */
+  private def render(
+    time: TimeStamp, projection: inMat4, view: inMat4x3,
+    renderArray: SortBuffer[AbstractMesh], packet: FramePacket
+  ) {
     if (renderContext.requiresReset) renderContext.resetState()
     
     // XXX these should come from the path, and get activated via context
-    glEnable(GL_DEPTH_TEST)
-    glDepthFunc(GL_LESS)
+    val glState = renderContext.glState
+    glState.enable(GL_DEPTH_TEST)
+    glState.depthFunc(GL_LESS)
     
     
     val predefinedUniforms = renderContext.predefinedUniforms
-    predefinedUniforms.se_projectionMatrix := camera.projection
-    predefinedUniforms.se_viewMatrix := camera.view
+    predefinedUniforms.se_projectionMatrix := projection
+    predefinedUniforms.se_viewMatrix := view
     predefinedUniforms.se_viewDimensions := renderContext.viewportDimensions()
     predefinedUniforms.se_timeTotal := time.total
     predefinedUniforms.se_timeInterval := time.interval
     
+    // Per-frame uniforms are uploaded once, programs that use the frame block skip them.
+    val frameUniformBuffer = renderContext.frameUniformBuffer
+    if (frameUniformBuffer != null) frameUniformBuffer.upload(predefinedUniforms)
+    
     var i = 0; while (i < renderArray.size) {
       val mesh = renderArray(i)
       
       if (mesh.glDebugging.resetGlState) renderContext.resetState()
       
+      val transformation =
+        if (packet == null) mesh.worldMatrix
+        else { packet.worldMatrix(i, packetWorldMatrix); packetWorldMatrix }
+      
       mesh.preRender()
-      render(camera, mesh)
+      render(projection, view, mesh, transformation)
       mesh.postRender()
       
       i += 1
     }
+    Profiler.count(Profiler.MeshesDrawn, renderArray.size)
     
     //XXX some of this belongs in pass manager
     if (showBoundingVolumes) {
@@ -111,6 +136,8 @@ final class RenderManager extends graphics.RenderManager {
             DebugBounding.appendBox(debugBoundingVolumes)(Vec3(0, 1, 1), b.min, b.max, mesh.worldMatrix)
           case b: Obb =>
             DebugBounding.appendBox(debugBoundingVolumes)(Vec3(1, 1, 0), b.min, b.max, b.transformation concat mesh.worldMatrix)
+          case b: Sphere =>
+            DebugBounding.appendBox(debugBoundingVolumes)(Vec3(1, 0, 1), b.center - b.radius, b.center + b.radius, mesh.worldMatrix)
           case _ =>
             // ignore
         }
@@ -123,7 +150,7 @@ final class RenderManager extends graphics.RenderManager {
       
       i = 0; while (i < debugArray.size) {
         val mesh = debugArray(i)
-        render(camera, mesh)
+        render(projection, view, mesh, mesh.worldMatrix)
         
         i += 1
       }
@@ -141,6 +168,7 @@ final class RenderManager extends graphics.RenderManager {
           case b: Aabb => length(b.max - b.min)*0.5
           case b: Oabb => length(b.max - b.min)*0.5
           case b: Obb => length(b.max - b.min)*0.5
+          case b: Sphere => b.radius
           case _ => 10.0
         }
         DebugNormals.append(debugNormals)(mesh, objectSize)
@@ -153,7 +181,7 @@ final class RenderManager extends graphics.RenderManager {
       
       i = 0; while (i < debugArray.size) {
         val mesh = debugArray(i)
-        render(camera, mesh)
+        render(projection, view, mesh, mesh.worldMatrix)
         
         i += 1
       }
@@ -161,7 +189,7 @@ final class RenderManager extends graphics.RenderManager {
   }
 
   
-  private def render(camera: AbstractCamera, mesh: AbstractMesh) {
+  private def render(projection: inMat4, view: inMat4x3, mesh: AbstractMesh, transformation: inMat4x3) {
     
     var useDefaultProgram = false
     
@@ -180,7 +208,7 @@ final class RenderManager extends graphics.RenderManager {
     
     if (useDefaultProgram) {
       mesh.technique := renderContext.defaultProgram
-      return render(camera, mesh)
+      return render(projection, view, mesh, transformation)
     }
     
     val program = mesh.technique.get
@@ -205,7 +233,6 @@ final class RenderManager extends graphics.RenderManager {
       }; resolveUpdatableEffects()
     }
     
-    val transformation = mesh.worldMatrix
     val geometry = mesh.geometry
     val material = mesh.material
     
@@ -213,8 +240,8 @@ final class RenderManager extends graphics.RenderManager {
     renderContext.setFaceCulling(geometry.primitive.get.faceCulling.toConst)
     
     val predefinedUniforms = renderContext.predefinedUniforms
-    predefinedUniforms.se_modelViewMatrix := transformation concat camera.view
-    predefinedUniforms.se_modelViewProjectionMatrix := camera.projection*Mat4(predefinedUniforms.se_modelViewMatrix)
+    predefinedUniforms.se_modelViewMatrix := transformation concat view
+    predefinedUniforms.se_modelViewProjectionMatrix := projection*Mat4(predefinedUniforms.se_modelViewMatrix)
     predefinedUniforms.se_normalMatrix := normalMat(predefinedUniforms.se_modelViewMatrix)
     
     // Update bindings using predefined uniforms.
@@ -230,38 +257,38 @@ final class RenderManager extends graphics.RenderManager {
 //    program("ecLightDir") = ecLightDir
     
     
-    // XXX cache state in render context.
+    val glState = renderContext.glState
     val primitive = geometry.primitive.get
     val vertexMode = primitive.mode.toConst match {
       case VertexMode.Points =>
-        //XXX disable point sprites
-        
-        glPointSize(primitive.pointSize.toFloat)
+        glState.disable(GL_POINT_SPRITE)
+        glState.disable(GL_VERTEX_PROGRAM_POINT_SIZE)
+        glState.pointSize(primitive.pointSize.toFloat)
         
         GL_POINTS
         
       case VertexMode.PointSprites =>
-        glEnable(GL_POINT_SPRITE)
-        glPointParameteri(GL_POINT_SPRITE_COORD_ORIGIN, GL_LOWER_LEFT)
-        glEnable(GL_VERTEX_PROGRAM_POINT_SIZE)
+        glState.enable(GL_POINT_SPRITE)
+        glState.pointSpriteCoordOrigin(GL_LOWER_LEFT)
+        glState.enable(GL_VERTEX_PROGRAM_POINT_SIZE)
         
         // This prevents gl from culling sprites when their center is not visible.
-        glPointSize(primitive.pointSize.toFloat)
+        glState.pointSize(primitive.pointSize.toFloat)
         
         predefinedUniforms.se_pointSpriteSize := primitive.pointSpriteSize
         
         GL_POINTS
         
       case VertexMode.Lines =>
-        glLineWidth(primitive.lineWidth.toFloat)
+        glState.lineWidth(primitive.lineWidth.toFloat)
         GL_LINES
         
       case VertexMode.LineStrip =>
-        glLineWidth(primitive.lineWidth.toFloat)
+        glState.lineWidth(primitive.lineWidth.toFloat)
         GL_LINE_STRIP
       
       case VertexMode.LineLoop =>
-        glLineWidth(primitive.lineWidth.toFloat)
+        glState.lineWidth(primitive.lineWidth.toFloat)
         GL_LINE_LOOP
         
       case VertexMode.Triangles =>
@@ -275,61 +302,75 @@ final class RenderManager extends graphics.RenderManager {
     }
     
     
-    programMapping.bind(mesh.mapping)
+    val bindStart = Profiler.start()
+    programMapping.bindUniforms(mesh.mapping)
+    Profiler.stop(Profiler.UniformBinding, bindStart)
     
     
-    /* These events must be consumed by the render manager to prevent triggering related updates every frame.
-     * These should be consumed by VAO if enabled or cleared manually otherwise.
-     */
-    val attributes = mesh.geometry.attributes
-    i = 0; while (i < attributes.size) {
-      attributes(i).clearRefChanges()
-      
-      i += 1
-    }
-    
+    val drawStart = Profiler.start()
+    renderContext.bindVertexArray(mesh, programMapping)
     
+    val instancedDraw = renderContext.instancedDraw
     if (geometry.indices.isDefined) {
-      renderContext.init(geometry.indices.get)
-      glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, geometry.indices.get.managedFields.id)
-      glDrawElements(vertexMode, elementRange.count, geometry.indices.get.src.rawEnum, elementRange.first.toConst)
+      instancedDraw.drawElements(
+        vertexMode, elementRange.count, geometry.indices.get.src.rawEnum, elementRange.first.toConst,
+        mesh.instanceCount
+      )
     }
     else {
-      glDrawArrays(vertexMode, elementRange.first, elementRange.count)
+      instancedDraw.drawArrays(vertexMode, elementRange.first, elementRange.count, mesh.instanceCount)
     }
+    Profiler.stop(Profiler.DrawSubmission, drawStart)
   }
   
-  // XXX must be updated with new attributes
-  private val comparator = new java.util.Comparator[AbstractMesh] {
+  private var sortKeys = new Array[Long](256)
+  
+  private def sortKey(view: inMat4x3, mesh: AbstractMesh) :Long = {
     import simplex3d.engine.util.EngineInfoRef._
     
-    def compare(a: AbstractMesh, b: AbstractMesh) :Int = {
-      // XXX sort by textures: if (at0id < bt0id) -1 else if (at0id > bt0id)  1 else 0
-      // XXX also sort by parent's environment
-      
-      { // Another pointSprite hack to allow particle effects without pass manager implementation.
-        val aps = if (a.geometry.primitive.get.mode == VertexMode.PointSprites) 1 else 0
-        val bps = if (b.geometry.primitive.get.mode == VertexMode.PointSprites) 1 else 0
-        if (aps < bps) return -1
-        else if (aps > bps) return 1
-      }
-      
-      if (a.technique.isDefined && b.technique.isDefined) {
-        val ainfo = getEngineInfo(a.technique.get).asInstanceOf[ProgramInfo]
-        val apid = if (ainfo != null) ainfo.managedFields.id else 0
-        
-        val binfo = getEngineInfo(b.technique.get).asInstanceOf[ProgramInfo]
-        val bpid = if (binfo != null) binfo.managedFields.id else 0
-        
-        if (apid < bpid) -1 else if (apid > bpid)  1 else 0
-      }
-      else {
-        0
+    // Another pointSprite hack to allow particle effects without pass manager implementation.
+    val layer = if (mesh.geometry.primitive.get.mode == VertexMode.PointSprites) 1 else 0
+    
+    val programInfo =
+      if (mesh.technique.isDefined) getEngineInfo(mesh.technique.get).asInstanceOf[ProgramInfo]
+      else null
+    val program = if (programInfo != null) programInfo.managedFields.id else 0
+    
+    // Mapping is resolved on the first render, new meshes are keyed without textures until then.
+    val meshInfo = getEngineInfo(mesh).asInstanceOf[MeshInfo]
+    var textures = 0
+    if (meshInfo != null && meshInfo.mapping != null) {
+      val bindings = meshInfo.mapping.uniformTextures
+      var i = 0; while (i < bindings.length) { val binding = bindings(i)
+        if (binding != null && binding.isBound) textures = textures*31 + System.identityHashCode(binding.bound)
+        i += 1
       }
     }
+    
+    // Materials are never shared, the environment is the closest thing to a shared material.
+    val environment = System.identityHashCode(mesh.worldEnvironment)
+    
+    val matrix = mesh.worldMatrix
+    val depth = -(view.m02*matrix.m30 + view.m12*matrix.m31 + view.m22*matrix.m32 + view.m32)
+    
+    if (mesh.sortingOrder == SortingOrder.Transparent) {
+      SortKey.transparent(layer, program, SortKey.hashId(textures), SortKey.hashId(environment), depth)
+    }
+    else {
+      SortKey.opaque(layer, program, SortKey.hashId(textures), SortKey.hashId(environment), depth)
+    }
   }
   
-  def sortRenderArray(pass: Pass, renderArray: SortBuffer[AbstractMesh]) {
-    renderArray.inplaceSort(comparator)
+  def sortRenderArray(pass: Pass, camera: AbstractCamera, renderArray: SortBuffer[AbstractMesh]) {
+    val size = renderArray.size
+    if (sortKeys.length < size) sortKeys = new Array[Long](size*2)
+    
+    val view = camera.view
+    var i = 0; while (i < size) {
+      sortKeys(i) = sortKey(view, renderArray(i))
+      i += 1
+    }
+    
+    renderArray.inplaceSort(sortKeys)
   }
 }
@@ -24,6 +24,7 @@ import org.lwjgl.opengl._
 import org.lwjgl.input.{Keyboard => RawKeyboard, Mouse => RawMouse }
 import simplex3d.math._
 import simplex3d.engine._
+import simplex3d.engine.util._
 import simplex3d.engine.input._
 import simplex3d.engine.graphics._
 
@@ -48,19 +49,26 @@ final class SimpleLoop extends simplex3d.engine.MainLoop {
     Display.processMessages()
     handleInput(time, app)
     
+    val updateStart = Profiler.start()
     preUpdate(time)
     update(time)
+    Profiler.stop(Profiler.Update, updateStart)
+    
     render(time)
     
+    val swapStart = Profiler.start()
     Display.update(false)
+    Profiler.stop(Profiler.Swap, swapStart)
     Thread.`yield`()
     
     manage()
     renderManager.renderContext.manage()
+    Profiler.endFrame()
     
     if (settings.logPerformance && lastFps != timer.fps) {
       lastFps = timer.fps
       println("fps: " + lastFps)
+      if (Profiler.Enabled) println(Profiler.report())
     }
     
     Display.isCloseRequested
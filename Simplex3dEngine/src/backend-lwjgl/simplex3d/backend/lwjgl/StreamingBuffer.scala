@@ -0,0 +1,192 @@
+/*
+ * Simplex3dEngine - LWJGL Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.backend.lwjgl
+
+import java.nio.ByteBuffer
+import java.util.ArrayDeque
+import org.lwjgl.opengl._
+import simplex3d.engine.util._
+import simplex3d.engine.graphics._
+import simplex3d.engine.backend.api._
+import simplex3d.backend.opengl._
+import simplex3d.backend.opengl.api._
+
+
+/** Streams the data of frequently modified attributes through a single buffer used as a ring.
+ *
+ * Changed attributes are copied whole into a fresh range with an unsynchronized mapping, so all
+ * the dirty regions of an attribute are uploaded with a single transfer, and the driver never waits
+ * for the draw calls that still read the previous data. Unchanged attributes keep their range while
+ * the frame that wrote it is in flight, and are copied again once that frame is retired.
+ *
+ * With fences, each frame is fenced after the swap, and the ranges of a frame are reused once its fence
+ * is signaled. Waiting for a fence is counted as a stall. Without fences, the storage is orphaned
+ * whenever the ring is full.
+ */
+private[lwjgl] final class StreamingBuffer(context: RenderContext, capacity: Int, fences: Boolean) {
+  import GL15._; import ARBMapBufferRange._; import ARBSync._
+  
+  private[this] val ring = new StreamRing(capacity, 16, 4)
+  private[this] val frameFences = new ArrayDeque[GLSync]
+  
+  private[this] var id = 0
+  private[this] var mapped: ByteBuffer = null
+  
+  private[this] var _streamedBytes = 0L
+  private[this] var _stalls = 0L
+  private[this] var _stallNanos = 0L
+  private[this] var _orphans = 0L
+  private[this] var lastWraparounds = 0L
+  
+  
+  def streamedBytes: Long = _streamedBytes
+  def stalls: Long = _stalls
+  def stallNanos: Long = _stallNanos
+  def wraparounds: Long = ring.wraparounds
+  def orphans: Long = _orphans
+  
+  def bufferId: Int = id
+  
+  /** Large attributes are not streamed, so they cannot take over the ring.
+   */
+  def accepts(attributes: Attributes[_, _]) :Boolean = {
+    attributes.sharedState.caching == Caching.Stream && attributes.src.byteCapacity <= capacity/4
+  }
+  
+  /** Copies the attributes into the ring if they were changed, or if their range was reused.
+   * @return the byte offset of the attributes data in the buffer.
+   */
+  def upload(attributes: Attributes[_, _]) :Int = {
+    val info = engineInfo(attributes)
+    if (!attributes.sharedState.hasDataChanges && ring.isIntact(info.streamPosition, info.streamEpoch)) {
+      ring.retain(info.streamPosition)
+      return ring.offset(info.streamPosition)
+    }
+    
+    val start = Profiler.start()
+    if (id == 0) {
+      id = glGenBuffers()
+      context.bindBuffer(id)
+      glBufferData(GL_ARRAY_BUFFER, capacity.toLong, GL_STREAM_DRAW)
+    }
+    
+    val data = attributes.src.bindingBuffer()
+    val size = data.remaining
+    
+    var position = ring.allocate(size)
+    while (position == -1 && !frameFences.isEmpty) {
+      waitOldestFrame()
+      position = ring.allocate(size)
+    }
+    if (position == -1) {
+      orphan()
+      position = ring.allocate(size)
+    }
+    
+    val offset = ring.offset(position)
+    context.bindBuffer(id)
+    mapped = glMapBufferRange(
+      GL_ARRAY_BUFFER, offset, size,
+      GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_RANGE_BIT | GL_MAP_UNSYNCHRONIZED_BIT,
+      mapped
+    )
+    mapped.clear()
+    
+    val dataPosition = data.position
+    mapped.put(data)
+    data.position(dataPosition)
+    glUnmapBuffer(GL_ARRAY_BUFFER)
+    
+    info.streamPosition = position
+    info.streamEpoch = ring.epoch
+    attributes.sharedState.clearDataChanges()
+    
+    _streamedBytes += size
+    Profiler.count(Profiler.BytesStreamed, size)
+    Profiler.count(Profiler.BytesUploaded, size)
+    Profiler.stop(Profiler.BufferUpload, start)
+    
+    offset
+  }
+  
+  private[this] def waitOldestFrame() {
+    val fence = frameFences.poll()
+    
+    if (glClientWaitSync(fence, 0, 0) == GL_TIMEOUT_EXPIRED) {
+      val start = System.nanoTime
+      var status = GL_TIMEOUT_EXPIRED
+      while (status == GL_TIMEOUT_EXPIRED) {
+        status = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, 1000000)
+      }
+      
+      _stalls += 1
+      _stallNanos += System.nanoTime - start
+      Profiler.count(Profiler.StreamStalls, 1)
+    }
+    
+    glDeleteSync(fence)
+    ring.retireFrame()
+  }
+  
+  private[this] def orphan() {
+    context.bindBuffer(id)
+    glBufferData(GL_ARRAY_BUFFER, capacity.toLong, GL_STREAM_DRAW)
+    
+    deleteFences()
+    ring.orphan()
+    _orphans += 1
+  }
+  
+  /** Fences the frame after the swap, and retires the frames already finished by the GPU.
+   */
+  def endFrame() {
+    if (id == 0) return
+    
+    val wrapped = ring.wraparounds
+    if (wrapped != lastWraparounds) {
+      Profiler.count(Profiler.StreamWraparounds, wrapped - lastWraparounds)
+      lastWraparounds = wrapped
+    }
+    
+    if (!fences) return
+    
+    while (!frameFences.isEmpty && glClientWaitSync(frameFences.peek(), 0, 0) != GL_TIMEOUT_EXPIRED) {
+      glDeleteSync(frameFences.poll())
+      ring.retireFrame()
+    }
+    if (ring.pendingFrames == ring.maxFrames) waitOldestFrame()
+    
+    ring.endFrame()
+    frameFences.add(glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0))
+  }
+  
+  private[this] def deleteFences() {
+    while (!frameFences.isEmpty) glDeleteSync(frameFences.poll())
+  }
+  
+  def release() {
+    deleteFences()
+    if (id != 0) {
+      glDeleteBuffers(id)
+      id = 0
+    }
+  }
+}
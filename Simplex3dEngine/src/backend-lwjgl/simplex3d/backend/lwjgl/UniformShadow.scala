@@ -0,0 +1,74 @@
+/*
+ * Simplex3dEngine - LWJGL Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.backend.lwjgl
+
+
+/** Keeps a copy of the last values uploaded to a group of uniforms.
+ * 
+ * Each uniform occupies a slot of slotSize components. Float components are compared by their bits,
+ * so the update is skipped only when the uploaded value would be exactly the same.
+ */
+final class UniformShadow(val slots: Int, val slotSize: Int) {
+  
+  private[this] val values = new Array[Int](slots*slotSize)
+  private[this] val valid = new Array[Boolean](slots)
+  
+  
+  /** Stores the values in the slot.
+   * @return true if the values differ from the stored ones and must be uploaded.
+   */
+  def update(slot: Int, staged: Array[Int], count: Int) :Boolean = {
+    val offset = slot*slotSize
+    var changed = !valid(slot)
+    
+    var i = 0; while (i < count) {
+      val value = staged(i)
+      if (values(offset + i) != value) {
+        values(offset + i) = value
+        changed = true
+      }
+      i += 1
+    }
+    
+    valid(slot) = true
+    changed
+  }
+  
+  /** Stores the values in the slot.
+   * @return true if the values differ from the stored ones and must be uploaded.
+   */
+  def update(slot: Int, staged: Array[Float], count: Int) :Boolean = {
+    val offset = slot*slotSize
+    var changed = !valid(slot)
+    
+    var i = 0; while (i < count) {
+      val value = java.lang.Float.floatToRawIntBits(staged(i))
+      if (values(offset + i) != value) {
+        values(offset + i) = value
+        changed = true
+      }
+      i += 1
+    }
+    
+    valid(slot) = true
+    changed
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Simplex3dEngine - LWJGL Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.backend.lwjgl
+
+import java.nio.IntBuffer
+import org.lwjgl.opengl._
+import simplex3d.engine.scene._
+import simplex3d.backend.opengl._
+import simplex3d.backend.opengl.api._
+
+
+/** Vertex array object calls, allows the call stream to be recorded without a GL context.
+ */
+trait VertexArrayGl {
+  def glGenVertexArrays(ids: IntBuffer) :Unit
+  def glDeleteVertexArrays(ids: IntBuffer) :Unit
+  def glBindVertexArray(id: Int) :Unit
+}
+
+
+object LwjglVertexArrayGl extends VertexArrayGl {
+  def glGenVertexArrays(ids: IntBuffer) { ARBVertexArrayObject.glGenVertexArrays(ids) }
+  def glDeleteVertexArrays(ids: IntBuffer) { ARBVertexArrayObject.glDeleteVertexArrays(ids) }
+  def glBindVertexArray(id: Int) { ARBVertexArrayObject.glBindVertexArray(id) }
+}
+
+
+/** Keeps a vertex array object for every mesh, with the attribute setup for the mesh mapping.
+ *
+ * The mesh mapping is rebuilt whenever the mesh technique changes, so each array belongs to a single
+ * mesh and program pair. The recorded setup is reused until the mapping changes, the attributes are
+ * reassigned, a buffer is reallocated, or the buffers are invalidated. Reusing the array replaces
+ * the per-draw attribute setup with a single bind.
+ *
+ * Arrays are allocated and released through the resource manager.
+ */
+final class VertexArrays(gl: VertexArrayGl, val supported: Boolean, resourceManager: GlResourceManager) {
+  
+  private[this] var boundId = -1
+  private[this] var generation = 0
+  
+  private[this] var recorded = 0L
+  private[this] var reused = 0L
+  
+  
+  /** Number of times a vertex array setup was recorded.
+   */
+  def recordedArrays: Long = recorded
+  
+  /** Number of draws that reused a recorded vertex array.
+   */
+  def reusedArrays: Long = reused
+  
+  def resetCounters() {
+    recorded = 0
+    reused = 0
+  }
+  
+  /** Id of the bound vertex array, -1 when unknown.
+   */
+  def boundArray: Int = boundId
+  
+  /** Must be called when the GL state is reset outside of this class.
+   */
+  def resetState() {
+    boundId = -1
+  }
+  
+  /** Discards all the recorded setups, must be called when buffer ids can be reused.
+   */
+  def invalidate() {
+    generation += 1
+  }
+  
+  private[this] def bindId(id: Int) {
+    if (boundId != id) {
+      gl.glBindVertexArray(id)
+      boundId = id
+    }
+  }
+  
+  /** Binds the default vertex array, for the meshes that are set up without a vertex array.
+   */
+  def bindDefault() {
+    if (supported) bindId(0)
+  }
+  
+  /** Binds the vertex array of the mesh.
+   *
+   * @param bufferIds the ids of the attribute buffers in the mesh mapping order, 0 for unbound attributes.
+   * @param count the number of buffer ids.
+   * @param indexId the id of the index buffer, 0 when the mesh has no indices.
+   * @param refChanges true when the mesh attributes were reassigned since the last draw.
+   *
+   * @return true when the recorded setup can be reused, false when the array is bound but the setup
+   *         must be recorded by binding the attributes and the index buffer.
+   */
+  def bind(mesh: AbstractMesh, bufferIds: Array[Int], count: Int, indexId: Int, refChanges: Boolean) :Boolean = {
+    val info = engineInfo(mesh)
+    
+    if (info.managedFields.id == 0) resourceManager.allocate(mesh)
+    bindId(info.managedFields.id)
+    
+    val current =
+      !refChanges &&
+      (info.vertexArrayMapping eq mesh.mapping) &&
+      info.vertexArrayGeneration == generation &&
+      info.vertexArrayIndex == indexId &&
+      sameBuffers(info.vertexArrayBuffers, bufferIds, count)
+    
+    if (current) {
+      reused += 1
+      true
+    }
+    else {
+      info.vertexArrayMapping = mesh.mapping
+      info.vertexArrayGeneration = generation
+      info.vertexArrayIndex = indexId
+      info.vertexArrayBuffers = java.util.Arrays.copyOf(bufferIds, count)
+      
+      recorded += 1
+      false
+    }
+  }
+  
+  private[this] def sameBuffers(previous: Array[Int], bufferIds: Array[Int], count: Int) :Boolean = {
+    if (previous == null || previous.length != count) return false
+    
+    var i = 0; while (i < count) {
+      if (previous(i) != bufferIds(i)) return false
+      i += 1
+    }
+    true
+  }
+}
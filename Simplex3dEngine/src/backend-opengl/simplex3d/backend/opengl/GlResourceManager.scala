@@ -23,6 +23,7 @@ package simplex3d.backend.opengl
 import scala.collection.mutable.HashSet
 import scala.annotation._
 import scala.ref._
+import simplex3d.engine.scene._
 import simplex3d.engine.graphics._
 import simplex3d.backend.opengl.api._
 
@@ -30,6 +31,7 @@ import simplex3d.backend.opengl.api._
 final class GlResourceManager(
   val attributeManager: IdManager,
   val textureManager: IdManager,
+  val vertexArrayManager: IdManager,
   val shaderDeallocator: Int => Unit,
   val programDeallocator: Int => Unit
 ) {
@@ -40,6 +42,7 @@ final class GlResourceManager(
   
   def allocate(attributes: Attributes[_, _]) { allocate(attributeManager, engineInfo(attributes)) }
   def allocate(texture: Texture[_]) { allocate(textureManager, engineInfo(texture)) }
+  def allocate(mesh: AbstractMesh) { allocate(vertexArrayManager, engineInfo(mesh)) }
   
   private def allocate(idManager: IdManager, info: ObjectInfo) {
     val fields = info.managedFields
@@ -81,6 +84,7 @@ final class GlResourceManager(
       case ManagedObjects.Texture => textureManager.release(fields.id)
       case ManagedObjects.Shader => shaderDeallocator.apply(fields.id)
       case ManagedObjects.Program => programDeallocator.apply(fields.id)
+      case ManagedObjects.VertexArray => vertexArrayManager.release(fields.id)
     }
 
     fields.id = 0
@@ -99,6 +103,7 @@ final class GlResourceManager(
     
     attributeManager.releasePending()
     textureManager.releasePending()
+    vertexArrayManager.releasePending()
   }
   
   def cleanup() {
@@ -26,4 +26,5 @@ object ManagedObjects {
   final val Texture = 1
   final val Shader = 2
   final val Program = 3
+  final val VertexArray = 4
 }
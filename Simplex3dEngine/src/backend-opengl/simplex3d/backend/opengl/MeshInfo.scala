@@ -24,7 +24,13 @@ import simplex3d.engine.util._
 import simplex3d.engine.graphics._
 
 
-class MeshInfo {
+class MeshInfo extends ObjectInfo(ManagedObjects.VertexArray) {
   var mapping: MeshMapping = _
   var updatableEffects: ReadArray[UpdatableEnvironmentalEffect] = null
+  
+  // Setup recorded in the vertex array, the array id is kept in the managed fields.
+  var vertexArrayMapping: MeshMapping = _
+  var vertexArrayBuffers: Array[Int] = _
+  var vertexArrayIndex = 0
+  var vertexArrayGeneration = 0
 }
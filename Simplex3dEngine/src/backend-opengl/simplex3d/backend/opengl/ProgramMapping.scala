@@ -35,7 +35,8 @@ abstract class ProgramMapping(
   final val uniformTextures = new ReadArray(uniformsSeq.filter(b => EngineBindingTypes.isTexture(b.dataType)).toArray)
   final val attributes = new ReadArray(attributesSeq.toArray)
   
-  def bind(meshMapping: MeshMapping) :Unit
+  def bindUniforms(meshMapping: MeshMapping) :Unit
+  def bindAttributes(meshMapping: MeshMapping) :Unit
   
   
   override def toString :String = {
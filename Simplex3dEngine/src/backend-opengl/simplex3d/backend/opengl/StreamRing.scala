@@ -0,0 +1,140 @@
+/*
+ * Simplex3dEngine - GL Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.backend.opengl
+
+
+/** Sub-allocates ranges from a streaming buffer that is used as a ring.
+ *
+ * Positions are absolute byte counts that keep growing as the ring wraps around, the offset in the buffer
+ * is the position modulo the capacity. A range that does not fit before the end of the buffer starts
+ * at the beginning of the next lap.
+ *
+ * Ranges allocated during a frame stay in use until the frame is retired, after the GPU has finished
+ * its draw calls. Allocations never overwrite the ranges of the frames in flight, or of the current frame.
+ * A range from an earlier frame can be reused only while that frame is in flight, and must be retained
+ * by the current frame, so it is kept until the current frame is retired.
+ * Orphaning the storage starts a new epoch, where the whole buffer is free again.
+ */
+final class StreamRing(val capacity: Int, val alignment: Int, val maxFrames: Int = 8) {
+  if (capacity <= 0 || alignment <= 0 || capacity % alignment != 0) throw new IllegalArgumentException(
+    "Capacity must be a positive multiple of the alignment."
+  )
+  
+  private[this] var head = 0L
+  private[this] var tail = 0L
+  private[this] var _epoch = 0
+  
+  private[this] val frameEnds = new Array[Long](maxFrames)
+  private[this] val frameStarts = new Array[Long](maxFrames)
+  private[this] var currentStart = Long.MaxValue
+  private[this] var firstFrame = 0
+  private[this] var frameCount = 0
+  
+  private[this] var _allocatedBytes = 0L
+  private[this] var _wraparounds = 0L
+  
+  
+  def epoch: Int = _epoch
+  def pendingFrames: Int = frameCount
+  
+  /** Total number of bytes allocated.
+   */
+  def allocatedBytes: Long = _allocatedBytes
+  
+  /** Number of times the allocations wrapped around to the beginning of the buffer.
+   */
+  def wraparounds: Long = _wraparounds
+  
+  def offset(position: Long) :Int = (position % capacity).toInt
+  
+  /** @return true if the range allocated at the position during the epoch still belongs to a frame
+   *         that was not retired, so it cannot have been reused.
+   */
+  def isIntact(position: Long, epoch: Int) :Boolean = {
+    position >= 0 && epoch == _epoch && position >= tail
+  }
+  
+  /** Keeps an intact range in use until the current frame is retired.
+   */
+  def retain(position: Long) {
+    if (position < currentStart) currentStart = position
+  }
+  
+  /** @return the position of the allocated range, or -1 if the range would overwrite a range still in use.
+   */
+  def allocate(size: Int) :Long = {
+    if (size > capacity) throw new IllegalArgumentException("Size exceeds the ring capacity.")
+    
+    var start = (head + alignment - 1)/alignment*alignment
+    val offset = (start % capacity).toInt
+    if (offset + size > capacity) start += capacity - offset
+    
+    if (start + size - tail > capacity) -1
+    else {
+      if (start > 0 && start % capacity == 0) _wraparounds += 1
+      head = start + size
+      if (start < currentStart) currentStart = start
+      _allocatedBytes += size
+      start
+    }
+  }
+  
+  /** Marks the end of the current frame, the ranges allocated so far stay in use until the frame is retired.
+   */
+  def endFrame() {
+    if (frameCount == maxFrames) throw new IllegalStateException("Too many frames in flight.")
+    
+    val frame = (firstFrame + frameCount) % maxFrames
+    frameEnds(frame) = head
+    frameStarts(frame) = currentStart
+    currentStart = Long.MaxValue
+    frameCount += 1
+  }
+  
+  /** Frees the ranges of the oldest frame in flight.
+   */
+  def retireFrame() {
+    if (frameCount == 0) throw new IllegalStateException("No frames in flight.")
+    
+    var newTail = frameEnds(firstFrame)
+    firstFrame = (firstFrame + 1) % maxFrames
+    frameCount -= 1
+    
+    // Ranges retained by the later frames are still in use.
+    var i = 0; while (i < frameCount) {
+      newTail = math.min(newTail, frameStarts((firstFrame + i) % maxFrames))
+      i += 1
+    }
+    tail = math.min(newTail, currentStart)
+  }
+  
+  /** Starts a new epoch with fresh storage, all the ranges become free.
+   * Allocations continue from the beginning of the buffer.
+   */
+  def orphan() {
+    _epoch += 1
+    head = (head + capacity - 1)/capacity*capacity
+    tail = head
+    firstFrame = 0
+    frameCount = 0
+    currentStart = Long.MaxValue
+  }
+}
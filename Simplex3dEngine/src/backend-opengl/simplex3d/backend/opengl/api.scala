@@ -29,10 +29,10 @@ import simplex3d.engine.util.EngineInfoRef._
 
 object api {
   
-  implicit final def engineInfo(attributes: Attributes[_, _]) :ObjectInfo = {
-    var data = getEngineInfo(attributes.sharedState).asInstanceOf[ObjectInfo]
+  implicit final def engineInfo(attributes: Attributes[_, _]) :AttributesInfo = {
+    var data = getEngineInfo(attributes.sharedState).asInstanceOf[AttributesInfo]
     if (data == null) {
-      data = new ObjectInfo(ManagedObjects.Attributes)
+      data = new AttributesInfo
       setEngineInfo(attributes.sharedState, data)
     }
     data
@@ -78,8 +78,8 @@ object api {
 
 object unsafe {
   
-  implicit final def engineInfo(attributes: Attributes[_, _]) :ObjectInfo = {
-    getEngineInfo(attributes.sharedState).asInstanceOf[ObjectInfo]
+  implicit final def engineInfo(attributes: Attributes[_, _]) :AttributesInfo = {
+    getEngineInfo(attributes.sharedState).asInstanceOf[AttributesInfo]
   }
   
   implicit final def engineInfo(texture: Texture[_]) :TextureInfo = {
@@ -48,6 +48,8 @@ trait App { self =>
     def preUpdate(time: TimeStamp) = self.preUpdate(time)
     def update(time: TimeStamp) = self.update(time)
     def render(time: TimeStamp) = self.render(time)
+    def prepareFrame(time: TimeStamp, packet: FramePacket) = self.prepareFrame(time, packet)
+    def renderFrame(packet: FramePacket) = self.renderFrame(packet)
     def manage() = self.manage()
     def reshape(position: inVec2i, dimensions: inVec2i) = self.reshape(position, dimensions)
     def inputListeners = self.inputListeners
@@ -77,6 +79,13 @@ trait App { self =>
   protected def update(time: TimeStamp) :Unit
   protected def render(time: TimeStamp) :Unit
   protected def manage() :Unit
+  
+  /** Captures the frame into the packet after the update, used by pipelined main loops.
+   * 
+   * @return false if frame packets are not supported, render(time) will be called instead.
+   */
+  protected def prepareFrame(time: TimeStamp, packet: FramePacket) :Boolean = false
+  protected def renderFrame(packet: FramePacket) {}
   protected def reshape(position: inVec2i, dimensions: inVec2i) :Unit
   
   
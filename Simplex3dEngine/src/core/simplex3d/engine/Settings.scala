@@ -39,5 +39,13 @@ case class Settings(
 )
 
 case class AdvancedSettings(
-  val logShaderWarnings: Boolean = true//XXX take out logging config
+  val logShaderWarnings: Boolean = true,//XXX take out logging config
+  
+  /** Number of frame packets shared by the update and the render threads: 2 for double buffering,
+   * 3 for triple buffering. Only used by pipelined main loops. */
+  val framePipelineDepth: Int = 2,
+  
+  /** Size in bytes of the ring buffer used to stream the attributes with Caching.Stream,
+   * 0 disables streaming. */
+  val streamingBufferSize: Int = 4*1024*1024
 )
@@ -0,0 +1,115 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine.asset
+
+import java.lang.ref.SoftReference
+import java.util.LinkedHashMap
+
+
+/** Size-bounded LRU cache of loaded assets.
+ *
+ * The least recently used assets are evicted when the total size exceeds the capacity. The assets are also
+ * held by soft references, so the garbage collector can evict them under memory pressure before the capacity
+ * is reached. An asset larger than the capacity is not cached.
+ */
+final class AssetCache(initialCapacity: Long) {
+  
+  private final class Entry(value: AnyRef, val bytes: Long) {
+    val reference = new SoftReference[AnyRef](value)
+  }
+  
+  private[this] val entries = new LinkedHashMap[AnyRef, Entry](16, 0.75f, true)
+  private[this] var _capacity = initialCapacity
+  private[this] var _size = 0L
+  private[this] var _evictions = 0L
+  
+  
+  /** Maximum total size of the cached assets in bytes.
+   */
+  def capacity: Long = synchronized { _capacity }
+  def capacity_=(bytes: Long) :Unit = synchronized { _capacity = bytes; evict() }
+  
+  /** Total size of the cached assets in bytes, including the assets already collected by the garbage collector.
+   */
+  def size: Long = synchronized { _size }
+  
+  /** Number of assets evicted due to the capacity limit or collected by the garbage collector.
+   */
+  def evictions: Long = synchronized { _evictions }
+  
+  
+  /** @return the cached asset, or null if the asset is not cached.
+   */
+  def get(key: AnyRef) :AnyRef = synchronized {
+    val entry = entries.get(key)
+    if (entry == null) null
+    else {
+      val value = entry.reference.get
+      if (value == null) remove(key, entry)
+      value
+    }
+  }
+  
+  def put(key: AnyRef, value: AnyRef, bytes: Long) :Unit = synchronized {
+    val existing = entries.remove(key)
+    if (existing != null) _size -= existing.bytes
+    
+    if (bytes <= _capacity) {
+      entries.put(key, new Entry(value, bytes))
+      _size += bytes
+      evict()
+    }
+  }
+  
+  def clear() :Unit = synchronized {
+    entries.clear()
+    _size = 0
+  }
+  
+  private[this] def remove(key: AnyRef, entry: Entry) {
+    entries.remove(key)
+    _size -= entry.bytes
+    _evictions += 1
+  }
+  
+  private[this] def evict() {
+    if (_size <= _capacity) return
+    
+    // Assets collected by the garbage collector go first.
+    val collected = entries.entrySet.iterator
+    while (collected.hasNext) {
+      val entry = collected.next().getValue
+      if (entry.reference.get == null) {
+        collected.remove()
+        _size -= entry.bytes
+        _evictions += 1
+      }
+    }
+    
+    val iterator = entries.entrySet.iterator
+    while (_size > _capacity && iterator.hasNext) {
+      val entry = iterator.next().getValue
+      iterator.remove()
+      _size -= entry.bytes
+      _evictions += 1
+    }
+  }
+}
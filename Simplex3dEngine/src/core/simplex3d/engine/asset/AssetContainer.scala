@@ -0,0 +1,259 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine.asset
+
+import java.io._
+import java.nio._
+import java.nio.channels.FileChannel
+import java.util.HashMap
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+
+
+/** Description of a data stream in the container.
+ *
+ * Mesh streams hold count = width elements, texture streams hold one mip level of width*height pixels.
+ */
+final class ContainerStream(
+  val semantic: Int,
+  val rawEnum: Int,
+  val components: Int,
+  val width: Int,
+  val height: Int,
+  val offset: Long,
+  val byteLength: Long
+) {
+  def count: Int = width*height
+}
+
+
+/** Description of a mesh or texture in the container.
+ *
+ * @param sourceHash the content hash of the source the entry was cooked from.
+ * @param bounds the min and max corners of the mesh bounding box, empty for textures.
+ */
+final class ContainerEntry(
+  val kind: Int,
+  val name: String,
+  val sourceHash: Long,
+  val bounds: IndexedSeq[Float],
+  val streams: IndexedSeq[ContainerStream]
+)
+
+
+/** Mesh data mapped from the container. The buffers are views of the mapped file.
+ */
+final class ContainerMesh(
+  val name: String,
+  val boundsMin: ConstVec3,
+  val boundsMax: ConstVec3,
+  val indices: ReadDataBuffer[SInt, Unsigned],
+  val vertices: ReadDataBuffer[Vec3, RFloat],
+  val normals: Option[ReadDataBuffer[Vec3, RFloat]],
+  val texCoords: Option[ReadDataBuffer[Vec2, RFloat]],
+  val lods: IndexedSeq[ReadDataBuffer[SInt, Unsigned]]
+)
+
+
+/** Texture data mapped from the container. The mip chain starts with the full size image
+ * and ends with the 1x1 image.
+ */
+final class ContainerTexture[F <: Format](
+  val name: String,
+  val mipLevels: IndexedSeq[(ConstVec2i, ReadDataBuffer[F, UByte])]
+) {
+  def dimensions: ConstVec2i = mipLevels(0)._1
+  def data: ReadDataBuffer[F, UByte] = mipLevels(0)._2
+}
+
+
+/** Binary container of cooked meshes and textures, see AssetCooker.
+ *
+ * The data streams are memory-mapped and handed out as read-only views, without copying.
+ * Streams are stored in the native byte order of the machine that cooked the container,
+ * containers cooked with a different byte order are rejected.
+ */
+final class AssetContainer(val file: File) {
+  import AssetContainer._
+  
+  private[this] val channel = new RandomAccessFile(file, "r").getChannel
+  
+  val entries: IndexedSeq[ContainerEntry] = try {
+    readTableOfContents(channel)
+  }
+  catch {
+    case e: Exception =>
+      channel.close()
+      throw e
+  }
+  
+  private[this] val byName = new HashMap[(Int, String), ContainerEntry]
+  for (entry <- entries) byName.put((entry.kind, entry.name), entry)
+  
+  
+  def entry(kind: Int, name: String) :Option[ContainerEntry] = Option(byName.get((kind, name)))
+  
+  private[asset] def map(stream: ContainerStream) :ByteBuffer = synchronized {
+    channel.map(FileChannel.MapMode.READ_ONLY, stream.offset, stream.byteLength)
+  }
+  
+  private[this] def indexView(stream: ContainerStream) :ReadDataBuffer[SInt, Unsigned] = {
+    stream.rawEnum match {
+      case RawEnum.UByte => ReadDataBuffer[SInt, UByte](map(stream))
+      case RawEnum.UShort => ReadDataBuffer[SInt, UShort](map(stream))
+      case RawEnum.UInt => ReadDataBuffer[SInt, UInt](map(stream))
+    }
+  }
+  
+  private[this] def find(streams: IndexedSeq[ContainerStream], semantic: Int) :Option[ContainerStream] = {
+    streams.find(_.semantic == semantic)
+  }
+  
+  def mesh(name: String) :Option[ContainerMesh] = {
+    entry(Mesh, name).map { entry =>
+      val streams = entry.streams
+      val b = entry.bounds
+      
+      new ContainerMesh(
+        name,
+        ConstVec3(b(0), b(1), b(2)), ConstVec3(b(3), b(4), b(5)),
+        indexView(find(streams, Indices).get),
+        ReadDataBuffer[Vec3, RFloat](map(find(streams, Vertices).get)),
+        find(streams, Normals).map(s => ReadDataBuffer[Vec3, RFloat](map(s))),
+        find(streams, TexCoords).map(s => ReadDataBuffer[Vec2, RFloat](map(s))),
+        streams.filter(_.semantic >= Lod).sortBy(_.semantic).map(indexView)
+      )
+    }
+  }
+  
+  def rgbTexture(name: String) :Option[ContainerTexture[Vec3]] = {
+    texture(name, 3)(s => ReadDataBuffer[Vec3, UByte](map(s)))
+  }
+  
+  def rgbaTexture(name: String) :Option[ContainerTexture[Vec4]] = {
+    texture(name, 4)(s => ReadDataBuffer[Vec4, UByte](map(s)))
+  }
+  
+  private[this] def texture[F <: Format](name: String, components: Int)
+    (view: ContainerStream => ReadDataBuffer[F, UByte])
+  :Option[ContainerTexture[F]] = {
+    entry(Texture, name).filter(_.streams(0).components == components).map { entry =>
+      val mipLevels = for (level <- entry.streams.sortBy(_.semantic)) yield {
+        (ConstVec2i(level.width, level.height), view(level))
+      }
+      new ContainerTexture(name, mipLevels)
+    }
+  }
+  
+  /** Closes the file. The mapped views stay valid after the container is closed.
+   */
+  def close() {
+    channel.close()
+  }
+}
+
+
+object AssetContainer {
+  final val Magic = 0x53334441
+  final val Version = 1
+  
+  final val HeaderSize = 32
+  final val Alignment = 16
+  
+  // Entry kinds.
+  final val Mesh = 0
+  final val Texture = 1
+  
+  // Stream semantics. Texture mip levels use the level as the semantic.
+  final val Indices = 0
+  final val Vertices = 1
+  final val Normals = 2
+  final val TexCoords = 3
+  final val Lod = 16 // Lod + level - 1, index streams that share the vertex streams.
+  
+  private[asset] final val LittleEndian = 1
+  private[asset] final val BigEndian = 2
+  
+  private[asset] def nativeOrderCode = if (ByteOrder.nativeOrder == ByteOrder.LITTLE_ENDIAN) LittleEndian else BigEndian
+  
+  
+  private def readTableOfContents(channel: FileChannel) :IndexedSeq[ContainerEntry] = {
+    val header = ByteBuffer.allocate(HeaderSize)
+    while (header.hasRemaining && channel.read(header, header.position) >= 0) {}
+    header.flip()
+    
+    if (header.remaining < HeaderSize || header.getInt() != Magic) throw new IOException("Not an asset container.")
+    if (header.getInt() != Version) throw new IOException("Unsupported asset container version.")
+    if (header.getInt() != nativeOrderCode) throw new IOException(
+      "The asset container was cooked for a different byte order."
+    )
+    val entryCount = header.getInt()
+    val tocOffset = header.getLong()
+    val tocLength = header.getLong()
+    
+    val toc = ByteBuffer.allocate(tocLength.toInt)
+    while (toc.hasRemaining && channel.read(toc, tocOffset + toc.position) >= 0) {}
+    if (toc.hasRemaining) throw new IOException("Truncated asset container.")
+    toc.flip()
+    
+    val in = new DataInputStream(new ByteArrayInputStream(toc.array))
+    for (i <- 0 until entryCount) yield readEntry(in)
+  }
+  
+  private def readEntry(in: DataInputStream) :ContainerEntry = {
+    val kind = in.readInt()
+    val name = in.readUTF()
+    val sourceHash = in.readLong()
+    
+    val bounds = new Array[Float](in.readInt())
+    for (i <- 0 until bounds.length) bounds(i) = in.readFloat()
+    
+    val streams = for (i <- 0 until in.readInt()) yield {
+      new ContainerStream(
+        in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readLong(), in.readLong()
+      )
+    }
+    
+    new ContainerEntry(kind, name, sourceHash, bounds, streams)
+  }
+  
+  private[asset] def writeEntry(out: DataOutputStream, entry: ContainerEntry) {
+    out.writeInt(entry.kind)
+    out.writeUTF(entry.name)
+    out.writeLong(entry.sourceHash)
+    
+    out.writeInt(entry.bounds.size)
+    entry.bounds.foreach(out.writeFloat(_))
+    
+    out.writeInt(entry.streams.size)
+    for (s <- entry.streams) {
+      out.writeInt(s.semantic)
+      out.writeInt(s.rawEnum)
+      out.writeInt(s.components)
+      out.writeInt(s.width)
+      out.writeInt(s.height)
+      out.writeLong(s.offset)
+      out.writeLong(s.byteLength)
+    }
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine.asset
+
+import java.io._
+import java.nio._
+import java.nio.channels.FileChannel
+import java.security.MessageDigest
+import javax.imageio.ImageIO
+import scala.collection.mutable.ArrayBuffer
+import simplex3d.data._
+
+
+/** Names of the entries that were converted from the sources and of the entries reused from the previous container.
+ */
+final class CookResult(val cooked: IndexedSeq[String], val reused: IndexedSeq[String])
+
+
+/** Converts obj models and images into an AssetContainer.
+ *
+ * Entries are keyed by the content hash of their sources. When the output container already exists,
+ * entries with unchanged sources are copied from it instead of being converted again.
+ * Textures are stored with a box-filtered mip chain, RGBA when the image has alpha and RGB otherwise.
+ */
+object AssetCooker {
+  import AssetContainer._
+  
+  /** Command line entry point: AssetCooker output.s3da sourceRoot path1 path2 ...
+   * Paths ending with .obj are cooked as meshes, other paths as textures.
+   */
+  def main(args: Array[String]) {
+    if (args.length < 2) {
+      println("Usage: AssetCooker <output> <source root> <paths...>")
+      return
+    }
+    
+    val root = new File(args(1))
+    val paths = args.drop(2).toIndexedSeq
+    val (meshes, textures) = paths.partition(_.toLowerCase.endsWith(".obj"))
+    
+    val result = cook(
+      new File(args(0)),
+      meshes.map(path => (path, new File(root, path))),
+      textures.map(path => (path, new File(root, path)))
+    )
+    println("Cooked " + result.cooked.size + " entries, reused " + result.reused.size + " entries.")
+  }
+  
+  
+  /** @param meshes pairs of entry name and obj file.
+   * @param textures pairs of entry name and image file.
+   */
+  def cook(output: File, meshes: Seq[(String, File)], textures: Seq[(String, File)]) :CookResult = {
+    val previous = openPrevious(output)
+    val tmp = new File(output.getPath + ".tmp")
+    
+    val cooked = new ArrayBuffer[String]
+    val reused = new ArrayBuffer[String]
+    
+    var channel: FileChannel = null
+    try {
+      channel = new FileOutputStream(tmp).getChannel
+      val writer = new Writer(channel)
+      val entries = new ArrayBuffer[ContainerEntry]
+      
+      def add(kind: Int, name: String, source: File)(convert: => Converted) {
+        val sourceHash = contentHash(source)
+        val existing = previous.flatMap(_.entry(kind, name)).filter(_.sourceHash == sourceHash)
+        
+        if (existing.isDefined) {
+          entries += writer.copy(previous.get, existing.get)
+          reused += name
+        }
+        else {
+          entries += writer.entry(kind, name, sourceHash, convert)
+          cooked += name
+        }
+      }
+      
+      for ((name, file) <- meshes) add(Mesh, name, file) { cookMesh(name, file) }
+      for ((name, file) <- textures) add(Texture, name, file) { cookTexture(name, file) }
+      
+      writer.finish(entries)
+      channel.close()
+      channel = null
+      
+      previous.foreach(_.close())
+      if (!tmp.renameTo(output)) {
+        output.delete()
+        if (!tmp.renameTo(output)) throw new IOException("Unable to rename '" + tmp + "'.")
+      }
+    }
+    finally {
+      if (channel != null) channel.close()
+      previous.foreach(_.close())
+      tmp.delete()
+    }
+    
+    new CookResult(cooked, reused)
+  }
+  
+  private def openPrevious(output: File) :Option[AssetContainer] = {
+    if (!output.exists) None
+    else {
+      try {
+        Some(new AssetContainer(output))
+      }
+      catch {
+        case e: IOException => None // Incompatible containers are cooked from scratch.
+      }
+    }
+  }
+  
+  /** The first 8 bytes of the SHA-1 digest of the file.
+   */
+  def contentHash(file: File) :Long = {
+    val digest = MessageDigest.getInstance("SHA-1")
+    val in = new FileInputStream(file)
+    try {
+      val block = new Array[Byte](64*1024)
+      var read = in.read(block)
+      while (read >= 0) {
+        digest.update(block, 0, read)
+        read = in.read(block)
+      }
+    }
+    finally {
+      in.close()
+    }
+    
+    ByteBuffer.wrap(digest.digest()).getLong()
+  }
+  
+  
+  /** Converted entry with the stream data that is not written yet.
+   */
+  private final class Converted(
+    val bounds: IndexedSeq[Float],
+    val streams: IndexedSeq[(ContainerStream, ByteBuffer)]
+  )
+  
+  private def stream(semantic: Int, data: ReadDataBuffer[_, _], width: Int, height: Int) = {
+    (new ContainerStream(semantic, data.rawEnum, data.components, width, height, 0, 0), data.bindingBuffer())
+  }
+  
+  private def cookMesh(name: String, file: File) :Converted = {
+    val in = new FileInputStream(file)
+    val (indices, vertices, normals, texCoords) = try {
+      ObjParser.parse(name, in)
+    }
+    finally {
+      in.close()
+    }
+    
+    val streams = new ArrayBuffer[(ContainerStream, ByteBuffer)]
+    streams += stream(Indices, indices, indices.size, 1)
+    streams += stream(Vertices, vertices, vertices.size, 1)
+    for (n <- normals) streams += stream(Normals, n, n.size, 1)
+    for (t <- texCoords) streams += stream(TexCoords, t, t.size, 1)
+    
+    new Converted(bounds(vertices.bindingBuffer().asFloatBuffer()), streams)
+  }
+  
+  private def bounds(vertices: FloatBuffer) :IndexedSeq[Float] = {
+    val b = Array(
+      Float.PositiveInfinity, Float.PositiveInfinity, Float.PositiveInfinity,
+      Float.NegativeInfinity, Float.NegativeInfinity, Float.NegativeInfinity
+    )
+    
+    val size = vertices.limit
+    var i = 0; while (i < size) {
+      var c = 0; while (c < 3) {
+        val value = vertices.get(i + c)
+        if (value < b(c)) b(c) = value
+        if (value > b(c + 3)) b(c + 3) = value
+        c += 1
+      }
+      i += 3
+    }
+    
+    if (size == 0) IndexedSeq.fill(6)(0f) else b.toIndexedSeq
+  }
+  
+  private def cookTexture(name: String, file: File) :Converted = {
+    val img = ImageIO.read(file)
+    if (img == null) throw new IOException("Unsupported image format in '" + file + "'.")
+    
+    val components = if (img.getColorModel.hasAlpha) 4 else 3
+    var width = img.getWidth
+    var height = img.getHeight
+    
+    var level = ByteBuffer.allocate(width*height*components)
+    ImageDecoder.decode(img, level, components)
+    
+    val streams = new ArrayBuffer[(ContainerStream, ByteBuffer)]
+    def add() {
+      streams += ((new ContainerStream(streams.size, RawEnum.UByte, components, width, height, 0, 0), level))
+    }
+    
+    add()
+    while (width > 1 || height > 1) {
+      val w = scala.math.max(width/2, 1)
+      val h = scala.math.max(height/2, 1)
+      level = downsample(level, width, height, w, h, components)
+      width = w
+      height = h
+      add()
+    }
+    
+    new Converted(IndexedSeq.empty, streams)
+  }
+  
+  /** Averages 2x2 blocks, or 2x1 blocks when one of the dimensions is already 1.
+   */
+  private[asset] def downsample(
+    src: ByteBuffer, width: Int, height: Int,
+    w: Int, h: Int, components: Int
+  ) :ByteBuffer = {
+    val dest = ByteBuffer.allocate(w*h*components)
+    val dx = if (w < width) 1 else 0
+    val dy = if (h < height) width else 0
+    
+    var y = 0; while (y < h) {
+      var x = 0; while (x < w) {
+        val s = ((y*(height/h))*width + x*(width/w))*components
+        
+        var c = 0; while (c < components) {
+          val i = s + c
+          val sum =
+            (src.get(i) & 0xFF) + (src.get(i + dx*components) & 0xFF) +
+            (src.get(i + dy*components) & 0xFF) + (src.get(i + (dx + dy)*components) & 0xFF)
+          dest.put((y*w + x)*components + c, ((sum + 2) >> 2).toByte)
+          c += 1
+        }
+        x += 1
+      }
+      y += 1
+    }
+    
+    dest
+  }
+  
+  
+  /** Writes the aligned stream data followed by the table of contents, then fills in the header.
+   */
+  private final class Writer(channel: FileChannel) {
+    private[this] var position = HeaderSize.toLong
+    
+    /** Returns the offset of the written data.
+     */
+    private[this] def write(data: ByteBuffer) :Long = {
+      position = (position + Alignment - 1)/Alignment*Alignment
+      val offset = position
+      val length = data.remaining
+      
+      var written = 0; while (written < length) written += channel.write(data, offset + written)
+      position += length
+      
+      offset
+    }
+    
+    private[this] def write(s: ContainerStream, data: ByteBuffer) :ContainerStream = {
+      val length = data.remaining
+      val offset = write(data)
+      new ContainerStream(s.semantic, s.rawEnum, s.components, s.width, s.height, offset, length)
+    }
+    
+    def entry(kind: Int, name: String, sourceHash: Long, converted: Converted) :ContainerEntry = {
+      val streams = for ((stream, data) <- converted.streams) yield write(stream, data.duplicate())
+      new ContainerEntry(kind, name, sourceHash, converted.bounds, streams)
+    }
+    
+    def copy(previous: AssetContainer, entry: ContainerEntry) :ContainerEntry = {
+      val streams = for (stream <- entry.streams) yield write(stream, previous.map(stream))
+      new ContainerEntry(entry.kind, entry.name, entry.sourceHash, entry.bounds, streams)
+    }
+    
+    def finish(entries: Seq[ContainerEntry]) {
+      val toc = new ByteArrayOutputStream
+      val out = new DataOutputStream(toc)
+      entries.foreach(writeEntry(out, _))
+      out.close()
+      
+      val tocOffset = write(ByteBuffer.wrap(toc.toByteArray))
+      
+      val header = ByteBuffer.allocate(HeaderSize)
+      header.putInt(Magic)
+      header.putInt(Version)
+      header.putInt(nativeOrderCode)
+      header.putInt(entries.size)
+      header.putLong(tocOffset)
+      header.putLong(toc.size)
+      header.flip()
+      
+      while (header.hasRemaining) channel.write(header, header.position)
+    }
+  }
+}
@@ -20,6 +20,9 @@
 
 package simplex3d.engine.asset
 
+import java.util.HashMap
+import java.util.concurrent._
+import java.util.concurrent.atomic.AtomicLong
 import scala.reflect._
 import scala.collection.mutable.ArrayBuffer
 import simplex3d.math.types._
@@ -30,7 +33,12 @@ import simplex3d.data.double._
 import simplex3d.engine.graphics._
 
 
-// XXX add loaded caching and linked sources
+/** Loads assets with the registered loaders.
+ *
+ * The load methods return unique assets on the calling thread. The request methods load shared assets
+ * on a pool of background threads: concurrent requests for the same path share a single load, and the loaded
+ * assets are kept in a size-bounded cache. Shared assets must not be modified.
+ */
 abstract class AssetManager {
   // XXX work out default settings, add mass changes
   private val magFilter = ImageFilter.Linear
@@ -41,6 +49,14 @@ abstract class AssetManager {
   
   protected val loaders = ArrayBuffer[AssetLoader]()
   
+  /** Number of background threads used to read and decode the requested assets.
+   */
+  protected def loaderThreads: Int = scala.math.min(scala.math.max(Runtime.getRuntime.availableProcessors, 2), 8)
+  
+  /** Cache of the shared assets, 256 MB by default.
+   */
+  val cache = new AssetCache(256L*1024*1024)
+  
   protected def resolve[R](loadOperation: (AssetLoader) => Option[R]) :Option[R] = {
     var loaded: Option[R] = None
     var i = 0; while (!loaded.isDefined && i < loaders.size) {
@@ -73,10 +89,7 @@ abstract class AssetManager {
     else None
   }
   
-  // getLinkedTexture // shared, link-cached
-  // getReadableTexture // shared, data-cached
-  // getWritableTexture // unique, data-cached
-  // uncacheTexture // clear caches
+  // XXX getWritableTexture // unique, data-cached
   
   
   def loadObj(path: String)
@@ -88,4 +101,134 @@ abstract class AssetManager {
   )] = {
     resolve(_.loadObj(path))
   }
+  
+  
+  /** Requests a shared texture. The same texture is returned for the same path while it stays in the cache.
+   * 
+   * @param priority requests with higher priority are loaded first, for example the textures of visible objects.
+   */
+  def requestTexture2d[A <: Accessor](path: String, priority: Int = 0)
+    (implicit accessorTag: ClassTag[A])
+  :Future[Option[Texture2d[A]]] = {
+    request((accessorTag.runtimeClass, path), priority) {
+      val texture = loadTexture2d[A](path)
+      val components = if (accessorTag == Vec4.Tag) 4 else 3
+      val bytes = texture.map(t => t.dimensions.x.toLong*t.dimensions.y*components)
+      (texture, bytes.getOrElse(0L))
+    }
+  }
+  
+  /** Requests shared mesh data. The same buffers are returned for the same path while they stay in the cache.
+   * 
+   * @param priority requests with higher priority are loaded first, for example the meshes of visible objects.
+   */
+  def requestObj(path: String, priority: Int = 0)
+  :Future[Option[(
+    DataBuffer[SInt, Unsigned],// indices
+    DataBuffer[Vec3, RFloat], // vertices
+    Option[DataBuffer[Vec3, RFloat]], // normals
+    Option[DataBuffer[Vec2, RFloat]] // texCoords
+  )]] = {
+    request(("Obj", path), priority) {
+      val obj = loadObj(path)
+      val bytes = obj.map { case (indices, vertices, normals, texCoords) =>
+        indices.size*4L + vertices.size*12L + normals.map(_.size*12L).getOrElse(0L) +
+        texCoords.map(_.size*8L).getOrElse(0L)
+      }
+      (obj, bytes.getOrElse(0L))
+    }
+  }
+  
+  
+  private[this] lazy val executor = {
+    val threads = loaderThreads
+    val executor = new ThreadPoolExecutor(
+      threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue[Runnable],
+      new ThreadFactory {
+        def newThread(runnable: Runnable) :Thread = {
+          val thread = new Thread(runnable, "Asset Loader")
+          thread.setDaemon(true)
+          thread
+        }
+      }
+    )
+    executor.prestartAllCoreThreads()
+    executor
+  }
+  
+  private[this] val pending = new HashMap[AnyRef, LoadTask[_]]
+  private[this] val sequence = new AtomicLong
+  
+  /** Ordered by priority, and then by the order of the requests.
+   */
+  private final class LoadTask[R](val key: AnyRef, @volatile var priority: Int, callable: Callable[R])
+  extends FutureTask[R](callable) with Comparable[LoadTask[_]]
+  {
+    val order = sequence.getAndIncrement()
+    
+    def compareTo(other: LoadTask[_]) :Int = {
+      if (priority != other.priority) { if (priority > other.priority) -1 else 1 }
+      else if (order < other.order) -1
+      else if (order > other.order) 1
+      else 0
+    }
+  }
+  
+  /** Returns the cached asset, the pending request for the same key, or starts a new request.
+   * Assets that were not found are not cached.
+   */
+  private[this] def request[R <: Option[_]](key: AnyRef, priority: Int)(load: => (R, Long)) :Future[R] = {
+    val cached = cache.get(key)
+    if (cached != null) return completed(cached.asInstanceOf[R])
+    
+    pending.synchronized {
+      // The request may have completed since the cache was checked.
+      val cached = cache.get(key)
+      if (cached != null) return completed(cached.asInstanceOf[R])
+      
+      val existing = pending.get(key).asInstanceOf[LoadTask[R]]
+      if (existing != null) {
+        // Raising the priority of a queued request moves it up the queue.
+        if (priority > existing.priority && executor.getQueue.remove(existing)) {
+          existing.priority = priority
+          executor.getQueue.add(existing)
+        }
+        existing
+      }
+      else {
+        val task = new LoadTask[R](key, priority, new Callable[R] {
+          def call() :R = {
+            try {
+              val (asset, bytes) = load
+              if (asset.isDefined) cache.put(key, asset, bytes)
+              asset
+            }
+            finally {
+              pending.synchronized { pending.remove(key) }
+            }
+          }
+        })
+        
+        pending.put(key, task)
+        executor.execute(task)
+        task
+      }
+    }
+  }
+  
+  private[this] def completed[R](value: R) :Future[R] = {
+    val task = new FutureTask[R](new Callable[R] { def call() :R = value })
+    task.run()
+    task
+  }
+  
+  /** Number of requests that are queued or being loaded.
+   */
+  def pendingRequests: Int = pending.synchronized { pending.size }
+  
+  /** Stops the background threads, the pending requests are cancelled.
+   */
+  def shutdown() {
+    executor.shutdownNow()
+  }
 }
@@ -0,0 +1,82 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine.asset
+
+import java.io.File
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine.graphics._
+
+
+/** Loads the assets cooked into an AssetContainer, using the asset paths as entry names.
+ *
+ * The mesh(), rgbTexture(), and rgbaTexture() methods return read-only views of the mapped container.
+ * The AssetLoader methods return unique writable assets, so they make one bulk copy of the mapped data.
+ * Textures stored with a different number of components are left to the other loaders.
+ * The streamed texture methods create textures that share the mapped mip chain.
+ */
+class ContainerLoader(val container: AssetContainer) extends AssetLoader {
+  
+  def this(file: File) = this(new AssetContainer(file))
+  
+  
+  def mesh(path: String) :Option[ContainerMesh] = container.mesh(path)
+  def rgbTexture(path: String) :Option[ContainerTexture[Vec3]] = container.rgbTexture(path)
+  def rgbaTexture(path: String) :Option[ContainerTexture[Vec4]] = container.rgbaTexture(path)
+  
+  /** Streamed textures use the cooked mip chain, their levels are uploaded by a TextureStreamer.
+   */
+  def streamedRgbTexture2d(path: String) :Option[Texture2d[Vec3]] = {
+    rgbTexture(path).map(texture => Texture2d.fromMipChain(texture.mipLevels))
+  }
+  
+  def streamedRgbaTexture2d(path: String) :Option[Texture2d[Vec4]] = {
+    rgbaTexture(path).map(texture => Texture2d.fromMipChain(texture.mipLevels))
+  }
+  
+  
+  def loadRgbImg(path: String) :Option[(ConstVec2i, RgbTextureData)] = {
+    rgbTexture(path).map(texture => (texture.dimensions, texture.data.copyAsDataBuffer()))
+  }
+  
+  def loadRgbaImg(path: String) :Option[(ConstVec2i, RgbaTextureData)] = {
+    rgbaTexture(path).map(texture => (texture.dimensions, texture.data.copyAsDataBuffer()))
+  }
+  
+  def loadObj(path: String)
+  :Option[(
+    DataBuffer[SInt, Unsigned],// indices
+    DataBuffer[Vec3, RFloat], // vertices
+    Option[DataBuffer[Vec3, RFloat]], // normals
+    Option[DataBuffer[Vec2, RFloat]] // texCoords
+  )] = {
+    mesh(path).map { mesh =>
+      (
+        mesh.indices.copyAsDataBuffer(),
+        mesh.vertices.copyAsDataBuffer(),
+        mesh.normals.map(_.copyAsDataBuffer()),
+        mesh.texCoords.map(_.copyAsDataBuffer())
+      )
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine.asset
+
+import java.awt.image._
+import java.nio.ByteBuffer
+
+
+/** Converts images to tightly packed RGB or RGBA bytes, with the rows flipped to match the texture orientation.
+ *
+ * Interleaved byte rasters (such as TYPE_3BYTE_BGR and TYPE_4BYTE_ABGR) and packed int rasters
+ * (such as TYPE_INT_ARGB and TYPE_INT_RGB) in the sRGB color space are read directly from the raster arrays.
+ * Rows that already match the destination layout are copied in bulk. Other images are converted
+ * a row at a time with getRGB().
+ */
+object ImageDecoder {
+  
+  private final val Opaque: Byte = -1
+  
+  /** @param components 3 for RGB, 4 for RGBA. Images without alpha are decoded as opaque.
+   */
+  def decode(img: BufferedImage, dest: ByteBuffer, components: Int) {
+    if (components != 3 && components != 4) throw new IllegalArgumentException("Components must be 3 or 4.")
+    
+    val width = img.getWidth
+    val height = img.getHeight
+    if (dest.capacity < width*height*components) throw new IllegalArgumentException(
+      "Destination buffer is too small."
+    )
+    
+    val target = dest.duplicate()
+    target.clear()
+    
+    val raster = img.getRaster
+    val untranslated = (raster.getSampleModelTranslateX == 0 && raster.getSampleModelTranslateY == 0)
+    
+    raster.getDataBuffer match {
+      case bytes: DataBufferByte if untranslated && isInterleavedRgb(img) =>
+        decodeBytes(img, bytes, target, components)
+      case ints: DataBufferInt if untranslated && isPackedRgb(img) =>
+        decodeInts(img, ints, target, components)
+      case _ =>
+        decodeRows(img, target, components)
+    }
+  }
+  
+  
+  private def isSrgb(colorModel: ColorModel) :Boolean = {
+    colorModel.getColorSpace.isCS_sRGB && !colorModel.isAlphaPremultiplied
+  }
+  
+  private def isInterleavedRgb(img: BufferedImage) :Boolean = {
+    (img.getColorModel, img.getSampleModel) match {
+      case (colorModel: ComponentColorModel, sampleModel: ComponentSampleModel) =>
+        val bands = sampleModel.getNumBands
+        val bankIndices = sampleModel.getBankIndices
+        
+        isSrgb(colorModel) &&
+        (bands == 3 || bands == 4) &&
+        colorModel.getNumComponents == bands &&
+        colorModel.getComponentSize.forall(_ == 8) &&
+        bankIndices.forall(_ == 0)
+      
+      case _ =>
+        false
+    }
+  }
+  
+  private def isPackedRgb(img: BufferedImage) :Boolean = {
+    (img.getColorModel, img.getSampleModel) match {
+      case (colorModel: DirectColorModel, _: SinglePixelPackedSampleModel) =>
+        isSrgb(colorModel) &&
+        colorModel.getRedMask == 0xff0000 &&
+        colorModel.getGreenMask == 0xff00 &&
+        colorModel.getBlueMask == 0xff &&
+        (colorModel.getAlphaMask == 0xff000000 || colorModel.getAlphaMask == 0)
+      
+      case _ =>
+        false
+    }
+  }
+  
+  
+  private def decodeBytes(img: BufferedImage, bytes: DataBufferByte, target: ByteBuffer, components: Int) {
+    val width = img.getWidth
+    val height = img.getHeight
+    
+    val sampleModel = img.getSampleModel.asInstanceOf[ComponentSampleModel]
+    val scanline = sampleModel.getScanlineStride
+    val pixelStride = sampleModel.getPixelStride
+    val bands = sampleModel.getNumBands
+    val offsets = sampleModel.getBandOffsets
+    
+    val src = bytes.getData
+    val dataOffset = bytes.getOffset
+    val rowSize = width*components
+    
+    val exactLayout =
+      bands == components && pixelStride == components &&
+      offsets(0) == 0 && offsets(1) == 1 && offsets(2) == 2 && (bands == 3 || offsets(3) == 3)
+    
+    if (exactLayout) {
+      var y = 0; while (y < height) {
+        target.position((height - 1 - y)*rowSize)
+        target.put(src, dataOffset + y*scanline, rowSize)
+        y += 1
+      }
+    }
+    else {
+      val row = new Array[Byte](rowSize)
+      val r = offsets(0)
+      val g = offsets(1)
+      val b = offsets(2)
+      val a = if (bands == 4) offsets(3) else -1
+      
+      var y = 0; while (y < height) {
+        var s = dataOffset + y*scanline
+        var d = 0
+        
+        var x = 0; while (x < width) {
+          row(d) = src(s + r)
+          row(d + 1) = src(s + g)
+          row(d + 2) = src(s + b)
+          if (components == 4) row(d + 3) = if (a >= 0) src(s + a) else Opaque
+          
+          s += pixelStride
+          d += components
+          x += 1
+        }
+        
+        target.position((height - 1 - y)*rowSize)
+        target.put(row)
+        y += 1
+      }
+    }
+  }
+  
+  private def decodeInts(img: BufferedImage, ints: DataBufferInt, target: ByteBuffer, components: Int) {
+    val width = img.getWidth
+    val height = img.getHeight
+    
+    val scanline = img.getSampleModel.asInstanceOf[SinglePixelPackedSampleModel].getScanlineStride
+    val hasAlpha = img.getColorModel.hasAlpha
+    
+    val src = ints.getData
+    val dataOffset = ints.getOffset
+    val rowSize = width*components
+    val row = new Array[Byte](rowSize)
+    
+    var y = 0; while (y < height) {
+      convertRow(src, dataOffset + y*scanline, width, hasAlpha, row, components)
+      target.position((height - 1 - y)*rowSize)
+      target.put(row)
+      y += 1
+    }
+  }
+  
+  private def decodeRows(img: BufferedImage, target: ByteBuffer, components: Int) {
+    val width = img.getWidth
+    val height = img.getHeight
+    
+    val rowSize = width*components
+    val pixels = new Array[Int](width)
+    val row = new Array[Byte](rowSize)
+    
+    var y = 0; while (y < height) {
+      img.getRGB(0, y, width, 1, pixels, 0, width)
+      convertRow(pixels, 0, width, true, row, components)
+      target.position((height - 1 - y)*rowSize)
+      target.put(row)
+      y += 1
+    }
+  }
+  
+  /** Converts ARGB ints to RGB or RGBA bytes.
+   */
+  private def convertRow(src: Array[Int], offset: Int, width: Int, hasAlpha: Boolean, row: Array[Byte], components: Int) {
+    var d = 0
+    var x = 0; while (x < width) {
+      val pixel = src(offset + x)
+      row(d) = (pixel >> 16).toByte
+      row(d + 1) = (pixel >> 8).toByte
+      row(d + 2) = pixel.toByte
+      if (components == 4) row(d + 3) = if (hasAlpha) (pixel >> 24).toByte else Opaque
+      
+      d += components
+      x += 1
+    }
+  }
+}
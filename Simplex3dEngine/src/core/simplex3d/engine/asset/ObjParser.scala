@@ -0,0 +1,508 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine.asset
+
+import java.io._
+import java.util.Arrays
+import scala.collection.mutable.ArrayBuffer
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+
+
+/** Parses Wavefront OBJ models without allocating per line or per vertex.
+ *
+ * The stream is read in blocks of whole lines, and the blocks are tokenized in parallel directly from bytes.
+ * Coordinates and face corners are accumulated in primitive arrays. Corners are de-duplicated with
+ * an open-addressing hash of (vertex, texCoord, normal) index triples, and the unique vertices are written
+ * straight into the result buffers. Quads and other polygons are triangulated as fans.
+ *
+ * Supports v, vt, vn, and f with v, v/vt, v//vn, and v/vt/vn corners, including negative (relative) indices.
+ * Other statements are ignored.
+ */
+object ObjParser {
+  
+  final val DefaultChunkSize = 4*1024*1024
+  
+  private final val Missing = Int.MinValue
+  
+  // Relative indices are stored as Relative + index in the chunk, and resolved once the chunk offsets are known.
+  private final val Relative = -(1 << 30)
+  
+  private val powersOf10 = Array.tabulate(23)(i => scala.math.pow(10, i))
+  
+  
+  private final class FloatAccumulator(initialCapacity: Int) {
+    var array = new Array[Float](initialCapacity)
+    var size = 0
+    
+    def +=(value: Float) {
+      if (size == array.length) array = Arrays.copyOf(array, size*2)
+      array(size) = value
+      size += 1
+    }
+  }
+  
+  private final class IntAccumulator(initialCapacity: Int) {
+    var array = new Array[Int](initialCapacity)
+    var size = 0
+    
+    def +=(value: Int) {
+      if (size == array.length) array = Arrays.copyOf(array, size*2)
+      array(size) = value
+      size += 1
+    }
+  }
+  
+  
+  /** Tokenizes a block of whole lines.
+   */
+  private final class Chunk(val bytes: Array[Byte], val length: Int) {
+    val vertices = new FloatAccumulator(3*1024)
+    val texCoords = new FloatAccumulator(2*1024)
+    val normals = new FloatAccumulator(3*1024)
+    
+    // Triangle corners as (vertex, texCoord, normal) index triples.
+    val corners = new IntAccumulator(9*1024)
+    
+    var lines = 0
+    var errorLine = 0
+    var error: String = null
+    
+    private[this] var pos = 0
+    private[this] var end = 0
+    
+    private[this] def fail(message: String) {
+      if (error == null) {
+        error = message
+        errorLine = lines + 1
+      }
+      pos = end
+    }
+    
+    private[this] def isSpace(b: Byte) = (b == ' ' || b == '\t' || b == '\r')
+    private[this] def isDigit(b: Byte) = (b >= '0' && b <= '9')
+    
+    private[this] def skipSpaces() {
+      while (pos < end && isSpace(bytes(pos))) pos += 1
+    }
+    
+    private[this] def parseFloat() :Float = {
+      skipSpaces()
+      
+      var negative = false
+      if (pos < end && (bytes(pos) == '-' || bytes(pos) == '+')) {
+        negative = (bytes(pos) == '-')
+        pos += 1
+      }
+      
+      var mantissa = 0L
+      var digits = 0
+      var exponent = 0
+      var found = false
+      
+      while (pos < end && isDigit(bytes(pos))) {
+        if (digits < 18) { mantissa = mantissa*10 + (bytes(pos) - '0'); if (mantissa > 0) digits += 1 }
+        else exponent += 1
+        found = true
+        pos += 1
+      }
+      if (pos < end && bytes(pos) == '.') {
+        pos += 1
+        while (pos < end && isDigit(bytes(pos))) {
+          if (digits < 18) {
+            mantissa = mantissa*10 + (bytes(pos) - '0'); if (mantissa > 0) digits += 1
+            exponent -= 1
+          }
+          found = true
+          pos += 1
+        }
+      }
+      if (found && pos < end && (bytes(pos) == 'e' || bytes(pos) == 'E')) {
+        pos += 1
+        var negativeExponent = false
+        if (pos < end && (bytes(pos) == '-' || bytes(pos) == '+')) {
+          negativeExponent = (bytes(pos) == '-')
+          pos += 1
+        }
+        var e = 0
+        var foundExponent = false
+        while (pos < end && isDigit(bytes(pos))) {
+          if (e < 10000) e = e*10 + (bytes(pos) - '0')
+          foundExponent = true
+          pos += 1
+        }
+        if (!foundExponent) found = false
+        exponent += (if (negativeExponent) -e else e)
+      }
+      
+      if (!found || (pos < end && !isSpace(bytes(pos)))) {
+        fail("invalid number")
+        return 0
+      }
+      
+      val value =
+        if (exponent == 0) mantissa.toDouble
+        else if (exponent > 0) {
+          if (exponent < powersOf10.length) mantissa*powersOf10(exponent)
+          else mantissa*scala.math.pow(10, exponent)
+        }
+        else {
+          if (-exponent < powersOf10.length) mantissa/powersOf10(-exponent)
+          else mantissa*scala.math.pow(10, exponent)
+        }
+      
+      (if (negative) -value else value).toFloat
+    }
+    
+    /** @return the stored index, or Missing if the index is empty.
+     */
+    private[this] def parseIndex(count: Int) :Int = {
+      var negative = false
+      if (pos < end && bytes(pos) == '-') {
+        negative = true
+        pos += 1
+      }
+      
+      var value = 0
+      var found = false
+      while (pos < end && isDigit(bytes(pos))) {
+        value = value*10 + (bytes(pos) - '0')
+        found = true
+        pos += 1
+      }
+      
+      if (!found) {
+        if (negative) fail("invalid index")
+        Missing
+      }
+      else if (value == 0) {
+        fail("invalid index 0")
+        Missing
+      }
+      else if (negative) Relative + count - value
+      else value - 1
+    }
+    
+    private[this] var first0, first1, first2 = 0
+    private[this] var prev0, prev1, prev2 = 0
+    
+    private[this] def parseFace() {
+      var corner = 0
+      
+      skipSpaces()
+      while (pos < end) {
+        val v = parseIndex(vertices.size/3)
+        if (v == Missing) fail("missing vertex index")
+        
+        var t = Missing
+        var n = Missing
+        if (pos < end && bytes(pos) == '/') {
+          pos += 1
+          t = parseIndex(texCoords.size/2)
+          if (pos < end && bytes(pos) == '/') {
+            pos += 1
+            n = parseIndex(normals.size/3)
+            if (n == Missing) fail("missing normal index")
+          }
+        }
+        if (pos < end && !isSpace(bytes(pos))) fail("invalid face corner")
+        
+        if (corner == 0) { first0 = v; first1 = t; first2 = n }
+        else if (corner >= 2) {
+          corners += first0; corners += first1; corners += first2
+          corners += prev0; corners += prev1; corners += prev2
+          corners += v; corners += t; corners += n
+        }
+        prev0 = v; prev1 = t; prev2 = n
+        
+        corner += 1
+        skipSpaces()
+      }
+      
+      if (corner < 3 && error == null) fail("face with less than 3 corners")
+    }
+    
+    private[this] def keyword(a: Char, b: Char) :Boolean = {
+      pos + 1 < end && bytes(pos) == a && (bytes(pos + 1) == b || (b == ' ' && isSpace(bytes(pos + 1))))
+    }
+    
+    def parse() {
+      var start = 0
+      while (start < length && error == null) {
+        end = start; while (end < length && bytes(end) != '\n') end += 1
+        pos = start
+        
+        skipSpaces()
+        if (keyword('v', ' ')) {
+          pos += 2
+          vertices += parseFloat(); vertices += parseFloat(); vertices += parseFloat()
+        }
+        else if (keyword('v', 't')) {
+          pos += 2
+          texCoords += parseFloat(); texCoords += parseFloat()
+        }
+        else if (keyword('v', 'n')) {
+          pos += 2
+          normals += parseFloat(); normals += parseFloat(); normals += parseFloat()
+        }
+        else if (keyword('f', ' ')) {
+          pos += 2
+          parseFace()
+        }
+        
+        if (error == null) lines += 1
+        start = end + 1
+      }
+    }
+  }
+  
+  
+  /** Maps (vertex, texCoord, normal) index triples to the output vertex ids.
+   */
+  private final class VertexTable(expected: Int) {
+    private[this] var capacity = Integer.highestOneBit(scala.math.max(16, expected*2 - 1)) << 1
+    private[this] var ids = mkIds(capacity)
+    
+    // Index triples of the unique vertices, in the order of their ids.
+    val unique = new IntAccumulator(scala.math.max(3*16, 3*expected))
+    def size = unique.size/3
+    
+    private[this] def mkIds(capacity: Int) = {
+      val array = new Array[Int](capacity)
+      Arrays.fill(array, -1)
+      array
+    }
+    
+    private[this] def hash(v: Int, t: Int, n: Int) :Int = {
+      var h = v*0x9e3779b9 + t*0x85ebca6b + n*0xc2b2ae35
+      h ^= h >>> 16
+      h *= 0x7feb352d
+      h ^ (h >>> 15)
+    }
+    
+    def add(v: Int, t: Int, n: Int) :Int = {
+      if (size*2 >= capacity) grow()
+      
+      val mask = capacity - 1
+      val keys = unique.array
+      var slot = hash(v, t, n) & mask
+      while (true) {
+        val id = ids(slot)
+        if (id == -1) {
+          val newId = size
+          ids(slot) = newId
+          unique += v; unique += t; unique += n
+          return newId
+        }
+        else if (keys(id*3) == v && keys(id*3 + 1) == t && keys(id*3 + 2) == n) {
+          return id
+        }
+        slot = (slot + 1) & mask
+      }
+      -1
+    }
+    
+    private[this] def grow() {
+      capacity *= 2
+      ids = mkIds(capacity)
+      
+      val mask = capacity - 1
+      val keys = unique.array
+      var id = 0; while (id < size) {
+        var slot = hash(keys(id*3), keys(id*3 + 1), keys(id*3 + 2)) & mask
+        while (ids(slot) != -1) slot = (slot + 1) & mask
+        ids(slot) = id
+        id += 1
+      }
+    }
+  }
+  
+  
+  /** Splits the stream into blocks of whole lines, of about chunkSize bytes each.
+   */
+  private def readChunks(stream: InputStream, chunkSize: Int) :ArrayBuffer[Chunk] = {
+    val chunks = new ArrayBuffer[Chunk]
+    
+    var bytes = new Array[Byte](chunkSize)
+    var size = 0
+    var eof = false
+    
+    while (!eof) {
+      val read = stream.read(bytes, size, bytes.length - size)
+      if (read == -1) eof = true
+      else size += read
+      
+      if (eof) {
+        if (size > 0) chunks += new Chunk(bytes, size)
+      }
+      else if (size == bytes.length) {
+        var lineEnd = size - 1
+        while (lineEnd >= 0 && bytes(lineEnd) != '\n') lineEnd -= 1
+        
+        if (lineEnd < 0) {
+          // A line longer than the chunk.
+          bytes = Arrays.copyOf(bytes, bytes.length*2)
+        }
+        else {
+          // After a long line the remainder can be longer than the chunk.
+          val remainder = size - (lineEnd + 1)
+          val next = new Array[Byte](scala.math.max(chunkSize, remainder*2))
+          System.arraycopy(bytes, lineEnd + 1, next, 0, remainder)
+          chunks += new Chunk(bytes, lineEnd + 1)
+          
+          bytes = next
+          size = remainder
+        }
+      }
+    }
+    
+    chunks
+  }
+  
+  
+  def parse(path: String, stream: InputStream, chunkSize: Int = DefaultChunkSize)
+  :(
+    DataBuffer[SInt, Unsigned],// indices
+    DataBuffer[Vec3, RFloat], // vertices
+    Option[DataBuffer[Vec3, RFloat]], // normals
+    Option[DataBuffer[Vec2, RFloat]] // texCoords
+  ) = {
+    if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive.")
+    
+    val chunks = readChunks(stream, chunkSize)
+    if (chunks.size > 1) chunks.par.foreach(_.parse()) else chunks.foreach(_.parse())
+    
+    
+    // Element offsets of each chunk.
+    val vertexOffsets, texCoordOffsets, normalOffsets = new Array[Int](chunks.size + 1)
+    var lineOffset = 0
+    var cornerCount = 0
+    
+    var c = 0; while (c < chunks.size) {
+      val chunk = chunks(c)
+      if (chunk.error != null) throw new RuntimeException(
+        "Error in obj model '" + path + "' on line " + (lineOffset + chunk.errorLine) + ": " + chunk.error + "."
+      )
+      
+      lineOffset += chunk.lines
+      cornerCount += chunk.corners.size/3
+      vertexOffsets(c + 1) = vertexOffsets(c) + chunk.vertices.size/3
+      texCoordOffsets(c + 1) = texCoordOffsets(c) + chunk.texCoords.size/2
+      normalOffsets(c + 1) = normalOffsets(c) + chunk.normals.size/3
+      
+      c += 1
+    }
+    
+    val vertexCount = vertexOffsets(chunks.size)
+    val texCoordCount = texCoordOffsets(chunks.size)
+    val normalCount = normalOffsets(chunks.size)
+    
+    
+    def resolve(index: Int, offset: Int, count: Int, name: String) :Int = {
+      if (index == Missing) Missing
+      else {
+        val resolved = if (index < 0) offset + (index - Relative) else index
+        if (resolved < 0 || resolved >= count) throw new RuntimeException(
+          "Error in obj model '" + path + "': " + name + " index " + (resolved + 1) + " is out of range."
+        )
+        resolved
+      }
+    }
+    
+    val table = new VertexTable(vertexCount)
+    val indices = new Array[Int](cornerCount)
+    var next = 0
+    
+    c = 0; while (c < chunks.size) {
+      val corners = chunks(c).corners
+      
+      var i = 0; while (i < corners.size) {
+        val v = resolve(corners.array(i), vertexOffsets(c), vertexCount, "vertex")
+        val t = resolve(corners.array(i + 1), texCoordOffsets(c), texCoordCount, "texCoord")
+        val n = resolve(corners.array(i + 2), normalOffsets(c), normalCount, "normal")
+        
+        indices(next) = table.add(v, t, n)
+        next += 1
+        
+        i += 3
+      }
+      
+      c += 1
+    }
+    
+    
+    def gather(offsets: Array[Int], components: Int, accumulator: Chunk => FloatAccumulator) :Array[Float] = {
+      val result = new Array[Float](offsets(chunks.size)*components)
+      var c = 0; while (c < chunks.size) {
+        val src = accumulator(chunks(c))
+        System.arraycopy(src.array, 0, result, offsets(c)*components, src.size)
+        c += 1
+      }
+      result
+    }
+    
+    val vertices = gather(vertexOffsets, 3, _.vertices)
+    val texCoords = gather(texCoordOffsets, 2, _.texCoords)
+    val normals = gather(normalOffsets, 3, _.normals)
+    
+    
+    val count = table.size
+    val resultIndices = IndexBuffer(count, indices.length)
+    resultIndices.put(indices)
+    
+    val resultVertices = DataBuffer[Vec3, RFloat](count)
+    val resultNormals = if (normalCount == 0) None else Some(DataBuffer[Vec3, RFloat](count))
+    val resultTexCoords = if (texCoordCount == 0) None else Some(DataBuffer[Vec2, RFloat](count))
+    
+    val vertexBuffer = resultVertices.buffer()
+    val normalBuffer = if (resultNormals.isDefined) resultNormals.get.buffer() else null
+    val texCoordBuffer = if (resultTexCoords.isDefined) resultTexCoords.get.buffer() else null
+    
+    // Corners without a texCoord or a normal get zeros.
+    val keys = table.unique.array
+    var i = 0; while (i < count) {
+      val v = keys(i*3)
+      val t = keys(i*3 + 1)
+      val n = keys(i*3 + 2)
+      
+      vertexBuffer.put(i*3, vertices(v*3))
+      vertexBuffer.put(i*3 + 1, vertices(v*3 + 1))
+      vertexBuffer.put(i*3 + 2, vertices(v*3 + 2))
+      
+      if (texCoordBuffer != null && t != Missing) {
+        texCoordBuffer.put(i*2, texCoords(t*2))
+        texCoordBuffer.put(i*2 + 1, texCoords(t*2 + 1))
+      }
+      
+      if (normalBuffer != null && n != Missing) {
+        normalBuffer.put(i*3, normals(n*3))
+        normalBuffer.put(i*3 + 1, normals(n*3 + 1))
+        normalBuffer.put(i*3 + 2, normals(n*3 + 2))
+      }
+      
+      i += 1
+    }
+    
+    (resultIndices, resultVertices, resultNormals, resultTexCoords)
+  }
+}
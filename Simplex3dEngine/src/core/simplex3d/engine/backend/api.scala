@@ -96,6 +96,11 @@ object api {
     @inline def clearParameterChanges() = v.clearParameterChanges()
   }
   
+  implicit class Texture2dAc(val v: Texture2d[_]) extends AnyVal {
+    @inline def residentLevel = v.residentLevel
+    @inline def updateResidentLevel(level: Int) { v.residentLevel = level }
+  }
+  
   implicit class AbstractMeshAc(val v: AbstractMesh) extends AnyVal {
     @inline def worldMatrix = v.ac_worldMatrix
     @inline def debugBoundingVolume = v.ac_debugBoundingVolume
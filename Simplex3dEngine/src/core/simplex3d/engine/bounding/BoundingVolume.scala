@@ -23,6 +23,7 @@ package bounding
 
 import simplex3d.math.types._
 import simplex3d.math.double._
+import simplex3d.math.double.functions._
 import simplex3d.algorithm.intersection._
 import simplex3d.engine.util._
 import simplex3d.engine.graphics._
@@ -62,6 +63,24 @@ object BoundingVolume {
           bound.min, bound.max,
           bound.transformation
         )
+      case bound: Sphere =>
+        if (worldTransformation.isDefined) {
+          val matrix = worldTransformation.matrix
+          frustum.intersectSphere(matrix.transformPoint(bound.center), bound.radius*maxScale(matrix))
+        }
+        else frustum.intersectSphere(
+          bound.center, bound.radius
+        )
     }
   }
+  
+  /** The largest scale factor applied by the matrix, used to scale bounding sphere radius.
+   * This is the length of the longest of the first three columns, the images of the unit axes.
+   */
+  final def maxScale(m: inMat4x3) :Double = {
+    val sx = m.m00*m.m00 + m.m01*m.m01 + m.m02*m.m02
+    val sy = m.m10*m.m10 + m.m11*m.m11 + m.m12*m.m12
+    val sz = m.m20*m.m20 + m.m21*m.m21 + m.m22*m.m22
+    sqrt(max(sx, max(sy, sz)))
+  }
 }
@@ -0,0 +1,44 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2011, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine
+package bounding
+
+import simplex3d.math.double._
+
+
+/** Bounding sphere defined by local center and radius. World transformation is applied to the center,
+ * and the radius is scaled by the largest scale component of the world transformation.
+ */
+final class Sphere(val center: Vec3 = Vec3(0), var radius: Double = 0) extends BoundingVolume
+{
+  def mutableCopy = new Sphere(center.mutableCopy, radius)
+  
+  def :=(r: BoundingVolume) {
+    this := r.asInstanceOf[Sphere]
+  }
+  
+  def :=(r: Sphere) {
+    center := r.center
+    radius = r.radius
+  }
+  
+  override def toString :String = "Sphere(" + center + ", " + radius + ")"
+}
@@ -60,9 +60,13 @@ final class AttributeBinding[F <: Format, R <: Raw] {
   
   private final var attributes: Attributes[F, R] = _
   protected final var reassigned = true // Initialize as reassigned.
+  private[engine] final var changeListener: ChangeListener = null
   
   private[engine] def hasDataChanges: Boolean = dataChanges
-  private[engine] def signalDataChanges() { dataChanges = true }
+  private[engine] def signalDataChanges() {
+    dataChanges = true
+    if (changeListener != null) changeListener.onChange()
+  }
   private[engine] def clearDataChanges() { dataChanges = false }
   
   private[engine] def hasRefChanges = reassigned
@@ -75,6 +79,7 @@ final class AttributeBinding[F <: Format, R <: Raw] {
     if (attributes != null) {
       if (attributes.isWritable) attributes.unregister(this)
       if (context != null) context.signalStructuralChanges()
+      if (changeListener != null) changeListener.onChange()
     }
     attributes = null.asInstanceOf[Attributes[F, R]]
   }
@@ -88,6 +93,7 @@ final class AttributeBinding[F <: Format, R <: Raw] {
       if (isWritable)  this.attributes.unregister(this)
       if (attributes.isWritable)  attributes.register(this)
       reassigned = true
+      if (changeListener != null) changeListener.onChange()
     }
     this.attributes = attributes
   }
@@ -98,7 +98,8 @@ final class AttributesSharedState private[engine] (
   val size: Int,
   val related: ReadSeq[Attributes[_ <: Format, Raw]],
   val caching: Caching.Value,
-  private[engine] var persistent: InterleavedData
+  private[engine] var persistent: InterleavedData,
+  val divisor: Int = 0
 ) extends EngineInfoRef {
   
   private[engine] def updatedRegions = regions
@@ -111,20 +112,22 @@ final class AttributesSharedState private[engine] (
 
 
 object Attributes {
+  /** @param divisor 0 for per-vertex attributes, otherwise the number of instances that share each element.
+   */
   def apply[F <: Format, R <: Raw with Tangible]
-    (size: Int, caching: Caching.Value = Caching.Dynamic)
+    (size: Int, caching: Caching.Value = Caching.Dynamic, divisor: Int = 0)
     (implicit composition: CompositionFactory[F, _ >: R], primitives: PrimitiveFactory[F#Component, R])
   :Attributes[F, R] = {
     val data = composition.mkDataBuffer(primitives.mkDataBuffer(size*composition.components))
-    fromData(data)
+    fromData(data, caching, divisor)
   }
   
   def fromData[F <: Format, R <: Raw]
-    (data: ReadDataBuffer[F, _ <: R], caching: Caching.Value = Caching.Dynamic)
+    (data: ReadDataBuffer[F, _ <: R], caching: Caching.Value = Caching.Dynamic, divisor: Int = 0)
   :Attributes[F, R] = {
     val attributes = new Attributes[F, R](data, null)
     attributes.shared = new AttributesSharedState(
-      data.size, new ReadSeq(ArrayBuffer(attributes)), caching, new InterleavedData(data)
+      data.size, new ReadSeq(ArrayBuffer(attributes)), caching, new InterleavedData(data), divisor
     )
     attributes
   }
@@ -0,0 +1,99 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine
+package graphics
+
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.engine.util._
+import simplex3d.engine.scene._
+import simplex3d.engine.scene.api._
+
+
+/** State of a single frame, captured after the update and rendered on the render thread.
+ *
+ * The render array is culled and sorted before the capture. Camera matrices and the world matrices
+ * of the visible meshes are copied, so the scene can be moved once the packet is captured.
+ * Attribute data and uniforms are not captured, so the scene must not be updated while the packet
+ * is rendered.
+ */
+final class FramePacket {
+  private[this] var _time: TimeStamp = _
+  private[this] val _projection = Mat4(1)
+  private[this] val _view = Mat4x3(1)
+  
+  /** Culled and sorted meshes for the frame.
+   */
+  val renderArray = new SortBuffer[AbstractMesh]
+  private[this] var worldMatrices = new Array[Double](12*256)
+  
+  /** True when the packet holds a captured frame.
+   */
+  var prepared = false
+  
+  def time = _time
+  def projection: ReadMat4 = _projection
+  def view: ReadMat4x3 = _view
+  
+  
+  def clear(time: TimeStamp) {
+    _time = time
+    renderArray.clear()
+    prepared = false
+  }
+  
+  /** Copies the camera and the world matrices of every mesh in the render array.
+   */
+  def capture(camera: AbstractCamera) {
+    _projection := camera.projection
+    _view := camera.view
+    
+    val size = renderArray.size
+    if (worldMatrices.length < size*12) worldMatrices = new Array[Double](size*12*3/2)
+    
+    val a = worldMatrices
+    var i = 0; while (i < size) {
+      val m = renderArray(i).worldMatrix
+      val o = i*12
+      
+      a(o + 0) = m.m00; a(o + 1) = m.m01; a(o + 2) = m.m02
+      a(o + 3) = m.m10; a(o + 4) = m.m11; a(o + 5) = m.m12
+      a(o + 6) = m.m20; a(o + 7) = m.m21; a(o + 8) = m.m22
+      a(o + 9) = m.m30; a(o + 10) = m.m31; a(o + 11) = m.m32
+      
+      i += 1
+    }
+    
+    prepared = true
+  }
+  
+  /** Loads the captured world matrix of the mesh at the given render array index.
+   */
+  def worldMatrix(index: Int, result: Mat4x3) {
+    val a = worldMatrices
+    val o = index*12
+    
+    result.m00 = a(o + 0); result.m01 = a(o + 1); result.m02 = a(o + 2)
+    result.m10 = a(o + 3); result.m11 = a(o + 4); result.m12 = a(o + 5)
+    result.m20 = a(o + 6); result.m21 = a(o + 7); result.m22 = a(o + 8)
+    result.m30 = a(o + 9); result.m31 = a(o + 10); result.m32 = a(o + 11)
+  }
+}
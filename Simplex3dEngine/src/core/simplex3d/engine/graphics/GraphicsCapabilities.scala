@@ -28,7 +28,12 @@ class GraphicsCapabilities(
   val maxFragmentUniformComponents: Int,
   val maxAttributes: Int,
   val maxVertexTextures: Int,
-  val maxFragmentTextures: Int
+  val maxFragmentTextures: Int,
+  val instancing: Boolean = false,
+  val uniformBuffers: Boolean = false,
+  val vertexArrays: Boolean = false,
+  val mapBufferRange: Boolean = false,
+  val fences: Boolean = false
 ) {
   override def toString: String = {
     "GraphicsCapabilities(" +
@@ -38,6 +43,11 @@ class GraphicsCapabilities(
       "\n  maxAttributes = " + maxAttributes +
       "\n  maxVertexTextures = " + maxVertexTextures +
       "\n  maxFragmentTextures = " + maxFragmentTextures +
+      "\n  instancing = " + instancing +
+      "\n  uniformBuffers = " + uniformBuffers +
+      "\n  vertexArrays = " + vertexArrays +
+      "\n  mapBufferRange = " + mapBufferRange +
+      "\n  fences = " + fences +
     "\n)"
   }
 }
@@ -182,53 +182,120 @@ abstract class GraphicsContext {
   def collectKeys(geometry: graphics.Geometry, material: graphics.Material, worldEnvironment: graphics.Environment)
   :(HashMap[ListNameKey, Integer], HashMap[String, Object], IndexedSeq[Boolean], IndexedSeq[Class[Object]]) =
   {
-    
     val lists = new HashMap[ListNameKey, Integer]
     val enums = new HashMap[String, Object]
+    val materialKey = collectMaterialKeys(material, lists, enums)
+    val envKey = collectEnvironmentKeys(worldEnvironment, lists, enums)
+    collectGeometryKeys(geometry, enums)
+    
+    (lists, enums, materialKey, envKey)
+  }
+  
+  private[this] def collectMaterialKeys(
+    material: graphics.Material, lists: HashMap[ListNameKey, Integer], enums: HashMap[String, Object]
+  ) :IndexedSeq[Boolean] = {
     val materialKey = new Array[Boolean](material.uniforms.size)
+    
+    var i = 0; while (i < material.uniforms.size) {
+      val prop = material.uniforms(i)
+      val name = material.uniformNames(i)
+      
+      if (prop.isDefined) prop.get match {
+        case seq: BindingSeq[_] => seq.collectKeys(name, new ListNameKey("", name), lists, enums)
+        case enum: EnumRef[_] => enum.collectKeys(name, enums) 
+        case s: Struct => s.collectKeys(name, lists, enums)
+        case _ => // do nothing
+      }
+      
+      materialKey(i) = prop.isDefined
+      
+      i += 1
+    }
+    
+    materialKey
+  }
+  
+  private[this] def collectEnvironmentKeys(
+    worldEnvironment: graphics.Environment, lists: HashMap[ListNameKey, Integer], enums: HashMap[String, Object]
+  ) :IndexedSeq[Class[Object]] = {
     val envKey = new Array[Class[Object]](worldEnvironment.properties.size)
     
-    {
-      var i = 0; while (i < material.uniforms.size) {
-        val prop = material.uniforms(i)
-        val name = material.uniformNames(i)
-        
-        if (prop.isDefined) prop.get match {
+    var i = 0; while (i < worldEnvironment.properties.size) {
+      val prop = worldEnvironment.properties(i)
+      val name = worldEnvironment.propertyNames(i)
+      
+      if (prop.isDefined) {
+        val binding = prop.get.binding
+        binding match {
           case seq: BindingSeq[_] => seq.collectKeys(name, new ListNameKey("", name), lists, enums)
-          case enum: EnumRef[_] => enum.collectKeys(name, enums) 
           case s: Struct => s.collectKeys(name, lists, enums)
           case _ => // do nothing
         }
         
-        materialKey(i) = prop.isDefined
-        
-        i += 1
+        envKey(i) = binding.getClass.asInstanceOf[Class[Object]]
       }
+      
+      i += 1
     }
     
-    {
-      var i = 0; while (i < worldEnvironment.properties.size) {
-        val prop = worldEnvironment.properties(i)
-        val name = worldEnvironment.propertyNames(i)
-        
-        if (prop.isDefined) {
-          val binding = prop.get.binding
-          binding match {
-            case seq: BindingSeq[_] => seq.collectKeys(name, new ListNameKey("", name), lists, enums)
-            case s: Struct => s.collectKeys(name, lists, enums)
-            case _ => // do nothing
-          }
-          
-          envKey(i) = binding.getClass.asInstanceOf[Class[Object]]
-        }
-        
+    envKey
+  }
+  
+  private[this] def collectGeometryKeys(geometry: graphics.Geometry, enums: HashMap[String, Object]) {
+    geometry.primitive.get.mode.collectKeys("primitive.mode", enums)
+  }
+  
+  /** The signature also covers the attribute types, which are checked against the shader declarations.
+   */
+  def geometrySignature(geometry: graphics.Geometry) :StructuralSignature = {
+    var signature = geometry.signature
+    
+    if (signature == null) {
+      val enums = new HashMap[String, Object]
+      collectGeometryKeys(geometry, enums)
+      
+      val attributeKey = new Array[Class[_]](geometry.attributes.size)
+      var i = 0; while (i < geometry.attributes.size) {
+        val binding = geometry.attributes(i)
+        if (binding.isDefined) attributeKey(i) = binding.get.src.accessorTag.runtimeClass
         i += 1
       }
+      
+      signature = StructuralSignature(IndexedSeq("Geometry", enums, attributeKey.toIndexedSeq))
+      geometry.signature = signature
     }
     
-    geometry.primitive.get.mode.collectKeys("primitive.mode", enums)
+    signature
+  }
+  
+  def materialSignature(material: graphics.Material) :StructuralSignature = {
+    var signature = material.signature
     
-    (lists, enums, materialKey, envKey)
+    if (signature == null) {
+      val lists = new HashMap[ListNameKey, Integer]
+      val enums = new HashMap[String, Object]
+      val materialKey = collectMaterialKeys(material, lists, enums)
+      
+      signature = StructuralSignature(IndexedSeq("Material", lists, enums, materialKey))
+      material.signature = signature
+    }
+    
+    signature
+  }
+  
+  def environmentSignature(worldEnvironment: graphics.Environment) :StructuralSignature = {
+    var signature = worldEnvironment.signature
+    
+    if (signature == null) {
+      val lists = new HashMap[ListNameKey, Integer]
+      val enums = new HashMap[String, Object]
+      val envKey = collectEnvironmentKeys(worldEnvironment, lists, enums)
+      
+      signature = StructuralSignature(IndexedSeq("Environment", lists, enums, envKey))
+      worldEnvironment.signature = signature
+    }
+    
+    signature
   }
   
   def samplerRemapping(material: graphics.Material, worldEnvironment: graphics.Environment)
@@ -26,4 +26,12 @@ import simplex3d.engine.scene._
 
 trait PassManager[G <: GraphicsContext] {
   def render(renderManager: RenderManager, time: TimeStamp, scene: ManagedScene[G]) :Unit
+  
+  /** Culls and sorts the scene into the packet, and captures the frame state. Called on the update thread.
+   */
+  def prepare(renderManager: RenderManager, time: TimeStamp, scene: ManagedScene[G], packet: FramePacket) :Unit
+  
+  /** Renders a packet captured by prepare(). Called on the render thread.
+   */
+  def render(renderManager: RenderManager, packet: FramePacket) :Unit
 }
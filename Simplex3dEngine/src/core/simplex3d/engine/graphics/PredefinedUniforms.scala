@@ -21,6 +21,7 @@
 package simplex3d.engine
 package graphics
 
+import java.nio.ByteBuffer
 import simplex3d.math.types._
 import simplex3d.math._
 import simplex3d.math.double._
@@ -90,4 +91,34 @@ object PredefinedUniforms {
     
     "se_pointSpriteSize"
   ))
+  
+  
+  /** Per-frame uniforms shared by all the programs. When uniform buffers are available, they are declared
+   * in this std140 block and uploaded once per frame, otherwise they are declared as plain uniforms.
+   * 
+   * Environmental effects, such as lighting and fog, have no block: their struct and array bindings
+   * are resolved per mesh, so they remain plain uniforms skipped by the per-program uniform shadow.
+   */
+  final val FrameBlock = new Std140Layout("se_FrameBlock", Seq(
+    "mat4" -> "se_projectionMatrix",
+    "mat4x3" -> "se_viewMatrix",
+    "ivec2" -> "se_viewDimensions",
+    "float" -> "se_timeTotal",
+    "float" -> "se_timeInterval"
+  ))
+  
+  /** Binding point of the frame block.
+   */
+  final val FrameBlockBinding = 0
+  
+  private[this] val frameBlockIndices = FrameBlock.names.map(BindingNames.indexOf(_)).toArray
+  
+  /** Packs the per-frame uniforms into the buffer at the offset using FrameBlock layout.
+   */
+  def packFrameBlock(uniforms: ReadPredefinedUniforms, buffer: ByteBuffer, offset: Int) {
+    var i = 0; while (i < frameBlockIndices.length) {
+      FrameBlock.write(buffer, offset, i, uniforms.bindings(frameBlockIndices(i)))
+      i += 1
+    }
+  }
 }
@@ -34,6 +34,13 @@ trait RenderContext {
   def init(texture: Texture[_]) :Unit
   def release(texture: Texture[_]) :Unit
   
+  /** Makes the levels of a streamed texture resident from the given level to the coarsest one,
+   * uploading the missing levels and releasing the finer ones.
+   * 
+   * @return the number of bytes uploaded.
+   */
+  def updateResidency(texture: Texture2d[_], level: Int) :Long
+  
   def clearFrameBuffer() :Unit
   def viewportDimensions() :ConstVec2i
   
@@ -32,7 +32,11 @@ trait RenderManager {
   def renderContext: RenderContext
   
   def render(time: TimeStamp, camera: AbstractCamera, renderArray: SortBuffer[AbstractMesh]) :Unit
-  def sortRenderArray(pass: Pass, renderArray: SortBuffer[AbstractMesh]) :Unit
+  
+  /** Renders a captured frame, using the camera and world matrices stored in the packet.
+   */
+  def render(packet: FramePacket) :Unit
+  def sortRenderArray(pass: Pass, camera: AbstractCamera, renderArray: SortBuffer[AbstractMesh]) :Unit
   
   
   var showNormals = false
@@ -0,0 +1,81 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine
+package graphics
+
+
+/** Packs the render state of a mesh into a 64-bit key, so the render array can be radix sorted.
+ * Keys are compared as unsigned values, the fields from the most significant bits down are:
+ * 
+ * opaque: layer(4), 0(1), program(12), textures(14), environment(13), depth(20).
+ * 
+ * transparent: layer(4), 1(1), inverted depth(20), program(12), textures(14), environment(13).
+ * 
+ * Opaque meshes are grouped by state and then sorted front to back. Transparent meshes are rendered
+ * after the opaque ones in the same layer and sorted back to front. Ids are masked to fit their fields,
+ * so colliding ids only reduce batching and do not affect the correctness.
+ */
+object SortKey {
+  final val LayerBits = 4
+  final val ProgramBits = 12
+  final val TexturesBits = 14
+  final val EnvironmentBits = 13
+  final val DepthBits = 20
+  
+  private final val StateBits = ProgramBits + TexturesBits + EnvironmentBits
+  private final val TransparentShift = 63 - LayerBits
+  private final val LayerShift = 64 - LayerBits
+  
+  private final val DepthMask = (1 << DepthBits) - 1
+  
+  private def state(program: Int, textures: Int, environment: Int) :Long = {
+    ((program & ((1L << ProgramBits) - 1)) << (TexturesBits + EnvironmentBits)) |
+    ((textures & ((1L << TexturesBits) - 1)) << EnvironmentBits) |
+    (environment & ((1L << EnvironmentBits) - 1))
+  }
+  
+  private def layer(layer: Int) :Long = (layer & ((1L << LayerBits) - 1)) << LayerShift
+  
+  def opaque(layer: Int, program: Int, textures: Int, environment: Int, depth: Double) :Long = {
+    this.layer(layer) |
+    (state(program, textures, environment) << DepthBits) |
+    quantizeDepth(depth)
+  }
+  
+  def transparent(layer: Int, program: Int, textures: Int, environment: Int, depth: Double) :Long = {
+    this.layer(layer) |
+    (1L << TransparentShift) |
+    ((DepthMask - quantizeDepth(depth)).toLong << StateBits) |
+    state(program, textures, environment)
+  }
+  
+  /** Maps the view depth to DepthBits. Uses the top bits of the float representation,
+   * which keeps the ordering and gives more precision to the nearby objects. Negative depth is clamped to 0.
+   */
+  def quantizeDepth(depth: Double) :Int = {
+    val clamped = if (depth > 0) depth.toFloat else 0f
+    java.lang.Float.floatToRawIntBits(clamped) >>> (31 - DepthBits)
+  }
+  
+  /** Spreads the hash bits, so masked hashes make better ids.
+   */
+  def hashId(hash: Int) :Int = hash ^ (hash >>> 16) ^ (hash >>> 7)
+}
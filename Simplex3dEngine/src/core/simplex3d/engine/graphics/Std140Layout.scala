@@ -0,0 +1,173 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine
+package graphics
+
+import java.nio.ByteBuffer
+import simplex3d.math._
+import simplex3d.math.types._
+import simplex3d.math.double._
+import simplex3d.engine.util._
+
+
+/** Offsets of uniform block members packed with the std140 rules.
+ *
+ * Scalars take 4 bytes, two component vectors are aligned to 8 bytes, three and four component vectors
+ * are aligned to 16 bytes. Matrices are stored column-major, each column is aligned to 16 bytes.
+ * The block size is rounded up to 16 bytes. Arrays and structs are not supported.
+ *
+ * @param members (glslType, name) pairs in declaration order.
+ */
+final class Std140Layout(val name: String, members: Seq[(String, String)]) {
+  import Std140Layout._
+  
+  val glslTypes: ReadArray[String] = new ReadArray(members.map(_._1).toArray)
+  val names: ReadArray[String] = new ReadArray(members.map(_._2).toArray)
+  
+  private[this] val kinds = members.map(m => kindOf(m._1)).toArray
+  
+  val offsets: ReadArray[Int] = {
+    val result = new Array[Int](kinds.length)
+    var offset = 0
+    
+    var i = 0; while (i < kinds.length) {
+      val kind = kinds(i)
+      offset = align(offset, memberAlignment(kind))
+      result(i) = offset
+      offset += memberSize(kind)
+      i += 1
+    }
+    
+    new ReadArray(result)
+  }
+  
+  /** Size of the block in bytes, a multiple of 16.
+   */
+  val size: Int = if (kinds.isEmpty) 0 else align(offsets(kinds.length - 1) + memberSize(kinds.last), 16)
+  
+  def indexOf(name: String) :Int = names.indexOf(name)
+  
+  /** GLSL declaration of the block.
+   */
+  def declaration: String = {
+    "layout(std140) uniform " + name + " {\n" +
+    (for (i <- 0 until names.size) yield "  " + glslTypes(i) + " " + names(i) + ";").mkString("\n") +
+    "\n};"
+  }
+  
+  
+  /** Writes the value of the member at base + offset. The buffer must use the native byte order.
+   */
+  def write(buffer: ByteBuffer, base: Int, member: Int, value: MathType) {
+    val o = base + offsets(member)
+    
+    kinds(member) match {
+      case Float =>
+        buffer.putFloat(o, value.asInstanceOf[ReadDoubleRef].toConst.toFloat)
+      case Vec2 =>
+        val u = value.asInstanceOf[ReadVec2]
+        buffer.putFloat(o, u.x.toFloat); buffer.putFloat(o + 4, u.y.toFloat)
+      case Vec3 =>
+        val u = value.asInstanceOf[ReadVec3]
+        buffer.putFloat(o, u.x.toFloat); buffer.putFloat(o + 4, u.y.toFloat); buffer.putFloat(o + 8, u.z.toFloat)
+      case Vec4 =>
+        val u = value.asInstanceOf[ReadVec4]
+        buffer.putFloat(o, u.x.toFloat); buffer.putFloat(o + 4, u.y.toFloat)
+        buffer.putFloat(o + 8, u.z.toFloat); buffer.putFloat(o + 12, u.w.toFloat)
+      case Int =>
+        buffer.putInt(o, value.asInstanceOf[ReadIntRef].toConst)
+      case Vec2i =>
+        val u = value.asInstanceOf[ReadVec2i]
+        buffer.putInt(o, u.x); buffer.putInt(o + 4, u.y)
+      case Vec3i =>
+        val u = value.asInstanceOf[ReadVec3i]
+        buffer.putInt(o, u.x); buffer.putInt(o + 4, u.y); buffer.putInt(o + 8, u.z)
+      case Vec4i =>
+        val u = value.asInstanceOf[ReadVec4i]
+        buffer.putInt(o, u.x); buffer.putInt(o + 4, u.y); buffer.putInt(o + 8, u.z); buffer.putInt(o + 12, u.w)
+      case kind =>
+        writeMatrix(buffer, o, kind >> 4, kind & 0xF, value.asInstanceOf[AnyMat[_]])
+    }
+  }
+  
+  private[this] def writeMatrix(buffer: ByteBuffer, o: Int, columns: Int, rows: Int, m: AnyMat[_]) {
+    import simplex3d.math.Accessors._
+    
+    def column(c: Int, r0: Float, r1: Float, r2: => Float, r3: => Float) {
+      val co = o + c*16
+      buffer.putFloat(co, r0); buffer.putFloat(co + 4, r1)
+      if (rows > 2) buffer.putFloat(co + 8, r2)
+      if (rows > 3) buffer.putFloat(co + 12, r3)
+    }
+    
+    column(0, f00(m), f01(m), f02(m), f03(m))
+    column(1, f10(m), f11(m), f12(m), f13(m))
+    if (columns > 2) column(2, f20(m), f21(m), f22(m), f23(m))
+    if (columns > 3) column(3, f30(m), f31(m), f32(m), f33(m))
+  }
+}
+
+
+object Std140Layout {
+  private final val Float = 1
+  private final val Vec2 = 2
+  private final val Vec3 = 3
+  private final val Vec4 = 4
+  private final val Int = 5
+  private final val Vec2i = 6
+  private final val Vec3i = 7
+  private final val Vec4i = 8
+  // Matrices are encoded as (columns << 4) | rows.
+  
+  private def kindOf(glslType: String) :scala.Int = glslType match {
+    case "float" => Float
+    case "vec2" => Vec2
+    case "vec3" => Vec3
+    case "vec4" => Vec4
+    case "int" => Int
+    case "ivec2" => Vec2i
+    case "ivec3" => Vec3i
+    case "ivec4" => Vec4i
+    case "mat2" => (2 << 4) | 2
+    case "mat3" => (3 << 4) | 3
+    case "mat4" => (4 << 4) | 4
+    case _ if glslType.matches("mat[234]x[234]") => ((glslType(3) - '0') << 4) | (glslType(5) - '0')
+    case _ => throw new IllegalArgumentException("Type '" + glslType + "' is not supported in uniform blocks.")
+  }
+  
+  private def memberAlignment(kind: scala.Int) :scala.Int = kind match {
+    case Float | Int => 4
+    case Vec2 | Vec2i => 8
+    case _ => 16
+  }
+  
+  private def memberSize(kind: scala.Int) :scala.Int = kind match {
+    case Float | Int => 4
+    case Vec2 | Vec2i => 8
+    case Vec3 | Vec3i => 12
+    case Vec4 | Vec4i => 16
+    case matrix => (matrix >> 4)*16
+  }
+  
+  private def align(offset: scala.Int, alignment: scala.Int) :scala.Int = {
+    (offset + alignment - 1)/alignment*alignment
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine
+package graphics
+
+import java.util.concurrent.ConcurrentHashMap
+
+
+/** Compact identity of the structure of a Geometry, Material, or Environment.
+ *
+ * The structure is everything that affects technique resolution: the defined properties and their types,
+ * the list sizes, and the enum values. Signatures are interned, so the same structure is always represented
+ * by the same instance, and signatures are cheap to hash and to compare. The 64-bit hash only locates
+ * the interned instance, hash collisions are resolved by comparing the structural keys.
+ *
+ * The hash is the same across runs, as long as the structure is described by the same classes and enums.
+ */
+final class StructuralSignature private (val hash: Long, private val key: IndexedSeq[AnyRef]) {
+  
+  override def equals(other: Any) :Boolean = {
+    if (this.eq(other.asInstanceOf[AnyRef])) true
+    else other match {
+      case s: StructuralSignature => s.hash == hash && s.key == key
+      case _ => false
+    }
+  }
+  
+  override def hashCode :Int = (hash ^ (hash >>> 32)).toInt
+  
+  override def toString :String = "StructuralSignature(" + java.lang.Long.toHexString(hash) + ")"
+}
+
+
+object StructuralSignature {
+  private[this] val interned = new ConcurrentHashMap[StructuralSignature, StructuralSignature]
+  
+  /** @param key the structural key, made of java maps, sequences, and immutable values.
+   *        The key must not be modified once the signature is created.
+   * @return the interned signature for the key.
+   */
+  def apply(key: IndexedSeq[AnyRef]) :StructuralSignature = {
+    val signature = new StructuralSignature(hash(key), key)
+    val existing = interned.putIfAbsent(signature, signature)
+    if (existing != null) existing else signature
+  }
+  
+  /** Number of distinct structures seen so far.
+   */
+  def internedCount: Int = interned.size
+  
+  private final val Prime = 0x100000001b3L
+  
+  private def mix(value: Long) :Long = {
+    var z = value + 0x9e3779b97f4a7c15L
+    z = (z ^ (z >>> 30))*0xbf58476d1ce4e5b9L
+    z = (z ^ (z >>> 27))*0x94d049bb133111ebL
+    z ^ (z >>> 31)
+  }
+  
+  /** Sequences are hashed in order, the entries of maps are hashed in any order.
+   * Classes are hashed by name, so the hash of a structure does not change between runs.
+   */
+  def hash(value: Any) :Long = value match {
+    case null =>
+      0L
+    
+    case c: Class[_] =>
+      hash(c.getName)
+    
+    case l: java.lang.Long =>
+      mix(l.longValue)
+    
+    case map: java.util.Map[_, _] =>
+      var h = 0L
+      val iterator = map.entrySet.iterator
+      while (iterator.hasNext) {
+        val entry = iterator.next()
+        h += mix(hash(entry.getKey)*Prime + hash(entry.getValue))
+      }
+      mix(h + map.size)
+    
+    case seq: IndexedSeq[_] =>
+      var h = seq.size.toLong
+      var i = 0; while (i < seq.size) {
+        h = mix(h*Prime + hash(seq(i)))
+        i += 1
+      }
+      h
+    
+    case _ =>
+      mix(value.hashCode)
+  }
+}
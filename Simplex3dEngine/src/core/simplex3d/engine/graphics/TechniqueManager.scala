@@ -33,4 +33,13 @@ abstract class TechniqueManager[G <: GraphicsContext] {
     meshName: String, shaderDebugging: ShaderDebugging,
     geometry: G#Geometry, material: G#Material, worldEnvironment: G#Environment
   ) :Technique
+  
+  /** Looks up a technique that was already resolved for the same structure, without resolving a new one.
+   * Must be safe to call from multiple threads.
+   * 
+   * @return the cached technique, or null when the technique must be resolved.
+   */
+  def findTechnique(geometry: G#Geometry, material: G#Material, worldEnvironment: G#Environment) :Technique = {
+    null
+  }
 }
@@ -120,7 +120,8 @@ object TextureWrap extends Enumeration {
 class Texture2d[A <: Accessor] private (
   final val dimensions: ConstVec2i,
   accessible: ReadData[A] with DirectSrc with ContiguousSrc,
-  linked: DirectSrc with ContiguousSrc
+  linked: DirectSrc with ContiguousSrc,
+  mipChain: IndexedSeq[(ConstVec2i, DirectSrc with ContiguousSrc)]
 )
 extends Texture[A](accessible, linked) with Concrete
 {
@@ -138,6 +139,24 @@ extends Texture[A](accessible, linked) with Concrete
   final def bindingDimensions = dimensions
   
   
+  /** Streamed textures carry a precomputed mip chain, their levels are uploaded and released
+   * by a TextureStreamer. Other textures are uploaded at once and have their mipmaps generated.
+   */
+  final def isStreamed = (mipChain != null)
+  
+  /** Number of mip levels, including the base level.
+   */
+  final def levelCount: Int = if (isStreamed) mipChain.size + 1 else 1
+  
+  final def levelDimensions(level: Int) :ConstVec2i = if (level == 0) dimensions else mipChain(level - 1)._1
+  final def levelSrc(level: Int) :DirectSrc with ContiguousSrc = if (level == 0) src else mipChain(level - 1)._2
+  final def levelBytes(level: Int) :Long = levelSrc(level).byteCapacity
+  
+  /** The finest level uploaded by the backend, levelCount when the texture is not uploaded.
+   */
+  private[engine] var residentLevel = levelCount
+  
+  
   /** Fill the texture with pixels obtained from the function.
    * 
    * @param function (dimensions, pixelCoordinates) => pixelValue
@@ -188,14 +207,37 @@ object Texture2d {
   {
     val primitive = implicitly[PrimitiveFactory[RDouble, UByte]]
     val data = composition.mkDataBuffer(primitive.mkDataBuffer(dimensions.x*dimensions.y*composition.components))
-    new Texture2d[F#Accessor](dimensions, data, null)
+    new Texture2d[F#Accessor](dimensions, data, null, null)
   }
   
   def fromData[A <: Accessor](
     dimensions: ConstVec2i, data: ReadData[A] with DirectSrc with ContiguousSrc
   )
   :Texture2d[A] = {
-    new Texture2d(dimensions, data, null)
+    new Texture2d(dimensions, data, null, null)
+  }
+  
+  /** Creates a streamed texture from a complete mip chain, starting with the base level
+   * and ending with the 1x1 level.
+   */
+  def fromMipChain[A <: Accessor](
+    levels: IndexedSeq[(ConstVec2i, ReadData[A] with DirectSrc with ContiguousSrc)]
+  )
+  :Texture2d[A] = {
+    if (levels.isEmpty) throw new IllegalArgumentException("The mip chain must not be empty.")
+    
+    var i = 1; while (i < levels.size) {
+      val (previous, dims) = (levels(i - 1)._1, levels(i)._1)
+      if (dims != ConstVec2i(max(previous.x/2, 1), max(previous.y/2, 1)) || levels(i)._2.size != dims.x*dims.y) {
+        throw new IllegalArgumentException("Level " + i + " does not match the mip chain dimensions.")
+      }
+      i += 1
+    }
+    val last = levels.last._1
+    if (last.x != 1 || last.y != 1) throw new IllegalArgumentException("The mip chain must end with a 1x1 level.")
+    
+    val (dimensions, data) = levels(0)
+    new Texture2d(dimensions, data, null, levels.drop(1))
   }
 
   def fromUncheckedSrc[A <: Accessor](
@@ -209,7 +251,7 @@ object Texture2d {
       fromData(dimensions, src.asInstanceOf[Data[A] with DirectSrc with ContiguousSrc])
     }
     else {
-      new Texture2d(dimensions, null, src)
+      new Texture2d(dimensions, null, src, null)
     }
   }
 }
@@ -0,0 +1,277 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine
+package graphics
+
+import java.util.{ Comparator, HashMap, PriorityQueue }
+import scala.collection.mutable.ArrayBuffer
+
+
+/** Keeps the mip levels of streamed textures resident according to their size on screen.
+ *
+ * Visible meshes request the level their textures need, usually while building the render array.
+ * Once per frame the missing levels are uploaded coarse to fine, one level per texture at a time,
+ * until the upload budget or the time slice is used up. A texture that is requested for the first time
+ * gets all the levels up to coarseSize in a single step.
+ *
+ * When the resident levels would exceed the memory budget, the fine levels of the textures
+ * that were requested least recently are released down to the coarse levels. Levels finer than
+ * currently required are released after that. Only the textures requested from the streamer are
+ * counted against the memory budget.
+ *
+ * @param memoryBudget bytes of resident texture levels.
+ * @param uploadBudget bytes uploaded per frame, at least one level is uploaded every frame.
+ * @param evictionDelay frames without requests after which all the fine levels of a texture may be released.
+ * @param coarseSize the largest dimension of the levels uploaded when a texture is requested for the first time.
+ */
+final class TextureStreamer(
+  var memoryBudget: Long = 256L*1024*1024,
+  var uploadBudget: Long = 4L*1024*1024,
+  var evictionDelay: Int = 60,
+  var coarseSize: Int = 64
+) {
+  import TextureStreamer._
+  
+  /** Added to the required level, positive values trade sharpness for memory.
+   */
+  var lodBias = 0.0
+  
+  private[this] val tracked = new HashMap[Texture2d[_], Residency]
+  private[this] val residencies = new ArrayBuffer[Residency]
+  private[this] val uploadQueue = new PriorityQueue[Residency](16, CoarseFirst)
+  
+  private[this] var frame = 0L
+  private[this] var _residentBytes = 0L
+  private[this] var _uploadedBytes = 0L
+  private[this] var _pendingTextures = 0
+  
+  /** Bytes of the resident levels of the tracked textures, as of the last update.
+   */
+  def residentBytes = _residentBytes
+  
+  /** Bytes uploaded during the last update.
+   */
+  def uploadedBytes = _uploadedBytes
+  
+  /** Number of textures with missing levels as of the last update.
+   */
+  def pendingTextures = _pendingTextures
+  
+  
+  /** The level with texels closest to the screen pixels, for a texture mapped once across
+   * an object that is pixelSize pixels across.
+   */
+  def requiredLevel(texture: Texture2d[_], pixelSize: Double) :Int = {
+    val size = scala.math.max(texture.dimensions.x, texture.dimensions.y)
+    val level = scala.math.floor(scala.math.log(size/pixelSize)/Log2 + lodBias)
+    
+    if (level.isNaN) 0
+    else scala.math.min(scala.math.max(level, 0), texture.levelCount - 1).toInt
+  }
+  
+  /** Requests the texture levels for an object that is pixelSize pixels across on screen.
+   * Non-streamed textures are ignored.
+   */
+  def request(texture: Texture2d[_], pixelSize: Double) {
+    if (texture.isStreamed) requestLevel(texture, requiredLevel(texture, pixelSize))
+  }
+  
+  /** Requests the texture levels from the given level to the coarsest one.
+   * The finest level requested during a frame is made resident.
+   */
+  def requestLevel(texture: Texture2d[_], level: Int) {
+    if (!texture.isStreamed) return
+    
+    var residency = tracked.get(texture)
+    if (residency == null) {
+      residency = new Residency(texture)
+      tracked.put(texture, residency)
+      residencies += residency
+    }
+    
+    if (residency.lastRequest != frame) {
+      residency.lastRequest = frame
+      residency.required = level
+    }
+    else if (level < residency.required) {
+      residency.required = level
+    }
+  }
+  
+  /** Stops tracking the texture, its resident levels are left to the backend.
+   */
+  def forget(texture: Texture2d[_]) {
+    val residency = tracked.remove(texture)
+    if (residency != null) residencies -= residency
+  }
+  
+  
+  /** Uploads the missing levels and releases the unused ones, must be called once per frame
+   * on the rendering thread.
+   *
+   * @param timeSlice seconds available for uploads.
+   */
+  def update(context: RenderContext, timeSlice: Double) {
+    val deadline = System.nanoTime + (timeSlice*1e9).toLong
+    _uploadedBytes = 0
+    
+    // Forget the textures released by the backend that are no longer requested.
+    var i = 0; while (i < residencies.size) {
+      val r = residencies(i)
+      if (!r.isUploaded && frame - r.lastRequest > evictionDelay) {
+        tracked.remove(r.texture)
+        residencies(i) = residencies(residencies.size - 1)
+        residencies.remove(residencies.size - 1)
+      }
+      else i += 1
+    }
+    
+    // Textures are uploaded by the backend when they are bound, so the resident size is recounted every frame.
+    _residentBytes = 0
+    i = 0; while (i < residencies.size) {
+      _residentBytes += residencies(i).residentBytes
+      i += 1
+    }
+    
+    if (_residentBytes > memoryBudget) evict(context, _residentBytes - memoryBudget, null)
+    
+    uploadQueue.clear()
+    i = 0; while (i < residencies.size) {
+      val r = residencies(i)
+      if (r.lastRequest == frame && r.texture.residentLevel > r.required) uploadQueue.add(r)
+      i += 1
+    }
+    
+    var done = false
+    while (!done && !uploadQueue.isEmpty) {
+      val r = uploadQueue.peek
+      val resident = r.texture.residentLevel
+      val target = if (r.isUploaded) resident - 1 else scala.math.max(r.required, coarseLevel(r.texture))
+      val bytes = r.bytesFrom(target) - r.bytesFrom(resident)
+      
+      if (_uploadedBytes > 0 && (_uploadedBytes + bytes > uploadBudget || System.nanoTime > deadline)) {
+        done = true
+      }
+      else {
+        uploadQueue.poll()
+        
+        val available = memoryBudget - _residentBytes
+        if (bytes <= available || evict(context, bytes - available, r) >= bytes - available) {
+          _uploadedBytes += context.updateResidency(r.texture, target)
+          _residentBytes += bytes
+          
+          if (target > r.required) uploadQueue.add(r)
+        }
+      }
+    }
+    _pendingTextures = uploadQueue.size
+    uploadQueue.clear()
+    
+    frame += 1
+  }
+  
+  /** Finest level with both dimensions within coarseSize.
+   */
+  private[this] def coarseLevel(texture: Texture2d[_]) :Int = {
+    var level = 0
+    while (level < texture.levelCount - 1 && {
+      val dims = texture.levelDimensions(level)
+      dims.x > coarseSize || dims.y > coarseSize
+    }) level += 1
+    level
+  }
+  
+  /** Releases the fine levels, starting with the textures requested least recently.
+   *
+   * @return the number of bytes released.
+   */
+  private[this] def evict(context: RenderContext, needed: Long, keep: Residency) :Long = {
+    val candidates = residencies.filter(r => (r ne keep) && r.isUploaded).sortBy(_.lastRequest)
+    var released = 0L
+    
+    def release(r: Residency, level: Int) {
+      val resident = r.texture.residentLevel
+      if (level > resident) {
+        val bytes = r.bytesFrom(resident) - r.bytesFrom(level)
+        context.updateResidency(r.texture, level)
+        released += bytes
+        _residentBytes -= bytes
+      }
+    }
+    
+    // Textures that were not requested recently keep only the coarse levels.
+    var i = 0; while (released < needed && i < candidates.size) {
+      val r = candidates(i)
+      if (frame - r.lastRequest > evictionDelay) release(r, coarseLevel(r.texture))
+      i += 1
+    }
+    
+    // Then the levels finer than currently required, and finally the textures that are not visible this frame.
+    i = 0; while (released < needed && i < candidates.size) {
+      val r = candidates(i)
+      if (r.lastRequest == frame) release(r, r.required)
+      i += 1
+    }
+    i = 0; while (released < needed && i < candidates.size) {
+      val r = candidates(i)
+      if (r.lastRequest != frame) release(r, coarseLevel(r.texture))
+      i += 1
+    }
+    
+    released
+  }
+}
+
+
+object TextureStreamer {
+  private final val Log2 = scala.math.log(2)
+  
+  private final class Residency(val texture: Texture2d[_]) {
+    var required = texture.levelCount - 1
+    var lastRequest = -1L
+    
+    // Bytes of the levels from the given level to the coarsest one.
+    private[this] val suffixBytes = {
+      val count = texture.levelCount
+      val bytes = new Array[Long](count + 1)
+      var level = count - 1; while (level >= 0) {
+        bytes(level) = bytes(level + 1) + texture.levelBytes(level)
+        level -= 1
+      }
+      bytes
+    }
+    
+    def bytesFrom(level: Int) :Long = suffixBytes(level)
+    def isUploaded = (texture.residentLevel < texture.levelCount)
+    def residentBytes = bytesFrom(texture.residentLevel)
+  }
+  
+  /** Textures with the coarsest resident level first, then the ones with the most missing levels.
+   */
+  private object CoarseFirst extends Comparator[Residency] {
+    def compare(a: Residency, b: Residency) :Int = {
+      val ar = a.texture.residentLevel
+      val br = b.texture.residentLevel
+      if (ar != br) br - ar
+      else a.required - b.required
+    }
+  }
+}
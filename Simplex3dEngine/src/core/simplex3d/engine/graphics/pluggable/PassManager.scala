@@ -31,14 +31,27 @@ import simplex3d.engine.graphics._
 class PassManager[G <: graphics.GraphicsContext] extends graphics.PassManager[G] {
   
   private val singlePass = new Pass(new FrameBuffer(Vec2i(100))) //XXX get framebuffer from renderContext, keep track of viewport changes
-  private val renderArray = new SortBuffer[AbstractMesh]()
+  private val packet = new FramePacket
   
   def render(renderManager: RenderManager, time: TimeStamp, scene: ManagedScene[G]) {
-    renderManager.renderContext.clearFrameBuffer()
-    renderArray.clear()
+    prepare(renderManager, time, scene, packet)
+    render(renderManager, packet)
+  }
+  
+  def prepare(renderManager: RenderManager, time: TimeStamp, scene: ManagedScene[G], packet: FramePacket) {
+    packet.clear(time)
+    
+    scene.buildRenderArray(singlePass, time, packet.renderArray)
     
-    scene.buildRenderArray(singlePass, time, renderArray)
-    renderManager.sortRenderArray(singlePass, renderArray)
-    renderManager.render(time, scene.camera, renderArray)
+    val sortStart = Profiler.start()
+    renderManager.sortRenderArray(singlePass, scene.camera, packet.renderArray)
+    Profiler.stop(Profiler.Sort, sortStart)
+    
+    packet.capture(scene.camera)
+  }
+  
+  def render(renderManager: RenderManager, packet: FramePacket) {
+    renderManager.renderContext.clearFrameBuffer()
+    renderManager.render(packet)
   }
 }
@@ -0,0 +1,211 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine
+package graphics.pluggable
+
+import java.io._
+import java.util.logging._
+import scala.collection.mutable.HashSet
+
+
+/** Stores resolved techniques on disk, so they do not have to be resolved again on the next launch.
+ *
+ * Entries are grouped by the hash of the shader pack contents, and keyed by the structural signature
+ * of the geometry, material, and environment. Each entry holds the resolved prototype chain, as indices
+ * in the push order, and the generated GLSL of every shader in the technique. When the shader pack changes,
+ * its hash changes too, and the entries of the previous pack are removed the first time the new pack is used.
+ * The cache directory must not be shared by applications with different shader packs.
+ *
+ * IO errors are logged and otherwise ignored, the techniques are then resolved as usual.
+ */
+final class PersistentTechniqueCache(val directory: File) {
+  import PersistentTechniqueCache._
+  import PersistentTechniqueCache.logger._
+  
+  private[this] val cleanedPacks = new HashSet[Long]
+  
+  
+  private[this] def hex(value: Long) :String = {
+    val s = java.lang.Long.toHexString(value)
+    "0000000000000000".substring(s.length) + s
+  }
+  
+  private[this] def packDirectory(packHash: Long) :File = new File(directory, hex(packHash))
+  private[this] def entryFile(packHash: Long, key: Long) :File = new File(packDirectory(packHash), hex(key) + Extension)
+  
+  private[this] def delete(file: File) {
+    if (file.isDirectory) {
+      val children = file.listFiles()
+      var i = 0; while (children != null && i < children.length) {
+        delete(children(i))
+        i += 1
+      }
+    }
+    if (!file.delete()) log(Level.WARNING, "Unable to delete '" + file + "'.")
+  }
+  
+  /** Removes the entries of the other shader packs.
+   */
+  private[this] def removeStale(packHash: Long) :Unit = synchronized {
+    if (cleanedPacks.contains(packHash)) return
+    cleanedPacks += packHash
+    
+    val current = hex(packHash)
+    val children = directory.listFiles()
+    var i = 0; while (children != null && i < children.length) {
+      val child = children(i)
+      if (child.isDirectory && child.getName.length == 16 && child.getName != current) delete(child)
+      i += 1
+    }
+  }
+  
+  
+  /** @return the stored entry, or null if there is no valid entry for the key.
+   */
+  def load(packHash: Long, key: Long) :Entry = {
+    removeStale(packHash)
+    
+    val file = entryFile(packHash, key)
+    if (!file.isFile) return null
+    
+    var in: DataInputStream = null
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))
+      
+      if (in.readInt() != Magic || in.readInt() != Version || in.readLong() != packHash || in.readLong() != key) {
+        null
+      }
+      else {
+        val size = in.readInt()
+        val chain = new Array[Int](size)
+        val sources = new Array[String](size)
+        
+        var i = 0; while (i < size) {
+          chain(i) = in.readInt()
+          sources(i) = readString(in)
+          i += 1
+        }
+        
+        val fragmentMain = readString(in)
+        val vertexMain = readString(in)
+        
+        new Entry(chain, sources, fragmentMain, vertexMain)
+      }
+    }
+    catch {
+      // Corrupted entries can also fail with runtime exceptions, such as negative array sizes.
+      case e: Exception =>
+        log(Level.WARNING, "Unable to read the cached technique '" + file + "'.", e)
+        null
+    }
+    finally {
+      if (in != null) in.close()
+    }
+  }
+  
+  /** The entry is written to a temporary file first, so a partially written entry is never loaded.
+   */
+  def store(packHash: Long, key: Long, entry: Entry) {
+    removeStale(packHash)
+    
+    val file = entryFile(packHash, key)
+    val tmp = new File(file.getPath + ".tmp")
+    
+    var out: DataOutputStream = null
+    try {
+      file.getParentFile.mkdirs()
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))
+      
+      out.writeInt(Magic)
+      out.writeInt(Version)
+      out.writeLong(packHash)
+      out.writeLong(key)
+      
+      out.writeInt(entry.chain.length)
+      var i = 0; while (i < entry.chain.length) {
+        out.writeInt(entry.chain(i))
+        writeString(out, entry.sources(i))
+        i += 1
+      }
+      
+      writeString(out, entry.fragmentMain)
+      writeString(out, entry.vertexMain)
+      
+      out.close()
+      out = null
+      
+      if (!tmp.renameTo(file)) {
+        file.delete()
+        if (!tmp.renameTo(file)) throw new IOException("Unable to rename '" + tmp + "'.")
+      }
+    }
+    catch {
+      case e: IOException =>
+        log(Level.WARNING, "Unable to write the cached technique '" + file + "'.", e)
+        tmp.delete()
+    }
+    finally {
+      if (out != null) out.close()
+    }
+  }
+  
+  /** Removes all the entries.
+   */
+  def clear() :Unit = synchronized {
+    val children = directory.listFiles()
+    var i = 0; while (children != null && i < children.length) {
+      delete(children(i))
+      i += 1
+    }
+  }
+}
+
+
+object PersistentTechniqueCache {
+  private final val logger = Logger.getLogger(classOf[PersistentTechniqueCache].getName)
+  
+  private final val Magic = 0x53335443
+  private final val Version = 1
+  private final val Extension = ".technique"
+  
+  /** @param chain the indices of the resolved prototypes, in the order they were pushed.
+   * @param sources the generated GLSL of each prototype in the chain.
+   */
+  final class Entry(
+    val chain: Array[Int],
+    val sources: Array[String],
+    val fragmentMain: String,
+    val vertexMain: String
+  )
+  
+  
+  private def writeString(out: DataOutputStream, s: String) {
+    val bytes = s.getBytes("UTF-8")
+    out.writeInt(bytes.length)
+    out.write(bytes)
+  }
+  
+  private def readString(in: DataInputStream) :String = {
+    val bytes = new Array[Byte](in.readInt())
+    in.readFully(bytes)
+    new String(bytes, "UTF-8")
+  }
+}
@@ -265,6 +265,35 @@ object ShaderPrototype {
     }).mkString("\n")
   }
   
+  private[pluggable] def isFrameBlockMember(declaration: Declaration) :Boolean = {
+    val block = PredefinedUniforms.FrameBlock
+    val index = block.indexOf(declaration.name)
+    index >= 0 && !declaration.isArray && block.glslTypes(index) == declaration.glslType
+  }
+  
+  /** Declares the per-frame uniforms using the frame block when uniform buffers are supported by the driver,
+   * and as plain uniforms otherwise. The block must be declared in full, so that it matches across all
+   * the shaders in a program.
+   */
+  def frameBlockDeclaration(declarations: Iterable[Declaration]) :String = {
+    if (declarations.isEmpty) return ""
+    
+    "#ifdef GL_ARB_uniform_buffer_object\n" +
+    PredefinedUniforms.FrameBlock.declaration + "\n" +
+    "#else\n" +
+    varDeclaration(Some("uniform"), declarations) + "\n" +
+    "#endif"
+  }
+  
+  def frameBlockExtension(declarations: Iterable[Declaration]) :String = {
+    if (declarations.isEmpty) ""
+    else {
+      "#ifdef GL_ARB_uniform_buffer_object\n" +
+      "#extension GL_ARB_uniform_buffer_object : enable\n" +
+      "#endif"
+    }
+  }
+  
   def nestedSamplerDeclaration(nestedSamplers: Iterable[NestedSampler]) :String =  {
     if (nestedSamplers.isEmpty) return ""
     
@@ -376,13 +405,16 @@ object ShaderPrototype {
       val (mainVarRemapping, signature) = bodySignature(shader)
       
       val remapping = varyingRemapping ++ mainVarRemapping
+      val (frameUniforms, uniforms) = shader.uniformBlock.partition(isFrameBlockMember)
       
       formatBlock("#version " + shader.versionString) +
+      formatBlock(frameBlockExtension(frameUniforms)) +
       formatBlock(sizeDeclaration(shader.sizedArraykeys)) +
       formatBlock(sizeDeclaration(arrayDeclarations)) +
       formatBlock(structDeclaration(shader.structs)) +
       formatBlock(varDeclaration(Some("attribute"), shader.attributeBlock)) +
-      formatBlock(varDeclaration(Some("uniform"), shader.uniformBlock)) +
+      formatBlock(frameBlockDeclaration(frameUniforms)) +
+      formatBlock(varDeclaration(Some("uniform"), uniforms)) +
       formatBlock(nestedSamplerDeclaration(shader.nestedSamplers)) +
       formatBlock(interfaceDeclarations) +
       formatBlock(functionDeclaration(shader.functionDependencies)) +
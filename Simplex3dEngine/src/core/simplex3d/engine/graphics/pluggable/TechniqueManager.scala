@@ -26,6 +26,7 @@ import java.util.logging._
 import java.util.HashMap
 import java.util.HashSet
 import java.util.Stack
+import java.util.concurrent.ConcurrentHashMap
 import scala.collection._
 import scala.collection.mutable.ArrayBuffer
 import simplex3d.math.double._
@@ -113,8 +114,51 @@ extends graphics.TechniqueManager[G]
       case Shader.Fragment => stages(0).push(shader)
       case Shader.Vertex => stages(1).push(shader)
     }
+    
+    pushed.put(shader, pushOrder.size)
+    pushOrder += shader
+    packHash = StructuralSignature.hash(IndexedSeq(packHash, prototypeKey(shader)))
+  }
+  
+  
+  // Pushed prototypes and their indices, used to persist the resolved chains.
+  private[this] val pushOrder = new ArrayBuffer[ShaderPrototype]
+  private[this] val pushed = new HashMap[ShaderPrototype, Integer]
+  
+  // Hash of everything that was pushed. Conditions are functions and cannot be hashed,
+  // their paths are hashed along with the declarations and the sources of the prototype.
+  private[this] var packHash = StructuralSignature.hash(IndexedSeq(graphicsContext.getClass, "TechniqueManager"))
+  
+  private[this] def prototypeKey(shader: ShaderPrototype) :IndexedSeq[String] = {
+    def declarations(block: Iterable[Declaration]) :String = {
+      block.map(d => d.qualifiers.toString + " " + d.glslType + " " + d.name + d.arraySizeExpression).toList.sorted.mkString(";")
+    }
+    def blocks(list: Iterable[DeclarationBlock]) :String = {
+      list.map(b => b.name + "{" + declarations(b.declarations) + "}").mkString(";")
+    }
+    
+    IndexedSeq(
+      shader.name,
+      shader.shaderType.toString,
+      shader.profile.toString,
+      shader.squareMatrices.toString,
+      shader.functionSignature.toString,
+      shader.mainLabel.toString,
+      blocks(shader.mainInputs ++ shader.mainOutput ++ shader.inputBlocks ++ shader.outputBlock),
+      declarations(shader.uniformBlock),
+      declarations(shader.attributeBlock),
+      shader.conditions.map(_._1).mkString(";"),
+      shader.boundUniforms.keys.toList.sorted.mkString(";"),
+      shader.body,
+      shader.sources.mkString("\n")
+    )
   }
   
+  /** When set, resolved techniques are stored in the cache and loaded from it on the next launch,
+   * skipping the resolution and the source generation. Must be set before resolving any techniques.
+   */
+  @volatile var persistentCache: PersistentTechniqueCache = null
+  
   
   private[this] val dummyPredefined = new PredefinedUniforms()
   
@@ -123,21 +167,58 @@ extends graphics.TechniqueManager[G]
   private val divider =  "\n\n*******************************************************************************\n\n"
   
   
+  private[this] def quickKey(geometry: G#Geometry, material: G#Material, worldEnvironment: G#Environment) = {
+    (
+      graphicsContext.geometrySignature(geometry),
+      graphicsContext.materialSignature(material),
+      graphicsContext.environmentSignature(worldEnvironment)
+    )
+  }
+  
+  override def findTechnique(geometry: G#Geometry, material: G#Material, worldEnvironment: G#Environment)
+  :Technique = {
+    quickCache.get(quickKey(geometry, material, worldEnvironment))
+  }
+  
+  /** Cached techniques are found without locking, so meshes can be resolved from multiple threads.
+   * Techniques for new structures are resolved one at a time.
+   */
   def resolveTechnique(
       meshName: String, shaderDebugging: ShaderDebugging,
       geometry: G#Geometry, material: G#Material, worldEnvironment: G#Environment)
   :Technique =
+  {
+    val key = quickKey(geometry, material, worldEnvironment)
+    
+    val quickLookup = quickCache.get(key)
+    if (quickLookup != null) quickLookup
+    else synchronized { resolveUncached(meshName, shaderDebugging, geometry, material, worldEnvironment, key) }
+  }
+  
+  private[this] def resolveUncached(
+      meshName: String, shaderDebugging: ShaderDebugging,
+      geometry: G#Geometry, material: G#Material, worldEnvironment: G#Environment,
+      quickKey: QuickKey)
+  :Technique =
   {
     def logRejected(shader: ShaderPrototype) :Boolean = shaderDebugging.logRejected || shader.debugging.logRejected
     def logAccepted(shader: ShaderPrototype) :Boolean = shaderDebugging.logAccepted || shader.debugging.logAccepted
     
-    val quickKey = graphicsContext.collectKeys(geometry, material, worldEnvironment)
-    
+    // Another thread may have resolved the same structure while this one was waiting.
     val quickLookup = quickCache.get(quickKey)
     if (quickLookup != null) return quickLookup
     
-    val listMap = quickKey._1
-    val enumMap = quickKey._2
+    val keys = graphicsContext.collectKeys(geometry, material, worldEnvironment)
+    val listMap = keys._1
+    val enumMap = keys._2
+    
+    val cache = persistentCache
+    val persistentKey = StructuralSignature.hash(IndexedSeq(quickKey._1.hash, quickKey._2.hash, quickKey._3.hash))
+    
+    if (cache != null) {
+      val cached = loadCached(cache, persistentKey, listMap)
+      if (cached != null) return completeResolution(meshName, shaderDebugging, quickKey, cached)
+    }
     
     
     def resolveShaderChain(
@@ -334,7 +415,7 @@ extends graphics.TechniqueManager[G]
             val matchingProviders = stage.main.get(inputBlock.name)
             var j = 0; while (matchingProviders != null && !passed && j < matchingProviders.size) {
               val outputShader = matchingProviders(j)
-
+              
               val outBlock = outputShader.mainOutput
               val found = outBlock.isDefined && (outBlock.get.name == inputBlock.name)
               
@@ -524,8 +605,18 @@ extends graphics.TechniqueManager[G]
       
       technique = new Technique(graphicsContext, shaders.toSet)
       techniqueCache.put(techniqueKey, technique)
+      mainShaders.put(technique, (shaders(shaders.size - 2), shaders(shaders.size - 1)))
     }
-
+    
+    if (cache != null) storeCached(cache, persistentKey, chain, techniqueKeyArray, technique)
+    
+    completeResolution(meshName, shaderDebugging, quickKey, technique)
+  }
+  
+  private[this] def completeResolution(
+      meshName: String, shaderDebugging: ShaderDebugging, quickKey: QuickKey, technique: Technique)
+  :Technique =
+  {
     if (shaderDebugging.logGeneratedSource) log(Level.INFO,
       "Complete program source for mesh '" + meshName + "':\n" +
       arrowsDown +
@@ -536,7 +627,75 @@ extends graphics.TechniqueManager[G]
     quickCache.put(quickKey, technique)
     technique
   }
-
+  
+  /** @return the technique built from the cached chain and sources, or null if there is no cached entry.
+   */
+  private[this] def loadCached(cache: PersistentTechniqueCache, key: Long, listMap: HashMap[ListNameKey, Integer])
+  :Technique =
+  {
+    val entry = cache.load(packHash, key)
+    if (entry == null) return null
+    
+    val techniqueKeyArray = new Array[ShaderKey](entry.chain.length)
+    var i = 0; while (i < entry.chain.length) {
+      val index = entry.chain(i)
+      if (index < 0 || index >= pushOrder.size) return null
+      
+      techniqueKeyArray(i) = pushOrder(index).shaderKey(listMap)
+      i += 1
+    }
+    val techniqueKey = new ReadArray(techniqueKeyArray)
+    
+    var technique = techniqueCache.get(techniqueKey)
+    
+    if (technique == null) {
+      val shaders = new ArrayBuffer[Shader]
+      
+      var i = 0; while (i < techniqueKeyArray.size) {
+        val shaderKey = techniqueKeyArray(i)
+        
+        var shader = shaderCache.get(shaderKey)
+        if (shader == null) {
+          val proto = shaderKey._1
+          shader = new Shader(proto.shaderType, entry.sources(i), proto.boundUniforms)
+          shaderCache.put(shaderKey, shader)
+        }
+        
+        shaders += shader
+        
+        i += 1
+      }
+      
+      val fragmentMain = new Shader(Shader.Fragment, entry.fragmentMain)
+      val vertexMain = new Shader(Shader.Vertex, entry.vertexMain)
+      shaders += fragmentMain
+      shaders += vertexMain
+      
+      technique = new Technique(graphicsContext, shaders.toSet)
+      techniqueCache.put(techniqueKey, technique)
+      mainShaders.put(technique, (fragmentMain, vertexMain))
+    }
+    
+    technique
+  }
+  
+  private[this] def storeCached(
+      cache: PersistentTechniqueCache, key: Long,
+      chain: IndexedSeq[ShaderPrototype], techniqueKeyArray: Array[ShaderKey], technique: Technique)
+  {
+    val indices = new Array[Int](chain.size)
+    val sources = new Array[String](chain.size)
+    
+    var i = 0; while (i < chain.size) {
+      indices(i) = pushed.get(chain(i))
+      sources(i) = shaderCache.get(techniqueKeyArray(i)).src
+      i += 1
+    }
+    
+    val (fragmentMain, vertexMain) = mainShaders.get(technique)
+    cache.store(packHash, key, new PersistentTechniqueCache.Entry(indices, sources, fragmentMain.src, vertexMain.src))
+  }
+  
   
   private[this] def genMain(shaderType: Shader.type#Value, chain: IndexedSeq[ShaderPrototype]) :Shader = {
     var body = ""
@@ -586,8 +745,12 @@ extends graphics.TechniqueManager[G]
   private type TechniqueKey = IndexedSeq[ShaderKey]
   private val techniqueCache = new HashMap[TechniqueKey, Technique]
   
-  private type QuickKey = (HashMap[ListNameKey, Integer], HashMap[String, Object], IndexedSeq[Boolean], IndexedSeq[Class[Object]])
-  private val quickCache = new HashMap[QuickKey, Technique]
+  // Generated fragment and vertex mains of each technique.
+  private val mainShaders = new HashMap[Technique, (Shader, Shader)]
+  
+  // Interned signatures of the geometry, material, and environment structure.
+  private type QuickKey = (StructuralSignature, StructuralSignature, StructuralSignature)
+  private val quickCache = new ConcurrentHashMap[QuickKey, Technique]
 }
 
 
@@ -43,6 +43,11 @@ trait AbstractMesh extends Spatial with EngineInfoRef { self =>
   
   final val elementRange = Property(ElementRange.Factory)
   
+  /** Number of instances to draw, attributes with a non-zero divisor are advanced per instance.
+   * 0 draws the mesh once without instancing.
+   */
+  final var instanceCount = 0
+  
   private[engine] def hasStructuralChanges :Boolean = {
     geometry.hasStructuralChanges ||
     material.hasStructuralChanges ||
@@ -75,6 +80,10 @@ trait AbstractMesh extends Spatial with EngineInfoRef { self =>
   def material: Material
   def worldEnvironment: Environment
   
+  /** Transparent meshes are rendered after the opaque ones and sorted back to front.
+   */
+  var sortingOrder = SortingOrder.Opaque
+  
   val shaderDebugging = new ShaderDebugging
   val glDebugging = new GlDebugging
   
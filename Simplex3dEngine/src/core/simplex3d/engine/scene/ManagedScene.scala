@@ -34,6 +34,11 @@ abstract class ManagedScene[G <: GraphicsContext](name: String) extends Scene[G]
   
   private[engine] final def ac_camera = camera
   
+  private[engine] final def ac_prepareFrame(renderManager: RenderManager, time: TimeStamp, packet: FramePacket) =
+    prepareFrame(renderManager, time, packet)
+  private[engine] final def ac_renderFrame(renderManager: RenderManager, packet: FramePacket) =
+    renderFrame(renderManager, packet)
+  
   
   protected val camera: AbstractCamera
   protected val techniqueManager: TechniqueManager[G]
@@ -46,4 +51,14 @@ abstract class ManagedScene[G <: GraphicsContext](name: String) extends Scene[G]
   protected def render(renderManager: RenderManager, time: TimeStamp) {
     techniqueManager.passManager.render(renderManager, time, this)
   }
+  
+  /** Captures the frame on the update thread, so it can be rendered while the next update is running.
+   */
+  protected def prepareFrame(renderManager: RenderManager, time: TimeStamp, packet: FramePacket) {
+    techniqueManager.passManager.prepare(renderManager, time, this, packet)
+  }
+  
+  protected def renderFrame(renderManager: RenderManager, packet: FramePacket) {
+    techniqueManager.passManager.render(renderManager, packet)
+  }
 }
@@ -45,18 +45,21 @@ object api {
     @inline def hasDataChanges = v.hasDataChanges
     @inline def signalDataChanges() = v.signalDataChanges()
     @inline def clearDataChanges() = v.clearDataChanges()
+    @inline def setChangeListener(listener: ChangeListener) { v.changeListener = listener }
   }
 
   implicit class ValueAc(val v: Value[_]) extends AnyVal {
     @inline def hasDataChanges = v.hasDataChanges
     @inline def signalDataChanges() = v.signalDataChanges()
     @inline def clearDataChanges() = v.clearDataChanges()
+    @inline def setChangeListener(listener: ChangeListener) { v.changeListener = listener }
   }
   
   implicit class ReassignableAc(val v: Reassignable[_]) extends AnyVal {
     @inline def hasDataChanges = v.hasDataChanges
     @inline def signalDataChanges() = v.signalDataChanges()
     @inline def clearDataChanges() = v.clearDataChanges()
+    @inline def setChangeListener(listener: ChangeListener) { v.changeListener = listener }
   }
   
   implicit class TransformationBindingAc(val v: TransformationBinding[_]) extends AnyVal {
@@ -64,6 +67,7 @@ object api {
     @inline def hasDataChanges = v.hasDataChanges
     @inline def signalDataChanges() = v.signalDataChanges()
     @inline def clearDataChanges() = v.clearDataChanges()
+    @inline def setChangeListener(listener: ChangeListener) { v.changeListener = listener }
   }
   
   implicit class SharedRefAc(val v: SharedRef[_]) extends AnyVal {
@@ -78,6 +82,7 @@ object api {
     
     @inline def hasRefChanges = v.hasRefChanges
     @inline def clearRefChanges() = v.clearRefChanges()
+    @inline def setChangeListener(listener: ChangeListener) { v.changeListener = listener }
     
     @inline def hasChanges = (hasRefChanges || hasDataChanges)
   }
@@ -112,5 +117,7 @@ object api {
   implicit class ManagedSceneAc(val v: ManagedScene[_]) extends AnyVal {
     @inline def camera = v.ac_camera
     @inline def buildRenderArray(pass: Pass, time: TimeStamp, result: SortBuffer[AbstractMesh]) = v.ac_buildRenderArray(pass, time, result)
+    @inline def prepareFrame(renderManager: RenderManager, time: TimeStamp, packet: FramePacket) = v.ac_prepareFrame(renderManager, time, packet)
+    @inline def renderFrame(renderManager: RenderManager, packet: FramePacket) = v.ac_renderFrame(renderManager, packet)
   }
 }
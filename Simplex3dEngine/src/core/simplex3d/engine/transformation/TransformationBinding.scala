@@ -75,9 +75,13 @@ extends Updatable[T] {
   private[this] final var cachedMatrix: Mat4x3 = _
   
   protected final var changed = true // Initialize as changed.
+  private[engine] final var changeListener: ChangeListener = null
   
   private[engine] def hasDataChanges = changed
-  private[engine] def signalDataChanges() { changed = true }
+  private[engine] def signalDataChanges() {
+    changed = true
+    if (changeListener != null) changeListener.onChange()
+  }
   private[engine] def clearDataChanges() { changed = false }
   
   
@@ -86,7 +90,7 @@ extends Updatable[T] {
   
   final def undefine() {
     if (isDefined) {
-      changed = true
+      signalDataChanges()
       updateMatrix = true
       value = null.asInstanceOf[T]
     }
@@ -94,7 +98,7 @@ extends Updatable[T] {
   
   final def update: T = {
     if (!isDefined) value = default.mutableCopy.asInstanceOf[T]
-    changed = true
+    signalDataChanges()
     updateMatrix = true
     value
   }
@@ -0,0 +1,184 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine.util
+
+
+/** A ring of frame packets handed from a single producer to a single consumer.
+ *
+ * The producer writes a free packet and publishes it. The consumer always takes the latest
+ * published packet, older packets that were never consumed are recycled as dropped frames.
+ * With depth 2 the producer waits for the consumer to take or release a packet, with depth 3 or more
+ * the producer can keep overwriting stale packets without waiting.
+ *
+ * Time spent waiting on each side is accumulated in nanoseconds.
+ */
+final class FrameRing[P <: AnyRef](val depth: Int, factory: () => P) {
+  if (depth < 2) throw new IllegalArgumentException("Depth must be at least 2.")
+  
+  private[this] final val Free = 0
+  private[this] final val Writing = 1
+  private[this] final val Ready = 2
+  private[this] final val Reading = 3
+  
+  private[this] val packets: Array[AnyRef] = Array.fill[AnyRef](depth)(factory())
+  private[this] val states = new Array[Int](depth)
+  private[this] val sequence = new Array[Long](depth)
+  
+  private[this] var published = 0L
+  private[this] var closed = false
+  
+  private[this] var _producerStallNanos = 0L
+  private[this] var _consumerStallNanos = 0L
+  private[this] var _droppedFrames = 0L
+  
+  
+  def producerStallNanos: Long = synchronized { _producerStallNanos }
+  def consumerStallNanos: Long = synchronized { _consumerStallNanos }
+  def droppedFrames: Long = synchronized { _droppedFrames }
+  def publishedFrames: Long = synchronized { published }
+  
+  
+  private[this] def indexOf(packet: P) :Int = {
+    var i = 0; while (i < depth) {
+      if (packets(i) eq packet) return i
+      i += 1
+    }
+    throw new IllegalArgumentException("Packet does not belong to this ring.")
+  }
+  
+  /** Finds the oldest ready packet, excluding the latest one.
+   */
+  private[this] def findStale() :Int = {
+    var stale = -1
+    var ready = 0
+    var i = 0; while (i < depth) {
+      if (states(i) == Ready) {
+        ready += 1
+        if (stale == -1 || sequence(i) < sequence(stale)) stale = i
+      }
+      i += 1
+    }
+    if (ready > 1) stale else -1
+  }
+  
+  private[this] def findFree() :Int = {
+    var i = 0; while (i < depth) {
+      if (states(i) == Free) return i
+      i += 1
+    }
+    -1
+  }
+  
+  private[this] def findLatest() :Int = {
+    var latest = -1
+    var i = 0; while (i < depth) {
+      if (states(i) == Ready && (latest == -1 || sequence(i) > sequence(latest))) latest = i
+      i += 1
+    }
+    latest
+  }
+  
+  
+  /** Waits for a packet that can be written.
+   * @return the packet to write, or null if the ring was closed.
+   */
+  def acquireWrite() :P = synchronized {
+    var start = 0L
+    var index = -1
+    
+    while (index == -1 && !closed) {
+      index = findFree()
+      
+      // With double buffering the consumer must get a chance to take the latest packet.
+      if (index == -1 && depth >= 3) {
+        index = findStale()
+        if (index != -1) _droppedFrames += 1
+      }
+      
+      if (index == -1) {
+        if (start == 0) start = System.nanoTime
+        wait()
+      }
+    }
+    if (start != 0) _producerStallNanos += System.nanoTime - start
+    
+    if (closed) null.asInstanceOf[P]
+    else {
+      states(index) = Writing
+      packets(index).asInstanceOf[P]
+    }
+  }
+  
+  def publish(packet: P) { synchronized {
+    val index = indexOf(packet)
+    if (states(index) != Writing) throw new IllegalStateException("Packet was not acquired for writing.")
+    
+    published += 1
+    sequence(index) = published
+    states(index) = Ready
+    notifyAll()
+  }}
+  
+  /** Waits for a published packet, and takes the latest one. Older published packets are dropped.
+   * @return the packet to read, or null if the ring was closed.
+   */
+  def acquireLatest() :P = synchronized {
+    var start = 0L
+    var index = findLatest()
+    
+    while (index == -1 && !closed) {
+      if (start == 0) start = System.nanoTime
+      wait()
+      index = findLatest()
+    }
+    if (start != 0) _consumerStallNanos += System.nanoTime - start
+    
+    if (index == -1) null.asInstanceOf[P]
+    else {
+      var i = 0; while (i < depth) {
+        if (i != index && states(i) == Ready) {
+          states(i) = Free
+          _droppedFrames += 1
+        }
+        i += 1
+      }
+      
+      states(index) = Reading
+      notifyAll()
+      packets(index).asInstanceOf[P]
+    }
+  }
+  
+  def release(packet: P) { synchronized {
+    val index = indexOf(packet)
+    if (states(index) != Reading) throw new IllegalStateException("Packet was not acquired for reading.")
+    
+    states(index) = Free
+    notifyAll()
+  }}
+  
+  /** Wakes up both sides, all the following acquire calls return null.
+   */
+  def close() { synchronized {
+    closed = true
+    notifyAll()
+  }}
+}
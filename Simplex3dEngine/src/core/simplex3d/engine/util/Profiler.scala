@@ -0,0 +1,276 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine.util
+
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicLongArray
+import javax.management.ObjectName
+
+
+/** JMX view of the Profiler, registered as simplex3d.engine:type=Profiler.
+ * Arrays are indexed by the phase and counter constants in the Profiler object.
+ */
+trait ProfilerMXBean {
+  def getFrameCount: Long
+  def getPhaseNames: Array[String]
+  def getCounterNames: Array[String]
+  
+  def getLastFrameNanos: Array[Long]
+  def getMedianNanos: Array[Long]
+  def getPercentile95Nanos: Array[Long]
+  def getPercentile99Nanos: Array[Long]
+  def getLastFrameCounters: Array[Long]
+}
+
+
+/** Per-frame phase profiler for the engine loop.
+ *
+ * Enabled with -Dsimplex3d.engine.profiler=true. When disabled, every call is reduced to a single
+ * check of a constant flag, so the instrumentation can stay in the hot paths.
+ *
+ * Each thread accumulates phase times and counters into its own atomic arrays without locking.
+ * The main loop calls endFrame() once per frame to drain the thread totals into rolling windows
+ * of the last frames (-Dsimplex3d.engine.profiler.window, 120 by default), which are used for percentiles.
+ * Samples recorded by other threads while the frame is collected are counted towards the next frame.
+ *
+ * Phases may nest: buffer uploads happen while binding a mesh, so their time is also included in uniform binding.
+ *
+ * Usage:
+ * {{{
+ * val start = Profiler.start()
+ * ...
+ * Profiler.stop(Profiler.Cull, start)
+ * }}}
+ */
+object Profiler {
+  final val Enabled: Boolean = java.lang.Boolean.getBoolean("simplex3d.engine.profiler")
+  final val WindowSize: Int = Integer.getInteger("simplex3d.engine.profiler.window", 120)
+  
+  // Phases.
+  final val Update = 0
+  final val Controllers = 1
+  final val Cull = 2
+  final val TechniqueResolution = 3
+  final val Sort = 4
+  final val UniformBinding = 5
+  final val BufferUpload = 6
+  final val DrawSubmission = 7
+  final val Swap = 8
+  
+  final val PhaseCount = 9
+  val PhaseNames = IndexedSeq(
+    "update", "controllers", "cull", "technique resolution", "sort",
+    "uniform binding", "buffer upload", "draw submission", "swap"
+  )
+  
+  // Counters.
+  final val NodesVisited = 0
+  final val MeshesVisible = 1
+  final val MeshesDrawn = 2
+  final val BytesUploaded = 3
+  final val StateChanges = 4
+  final val AllocatedBytes = 5
+  final val BytesStreamed = 6
+  final val StreamStalls = 7
+  final val StreamWraparounds = 8
+  
+  final val CounterCount = 9
+  val CounterNames = IndexedSeq(
+    "nodes visited", "meshes visible", "meshes drawn", "bytes uploaded", "state changes", "allocated bytes",
+    "bytes streamed", "stream stalls", "stream wraparounds"
+  )
+  
+  
+  private final class ThreadSamples(val thread: Thread) {
+    val phases = new AtomicLongArray(PhaseCount)
+    val counters = new AtomicLongArray(CounterCount)
+    var allocated = -1L // Only accessed from endFrame().
+  }
+  
+  private[this] val threadSamples = new ConcurrentLinkedQueue[ThreadSamples]
+  private[this] val localSamples = new ThreadLocal[ThreadSamples] {
+    override def initialValue() = {
+      val samples = new ThreadSamples(Thread.currentThread)
+      threadSamples.add(samples)
+      samples
+    }
+  }
+  
+  // Guarded by phaseWindows.
+  private[this] val phaseWindows = Array.fill(PhaseCount)(new RollingWindow(WindowSize))
+  private[this] val lastCounters = new Array[Long](CounterCount)
+  private[this] var frameCount = 0L
+  
+  // Scratch arrays for endFrame(), only accessed from the main loop.
+  private[this] val framePhases = new Array[Long](PhaseCount)
+  private[this] val frameCounters = new Array[Long](CounterCount)
+  
+  
+  /** @return the start time to pass to stop(), or 0 when disabled.
+   */
+  def start() :Long = if (Enabled) System.nanoTime else 0L
+  
+  /** Adds the time elapsed since start to the phase.
+   */
+  def stop(phase: Int, start: Long) {
+    if (Enabled) localSamples.get().phases.addAndGet(phase, System.nanoTime - start)
+  }
+  
+  def count(counter: Int, value: Long) {
+    if (Enabled) localSamples.get().counters.addAndGet(counter, value)
+  }
+  
+  
+  private[this] lazy val allocationBean: com.sun.management.ThreadMXBean = {
+    try {
+      ManagementFactory.getThreadMXBean match {
+        case bean: com.sun.management.ThreadMXBean if bean.isThreadAllocatedMemorySupported =>
+          if (!bean.isThreadAllocatedMemoryEnabled) bean.setThreadAllocatedMemoryEnabled(true)
+          bean
+        case _ => null
+      }
+    }
+    catch {
+      case e: Throwable => null // Not available on this VM.
+    }
+  }
+  
+  private[this] def allocatedSinceLastFrame(samples: ThreadSamples) :Long = {
+    val bean = allocationBean
+    if (bean == null) return 0
+    
+    val allocated = bean.getThreadAllocatedBytes(samples.thread.getId)
+    if (allocated < 0) return 0 // The thread has terminated.
+    
+    val delta = if (samples.allocated < 0) 0 else allocated - samples.allocated
+    samples.allocated = allocated
+    delta
+  }
+  
+  private[this] lazy val registerMBean: Boolean = {
+    try {
+      val server = ManagementFactory.getPlatformMBeanServer
+      server.registerMBean(new ProfilerBean, new ObjectName("simplex3d.engine:type=Profiler"))
+      true
+    }
+    catch {
+      case e: Exception => false
+    }
+  }
+  
+  /** Collects the thread totals into the rolling windows and resets them.
+   * Threads that have terminated are dropped once their last totals are collected.
+   * Called by the main loop once per frame, does nothing when disabled.
+   */
+  def endFrame() {
+    if (!Enabled) return
+    registerMBean
+    
+    var i = 0; while (i < PhaseCount) { framePhases(i) = 0; i += 1 }
+    i = 0; while (i < CounterCount) { frameCounters(i) = 0; i += 1 }
+    
+    val iterator = threadSamples.iterator
+    while (iterator.hasNext) {
+      val samples = iterator.next()
+      
+      // Checked before draining, so the samples recorded before the thread has terminated are not lost.
+      val terminated = !samples.thread.isAlive
+      
+      i = 0; while (i < PhaseCount) {
+        framePhases(i) += samples.phases.getAndSet(i, 0)
+        i += 1
+      }
+      i = 0; while (i < CounterCount) {
+        frameCounters(i) += samples.counters.getAndSet(i, 0)
+        i += 1
+      }
+      frameCounters(AllocatedBytes) += allocatedSinceLastFrame(samples)
+      
+      if (terminated) iterator.remove()
+    }
+    
+    phaseWindows.synchronized {
+      i = 0; while (i < PhaseCount) {
+        phaseWindows(i).add(framePhases(i))
+        i += 1
+      }
+      System.arraycopy(frameCounters, 0, lastCounters, 0, CounterCount)
+      frameCount += 1
+    }
+  }
+  
+  
+  def frames: Long = phaseWindows.synchronized { frameCount }
+  
+  def lastFrameNanos(phase: Int) :Long = phaseWindows.synchronized { phaseWindows(phase).last }
+  
+  /** @param p percentile in the [0, 1] range.
+   */
+  def percentileNanos(phase: Int, p: Double) :Long = phaseWindows.synchronized { phaseWindows(phase).percentile(p) }
+  
+  /** Value of the counter for the last completed frame.
+   */
+  def lastFrameCounter(counter: Int) :Long = phaseWindows.synchronized { lastCounters(counter) }
+  
+  /** One line summary with the median and the 99th percentile of every phase in microseconds,
+   * followed by the counters from the last frame.
+   */
+  def report() :String = {
+    val sb = new StringBuilder
+    
+    phaseWindows.synchronized {
+      var i = 0; while (i < PhaseCount) {
+        val window = phaseWindows(i)
+        if (i > 0) sb.append(", ")
+        sb.append(PhaseNames(i)).append(": ")
+        sb.append(window.percentile(0.5)/1000).append("/").append(window.percentile(0.99)/1000).append(" us")
+        i += 1
+      }
+      
+      i = 0; while (i < CounterCount) {
+        sb.append(", ").append(CounterNames(i)).append(": ").append(lastCounters(i))
+        i += 1
+      }
+    }
+    
+    sb.toString
+  }
+  
+  
+  private final class ProfilerBean extends ProfilerMXBean {
+    private def phases(f: Int => Long) :Array[Long] = {
+      val result = new Array[Long](PhaseCount)
+      var i = 0; while (i < PhaseCount) { result(i) = f(i); i += 1 }
+      result
+    }
+    
+    def getFrameCount = frames
+    def getPhaseNames = PhaseNames.toArray
+    def getCounterNames = CounterNames.toArray
+    
+    def getLastFrameNanos = phases(lastFrameNanos)
+    def getMedianNanos = phases(percentileNanos(_, 0.5))
+    def getPercentile95Nanos = phases(percentileNanos(_, 0.95))
+    def getPercentile99Nanos = phases(percentileNanos(_, 0.99))
+    def getLastFrameCounters = phaseWindows.synchronized { lastCounters.clone() }
+  }
+}
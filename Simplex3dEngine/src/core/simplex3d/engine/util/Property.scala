@@ -90,10 +90,14 @@ final class Property[T <: Accessible] private[engine] (
   
   private[this] final var value: T = _
   protected final var changed = true // Initialize as changed.
+  private[engine] final var changeListener: ChangeListener = null
   
   private[engine] def hasDataChanges = changed
   private[engine] def clearDataChanges() { changed = false }
-  private[engine] def signalDataChanges() { changed = true }
+  private[engine] def signalDataChanges() {
+    changed = true
+    if (changeListener != null) changeListener.onChange()
+  }
   
   
   final def get: T#Read = if (value == null) throw new NoSuchElementException else value.asInstanceOf[T#Read]
@@ -102,7 +106,7 @@ final class Property[T <: Accessible] private[engine] (
   final def undefine() {
     if (isDefined) {
       if (propertyContext != null) propertyContext.signalStructuralChanges()
-      changed = true
+      signalDataChanges()
       value match { case d: PropertyContextDependent => d.unregister(); case _ => /* ignore */ }
       value = null.asInstanceOf[T]
     }
@@ -114,14 +118,14 @@ final class Property[T <: Accessible] private[engine] (
       value match { case d: PropertyContextDependent => d.register(propertyContext); case _ => /* ignore */ }
       if (propertyContext != null) propertyContext.signalStructuralChanges()
     }
-    changed = true
+    signalDataChanges()
     value
   }
   
   private final def init(value: T) {
     this.value = value
     value match { case d: PropertyContextDependent => d.register(propertyContext); case _ => /* ignore */ }
-    changed = true
+    signalDataChanges()
   }
   
   final def :=(p: Property[T]) {
@@ -35,7 +35,12 @@ class PropertyContext(
   
   private[engine] final def signalStructuralChanges() {
     changes = true
+    signature = null
   }
+  
+  /** Interned structure of this context, recomputed after the structure changes.
+   */
+  @volatile private[engine] final var signature: StructuralSignature = null
 }
 
 object PropertyContext {
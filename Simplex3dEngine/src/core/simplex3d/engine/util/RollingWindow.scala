@@ -0,0 +1,73 @@
+/*
+ * Simplex3dEngine - Core Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.engine.util
+
+
+/** Keeps the last size samples and computes percentiles over them.
+ *
+ * Adding a sample does not allocate. Percentiles sort a copy of the window, so they are meant
+ * to be queried occasionally rather than every frame. Not thread-safe.
+ */
+final class RollingWindow(val size: Int) {
+  if (size < 1) throw new IllegalArgumentException("Size must be at least 1.")
+  
+  private[this] val values = new Array[Long](size)
+  private[this] val sorted = new Array[Long](size)
+  private[this] var next = 0
+  private[this] var _count = 0
+  
+  
+  /** Number of samples in the window, up to size.
+   */
+  def count: Int = _count
+  
+  /** The most recent sample, or 0 when the window is empty.
+   */
+  def last: Long = if (_count == 0) 0 else values((next + size - 1) % size)
+  
+  def add(value: Long) {
+    values(next) = value
+    next = (next + 1) % size
+    if (_count < size) _count += 1
+  }
+  
+  def clear() {
+    next = 0
+    _count = 0
+  }
+  
+  /** Nearest-rank percentile of the samples in the window.
+   * @param p percentile in the [0, 1] range.
+   * @return the percentile, or 0 when the window is empty.
+   */
+  def percentile(p: Double) :Long = {
+    if (_count == 0) return 0
+    
+    // Until the window is full, the samples occupy the beginning of the array.
+    System.arraycopy(values, 0, sorted, 0, _count)
+    java.util.Arrays.sort(sorted, 0, _count)
+    
+    var rank = math.ceil(p*_count).toInt - 1
+    if (rank < 0) rank = 0
+    if (rank >= _count) rank = _count - 1
+    sorted(rank)
+  }
+}
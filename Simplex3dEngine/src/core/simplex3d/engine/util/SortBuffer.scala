@@ -75,6 +75,72 @@ class SortBuffer[T] protected(initArray: Array[AnyRef]) extends IndexedSeq[T] {
   def inplaceSort(comparator: Comparator[T]) {
     Arrays.sort(array, 0, size, comparator.asInstanceOf[Comparator[Object]])
   }
+  
+  
+  private[this] var scratchKeys: Array[Long] = null
+  private[this] var scratchValues: Array[AnyRef] = null
+  private[this] val counts = new Array[Int](256)
+  
+  /** Sorts the elements in the unsigned order of the keys, where keys(i) is the key for the element i.
+   * The keys are sorted along with the elements. This is a stable LSD radix sort,
+   * byte positions that are the same for all the keys are skipped.
+   */
+  def inplaceSort(keys: Array[Long]) {
+    val size = this.size
+    if (size < 2) return
+    
+    if (scratchKeys == null || scratchKeys.length < size) {
+      scratchKeys = new Array[Long](size)
+      scratchValues = new Array[AnyRef](size)
+    }
+    
+    var srcKeys = keys
+    var srcValues = array
+    var destKeys = scratchKeys
+    var destValues = scratchValues
+    
+    var shift = 0; while (shift < 64) {
+      Arrays.fill(counts, 0)
+      
+      var i = 0; while (i < size) {
+        counts(((srcKeys(i) >>> shift) & 0xFF).toInt) += 1
+        i += 1
+      }
+      
+      if (counts(((srcKeys(0) >>> shift) & 0xFF).toInt) != size) {
+        var offset = 0
+        var b = 0; while (b < 256) {
+          val count = counts(b)
+          counts(b) = offset
+          offset += count
+          b += 1
+        }
+        
+        i = 0; while (i < size) {
+          val key = srcKeys(i)
+          val bucket = ((key >>> shift) & 0xFF).toInt
+          val dest = counts(bucket)
+          counts(bucket) = dest + 1
+          
+          destKeys(dest) = key
+          destValues(dest) = srcValues(i)
+          
+          i += 1
+        }
+        
+        val tmpKeys = srcKeys; srcKeys = destKeys; destKeys = tmpKeys
+        val tmpValues = srcValues; srcValues = destValues; destValues = tmpValues
+      }
+      
+      shift += 8
+    }
+    
+    if (srcKeys ne keys) {
+      System.arraycopy(srcKeys, 0, keys, 0, size)
+      System.arraycopy(srcValues, 0, array, 0, size)
+    }
+    Arrays.fill(scratchValues, 0, size, null) // Do not hold on to the elements.
+  }
 }
 
 
@@ -69,17 +69,21 @@ final class Value[T <: Accessible] private[engine] (
   
   
   protected final var changed = true // Initialize as changed.
+  private[engine] final var changeListener: ChangeListener = null
   
   private[engine] def hasDataChanges = changed
   private[engine] def clearDataChanges() { changed = false }
-  private[engine] def signalDataChanges() { changed = true }
+  private[engine] def signalDataChanges() {
+    changed = true
+    if (changeListener != null) changeListener.onChange()
+  }
   
   
   final def get: T#Read = value.asInstanceOf[T#Read]
   final def isDefined = true
   
   final def update: T = {
-    changed = true
+    signalDataChanges()
     value
   }
   
@@ -32,5 +32,13 @@ import simplex3d.engine.graphics._
 class Geometry extends prototype.Geometry {
   val texCoords = AttributeBinding[Vec2, RFloat]
   
+  // Per-instance rows of the world and normal matrices, used for hardware instancing.
+  val instanceTransformation0 = AttributeBinding[Vec4, RFloat]
+  val instanceTransformation1 = AttributeBinding[Vec4, RFloat]
+  val instanceTransformation2 = AttributeBinding[Vec4, RFloat]
+  val instanceNormalMatrix0 = AttributeBinding[Vec3, RFloat]
+  val instanceNormalMatrix1 = AttributeBinding[Vec3, RFloat]
+  val instanceNormalMatrix2 = AttributeBinding[Vec3, RFloat]
+  
   init(classOf[Geometry])
 }
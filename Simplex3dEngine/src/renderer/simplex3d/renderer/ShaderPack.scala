@@ -129,6 +129,83 @@ object ShaderPack extends pluggable.ShaderPack[Unit] {
     }
   }
   
+  object Instanced {
+    def instanceVertex(config: Unit) = new VertexShader {
+      attributes {
+        declare[Vec3]("vertices")
+        declare[Vec4]("instanceTransformation0")
+        declare[Vec4]("instanceTransformation1")
+        declare[Vec4]("instanceTransformation2")
+      }
+      
+      function("vec4 instanceVertex()"){"""
+        vec4 vertex = vec4(vertices, 1.0);
+        return vec4(
+          dot(instanceTransformation0, vertex),
+          dot(instanceTransformation1, vertex),
+          dot(instanceTransformation2, vertex),
+          1.0
+        );
+      """}
+    }
+    
+    def instanceNormal(config: Unit) = new VertexShader {
+      attributes {
+        declare[Vec3]("normals")
+        declare[Vec3]("instanceNormalMatrix0")
+        declare[Vec3]("instanceNormalMatrix1")
+        declare[Vec3]("instanceNormalMatrix2")
+      }
+      
+      function("vec3 instanceNormal()"){"""
+        return vec3(
+          dot(instanceNormalMatrix0, normals),
+          dot(instanceNormalMatrix1, normals),
+          dot(instanceNormalMatrix2, normals)
+        );
+      """}
+    }
+    
+    def transformation(config: Unit) = new VertexShader {
+      
+      condition("primitive.mode")(_ != VertexMode.PointSprites)
+      
+      use("vec4 instanceVertex()")
+      
+      uniform {
+        declare[Mat4]("se_modelViewProjectionMatrix")
+      }
+      
+      attributes {
+        declare[Vec4]("instanceTransformation0")
+      }
+      
+      out("transformationCtx") {
+        declare[Vec4]("gl_Position")
+      }
+      
+      main("transformVertices")(){"""
+        gl_Position = se_modelViewProjectionMatrix*instanceVertex();
+      """}
+    }
+    
+    def ecPosition(config: Unit) = new VertexShader {
+      use("vec4 instanceVertex()")
+      
+      uniform {
+        declare[Mat4x3]("se_modelViewMatrix")
+      }
+      
+      attributes {
+        declare[Vec4]("instanceTransformation0")
+      }
+      
+      function("vec3 ecPosition()"){"""
+        return vec3(se_modelViewMatrix*instanceVertex());
+      """}
+    }
+  }
+  
   object Gl2 {
     def ecPosition(config: Unit) = new VertexShader {
       uniform {
@@ -162,6 +239,12 @@ object ShaderPack extends pluggable.ShaderPack[Unit] {
     shaders += Universal.transformationPointSprite(config).toPrototype(profile)
     shaders += Gl2.ecPosition(config).toPrototype(profile)
     
+    // Pushed last to take precedence when the per-instance attributes are defined.
+    shaders += Instanced.instanceVertex(config).toPrototype(profile)
+    shaders += Instanced.instanceNormal(config).toPrototype(profile)
+    shaders += Instanced.transformation(config).toPrototype(profile)
+    shaders += Instanced.ecPosition(config).toPrototype(profile)
+    
     (/*config*/Unit, shaders.result())
   }
 }
@@ -20,6 +20,7 @@
 
 package simplex3d.renderer
 
+import java.io.File
 import simplex3d.math._
 import simplex3d.math.double._
 import simplex3d.engine._
@@ -29,8 +30,12 @@ import simplex3d.engine.graphics.pluggable._
 
 object TechniqueProvider {
 
-  def assembleTechniqueManager[G <: GraphicsContext]()(implicit graphicsContext: G) :pluggable.TechniqueManager[G] = {
+  /** @param cacheDirectory the directory to store the resolved techniques, or null to resolve them on every launch.
+   */
+  def assembleTechniqueManager[G <: GraphicsContext](cacheDirectory: File = null)(implicit graphicsContext: G)
+  :pluggable.TechniqueManager[G] = {
     val manager = new pluggable.TechniqueManager[G]
+    if (cacheDirectory != null) manager.persistentCache = new PersistentTechniqueCache(cacheDirectory)
     
     def pushAll(shaders: Seq[ShaderPrototype]) {
       for (shader <- shaders) manager.push(shader)
@@ -86,6 +86,31 @@ object ShaderPack extends pluggable.ShaderPack[Unit] {
         lightingCtx.normal = normalize(se_normalMatrix*normals);
       """}
     }
+    
+    def lightingVertexInstanced(config: Unit) = new VertexShader {
+      use("vec4 instanceVertex()")
+      use("vec3 instanceNormal()")
+      
+      uniform {
+        declare[Mat4]("se_modelViewMatrix")
+        declare[Mat3]("se_normalMatrix")
+      }
+      
+      attributes {
+        declare[Vec4]("instanceTransformation0")
+        declare[Vec3]("instanceNormalMatrix0")
+      }
+      
+      out("lightingCtx") {
+        declare[Vec3]("ecPosition")
+        declare[Vec3]("normal")
+      }
+      
+      main("propagateLightingValues")(){"""
+        lightingCtx.ecPosition = (se_modelViewMatrix*instanceVertex()).xyz;
+        lightingCtx.normal = normalize(se_normalMatrix*instanceNormal());
+      """}
+    }
   }
   
   
@@ -97,6 +122,7 @@ object ShaderPack extends pluggable.ShaderPack[Unit] {
     
     shaders += Universal.lightingFragment(config).toPrototype(profile)
     shaders += Universal.lightingVertex(config).toPrototype(profile)
+    shaders += Universal.lightingVertexInstanced(config).toPrototype(profile)
     
     (/*config*/Unit, shaders.result())
   }
@@ -21,6 +21,7 @@
 package simplex3d.scenegraph
 
 import scala.collection.mutable.ArrayBuffer
+import scala.concurrent.forkjoin.ForkJoinTask
 import simplex3d.algorithm.intersection.{ Frustum, Collision }
 import simplex3d.engine.util._
 import simplex3d.engine.bounding._
@@ -49,10 +50,17 @@ abstract class AbstractNode[T <: TransformationContext, G <: GraphicsContext] pr
     if (controllerManager != null) controllerManager.register(managed.asInstanceOf[ArrayBuffer[Spatial[_]]])
   }
   
+  // Set when children are removed, the remaining children do not signal any changes in that case.
+  private[this] final var childrenRemoved = false
+  
   private[scenegraph] def removeChild(element: SceneElement[_, _]) :Boolean = {
     val elem = element.asInstanceOf[SceneElement[T, G]]
     val removed = remove(elem)
-    if (removed) { onRemove(elem) }
+    if (removed) {
+      onRemove(elem)
+      childrenRemoved = true
+      markDirty()
+    }
     removed
   }
   
@@ -119,9 +127,21 @@ abstract class AbstractNode[T <: TransformationContext, G <: GraphicsContext] pr
     removed
   }
   
+  /** Forces the children to update, used when the world transformation has changed but the children
+   * are not going to be updated along with the bounding volume.
+   */
+  private[scenegraph] final def markChildrenDirty() {
+    val size = children.size; var i = 0; while (i < size) {
+      children(i).dirty = true
+      i += 1
+    }
+  }
+  
   private[scenegraph] override def updateBoundingVolume(allowMultithreading: Boolean) :Boolean = {
     propagateWorldTransformation()
     
+    // Children of a moved node must be updated even when they have not changed themselves.
+    val worldChanged = uncheckedWorldTransformation.hasDataChanges
     var updateParentVolume = false
     
     if (customBoundingVolume.hasDataChanges) {
@@ -136,11 +156,18 @@ abstract class AbstractNode[T <: TransformationContext, G <: GraphicsContext] pr
       var updateBounding = false
       
       def processChild(child: SceneElement[T, G]) {
-        val childBoundingChanged = child match {
-          case bounded: Bounded[_, _] => bounded.updateBoundingVolume(false)
-          case _ => child.updateWorldTransformation()
+        UpdateCounters.visited()
+        
+        if (child.dirty || worldChanged) {
+          child.dirty = false
+          UpdateCounters.updated()
+          
+          val childBoundingChanged = child match {
+            case bounded: Bounded[_, _] => bounded.updateBoundingVolume(false)
+            case _ => child.updateWorldTransformation()
+          }
+          atomicUpdateBounding.compareAndSet(false, childBoundingChanged || atomicUpdateBounding.get)
         }
-        atomicUpdateBounding.compareAndSet(false, childBoundingChanged || atomicUpdateBounding.get)
       }
       
       if (allowMultithreading) {
@@ -164,12 +191,16 @@ abstract class AbstractNode[T <: TransformationContext, G <: GraphicsContext] pr
         updateBounding = true
       }
       
-      if (updateBounding || uncheckedWorldTransformation.hasDataChanges) {
+      if (updateBounding || childrenRemoved || worldChanged) {
         val bound = autoBoundingVolume.update.asInstanceOf[Aabb]
         Bounded.rebuildAabb(this)(bound.min, bound.max)
         updateParentVolume = true
       }
     }
+    else if (worldChanged) {
+      markChildrenDirty()
+    }
+    childrenRemoved = false
     
     
     if (resolveBoundingVolume().hasDataChanges) {
@@ -187,10 +218,8 @@ abstract class AbstractNode[T <: TransformationContext, G <: GraphicsContext] pr
     allowMultithreading: Boolean, currentDepth: Int,
     cullContext: CullContext[T, G]
   ) {
-    if (update) {
-      if (enableCulling) updateBoundingVolume(allowMultithreading)
-      else updateWorldTransformation()
-    }
+    if (update) updateIfDirty(allowMultithreading)
+    else UpdateCounters.visited()
     
     val updateChildren = update || !customBoundingVolume.isDefined
     
@@ -209,38 +238,43 @@ abstract class AbstractNode[T <: TransformationContext, G <: GraphicsContext] pr
       else true
     
     
-    val batchChildren =
-      if (allowMultithreading && cullContext.batchArray != null) {
-        if (currentDepth >= cullContext.batchDepthThreshold || this.children.size >= cullContext.batchChildrenThreshold) {
-          true
-        }
-        else false
-      } else false
-
+    val forkChildren = (cullContext.culler != null)
     
-    nodeCull(updateChildren, cullChildren, batchChildren, allowMultithreading, currentDepth, cullContext)
+    nodeCull(updateChildren, cullChildren, forkChildren, allowMultithreading, currentDepth, cullContext)
   }
   
   
   private[scenegraph] def nodeCull(
-    updateChildren: Boolean, cullChildren:Boolean, batchChildren: Boolean,
+    updateChildren: Boolean, cullChildren:Boolean, forkChildren: Boolean,
     allowMultithreading: Boolean, currentDepth: Int,
     cullContext: CullContext[T, G]
   ) {
+    var tasks: ArrayBuffer[ForkJoinTask[_]] = null
+    var subtreeSize = 1
+    
     val children = this.children
     val size = children.size; var i = 0; while (i < size) { val current = children(i)
       
       current match {
         
         case bounded: Bounded[_, _] =>
-          if (batchChildren) cullContext.batchArray += bounded
+          subtreeSize += bounded.subtreeSize
+          
+          if (forkChildren && bounded.subtreeSize >= cullContext.culler.minTaskSize) {
+            if (tasks == null) tasks = new ArrayBuffer[ForkJoinTask[_]]
+            tasks += cullContext.culler.fork(bounded, updateChildren, cullChildren, currentDepth + 1)
+          }
           else bounded.cull(updateChildren, cullChildren, allowMultithreading, currentDepth + 1, cullContext)
         
         case _ =>
-          current.updateWorldTransformation()
+          subtreeSize += 1
+          current.updateIfDirty()
       }
       
       i += 1
     }
+    
+    this.subtreeSize = subtreeSize
+    if (tasks != null) ParallelCuller.join(tasks)
   }
 }
@@ -46,10 +46,14 @@ abstract class Bounded[T <: TransformationContext, G <: GraphicsContext] private
    *  volume must be provided by the user.
    */
   final val customBoundingVolume = Reassignable.optional[BoundingVolume]//XXX rename to boundingVolume
+  customBoundingVolume.setChangeListener(dirtyListener)
   private[scenegraph] final val autoBoundingVolume = Reassignable.optional[BoundingVolume]
   
   private[scenegraph] final var animators: ArrayBuffer[Updater] = null
   
+  // Number of elements in this subtree as of the last cull, used to split culling into tasks.
+  private[scenegraph] var subtreeSize = 1
+  
   
   private[scenegraph] final def resolveBoundingVolume(): Reassignable[BoundingVolume] = {
     if (customBoundingVolume.isDefined) customBoundingVolume else autoBoundingVolume
@@ -122,15 +126,26 @@ abstract class Bounded[T <: TransformationContext, G <: GraphicsContext] private
    */
   private[scenegraph] def updateBoundingVolume(allowMultithreading: Boolean) :Boolean
   
+  /** Updates the transformation and the bounding volume only when this subtree has changed.
+   * The dirty flag is cleared before updating, so changes made during the update are not lost.
+   */
+  private[scenegraph] final def updateIfDirty(allowMultithreading: Boolean) {
+    UpdateCounters.visited()
+    
+    if (dirty) {
+      dirty = false
+      UpdateCounters.updated()
+      updateBoundingVolume(allowMultithreading)
+    }
+  }
+  
   private[scenegraph] def cull(
     update: Boolean, enableCulling: Boolean,
     allowMultithreading: Boolean, currentDepth: Int,
     cullContext: CullContext[T, G]
   ) {
-    if (update) {
-      if (enableCulling) updateBoundingVolume(allowMultithreading)
-      else updateWorldTransformation()
-    }
+    if (update) updateIfDirty(allowMultithreading)
+    else UpdateCounters.visited()
     
     val res =
       if (enableCulling) BoundingVolume.intersect(
@@ -190,6 +205,18 @@ object Bounded {
           }
           resultMin := min(resultMin, pmin)
           resultMax := max(resultMax, pmax)
+        case b: Sphere =>
+          if (worldTransformation.isDefined) {
+            val matrix = worldTransformation.matrix
+            val center = matrix.transformPoint(b.center)
+            val radius = b.radius*BoundingVolume.maxScale(matrix)
+            resultMin := min(resultMin, center - radius)
+            resultMax := max(resultMax, center + radius)
+          }
+          else {
+            resultMin := min(resultMin, b.center - b.radius)
+            resultMax := max(resultMax, b.center + b.radius)
+          }
       }
     }
     
@@ -266,4 +293,42 @@ object Bounded {
       }; rebuildNoIndex()
     }
   }
+  
+  /** Fits an Oabb, an Obb, and a Sphere around the geometry and assigns the one with the smallest volume.
+   * Falls back to Oabb when only a part of the geometry is used or when vertices are rendered as point sprites.
+   */
+  def rebuildTightest(elementRange: ReadElementRange, geometry: Geometry, result: Reassignable[BoundingVolume]) {
+    val aabb = new Oabb
+    rebuildAabb(elementRange, geometry)(aabb.min, aabb.max)
+    
+    val fitAll =
+      elementRange == null && geometry.vertices.isAccessible &&
+      geometry.primitive.get.mode.toConst != VertexMode.PointSprites
+    
+    if (!fitAll || geometry.vertices.get.read.size == 0) {
+      result := aabb
+      return
+    }
+    
+    val vertices = geometry.vertices.get.read
+    
+    val obb = new Obb
+    intersection.Obb.fitObb(vertices)(obb.min, obb.max, obb.transformation)
+    
+    val sphere = new Sphere
+    sphere.radius = intersection.Sphere.fitSphere(vertices)(sphere.center)
+    
+    def boxVolume(min: inVec3, max: inVec3) :Double = {
+      val size = max - min
+      size.x*size.y*size.z
+    }
+    
+    val aabbVolume = boxVolume(aabb.min, aabb.max)
+    val obbVolume = boxVolume(obb.min, obb.max)
+    val sphereVolume = (4.0/3.0)*scala.math.Pi*sphere.radius*sphere.radius*sphere.radius
+    
+    if (sphereVolume < obbVolume && sphereVolume < aabbVolume) result := sphere
+    else if (obbVolume < aabbVolume) result := obb
+    else result := aabb
+  }
 }
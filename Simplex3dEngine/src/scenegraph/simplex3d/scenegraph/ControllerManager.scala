@@ -20,45 +20,171 @@
 
 package simplex3d.scenegraph
 
-import java.util.Collections
-import java.util.HashSet
-import java.util.ArrayList
+import java.util.IdentityHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicLong
 import scala.collection.mutable.ArrayBuffer
-import scala.collection.JavaConversions
+import scala.concurrent.forkjoin._
 import simplex3d.engine._
+import simplex3d.engine.scene._
+
+
+/** Records a controller that took longer than the time budget.
+ */
+final class ControllerOverrun(val spatial: Spatial[_], val controller: Updater, val nanos: Long) {
+  override def toString :String = "ControllerOverrun(" + controller + ", " + (nanos/1000) + " us)"
+}
+
+
+/** Runs the controllers for all the spatials attached to a scene-graph.
+ *
+ * Registration is lock-free: register() and unregister() only queue the spatials, the queues are applied
+ * at the start of the next update. Controlled spatials are kept in a dense array, which is split
+ * into chunks of up to grain elements when running in parallel.
+ *
+ * When timeBudget is greater than zero, every controller is timed, and the controllers that
+ * take longer than the budget (in seconds) are reported as overruns.
+ */
+final class ControllerManager(
+  val enableMultithreading: Boolean,
+  val grain: Int = 256,
+  val timeBudget: Double = 0
+) {
+  private[this] val pending = new ConcurrentLinkedQueue[Spatial[_]]
+
+  // Only accessed from the update thread.
+  private[this] var controlled = new Array[Spatial[_]](64)
+  private[this] var size = 0
+  private[this] val indexes = new IdentityHashMap[Spatial[_], Integer]
+
+  private[this] val budgetNanos = (timeBudget*1e9).toLong
+  private[this] val overrunQueue = new ConcurrentLinkedQueue[ControllerOverrun]
+  private[this] val overrunCounter = new AtomicLong
+  private[this] var lastOverruns: IndexedSeq[ControllerOverrun] = IndexedSeq.empty
+  private[this] var lastOverrunCount = 0L
+
+  private[this] lazy val pool = new ForkJoinPool()
+  private[this] var time: TimeStamp = _
 
 
-final class ControllerManager(val enableMultithreading: Boolean) {
-  private[this] val set = new HashSet[Spatial[_]]()
-  private[this] val syncSet = Collections.synchronizedSet(set)
-  private[this] val list = new ArrayList[Spatial[_]]()
-  
-  
   def register(elements: ArrayBuffer[Spatial[_]]) {
-    syncSet.addAll(JavaConversions.bufferAsJavaList(elements))
+    var i = 0; while (i < elements.size) {
+      pending.add(elements(i))
+      i += 1
+    }
   }
-  
+
   def unregister(elements: ArrayBuffer[Spatial[_]]) {
-    syncSet.removeAll(JavaConversions.bufferAsJavaList(elements))
+    register(elements) // The queue is reconciled with the spatial state, so both operations are the same.
+  }
+
+  /** Number of spatials with controllers as of the last update.
+   */
+  def controlledCount: Int = size
+
+  /** Number of controllers that exceeded the time budget during the last update.
+   */
+  def overrunCount: Long = lastOverrunCount
+
+  /** Overruns from the last update, up to MaxRecordedOverruns.
+   */
+  def overruns: IndexedSeq[ControllerOverrun] = lastOverruns
+
+
+  private[scenegraph] def reportOverrun(spatial: Spatial[_], controller: Updater, nanos: Long) {
+    if (overrunCounter.incrementAndGet() <= ControllerManager.MaxRecordedOverruns) {
+      overrunQueue.add(new ControllerOverrun(spatial, controller, nanos))
+    }
   }
-  
+
+  /** Applies the queued registration changes. A spatial is controlled when it has controllers and
+   * is attached to the scene-graph using this manager.
+   */
+  private[this] def applyPending() {
+    var spatial = pending.poll()
+    while (spatial != null) {
+      val registered = indexes.containsKey(spatial)
+      val hasControllers = (spatial.controllers != null && (spatial.controllerManager eq this))
+
+      if (hasControllers && !registered) add(spatial)
+      else if (!hasControllers && registered) remove(spatial)
+
+      spatial = pending.poll()
+    }
+  }
+
+  private[this] def add(spatial: Spatial[_]) {
+    if (size == controlled.length) {
+      val grown = new Array[Spatial[_]](size*2)
+      System.arraycopy(controlled, 0, grown, 0, size)
+      controlled = grown
+    }
+
+    controlled(size) = spatial
+    indexes.put(spatial, size)
+    size += 1
+  }
+
+  private[this] def remove(spatial: Spatial[_]) {
+    val index: Int = indexes.remove(spatial)
+    val last = size - 1
+
+    if (index != last) {
+      val moved = controlled(last)
+      controlled(index) = moved
+      indexes.put(moved, index)
+    }
+    controlled(last) = null
+    size = last
+  }
+
+
+  private[this] def processRange(from: Int, until: Int) {
+    var i = from; while (i < until) {
+      val spatial = controlled(i)
+
+      // Controllers removed earlier in this update are unregistered at the start of the next one.
+      if (spatial.controllers != null) spatial.runControllers(time, budgetNanos)
+      i += 1
+    }
+  }
+
+  private final class UpdateTask(from: Int, until: Int) extends RecursiveAction {
+    def compute() {
+      if (until - from <= grain) processRange(from, until)
+      else {
+        val mid = (from + until) >>> 1
+        ForkJoinTask.invokeAll(new UpdateTask(from, mid), new UpdateTask(mid, until))
+      }
+    }
+  }
+
   def update(time: TimeStamp) {
-    list.clear()
-    list.addAll(set)// Copying to list allows to add/remove controllers from existing controllers.
-    
-    def processSpatial(spatial: Spatial[_]) {
-      spatial.runControllers(time)
+    applyPending()
+    this.time = time
+
+    // Controllers may add or remove controllers, the changes are queued until the next update.
+    if (enableMultithreading && size > grain) {
+      pool.invoke(new UpdateTask(0, size))
+    }
+    else {
+      processRange(0, size)
     }
-    
-    if (enableMultithreading) {
-      (0 until list.size).par.foreach(i => processSpatial(list.get(i)))
-    } else {
-      def processControlled() {
-        val size = list.size; var i = 0; while (i < size) {
-          processSpatial(list.get(i))
-          i += 1
-        }
-      }; processControlled()
+
+    lastOverrunCount = overrunCounter.getAndSet(0)
+    if (lastOverrunCount > 0 || !lastOverruns.isEmpty) {
+      val buffer = new ArrayBuffer[ControllerOverrun]
+      var overrun = overrunQueue.poll()
+      while (overrun != null) {
+        buffer += overrun
+        overrun = overrunQueue.poll()
+      }
+      lastOverruns = buffer
     }
   }
 }
+
+
+object ControllerManager {
+  final val MaxRecordedOverruns = 64
+}
@@ -31,7 +31,5 @@ final class CullContext[T <: TransformationContext, G <: GraphicsContext](
   val renderArray: SortBuffer[SceneElement[T, G]],
   val time: TimeStamp,
   val view: View,
-  val batchChildrenThreshold: Int, // applies when parsing scenegraph with multithreading enabled
-  val batchDepthThreshold: Int, // applies when parsing scenegraph with multithreading enabled
-  val batchArray: SortBuffer[SceneElement[T, G]] // used to accumulate elements
+  val culler: ParallelCuller[T, G] // null unless culling with ForkJoin tasks
 )
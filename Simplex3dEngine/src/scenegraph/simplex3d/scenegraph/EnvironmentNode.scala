@@ -20,6 +20,8 @@
 
 package simplex3d.scenegraph
 
+import scala.collection.mutable.ArrayBuffer
+import scala.concurrent.forkjoin.ForkJoinTask
 import simplex3d.algorithm.intersection.{ Frustum, Collision }
 import simplex3d.engine.util._
 import simplex3d.engine.bounding._
@@ -50,10 +52,12 @@ extends AbstractNode[T, G](name) {
   
   
   private[scenegraph] override def nodeCull(
-    updateChildren: Boolean, cullChildren:Boolean, batchChildren: Boolean,
+    updateChildren: Boolean, cullChildren:Boolean, forkChildren: Boolean,
     allowMultithreading: Boolean, currentDepth: Int,
     cullContext: CullContext[T, G]
   ) {
+    var tasks: ArrayBuffer[ForkJoinTask[_]] = null
+    var subtreeSize = 1
     
     if (parent == null) { 
       def propagateRoot() { // special treatment for the root node
@@ -114,18 +118,32 @@ extends AbstractNode[T, G](name) {
             }
           }; if (envNode.combineEnvironment) propagateEnvironment()
           
-          if (batchChildren) cullContext.batchArray += envNode
+          subtreeSize += envNode.subtreeSize
+          
+          if (forkChildren && envNode.subtreeSize >= cullContext.culler.minTaskSize) {
+            if (tasks == null) tasks = new ArrayBuffer[ForkJoinTask[_]]
+            tasks += cullContext.culler.fork(envNode, updateChildren, cullChildren, currentDepth + 1)
+          }
           else envNode.cull(updateChildren, cullChildren, allowMultithreading, currentDepth + 1, cullContext)
 
         case bounded: Bounded[_, _] =>
-          if (batchChildren) cullContext.batchArray += bounded
+          subtreeSize += bounded.subtreeSize
+          
+          if (forkChildren && bounded.subtreeSize >= cullContext.culler.minTaskSize) {
+            if (tasks == null) tasks = new ArrayBuffer[ForkJoinTask[_]]
+            tasks += cullContext.culler.fork(bounded, updateChildren, cullChildren, currentDepth + 1)
+          }
           else bounded.cull(updateChildren, cullChildren, allowMultithreading, currentDepth + 1, cullContext)
         
         case _ =>
-          current.updateWorldTransformation()
+          subtreeSize += 1
+          current.updateIfDirty()
       }
       
       i += 1
     }
+    
+    this.subtreeSize = subtreeSize
+    if (tasks != null) ParallelCuller.join(tasks)
   }
 }
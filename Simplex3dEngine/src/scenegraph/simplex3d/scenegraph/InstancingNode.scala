@@ -20,6 +20,7 @@
 
 package simplex3d.scenegraph
 
+import scala.collection.mutable.ArrayBuffer
 import simplex3d.math.types._
 import simplex3d.math.double._
 import simplex3d.math.double.functions._
@@ -35,19 +36,47 @@ import simplex3d.engine.scene.api._
 
 
 // XXX limit based on MAX_VBO_SIZE
+/** Renders all the instances with a single display mesh.
+ * 
+ * By default, the source geometry is transformed on the CPU and copied for every instance.
+ * With hardwareInstancing enabled, and when the geometry defines the per-instance attributes,
+ * the source geometry is shared and only the per-instance matrix rows are written.
+ * 
+ * Every visible instance occupies a slot in the display mesh. Only the slots of instances that have
+ * moved or became visible are rewritten, so the uploaded regions are proportional to the changes.
+ */
 final class InstancingNode[T <: TransformationContext, G <: GraphicsContext] (
   name: String,
-  val cullingEnabled: Boolean = true
+  val cullingEnabled: Boolean = true,
+  val hardwareInstancing: Boolean = false
 )(implicit transformationContext: T, graphicsContext: G)
 extends Entity[T, G](name) {
   
+  private trait InstanceSlot { self: Spatial[T] =>
+    /** Index of the display mesh region occupied by this instance, -1 when none is assigned.
+     */
+    var slot = -1
+    var lastVisibleFrame = 0L
+    
+    /** Set when the world transformation has changed since the slot was last written.
+     */
+    var transformed = true
+    
+    var pendingWrite = false
+    var writeIndices = false
+    
+    final def instanceMatrix = uncheckedWorldTransformation.matrix
+  }
+  
   private final class BoundedInstance(name: String)(
     implicit transformationContext: T, graphicsContext: G
-  ) extends Bounded[T, G](name) {
+  ) extends Bounded[T, G](name) with InstanceSlot {
     
     private[scenegraph] override def updateBoundingVolume(allowMultithreading: Boolean) :Boolean = {
       propagateWorldTransformation()
-      val updateParentVolume = updateBounding || uncheckedWorldTransformation.hasDataChanges
+      val changed = uncheckedWorldTransformation.hasDataChanges
+      if (changed) transformed = true
+      val updateParentVolume = updateBounding || changed
       uncheckedWorldTransformation.clearDataChanges()
 
       updateParentVolume
@@ -56,17 +85,33 @@ extends Entity[T, G](name) {
   
   private final class Instance(name: String)(
     implicit transformationContext: T, graphicsContext: G
-  ) extends SceneElement[T, G](name)
+  ) extends SceneElement[T, G](name) with InstanceSlot {
+    
+    private[scenegraph] override def worldTransformationChanged() {
+      transformed = true
+    }
+  }
   
   
   private val srcMesh = new Mesh(name + " - Source Mesh")
   srcMesh.uncheckedWorldTransformation.clearDataChanges()
   
+  @volatile private var sourceChanged = true
+  private val sourceListener = new ChangeListener {
+    def onChange() {
+      sourceChanged = true
+      markDirty()
+    }
+  }
+  srcMesh.setShapeListener(sourceListener)
+  srcMesh.geometry.normals.setChangeListener(sourceListener)
+  
   final val instanceBoundingVolume = srcMesh.customBoundingVolume
   final def geometry: G#Geometry = srcMesh.geometry
   final def material: G#Material = srcMesh.material
   
   private val displayMesh = new Mesh(name + " - Display Mesh", this, graphicsContext.mkGeometry(), material)
+  displayMesh.setShapeListener(null) // Display mesh is maintained by this node and is never culled.
   
   private val localRenderArray = new ConcurrentSortBuffer[SceneElement[T, G]]
   
@@ -74,6 +119,26 @@ extends Entity[T, G](name) {
   private val indexVertices = displayMesh.geometry.attributeNames.indexWhere(_ == "vertices")
   private val indexNormals = displayMesh.geometry.attributeNames.indexWhere(_ == "normals")
   
+  private val indexInstanceTransformation = Array(
+    "instanceTransformation0", "instanceTransformation1", "instanceTransformation2"
+  ).map(name => displayMesh.geometry.attributeNames.indexWhere(_ == name))
+  private val indexInstanceNormalMatrix = Array(
+    "instanceNormalMatrix0", "instanceNormalMatrix1", "instanceNormalMatrix2"
+  ).map(name => displayMesh.geometry.attributeNames.indexWhere(_ == name))
+  
+  final val instanced = hardwareInstancing &&
+    indexInstanceTransformation.forall(_ >= 0) && indexInstanceNormalMatrix.forall(_ >= 0)
+  
+  private var instanceCapacity = 0
+  
+  private var frame = 0L
+  private var slots = new Array[InstanceSlot](16)
+  private var slotCount = 0
+  
+  private val holes = new ArrayBuffer[Int]
+  private val clearedSlots = new ArrayBuffer[Int]
+  private val pending = new ArrayBuffer[InstanceSlot]
+  
   private var rebuild = true
   private var srcVerticesSize = 0
   private var srcIndicesSize = 0
@@ -82,6 +147,8 @@ extends Entity[T, G](name) {
   
   
   private def rebuildAttributes() {
+    resetSlots()
+    
     val childrenCount = children.length
     srcVerticesSize = geometry.vertices.read.size
     val destVertexSize = childrenCount*srcVerticesSize
@@ -122,6 +189,161 @@ extends Entity[T, G](name) {
     }
   }
   
+  private def isInstanceAttribute(index: Int) :Boolean = {
+    indexInstanceTransformation.contains(index) || indexInstanceNormalMatrix.contains(index)
+  }
+  
+  private def shareAttributes() {
+    resetSlots()
+    
+    srcVerticesSize = geometry.vertices.read.size
+    srcIndicesSize = if (geometry.indices.isDefined) geometry.indices.read.size else 0
+    
+    var i = 0; while (i < geometry.attributes.length) {
+      if (!isInstanceAttribute(i)) {
+        displayMesh.geometry.attributes(i) := geometry.attributes(i)
+      }
+      
+      i += 1
+    }
+  }
+  
+  /** @return true if the per-instance attributes were reallocated.
+   */
+  private def ensureInstanceCapacity(size: Int) :Boolean = {
+    if (size <= instanceCapacity) return false
+    instanceCapacity = if (size > instanceCapacity*2) size else instanceCapacity*2
+    
+    // Only the slots of the changed instances are rewritten, so the attributes are kept dynamic.
+    var i = 0; while (i < 3) {
+      displayMesh.geometry.attributes(indexInstanceTransformation(i)) :=
+        Attributes[Vec4, RFloat](instanceCapacity, Caching.Dynamic, 1).asInstanceOf[Attributes[Format, Raw]]
+      displayMesh.geometry.attributes(indexInstanceNormalMatrix(i)) :=
+        Attributes[Vec3, RFloat](instanceCapacity, Caching.Dynamic, 1).asInstanceOf[Attributes[Format, Raw]]
+      
+      i += 1
+    }
+    
+    true
+  }
+  
+  private def resetSlots() {
+    var i = 0; while (i < slotCount) {
+      if (slots(i) != null) {
+        slots(i).slot = -1
+        slots(i) = null
+      }
+      i += 1
+    }
+    slotCount = 0
+  }
+  
+  private def queueWrite(instance: InstanceSlot, indices: Boolean) {
+    if (!instance.pendingWrite) {
+      instance.pendingWrite = true
+      pending += instance
+    }
+    instance.writeIndices = instance.writeIndices || indices
+    instance.transformed = false
+  }
+  
+  private def queueOccupied() {
+    var i = 0; while (i < slotCount) {
+      if (slots(i) != null) queueWrite(slots(i), true)
+      i += 1
+    }
+  }
+  
+  /** Assigns slots to the visible instances and queues the writes.
+   * Slots of instances that are no longer visible become holes. Holes are reused by newly visible
+   * instances, and are filled with instances from the end once they make up a quarter of the slots.
+   */
+  private def updateSlots(instanceArray: IndexedSeq[SceneElement[T, G]], rewriteAll: Boolean) {
+    frame += 1
+    holes.clear()
+    clearedSlots.clear()
+    pending.clear()
+    
+    val size = instanceArray.size
+    var i = 0; while (i < size) {
+      instanceArray(i).asInstanceOf[InstanceSlot].lastVisibleFrame = frame
+      i += 1
+    }
+    
+    i = 0; while (i < slotCount) {
+      val occupant = slots(i)
+      if (occupant == null) {
+        holes += i
+      }
+      else if (occupant.lastVisibleFrame != frame) {
+        occupant.slot = -1
+        slots(i) = null
+        holes += i
+        clearedSlots += i
+      }
+      
+      i += 1
+    }
+    
+    var nextHole = 0
+    i = 0; while (i < size) {
+      val instance = instanceArray(i).asInstanceOf[InstanceSlot]
+      
+      if (instance.slot == -1) {
+        val slot =
+          if (nextHole < holes.size) {
+            nextHole += 1
+            holes(nextHole - 1)
+          }
+          else {
+            if (slotCount == slots.length) {
+              val grown = new Array[InstanceSlot](slots.length*2)
+              System.arraycopy(slots, 0, grown, 0, slotCount)
+              slots = grown
+            }
+            slotCount += 1
+            slotCount - 1
+          }
+        
+        slots(slot) = instance
+        instance.slot = slot
+        queueWrite(instance, true)
+      }
+      else if (rewriteAll || instance.transformed) {
+        queueWrite(instance, rewriteAll)
+      }
+      
+      i += 1
+    }
+    
+    def trim() {
+      while (slotCount > 0 && slots(slotCount - 1) == null) slotCount -= 1
+    }
+    trim()
+    
+    var remainingHoles = 0
+    i = nextHole; while (i < holes.size) {
+      if (holes(i) < slotCount) remainingHoles += 1
+      i += 1
+    }
+    
+    if (remainingHoles*4 > slotCount) {
+      i = nextHole; while (i < holes.size && holes(i) < slotCount) {
+        val hole = holes(i)
+        val instance = slots(slotCount - 1)
+        slots(slotCount - 1) = null
+        slotCount -= 1
+        
+        slots(hole) = instance
+        instance.slot = hole
+        queueWrite(instance, true)
+        trim()
+        
+        i += 1
+      }
+    }
+  }
+  
   private def rebuildBounding() {
     updateBounding = srcMesh.updateBoundingVolume(false)
     
@@ -132,6 +354,7 @@ extends Entity[T, G](name) {
             val instance = children(i).asInstanceOf[BoundedInstance]
             instance.customBoundingVolume := srcMesh.customBoundingVolume
             instance.autoBoundingVolume.undefine()
+            instance.dirty = true
             
             i += 1
           }
@@ -143,11 +366,14 @@ extends Entity[T, G](name) {
             val instance = children(i).asInstanceOf[BoundedInstance]
             instance.customBoundingVolume.undefine()
             instance.autoBoundingVolume := srcMesh.autoBoundingVolume
+            instance.dirty = true
             
             i += 1
           }
         }; process()
       }
+      
+      markDirty()
     }
     
     srcMesh.clearShapeChanges()
@@ -177,10 +403,11 @@ extends Entity[T, G](name) {
   }
   
   private[scenegraph] override def nodeCull(
-    updateChildren: Boolean, cullChildren:Boolean, batchChildren: Boolean,
+    updateChildren: Boolean, cullChildren:Boolean, forkChildren: Boolean,
     allowMultithreading: Boolean, currentDepth: Int,
     cullContext: CullContext[T, G]
   ) {
+    subtreeSize = 1 + children.size
     
     def processChild(child: SceneElement[T, G]) {
       child match {
@@ -189,7 +416,7 @@ extends Entity[T, G](name) {
           bounded.cull(updateChildren, cullChildren, false, currentDepth + 1, cullContext)
           
         case _ =>
-          child.updateWorldTransformation()
+          child.updateIfDirty()
       }
     }
     
@@ -221,8 +448,6 @@ extends Entity[T, G](name) {
       localRenderArray,
       cullContext.time,
       cullContext.view,
-      cullContext.batchChildrenThreshold,
-      cullContext.batchDepthThreshold,
       null
     )
     
@@ -235,8 +460,7 @@ extends Entity[T, G](name) {
     
     if (!geometry.vertices.isDefined) return
     
-    val srcVertices = geometry.vertices.read
-    var geometryChanges = (srcVertices.size != srcVerticesSize)
+    var geometryChanges = (geometry.vertices.read.size != srcVerticesSize)
     
     if (geometry.indices.isDefined) {
       geometryChanges = geometryChanges || (geometry.indices.read.size != srcIndicesSize)
@@ -245,7 +469,7 @@ extends Entity[T, G](name) {
     // XXX rebuild on changes to other non-vertex and non-normal attributes
     
     if (rebuild || geometryChanges) {
-      rebuildAttributes()
+      if (instanced) shareAttributes() else rebuildAttributes()
       rebuild = false
     }
     
@@ -253,57 +477,200 @@ extends Entity[T, G](name) {
     
     val instanceArray = if (cullingEnabled) { localRenderArray } else children
     
+    // Shared source attributes do not need to be rewritten when their data changes.
+    val rewriteAll = sourceChanged && !instanced
+    sourceChanged = false
+    
+    updateSlots(instanceArray, rewriteAll)
+    if (instanced && ensureInstanceCapacity(slotCount)) queueOccupied()
+    
+    if (instanced) writeInstanceAttributes(allowMultithreading)
+    else transformInstances(allowMultithreading)
+    
+    var i = 0; while (i < pending.size) {
+      pending(i).pendingWrite = false
+      pending(i).writeIndices = false
+      i += 1
+    }
+    
+    val elementCount = if (srcIndicesSize > 0) srcIndicesSize else srcVerticesSize
+    displayMesh.elementRange.update.first := 0
+    if (instanced) {
+      displayMesh.elementRange.update.count := (if (slotCount > 0) elementCount else 0)
+      displayMesh.instanceCount = slotCount
+    }
+    else {
+      displayMesh.elementRange.update.count := slotCount*elementCount
+    }
+    
+    cullContext.renderArray += displayMesh
+  }
+  
+  /** Transforms the source geometry into the slots of the pending instances.
+   * Cleared slots are made degenerate, so they do not produce any fragments.
+   */
+  private def transformInstances(allowMultithreading: Boolean) {
+    val srcVertices = geometry.vertices.read
     val srcNormals = if (geometry.normals.isDefined) geometry.normals.read else null
-    val destIndices = displayMesh.geometry.indices.write(0, instanceArray.size*srcIndicesSize)
-    val destVertices = displayMesh.geometry.vertices.write(0, instanceArray.size*srcVerticesSize)
-    val destNormals = displayMesh.geometry.normals.write(0, instanceArray.size*srcVerticesSize)
+    val srcIndices = if (srcIndicesSize > 0) geometry.indices.read else null
+    
+    var i = 0; while (i < clearedSlots.size) {
+      val slot = clearedSlots(i)
+      
+      if (slot < slotCount) {
+        if (srcIndices != null) {
+          val destIndices = displayMesh.geometry.indices.write(slot*srcIndicesSize, srcIndicesSize)
+          val vertexOffset = slot*srcVerticesSize
+          var j = 0; while (j < srcIndicesSize) {
+            destIndices(slot*srcIndicesSize + j) = vertexOffset
+            j += 1
+          }
+        }
+        else {
+          val destVertices = displayMesh.geometry.vertices.write(slot*srcVerticesSize, srcVerticesSize)
+          var j = 0; while (j < srcVerticesSize) {
+            destVertices(slot*srcVerticesSize + j) = Vec3.Zero
+            j += 1
+          }
+        }
+      }
+      
+      i += 1
+    }
+    
+    if (pending.isEmpty) return
     
-    def processChild(childIndex: Int, child: SceneElement[T, G]) {
+    // Regions are marked sequentially, only the data is written in parallel.
+    var destVertices: DataView[Vec3, RFloat] = null
+    var destNormals: DataView[Vec3, RFloat] = null
+    var destIndices: DataView[SInt, Unsigned] = null
+    
+    i = 0; while (i < pending.size) {
+      val instance = pending(i)
+      
+      destVertices = displayMesh.geometry.vertices.write(instance.slot*srcVerticesSize, srcVerticesSize)
+      if (srcNormals != null) {
+        destNormals = displayMesh.geometry.normals.write(instance.slot*srcVerticesSize, srcVerticesSize)
+      }
+      if (srcIndices != null && instance.writeIndices) {
+        destIndices = displayMesh.geometry.indices.write(instance.slot*srcIndicesSize, srcIndicesSize)
+      }
+      
+      i += 1
+    }
+    
+    val vertices = destVertices
+    val normals = destNormals
+    val indices = destIndices
+    
+    def processInstance(instance: InstanceSlot) {
       
-      val vertexOffset = childIndex*srcVerticesSize
-      val indexOffset = childIndex*srcIndicesSize
+      val vertexOffset = instance.slot*srcVerticesSize
+      val indexOffset = instance.slot*srcIndicesSize
       
       def transformData(transformation: inMat4x3, normalMatrix: inMat3) {
         var i = 0; while (i < srcVertices.size) {
           
-          destVertices(vertexOffset + i) = transformation.transformPoint(srcVertices(i))
-          if (srcNormals != null) destNormals(vertexOffset + i) = normalMatrix*srcNormals(i)
+          vertices(vertexOffset + i) = transformation.transformPoint(srcVertices(i))
+          if (srcNormals != null) normals(vertexOffset + i) = normalMatrix*srcNormals(i)
           
           i += 1
         }
       }
       def copyIndex() {
-        val srcIndices = geometry.indices.read
         var i = 0; while (i < srcIndices.size) {
           
-          destIndices(indexOffset + i) = srcIndices(i) + vertexOffset
+          indices(indexOffset + i) = srcIndices(i) + vertexOffset
           
           i += 1
         }
       }
       
-      val transformation = child.uncheckedWorldTransformation.matrix
+      val transformation = instance.instanceMatrix
       val normalMatrix = if (srcNormals != null) functions.normalMat(transformation) else null
       transformData(transformation, normalMatrix)
       
-      if (geometry.indices.isDefined) {
+      if (srcIndices != null && instance.writeIndices) {
         copyIndex()
       }
     }
     
     if (allowMultithreading) {
-      (0 until instanceArray.size).par.foreach(i => processChild(i, instanceArray(i)))
+      (0 until pending.size).par.foreach(i => processInstance(pending(i)))
     }
     else {
-      val size = instanceArray.size; var i = 0; while (i < size) {
-        processChild(i, instanceArray(i))
+      val size = pending.size; var i = 0; while (i < size) {
+        processInstance(pending(i))
         i += 1
       }
     }
+  }
+  
+  /** Writes the rows of the world and normal matrices for the pending instances.
+   * Cleared slots get zero rows, which collapse the instance to a single point.
+   */
+  private def writeInstanceAttributes(allowMultithreading: Boolean) {
+    def transformationRows(row: Int, slot: Int) = displayMesh.geometry.attributes(indexInstanceTransformation(row))
+      .write(slot, 1).asInstanceOf[DataView[Vec4, RFloat]]
+    def normalMatrixRows(row: Int, slot: Int) = displayMesh.geometry.attributes(indexInstanceNormalMatrix(row))
+      .write(slot, 1).asInstanceOf[DataView[Vec3, RFloat]]
     
-    displayMesh.elementRange.update.first := 0
-    displayMesh.elementRange.update.count := instanceArray.size*srcIndicesSize
+    var i = 0; while (i < clearedSlots.size) {
+      val slot = clearedSlots(i)
+      
+      if (slot < slotCount) {
+        transformationRows(0, slot)(slot) = Vec4.Zero
+        transformationRows(1, slot)(slot) = Vec4.Zero
+        transformationRows(2, slot)(slot) = Vec4.Zero
+      }
+      
+      i += 1
+    }
     
-    cullContext.renderArray += displayMesh
+    if (pending.isEmpty) return
+    
+    // Regions are marked sequentially, only the data is written in parallel.
+    var transformation0, transformation1, transformation2: DataView[Vec4, RFloat] = null
+    var normalMatrix0, normalMatrix1, normalMatrix2: DataView[Vec3, RFloat] = null
+    
+    i = 0; while (i < pending.size) {
+      val slot = pending(i).slot
+      
+      transformation0 = transformationRows(0, slot)
+      transformation1 = transformationRows(1, slot)
+      transformation2 = transformationRows(2, slot)
+      normalMatrix0 = normalMatrixRows(0, slot)
+      normalMatrix1 = normalMatrixRows(1, slot)
+      normalMatrix2 = normalMatrixRows(2, slot)
+      
+      i += 1
+    }
+    
+    val rows0 = transformation0; val rows1 = transformation1; val rows2 = transformation2
+    val normalRows0 = normalMatrix0; val normalRows1 = normalMatrix1; val normalRows2 = normalMatrix2
+    
+    def processInstance(instance: InstanceSlot) {
+      val slot = instance.slot
+      
+      val m = instance.instanceMatrix
+      rows0(slot) = Vec4(m.m00, m.m10, m.m20, m.m30)
+      rows1(slot) = Vec4(m.m01, m.m11, m.m21, m.m31)
+      rows2(slot) = Vec4(m.m02, m.m12, m.m22, m.m32)
+      
+      val n = functions.normalMat(m)
+      normalRows0(slot) = Vec3(n.m00, n.m10, n.m20)
+      normalRows1(slot) = Vec3(n.m01, n.m11, n.m21)
+      normalRows2(slot) = Vec3(n.m02, n.m12, n.m22)
+    }
+    
+    if (allowMultithreading) {
+      (0 until pending.size).par.foreach(i => processInstance(pending(i)))
+    }
+    else {
+      val size = pending.size; var i = 0; while (i < size) {
+        processInstance(pending(i))
+        i += 1
+      }
+    }
   }
 }
@@ -48,9 +48,25 @@ extends Bounded[T, G](name) with InheritedEnvironment with AbstractMesh {
   
   final def worldEnvironment = parent.worldEnvironment
   
+  /** When enabled, the automatic bounding volume is chosen as the tightest of Oabb, Obb, and Sphere.
+   * Fitting is more expensive than rebuilding Oabb, so this is best left off for geometry that changes often.
+   */
+  final var fitTightBoundingVolume = false
+  
   _parent = meshParent
   override def parent = super.parent
   
+  setShapeListener(dirtyListener)
+  
+  /** Shape changes affect the bounding volume, so they must mark the path to the root as dirty.
+   */
+  private[scenegraph] final def setShapeListener(listener: ChangeListener) {
+    elementRange.setChangeListener(listener)
+    geometry.primitive.setChangeListener(listener)
+    geometry.indices.setChangeListener(listener)
+    geometry.vertices.setChangeListener(listener)
+  }
+  
   
   private[scenegraph] override def onParentChange(
     parent: AbstractNode[T, G], managed: ArrayBuffer[Spatial[T]]
@@ -78,10 +94,18 @@ extends Bounded[T, G](name) with InheritedEnvironment with AbstractMesh {
       }
 
       if (autoBoundingVolume.hasDataChanges || hasShapeChanges()) {
-        autoBoundingVolume.update match {
+        val range = if (elementRange.isDefined) elementRange.get else null
+        
+        if (fitTightBoundingVolume) {
+          Bounded.rebuildTightest(range, geometry, autoBoundingVolume)
+        }
+        else autoBoundingVolume.update match {
           case bound: Oabb =>
-            val range = if (elementRange.isDefined) elementRange.get else null
             Bounded.rebuildAabb(range, geometry)(bound.min, bound.max)
+          case _ =>
+            val bound = new Oabb
+            Bounded.rebuildAabb(range, geometry)(bound.min, bound.max)
+            autoBoundingVolume := bound
         }
         updateParentVolume = true
       }
@@ -0,0 +1,98 @@
+/*
+ * Simplex3dEngine - SceneGraph Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.scenegraph
+
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import scala.concurrent.forkjoin._
+import simplex3d.engine._
+import simplex3d.engine.util._
+import simplex3d.engine.transformation._
+import simplex3d.engine.graphics._
+
+
+/** Culls the scene with recursive ForkJoin tasks. Subtrees larger than minTaskSize are forked as
+ * separate tasks, smaller ones are culled inline. Each worker thread appends to its own render array,
+ * the arrays are merged into the result once all the tasks are done.
+ */
+private[scenegraph] final class ParallelCuller[T <: TransformationContext, G <: GraphicsContext](
+  parallelism: Int, val minTaskSize: Int
+) {
+  
+  private[this] val pool = new ForkJoinPool(parallelism)
+  
+  private[this] val workerArrays = new ConcurrentLinkedQueue[SortBuffer[SceneElement[T, G]]]
+  private[this] val localArray = new ThreadLocal[SortBuffer[SceneElement[T, G]]] {
+    override def initialValue() = {
+      val array = new SortBuffer[SceneElement[T, G]](256)
+      workerArrays.add(array)
+      array
+    }
+  }
+  
+  // Written before the tasks are submitted, the pool guarantees visibility.
+  private[this] var time: TimeStamp = _
+  private[this] var view: View = _
+  
+  
+  private final class CullTask(
+    element: Bounded[T, G], update: Boolean, enableCulling: Boolean,
+    allowMultithreading: Boolean, currentDepth: Int
+  ) extends RecursiveAction {
+    def compute() {
+      val context = new CullContext(localArray.get, time, view, ParallelCuller.this)
+      element.cull(update, enableCulling, allowMultithreading, currentDepth, context)
+    }
+  }
+  
+  
+  def cull(root: Bounded[T, G], time: TimeStamp, view: View, result: SortBuffer[SceneElement[T, G]]) {
+    this.time = time
+    this.view = view
+    
+    pool.invoke(new CullTask(root, true, true, true, 0))
+    
+    val iterator = workerArrays.iterator
+    while (iterator.hasNext) {
+      val array = iterator.next()
+      result ++= array
+      array.clear()
+    }
+  }
+  
+  /** Must be called from within a culling task.
+   */
+  def fork(element: Bounded[T, G], update: Boolean, enableCulling: Boolean, currentDepth: Int) :ForkJoinTask[_] = {
+    val task = new CullTask(element, update, enableCulling, false, currentDepth)
+    task.fork()
+    task
+  }
+}
+
+
+private[scenegraph] object ParallelCuller {
+  def join(tasks: scala.collection.mutable.ArrayBuffer[ForkJoinTask[_]]) {
+    var i = 0; while (i < tasks.size) {
+      tasks(i).join()
+      i += 1
+    }
+  }
+}
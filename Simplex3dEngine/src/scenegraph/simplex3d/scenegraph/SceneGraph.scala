@@ -20,6 +20,7 @@
 
 package simplex3d.scenegraph
 
+import java.util.concurrent.{ Callable, ExecutionException, ExecutorService, Executors, Future, ThreadFactory }
 import scala.collection.mutable._
 import simplex3d.math._
 import simplex3d.math.double._
@@ -42,7 +43,9 @@ class SceneGraph[T <: TransformationContext, G <: GraphicsContext](
 )(implicit transformationContext: T)
 extends ManagedScene[G](name) {
   
-  private[this] val controllerManager = new ControllerManager(settings.multithreadedControllers)
+  private[this] val controllerManager = new ControllerManager(
+    settings.multithreadedControllers, settings.multithreadedControllers_Grain, settings.controllerTimeBudget
+  )
   
   protected val _root = new EnvrionmentNode("Root")(transformationContext, techniqueManager.graphicsContext)
   protected def root: EnvrionmentNode[T, G] = _root
@@ -61,19 +64,194 @@ extends ManagedScene[G](name) {
   def environment = root.environment
   
   
+  private[this] var preloadTasks: ArrayBuffer[Future[Technique]] = null
+  private[this] val preloadResources = new ArrayBuffer[AnyRef]
+  private[this] var preloadUploaded = 0
+  
+  /** Preloads the whole scene, or only the meshes within the camera view extended by
+   * SceneGraphSettings.preloadViewScale. The first call starts a preload pass: bounding volumes are updated,
+   * uncached techniques are resolved on a background thread, and the attributes and textures are queued
+   * for upload. Every call uploads the queued resources within the timeSlice, at least one per call.
+   * Once the pass is complete, 1.0 is returned and the next call starts another pass.
+   * 
+   * @return the fraction of the resolved techniques and uploaded resources for the current pass.
+   */
   protected def preload(context: RenderContext, frameTimer: FrameTimer, timeSlice: Double) :Double = {
-    // TODO Implement two preloading modes: preload everything, and preload extended visual range.
     // TODO Add a loading screen with an image and a progress bar, integrate it with the Scenegraph.
-    1.0
+    val deadline = System.nanoTime + (timeSlice*1e9).toLong
+    
+    if (preloadTasks == null) startPreload()
+    
+    val resources = preloadResources
+    var uploaded = false
+    while (preloadUploaded < resources.size && (!uploaded || System.nanoTime < deadline)) {
+      resources(preloadUploaded) match {
+        case attributes: Attributes[_, _] => context.init(attributes)
+        case texture: Texture[_] => context.init(texture)
+      }
+      preloadUploaded += 1
+      uploaded = true
+    }
+    
+    val tasks = preloadTasks
+    var resolved = 0
+    var i = 0; while (i < tasks.size) {
+      if (tasks(i).isDone) resolved += 1
+      i += 1
+    }
+    
+    val total = tasks.size + resources.size
+    val done = resolved + preloadUploaded
+    
+    if (done < total) {
+      done.toDouble/total
+    }
+    else {
+      preloadTasks = null
+      preloadResources.clear()
+      preloadUploaded = 0
+      
+      i = 0; while (i < tasks.size) {
+        try { tasks(i).get }
+        catch { case e: ExecutionException => throw e.getCause }
+        i += 1
+      }
+      
+      1.0
+    }
+  }
+  
+  private[this] def startPreload() {
+    preloadTasks = new ArrayBuffer[Future[Technique]]
+    
+    // Bounding volumes are needed for the extended view, children are updated in parallel.
+    root.updateIfDirty(settings.multithreadedParsing)
+    UpdateCounters.collect(new Array[Long](2))
+    
+    val frustum =
+      if (settings.preloadEverything) null
+      else Frustum(Mat4(Mat3(1/settings.preloadViewScale))*camera.viewProjection)
+    
+    preloadMeshes(root, frustum, new HashSet[AnyRef])
+  }
+  
+  private[this] def preloadMeshes(node: AbstractNode[T, G], frustum: Frustum, queued: HashSet[AnyRef]) {
+    val children = node.children
+    var i = 0; while (i < children.size) {
+      children(i) match {
+        
+        // Batched and instanced meshes are built while culling.
+        case _: StaticBatchNode[_, _] | _: InstancingNode[_, _] =>
+        
+        case bounded: Bounded[_, _] =>
+          val test =
+            if (frustum == null || !bounded.resolveBoundingVolume.isDefined) Collision.Inside
+            else BoundingVolume.intersect(frustum, bounded.resolveBoundingVolume.get, bounded.uncheckedWorldTransformation)
+          
+          if (test != Collision.Outside) bounded match {
+            case child: AbstractNode[_, _] =>
+              preloadMeshes(child.asInstanceOf[AbstractNode[T, G]], if (test == Collision.Inside) null else frustum, queued)
+            case mesh: Mesh[_, _] =>
+              preloadMesh(mesh.asInstanceOf[Mesh[T, G]], queued)
+            case _ =>
+          }
+        
+        case _ =>
+      }
+      
+      i += 1
+    }
+  }
+  
+  private[this] def preloadMesh(mesh: Mesh[T, G], queued: HashSet[AnyRef]) {
+    // The resolved technique is cached by the technique manager and found when the mesh becomes visible.
+    if (mesh.hasStructuralChanges &&
+      techniqueManager.findTechnique(mesh.geometry, mesh.material, mesh.worldEnvironment) == null
+    ) {
+      val name = mesh.name
+      val shaderDebugging = mesh.shaderDebugging
+      val geometry = mesh.geometry
+      val material = mesh.material
+      val worldEnvironment = mesh.worldEnvironment
+      
+      preloadTasks += backgroundResolver().submit(new Callable[Technique] {
+        def call() :Technique = {
+          techniqueManager.resolveTechnique(name, shaderDebugging, geometry, material, worldEnvironment)
+        }
+      })
+    }
+    
+    // Streamed attributes are written to the streaming buffer every frame, there is nothing to upload ahead.
+    val attributes = mesh.geometry.attributes
+    var i = 0; while (i < attributes.length) {
+      val binding = attributes(i)
+      if (binding.isDefined && binding.get.sharedState.caching != Caching.Stream && queued.add(binding.get)) {
+        preloadResources += binding.get
+      }
+      i += 1
+    }
+    
+    val uniforms = mesh.material.uniforms
+    i = 0; while (i < uniforms.length) {
+      val property = uniforms(i)
+      if (property.isDefined) preloadTextures(property.get, queued)
+      i += 1
+    }
+  }
+  
+  private[this] def preloadTextures(value: AnyRef, queued: HashSet[AnyRef]) {
+    value match {
+      case binding: ReadTextureBinding[_] =>
+        if (binding.isBound && queued.add(binding.bound)) preloadResources += binding.bound
+      
+      case struct: Struct =>
+        val fields = struct.fields
+        var i = 0; while (i < fields.length) {
+          preloadTextures(fields(i), queued)
+          i += 1
+        }
+      
+      case seq: BindingSeq[_] =>
+        var i = 0; while (i < seq.size) {
+          preloadTextures(seq(i).asInstanceOf[AnyRef], queued)
+          i += 1
+        }
+      
+      case _ =>
+    }
   }
   
   protected def update(time: TimeStamp) {
+    val start = Profiler.start()
     controllerManager.update(time)
+    Profiler.stop(Profiler.Controllers, start)
   }
   
   
-  private val batchArray = new SortBuffer[SceneElement[T, G]](100)
-  private val concurrentArray = new ConcurrentSortBuffer[SceneElement[T, G]](100)
+  private[this] val updateCounters = new Array[Long](2)
+  
+  /** Number of scene elements visited while building the last render array.
+   */
+  def nodesVisited: Long = updateCounters(0)
+  
+  /** Number of scene elements that had changes and were updated while building the last render array.
+   */
+  def nodesUpdated: Long = updateCounters(1)
+  
+  
+  /** Controllers that exceeded SceneGraphSettings.controllerTimeBudget during the last update.
+   */
+  def controllerOverruns: IndexedSeq[ControllerOverrun] = controllerManager.overruns
+  
+  
+  /** Uploads the mip levels of the streamed textures used by the visible meshes.
+   */
+  val textureStreamer = new TextureStreamer(settings.textureMemoryBudget, settings.textureUploadBudget)
+  
+  
+  private[this] lazy val culler = new ParallelCuller[T, G](
+    settings.multithreadedParsing_Parallelism, settings.multithreadedParsing_MinTaskSize
+  )
   
   protected def buildRenderArray(pass: Pass, time: TimeStamp, result: SortBuffer[AbstractMesh]) {
     val camera = if (pass.camera.isDefined) pass.camera.get else this.camera
@@ -81,52 +259,66 @@ extends ManagedScene[G](name) {
     val frustum = Frustum(camera.viewProjection)
     val view = new View(pass.frameBuffer.dimensions, camera, frustum) //XXX proper dimensions
     
-    val allowMultithreading = settings.multithreadedParsing
-    if (allowMultithreading) batchArray.clear()
-    
-    val cullContext = new CullContext(
-      result.asInstanceOf[SortBuffer[SceneElement[T, G]]],
-      time, view,
-      settings.multithreadedParsing_NodesWithChildren, settings.multithreadedParsing_FromDepth,
-      batchArray
-    )
-    root.cull(true, true, allowMultithreading, 0, cullContext)
-    
-    if (allowMultithreading) {
-      concurrentArray.clear()
-      
-      val cullContext = new CullContext(
-        concurrentArray,
-        time, view,
-        settings.multithreadedParsing_NodesWithChildren, settings.multithreadedParsing_FromDepth,
-        null
-      )
-      
-      (0 until batchArray.size).par.foreach { i =>
-        batchArray(i) match {
-          case b: Bounded[_, _] => b.cull(true, true, false, 0, cullContext)
-          case _ => // do nothing.
-        }
-      }
-      
-      result ++= concurrentArray.asInstanceOf[SortBuffer[AbstractMesh]]
+    val renderArray = result.asInstanceOf[SortBuffer[SceneElement[T, G]]]
+    
+    val cullStart = Profiler.start()
+    if (settings.multithreadedParsing) {
+      culler.cull(root, time, view, renderArray)
+    }
+    else {
+      val cullContext = new CullContext(renderArray, time, view, null)
+      root.cull(true, true, false, 0, cullContext)
     }
     
+    UpdateCounters.collect(updateCounters)
+    Profiler.stop(Profiler.Cull, cullStart)
+    Profiler.count(Profiler.NodesVisited, updateCounters(0))
+    Profiler.count(Profiler.MeshesVisible, result.size)
+    
+    requestTextures(renderArray, view)
+    
     
     // XXX Take this out of the SceneGraph, and stuff it into the RenderManager,
     // this will allow to drop dependency on the TechniqueManager
     // Resolve techniques.
+    val resolveStart = Profiler.start()
+    applyResolvedTechniques()
+    
     val size = result.size
+    if (resolvedFlags.length < size) resolvedFlags = new Array[Boolean](size*2)
+    val resolved = resolvedFlags
+    java.util.Arrays.fill(resolved, 0, size, false)
+    
+    // Cached techniques are found in parallel, only the new structures are resolved in order.
+    if (settings.multithreadedParsing) {
+      (0 until size).par.foreach { i => val mesh = result(i).asInstanceOf[Mesh[T, G]]
+        
+        if (mesh.hasStructuralChanges) {
+          val technique = techniqueManager.findTechnique(mesh.geometry, mesh.material, mesh.worldEnvironment)
+          if (technique != null) {
+            assignTechnique(mesh, technique)
+            resolved(i) = true
+          }
+        }
+      }
+    }
+    
     var i = 0; while (i < size) { val mesh = result(i).asInstanceOf[Mesh[T, G]]
       
-      if (mesh.hasStructuralChanges) {
-        val technique = techniqueManager.resolveTechnique(
-          mesh.name, mesh.shaderDebugging, mesh.geometry, mesh.material, mesh.worldEnvironment)
+      if (resolved(i)) {
+        cancelRequest(mesh)
+      }
+      else if (mesh.hasStructuralChanges) {
+        if (settings.asyncTechniqueResolution && mesh.technique.isDefined) {
+          requestTechnique(mesh)
+        }
+        else {
+          val technique = techniqueManager.resolveTechnique(
+            mesh.name, mesh.shaderDebugging, mesh.geometry, mesh.material, mesh.worldEnvironment)
           
-        if (technique != null) mesh.technique := technique else mesh.technique.undefine()
-        
-        mesh.geometry.clearStructuralChanges()
-        mesh.material.clearStructuralChanges()
+          assignTechnique(mesh, technique)
+          cancelRequest(mesh)
+        }
       }
       
       i += 1
@@ -137,13 +329,152 @@ extends ManagedScene[G](name) {
       
       i += 1
     }
+    Profiler.stop(Profiler.TechniqueResolution, resolveStart)
+  }
+  
+  private[this] var resolvedFlags = new Array[Boolean](0)
+  
+  
+  private[this] var pixelSizeMesh: Mesh[T, G] = null
+  private[this] var meshPixelSize = 0.0
+  
+  /** Requests the levels of the streamed textures from the projected size of the meshes using them.
+   */
+  private[this] def requestTextures(renderArray: SortBuffer[SceneElement[T, G]], view: View) {
+    val size = renderArray.size
+    var i = 0; while (i < size) { val mesh = renderArray(i).asInstanceOf[Mesh[T, G]]
+      val uniforms = mesh.material.uniforms
+      
+      var j = 0; while (j < uniforms.length) {
+        val property = uniforms(j)
+        if (property.isDefined) requestTextures(property.get, mesh, view)
+        j += 1
+      }
+      
+      i += 1
+    }
+    pixelSizeMesh = null
+  }
+  
+  private[this] def requestTextures(value: AnyRef, mesh: Mesh[T, G], view: View) {
+    value match {
+      case binding: ReadTextureBinding[_] =>
+        if (binding.isBound) binding.bound match {
+          case texture: Texture2d[_] if texture.isStreamed =>
+            if (pixelSizeMesh ne mesh) {
+              meshPixelSize = pixelSize(mesh, view)
+              pixelSizeMesh = mesh
+            }
+            textureStreamer.request(texture, meshPixelSize)
+          case _ =>
+        }
+      
+      case struct: Struct =>
+        val fields = struct.fields
+        var i = 0; while (i < fields.length) {
+          requestTextures(fields(i), mesh, view)
+          i += 1
+        }
+      
+      case seq: BindingSeq[_] =>
+        var i = 0; while (i < seq.size) {
+          requestTextures(seq(i).asInstanceOf[AnyRef], mesh, view)
+          i += 1
+        }
+      
+      case _ =>
+    }
+  }
+  
+  private[this] def pixelSize(mesh: Mesh[T, G], view: View) :Double = {
+    if (mesh.resolveBoundingVolume.isDefined) {
+      view.pixelSize(mesh.resolveBoundingVolume.get, mesh.uncheckedWorldTransformation)
+    }
+    else {
+      // Display meshes of instancing and batching nodes are not bounded, their owning nodes are.
+      val owner = mesh.parent
+      if (owner != null && owner.resolveBoundingVolume.isDefined) {
+        view.pixelSize(owner.resolveBoundingVolume.get, owner.uncheckedWorldTransformation)
+      }
+      else Double.PositiveInfinity
+    }
+  }
+  
+  private[this] def assignTechnique(mesh: Mesh[T, G], technique: Technique) {
+    if (technique != null) mesh.technique := technique else mesh.technique.undefine()
+    
+    mesh.geometry.clearStructuralChanges()
+    mesh.material.clearStructuralChanges()
+  }
+  
+  
+  private[this] var resolver: ExecutorService = null
+  private[this] val pendingTechniques = new HashMap[Mesh[T, G], Future[Technique]]
+  
+  /** Resolves the technique on a background thread, the mesh keeps its current technique until
+   * the new one is ready. Changes made while the technique is resolved cause another request.
+   */
+  private[this] def requestTechnique(mesh: Mesh[T, G]) {
+    val name = mesh.name
+    val shaderDebugging = mesh.shaderDebugging
+    val geometry = mesh.geometry
+    val material = mesh.material
+    val worldEnvironment = mesh.worldEnvironment
+    
+    val task = backgroundResolver().submit(new Callable[Technique] {
+      def call() :Technique = {
+        techniqueManager.resolveTechnique(name, shaderDebugging, geometry, material, worldEnvironment)
+      }
+    })
+    pendingTechniques.put(mesh, task)
+    
+    geometry.clearStructuralChanges()
+    material.clearStructuralChanges()
+  }
+  
+  /** Techniques for new structures are resolved one at a time, so a single thread is enough.
+   */
+  private[this] def backgroundResolver() :ExecutorService = {
+    if (resolver == null) {
+      resolver = Executors.newSingleThreadExecutor(new ThreadFactory {
+        def newThread(runnable: Runnable) :Thread = {
+          val thread = new Thread(runnable, "Technique Resolver")
+          thread.setDaemon(true)
+          thread
+        }
+      })
+    }
+    resolver
+  }
+  
+  /** Prevents a pending request from replacing a technique that was resolved after it.
+   */
+  private[this] def cancelRequest(mesh: Mesh[T, G]) {
+    if (!pendingTechniques.isEmpty) pendingTechniques.remove(mesh)
+  }
+  
+  private[this] def applyResolvedTechniques() {
+    if (pendingTechniques.isEmpty) return
+    
+    val done = pendingTechniques.filter(_._2.isDone)
+    for ((mesh, task) <- done) {
+      pendingTechniques.remove(mesh)
+      
+      val technique =
+        try { task.get }
+        catch { case e: ExecutionException => throw e.getCause }
+      
+      if (technique != null) mesh.technique := technique else mesh.technique.undefine()
+    }
   }
   
   protected def manage(context: RenderContext, frameTimer: FrameTimer, timeSlice: Double) {
-    // TODO add gradual texture and VBO loading for off-screen objects.
+    textureStreamer.update(context, timeSlice)
+    // TODO add gradual VBO loading for off-screen objects.
   }
   
   protected def cleanup(context: RenderContext) {
     //XXX implement
+    if (resolver != null) resolver.shutdownNow()
   }
 }
@@ -23,7 +23,15 @@ package simplex3d.scenegraph
 
 class SceneGraphSettings(
   val multithreadedControllers: Boolean = false,
+  val multithreadedControllers_Grain: Int = 256, // spatials processed by a single controller task
+  val controllerTimeBudget: Double = 0, // seconds, controllers that run longer are reported, 0 disables timing
   val multithreadedParsing: Boolean = true,
-  val multithreadedParsing_FromDepth: Int = 3,
-  val multithreadedParsing_NodesWithChildren: Int = 50
+  val multithreadedParsing_Parallelism: Int = Runtime.getRuntime.availableProcessors,
+  val multithreadedParsing_MinTaskSize: Int = 64, // subtrees with fewer elements are culled inline
+  val asyncTechniqueResolution: Boolean = false, // changed meshes keep the old technique until the new one is resolved
+  val textureMemoryBudget: Long = 256L*1024*1024, // bytes of resident levels of the streamed textures
+  val textureUploadBudget: Long = 4L*1024*1024, // bytes of streamed texture levels uploaded per frame
+  val preloadEverything: Boolean = true, // otherwise preload only the meshes within the extended camera view
+  val preloadViewScale: Double = 2.0, // the camera view is extended by this factor for preloading
+  val preloadBeforeRendering: Boolean = true // the first frame is rendered after the first preload pass is complete
 )
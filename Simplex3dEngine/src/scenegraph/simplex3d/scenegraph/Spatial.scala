@@ -58,6 +58,26 @@ abstract class Spatial[T <: TransformationContext] private[scenegraph] (final va
     }
   }
   
+  /** True when this element or any of its descendants has changed since the last update.
+   * Changes mark the path to the root, so clean subtrees can be skipped during the update.
+   */
+  private[scenegraph] final var dirty = true
+  
+  private[scenegraph] final def markDirty() {
+    dirty = true
+    
+    var current: Spatial[T] = _parent
+    while (current != null && !current.dirty) {
+      current.dirty = true
+      current = current._parent
+    }
+  }
+  
+  private[scenegraph] final val dirtyListener = new ChangeListener {
+    def onChange() { markDirty() }
+  }
+  transformation.setChangeListener(dirtyListener)
+  
   private[scenegraph] final val uncheckedWorldTransformation = {
     TransformationBinding[T#Transformation](transformationContext.default)
   }
@@ -92,9 +112,26 @@ abstract class Spatial[T <: TransformationContext] private[scenegraph] (final va
     propagateWorldTransformation()
     val changed = uncheckedWorldTransformation.hasDataChanges
     uncheckedWorldTransformation.clearDataChanges()
+    if (changed) worldTransformationChanged()
     changed
   }
   
+  /** Called by updateWorldTransformation() when the world transformation has changed.
+   */
+  private[scenegraph] def worldTransformationChanged() {}
+  
+  /** Updates the world transformation only when this element has changed.
+   */
+  private[scenegraph] final def updateIfDirty() {
+    UpdateCounters.visited()
+    
+    if (dirty) {
+      dirty = false
+      UpdateCounters.updated()
+      updateWorldTransformation()
+    }
+  }
+  
   
   private[scenegraph] def onSpatialParentChange(
     parent: AbstractNode[T, _], managed: ArrayBuffer[Spatial[T]]
@@ -146,17 +183,28 @@ abstract class Spatial[T <: TransformationContext] private[scenegraph] (final va
   }
   
   
-  private[scenegraph] final def runControllers(time: TimeStamp) {
+  /** @param budgetNanos when greater than zero, controllers that take longer are reported as overruns.
+   */
+  private[scenegraph] final def runControllers(time: TimeStamp, budgetNanos: Long) {
     assert(controllers != null)
     
-    var removePending: ArrayBuffer[Updater] = null
-    
     bufferRemoves = true
     
     val size = controllers.size
     var i = 0; while (i < size) {
       val controller = controllers(i)
-      val keep = controller.apply(time)
+      
+      val keep =
+        if (budgetNanos <= 0) controller.apply(time)
+        else {
+          val start = System.nanoTime
+          val keep = controller.apply(time)
+          val elapsed = System.nanoTime - start
+          
+          val manager = controllerManager
+          if (elapsed > budgetNanos && manager != null) manager.reportOverrun(this, controller, elapsed)
+          keep
+        }
       if (!keep) removeController(controller)
       
       i += 1
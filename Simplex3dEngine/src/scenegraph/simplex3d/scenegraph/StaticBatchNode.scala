@@ -0,0 +1,474 @@
+/*
+ * Simplex3dEngine - SceneGraph Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.scenegraph
+
+import scala.collection.mutable.ArrayBuffer
+import simplex3d.math.types._
+import simplex3d.math.double._
+import simplex3d.math.double.functions._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine.util._
+import simplex3d.engine.transformation._
+import simplex3d.engine.graphics._
+import simplex3d.engine.scene._
+import simplex3d.engine.scene.api._
+
+
+// XXX limit based on MAX_VBO_SIZE
+/** Renders static meshes with a single display mesh.
+ *
+ * All the members share the material and the environment of this node, so they always resolve
+ * to the same technique. The member geometry is transformed into the world space and merged into
+ * combined vertex and index buffers. Members keep their own bounding volumes and are culled individually,
+ * only the index ranges of the visible members are drawn.
+ *
+ * The combined buffers are updated lazily, when the node is visible after a member has changed.
+ * Only the changed members are rewritten, unless the number of vertices or indices has changed.
+ * Members are merged by concatenating their indices, so strips and fans cannot be batched.
+ */
+final class StaticBatchNode[T <: TransformationContext, G <: GraphicsContext] (
+  name: String,
+  val cullingEnabled: Boolean = true
+)(implicit transformationContext: T, graphicsContext: G)
+extends Entity[T, G](name) {
+  
+  private final class Member(name: String)(
+    implicit transformationContext: T, graphicsContext: G
+  ) extends Mesh[T, G](name, null, null.asInstanceOf[G#Geometry], StaticBatchNode.this.material) {
+    
+    // Location of the member in the combined buffers.
+    var vertexOffset = 0
+    var vertexCount = 0
+    var indexOffset = 0
+    var indexCount = 0
+    
+    @volatile var changed = true
+    var indicesChanged = true
+    
+    var lastVisibleFrame = 0L
+    var drawn = false
+    
+    def signalChanged() {
+      changed = true
+      membersChanged = true
+    }
+    
+    // Indices and vertices are handled by the shape listener.
+    private val attributeListener = new ChangeListener {
+      def onChange() {
+        signalChanged()
+        markDirty()
+      }
+    }
+    
+    {
+      var i = 0; while (i < geometry.attributes.length) {
+        if (i != indexIndices && i != indexVertices) geometry.attributes(i).setChangeListener(attributeListener)
+        i += 1
+      }
+    }
+    
+    private[scenegraph] override def updateBoundingVolume(allowMultithreading: Boolean) :Boolean = {
+      val updateParentVolume = super.updateBoundingVolume(allowMultithreading)
+      if (updateParentVolume) signalChanged()
+      updateParentVolume
+    }
+    
+    // Member geometry is stored in the world space, so it must be rewritten when the member moves.
+    private[scenegraph] override def worldTransformationChanged() {
+      signalChanged()
+    }
+  }
+  
+  
+  private val displayMesh = new Mesh(
+    name + " - Display Mesh", this, graphicsContext.mkGeometry(), null.asInstanceOf[G#Material]
+  )
+  displayMesh.setShapeListener(null) // Display mesh is maintained by this node and is never culled.
+  
+  final def material: G#Material = displayMesh.material
+  
+  private val localRenderArray = new ConcurrentSortBuffer[SceneElement[T, G]]
+  
+  private val indexIndices = displayMesh.geometry.attributeNames.indexWhere(_ == "indices")
+  private val indexVertices = displayMesh.geometry.attributeNames.indexWhere(_ == "vertices")
+  private val indexNormals = displayMesh.geometry.attributeNames.indexWhere(_ == "normals")
+  
+  @volatile private var membersChanged = true
+  private var layoutChanged = true
+  
+  // Indices of all the members, the visible ranges are copied into the display mesh.
+  private var mergedIndices = new Array[Int](0)
+  
+  private var frame = 0L
+  private val pending = new ArrayBuffer[Member]
+  
+  
+  def appendMember(name: String) :Mesh[T, G] = {
+    val member = new Member(name)
+    appendAnyChild(member)
+    layoutChanged = true
+    membersChanged = true
+    member
+  }
+  
+  def removeMember(member: Mesh[T, G]) :Boolean = {
+    val removed = member match {
+      case m: Member => removeChild(m)
+      case _ => false
+    }
+    if (removed) {
+      layoutChanged = true
+      membersChanged = true
+    }
+    removed
+  }
+  
+  private def memberVertexCount(member: Member) :Int = {
+    if (member.geometry.vertices.isDefined) member.geometry.vertices.read.size else 0
+  }
+  
+  private def memberIndexCount(member: Member) :Int = {
+    if (member.geometry.indices.isDefined) member.geometry.indices.read.size else memberVertexCount(member)
+  }
+  
+  /** @return true if the members no longer fit their location in the combined buffers,
+   *          or if the member attributes were reassigned.
+   */
+  private def hasLayoutChanges() :Boolean = {
+    val size = children.size; var i = 0; while (i < size) {
+      val member = children(i).asInstanceOf[Member]
+      
+      if (member.changed) {
+        if (member.vertexCount != memberVertexCount(member)) return true
+        if (member.indexCount != memberIndexCount(member)) return true
+        
+        val attributes = member.geometry.attributes
+        var j = 0; while (j < attributes.length) {
+          if (j != indexIndices && j != indexVertices && attributes(j).hasRefChanges) return true
+          j += 1
+        }
+      }
+      
+      i += 1
+    }
+    
+    false
+  }
+  
+  /** Assigns the member locations and reallocates the combined buffers.
+   * Attributes are allocated when defined by any of the members, and are left zeroed for the others.
+   */
+  private def rebuildLayout() {
+    var vertexTotal = 0
+    var indexTotal = 0
+    
+    val size = children.size; var i = 0; while (i < size) {
+      val member = children(i).asInstanceOf[Member]
+      
+      member.vertexOffset = vertexTotal
+      member.vertexCount = memberVertexCount(member)
+      member.indexOffset = indexTotal
+      member.indexCount = memberIndexCount(member)
+      member.changed = true
+      member.drawn = false
+      
+      val attributes = member.geometry.attributes
+      var j = 0; while (j < attributes.length) {
+        if (j != indexIndices && j != indexVertices) attributes(j).clearRefChanges()
+        j += 1
+      }
+      
+      vertexTotal += member.vertexCount
+      indexTotal += member.indexCount
+      
+      i += 1
+    }
+    
+    mergedIndices = new Array[Int](indexTotal)
+    displayMesh.geometry.indices := Attributes[SInt, UInt](indexTotal, Caching.Static)
+    
+    i = 0; while (i < displayMesh.geometry.attributes.length) {
+      if (i != indexIndices) {
+        var source: ReadDataView[Format, Raw] = null
+        var j = 0; while (source == null && j < size) {
+          val attributes = children(j).asInstanceOf[Member].geometry.attributes
+          if (attributes(i).isDefined) source = attributes(i).read
+          j += 1
+        }
+        
+        if (source != null) {
+          displayMesh.geometry.attributes(i) := Attributes.fromData(source.mkDataBuffer(vertexTotal), Caching.Static)
+        }
+        else {
+          displayMesh.geometry.attributes(i).undefine()
+        }
+      }
+      
+      i += 1
+    }
+    
+    if (size > 0) displayMesh.geometry.primitive := children(0).asInstanceOf[Member].geometry.primitive
+  }
+  
+  
+  private[scenegraph] override def nodeCull(
+    updateChildren: Boolean, cullChildren:Boolean, forkChildren: Boolean,
+    allowMultithreading: Boolean, currentDepth: Int,
+    cullContext: CullContext[T, G]
+  ) {
+    subtreeSize = 1 + children.size
+    
+    val cullMembers = cullChildren && cullingEnabled
+    
+    def processChild(child: SceneElement[T, G]) {
+      child.asInstanceOf[Member].cull(updateChildren, cullMembers, false, currentDepth + 1, cullContext)
+    }
+    
+    if (allowMultithreading) {
+      val children = this.children
+      (0 until children.size).par.foreach(i => processChild(children(i)))
+    }
+    else {
+      val size = children.size; var i = 0; while (i < size) {
+        processChild(children(i))
+        i += 1
+      }
+    }
+  }
+  
+  private[scenegraph] override def cull(
+    update: Boolean, enableCulling: Boolean,
+    allowMultithreading: Boolean, currentDepth: Int,
+    cullContext: CullContext[T, G]
+  ) {
+    localRenderArray.clear()
+    val localContext = new CullContext(
+      localRenderArray,
+      cullContext.time,
+      cullContext.view,
+      null
+    )
+    
+    super.cull(
+      update, enableCulling,
+      allowMultithreading, currentDepth,
+      localContext
+    )
+    
+    // Changes to the members are applied once the batch is visible again.
+    if (localRenderArray.isEmpty) return
+    
+    if (membersChanged) {
+      membersChanged = false
+      
+      if (layoutChanged || hasLayoutChanges()) {
+        rebuildLayout()
+        layoutChanged = false
+      }
+      writeMembers(allowMultithreading)
+    }
+    
+    val drawnCount = updateDrawnRanges()
+    if (drawnCount == 0) return
+    
+    displayMesh.elementRange.update.first := 0
+    displayMesh.elementRange.update.count := drawnCount
+    
+    cullContext.renderArray += displayMesh
+  }
+  
+  /** Transforms the geometry of the changed members into their location in the combined buffers.
+   */
+  private def writeMembers(allowMultithreading: Boolean) {
+    pending.clear()
+    
+    val size = children.size; var i = 0; while (i < size) {
+      val member = children(i).asInstanceOf[Member]
+      if (member.changed) {
+        member.changed = false
+        pending += member
+      }
+      i += 1
+    }
+    
+    if (pending.isEmpty) return
+    
+    val geometry = displayMesh.geometry
+    
+    // Regions are marked sequentially, only the data is written in parallel.
+    var destVertices: DataView[Vec3, RFloat] = null
+    var destNormals: DataView[Vec3, RFloat] = null
+    val destAttributes = new Array[DataView[Format, Raw]](geometry.attributes.length)
+    
+    i = 0; while (i < pending.size) {
+      val member = pending(i)
+      
+      if (member.vertexCount > 0) {
+        destVertices = geometry.vertices.write(member.vertexOffset, member.vertexCount)
+        if (geometry.normals.isDefined) {
+          destNormals = geometry.normals.write(member.vertexOffset, member.vertexCount)
+        }
+        
+        var j = 0; while (j < destAttributes.length) {
+          if (j != indexIndices && j != indexVertices && j != indexNormals && geometry.attributes(j).isDefined) {
+            destAttributes(j) = geometry.attributes(j).write(member.vertexOffset, member.vertexCount)
+          }
+          j += 1
+        }
+      }
+      
+      i += 1
+    }
+    
+    val vertices = destVertices
+    val normals = destNormals
+    
+    def processMember(member: Member) {
+      val srcGeometry = member.geometry
+      val vertexOffset = member.vertexOffset
+      val vertexCount = member.vertexCount
+      
+      def transformData(transformation: inMat4x3) {
+        val srcVertices = srcGeometry.vertices.read
+        
+        var i = 0; while (i < vertexCount) {
+          vertices(vertexOffset + i) = transformation.transformPoint(srcVertices(i))
+          i += 1
+        }
+        
+        if (normals != null && srcGeometry.normals.isDefined) {
+          val srcNormals = srcGeometry.normals.read
+          val normalMatrix = functions.normalMat(transformation)
+          
+          var i = 0; while (i < vertexCount) {
+            normals(vertexOffset + i) = normalMatrix*srcNormals(i)
+            i += 1
+          }
+        }
+      }
+      def copyAttributes() {
+        var i = 0; while (i < destAttributes.length) {
+          val dest = destAttributes(i)
+          val src = srcGeometry.attributes(i)
+          
+          if (dest != null && src.isDefined && src.read.size == vertexCount) {
+            dest.put(vertexOffset, src.read)
+          }
+          
+          i += 1
+        }
+      }
+      def mergeIndices() {
+        val indexOffset = member.indexOffset
+        
+        if (srcGeometry.indices.isDefined) {
+          val srcIndices = srcGeometry.indices.read
+          var i = 0; while (i < member.indexCount) {
+            mergedIndices(indexOffset + i) = srcIndices(i) + vertexOffset
+            i += 1
+          }
+        }
+        else {
+          var i = 0; while (i < member.indexCount) {
+            mergedIndices(indexOffset + i) = vertexOffset + i
+            i += 1
+          }
+        }
+      }
+      
+      if (vertexCount > 0) {
+        transformData(member.uncheckedWorldTransformation.matrix)
+        copyAttributes()
+      }
+      mergeIndices()
+      member.indicesChanged = true
+    }
+    
+    if (allowMultithreading) {
+      (0 until pending.size).par.foreach(i => processMember(pending(i)))
+    }
+    else {
+      val size = pending.size; var i = 0; while (i < size) {
+        processMember(pending(i))
+        i += 1
+      }
+    }
+  }
+  
+  /** Copies the index ranges of the visible members to the front of the display index buffer.
+   * Only the part starting with the first member whose visibility or indices have changed is rewritten,
+   * so the index buffer is not uploaded again while the same members stay visible.
+   *
+   * @return the number of indices to draw.
+   */
+  private def updateDrawnRanges() :Int = {
+    frame += 1
+    
+    var i = 0; while (i < localRenderArray.size) {
+      localRenderArray(i).asInstanceOf[Member].lastVisibleFrame = frame
+      i += 1
+    }
+    
+    var firstChanged = -1
+    var start = 0
+    var total = 0
+    
+    val size = children.size
+    i = 0; while (i < size) {
+      val member = children(i).asInstanceOf[Member]
+      val visible = (member.lastVisibleFrame == frame)
+      
+      if (firstChanged == -1 && (visible != member.drawn || (visible && member.indicesChanged))) {
+        firstChanged = i
+        start = total
+      }
+      if (visible) total += member.indexCount
+      
+      i += 1
+    }
+    
+    if (firstChanged == -1) return total
+    
+    val destIndices = if (total > start) displayMesh.geometry.indices.write(start, total - start) else null
+    var offset = start
+    
+    i = firstChanged; while (i < size) {
+      val member = children(i).asInstanceOf[Member]
+      member.drawn = (member.lastVisibleFrame == frame)
+      
+      if (member.drawn) {
+        val indexOffset = member.indexOffset
+        var j = 0; while (j < member.indexCount) {
+          destIndices(offset + j) = mergedIndices(indexOffset + j)
+          j += 1
+        }
+        offset += member.indexCount
+        member.indicesChanged = false
+      }
+      
+      i += 1
+    }
+    
+    total
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Simplex3dEngine - SceneGraph Module
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngine.
+ *
+ * Simplex3dEngine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.scenegraph
+
+import java.util.concurrent.ConcurrentLinkedQueue
+
+
+/** Per-thread counters of scene elements visited and updated while building the render array.
+ * Each thread increments its own counters, the totals are collected once culling is done.
+ */
+private[scenegraph] object UpdateCounters {
+  private final val Visited = 0
+  private final val Updated = 1
+  
+  private[this] val threadCounters = new ConcurrentLinkedQueue[Array[Long]]
+  private[this] val localCounters = new ThreadLocal[Array[Long]] {
+    override def initialValue() = {
+      val counters = new Array[Long](2)
+      threadCounters.add(counters)
+      counters
+    }
+  }
+  
+  def visited() { localCounters.get()(Visited) += 1 }
+  def updated() { localCounters.get()(Updated) += 1 }
+  
+  /** Sums the counters from all the threads into result(0) for visited and result(1) for updated,
+   * then resets them. Must not be called while the scene is being culled.
+   */
+  def collect(result: Array[Long]) {
+    result(0) = 0
+    result(1) = 0
+    
+    val iterator = threadCounters.iterator
+    while (iterator.hasNext) {
+      val counters = iterator.next()
+      result(0) += counters(Visited)
+      result(1) += counters(Updated)
+      counters(Visited) = 0
+      counters(Updated) = 0
+    }
+  }
+}
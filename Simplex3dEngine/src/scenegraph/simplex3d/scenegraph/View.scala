@@ -25,10 +25,39 @@ import simplex3d.math.double._
 import simplex3d.math.double.functions._
 import simplex3d.algorithm.intersection._
 import simplex3d.engine.scene._
+import simplex3d.engine.bounding._
+import simplex3d.engine.transformation._
 
 
 final class View(val dimensions: ConstVec2i, val camera: AbstractCamera, val frustum: Frustum) {
+  
+  /** Height in pixels of an object with the given world height, facing the camera at the world location.
+   * Locations at or behind the camera return Double.PositiveInfinity.
+   */
   def pixelHeight(height: Double, worldLocation: inVec3) :Double = {
-    0 // XXX implement
+    val p = camera.view.transformPoint(worldLocation)
+    val m = camera.projection
+    val w = m.m03*p.x + m.m13*p.y + m.m23*p.z + m.m33
+    
+    if (w <= 1e-6) Double.PositiveInfinity
+    else height*m.m11*dimensions.y*0.5/w
+  }
+  
+  /** Size in pixels of the bounding volume, estimated from its diameter.
+   */
+  def pixelSize[T <: Transformation](volume: BoundingVolume, worldTransformation: TransformationBinding[T]) :Double = {
+    val matrix = worldTransformation.matrix
+    
+    volume match {
+      case b: Aabb =>
+        pixelHeight(length(b.max - b.min), (b.min + b.max)*0.5)
+      case b: Oabb =>
+        pixelHeight(length(b.max - b.min)*BoundingVolume.maxScale(matrix), matrix.transformPoint((b.min + b.max)*0.5))
+      case b: Obb =>
+        val m = b.transformation concat matrix
+        pixelHeight(length(b.max - b.min)*BoundingVolume.maxScale(m), m.transformPoint((b.min + b.max)*0.5))
+      case b: Sphere =>
+        pixelHeight(2*b.radius*BoundingVolume.maxScale(matrix), matrix.transformPoint(b.center))
+    }
   }
 }
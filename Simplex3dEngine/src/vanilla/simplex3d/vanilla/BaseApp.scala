@@ -50,6 +50,7 @@ abstract class BaseApp extends simplex3d.engine.App {
   type EnvrionmentNode = scenegraph.EnvrionmentNode[Transformation, Graphics]
   type Node = scenegraph.Node[Transformation, Graphics]
   type SceneElement = scenegraph.SceneElement[Transformation, Graphics]
+  type StaticBatchNode = scenegraph.StaticBatchNode[Transformation, Graphics]
   type Spatial = scenegraph.Spatial[Transformation]
   
   
@@ -66,16 +67,34 @@ abstract class BaseApp extends simplex3d.engine.App {
   }
   
   
+  // Set once the first preload pass is complete.
+  private[this] var preloaded = false
+  
   protected def preUpdate(time: TimeStamp) {
     world.update(time)
   }
   
   protected def render(time: TimeStamp) {
-    world.render(renderManager, time)
+    if (canRender) world.render(renderManager, time)
+    else renderManager.renderContext.clearFrameBuffer()
+  }
+  
+  override protected def prepareFrame(time: TimeStamp, packet: FramePacket) :Boolean = {
+    world.prepareFrame(renderManager, time, packet)
+    true
   }
   
+  override protected def renderFrame(packet: FramePacket) {
+    if (canRender) world.renderFrame(renderManager, packet)
+    else renderManager.renderContext.clearFrameBuffer()
+  }
+  
+  private[this] def canRender = preloaded || !sceneGraphSettings.preloadBeforeRendering
+  
   protected def manage() {
-    world.manage(renderManager.renderContext, timer.frameTimer, 0.01) //XXX make this value relate to the refresh rate
+    //XXX make the time slices relate to the refresh rate
+    if (!preloaded) preloaded = world.preload(renderManager.renderContext, timer.frameTimer, 0.01) == 1.0
+    world.manage(renderManager.renderContext, timer.frameTimer, 0.01)
   }
   
   protected def reshape(position: inVec2i, dimensions: inVec2i) {
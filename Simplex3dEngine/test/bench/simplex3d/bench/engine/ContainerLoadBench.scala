@@ -0,0 +1,151 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.bench.engine
+
+import java.awt.image.BufferedImage
+import java.io._
+import javax.imageio.ImageIO
+import simplex3d.engine.asset._
+
+
+/** Compares loading the source obj and png files with StreamLoader against loading the cooked container,
+ * both with a copy through the AssetLoader interface and as mapped views.
+ *
+ * @author Aleksey Nikiforov (lex)
+ */
+object ContainerLoadBench {
+  
+  def main(args: Array[String]) {
+    init()
+    
+    test()
+    test()
+    test()
+  }
+  
+  // 500K triangles.
+  val gridSize = 500
+  val imageSize = 2048
+  val loops = 3
+  
+  var directory: File = _
+  var container: File = _
+  
+  
+  def init() {
+    directory = File.createTempFile("container-bench", "")
+    directory.delete()
+    directory.mkdirs()
+    
+    val writer = new PrintWriter(new BufferedWriter(new FileWriter(new File(directory, "grid.obj"))))
+    val n = gridSize + 1
+    var y = 0; while (y < n) {
+      var x = 0; while (x < n) {
+        writer.print("v " + x*0.01 + " " + y*0.01 + " " + (x*y % 7)*0.001 + "\n")
+        writer.print("vt " + x.toDouble/gridSize + " " + y.toDouble/gridSize + "\n")
+        writer.print("vn 0 0 1\n")
+        x += 1
+      }
+      y += 1
+    }
+    y = 0; while (y < gridSize) {
+      var x = 0; while (x < gridSize) {
+        val a = y*n + x + 1
+        val b = a + 1
+        val c = a + n + 1
+        val d = a + n
+        writer.print("f " + a + "/" + a + "/" + a + " " + b + "/" + b + "/" + b + " " +
+          c + "/" + c + "/" + c + " " + d + "/" + d + "/" + d + "\n")
+        x += 1
+      }
+      y += 1
+    }
+    writer.close()
+    
+    val img = new BufferedImage(imageSize, imageSize, BufferedImage.TYPE_INT_ARGB)
+    val random = new java.util.Random(1)
+    for (y <- 0 until imageSize; x <- 0 until imageSize) img.setRGB(x, y, random.nextInt())
+    ImageIO.write(img, "png", new File(directory, "image.png"))
+    
+    container = new File(directory, "assets.s3da")
+    
+    var start = System.nanoTime
+    AssetCooker.cook(
+      container,
+      Seq(("grid.obj", new File(directory, "grid.obj"))),
+      Seq(("image.png", new File(directory, "image.png")))
+    )
+    val cookTime = System.nanoTime - start
+    
+    start = System.nanoTime
+    val result = AssetCooker.cook(
+      container,
+      Seq(("grid.obj", new File(directory, "grid.obj"))),
+      Seq(("image.png", new File(directory, "image.png")))
+    )
+    val recookTime = System.nanoTime - start
+    
+    println(
+      "Cooking: " + cookTime/1000000 + " ms, unchanged sources " + recookTime/1000000 + " ms " +
+      "(reused " + result.reused.size + " entries)."
+    )
+  }
+  
+  
+  def test() {
+    val streamLoader = new StreamLoader {
+      protected def openStream(path: String) = new BufferedInputStream(new FileInputStream(new File(directory, path)))
+    }
+    val containerLoader = new ContainerLoader(container)
+    
+    val streamTime = time {
+      streamLoader.loadObj("grid.obj").get
+      streamLoader.loadRgbaImg("image.png").get
+    }
+    val copyTime = time {
+      containerLoader.loadObj("grid.obj").get
+      containerLoader.loadRgbaImg("image.png").get
+    }
+    val mappedTime = time {
+      containerLoader.mesh("grid.obj").get
+      containerLoader.rgbaTexture("image.png").get
+    }
+    
+    containerLoader.container.close()
+    
+    println("\nResults for " + gridSize.toLong*gridSize*2 + " triangles and " + imageSize + "x" + imageSize + " RGBA:")
+    println("StreamLoader: " + streamTime/1000000 + " ms.")
+    println("ContainerLoader copy: " + copyTime/1000000 + " ms.")
+    println("ContainerLoader mapped: " + mappedTime/1000 + " us.")
+  }
+  
+  def time(load: => Unit) :Long = {
+    var total = 0L
+    var i = 0; while (i < loops) {
+      val start = System.nanoTime
+      load
+      total += System.nanoTime - start
+      i += 1
+    }
+    
+    total/loops
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.bench.engine
+
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine._
+import simplex3d.engine.util._
+import simplex3d.engine.graphics._
+import simplex3d.engine.bounding._
+import simplex3d.engine.scene._
+import simplex3d.engine.scene.api._
+import simplex3d.engine.transformation.ComponentTransformation3dContext
+import simplex3d.scenegraph._
+import simplex3d.renderer.TechniqueProvider
+
+
+/** Measures the time to build the render array with the culling parallelism going from 1 to 32,
+ * compared to the serial culling.
+ * 
+ * @author Aleksey Nikiforov (lex)
+ */
+object CullParallelismBench {
+  
+  def main(args: Array[String]) {
+    test()
+    test()
+    test()
+  }
+  
+  type T = ComponentTransformation3dContext
+  type G = simplex3d.renderer.GraphicsContext
+  
+  implicit val transformationContext = new T
+  implicit val graphicsContext = new G
+  
+  val nodeCount = 200
+  val meshesPerNode = 100
+  val frames = 50
+  val parallelismLevels = Seq(1, 2, 4, 8, 16, 32)
+  
+  val pass = new Pass(new FrameBuffer(Vec2i(100)))
+  val vertices = Attributes[Vec3, RFloat](3)
+  
+  
+  /** Meshes are spread over a grid larger than the camera view, so only a part of them is visible.
+   */
+  def mkScene(multithreaded: Boolean, parallelism: Int) :SceneGraph[T, G] = {
+    val scene = new SceneGraph[T, G](
+      "Bench",
+      new SceneGraphSettings(multithreadedParsing = multithreaded, multithreadedParsing_Parallelism = parallelism),
+      new Camera[T, G]("Main Camera"),
+      TechniqueProvider.assembleTechniqueManager[G]()
+    )
+    
+    val random = new java.util.Random(0)
+    
+    var i = 0; while (i < nodeCount) {
+      val node = new Node[T, G]("Node " + i)
+      node.transformation.update.translation := Vec3(random.nextDouble*400 - 200, random.nextDouble*400 - 200, -100)
+      
+      var j = 0; while (j < meshesPerNode) {
+        val mesh = new Mesh[T, G]("Mesh " + j)
+        mesh.geometry.vertices := vertices
+        mesh.customBoundingVolume := new Aabb(Vec3(-1), Vec3(1))
+        mesh.transformation.update.translation := Vec3(random.nextDouble*40 - 20, random.nextDouble*40 - 20, 0)
+        node.appendChild(mesh)
+        j += 1
+      }
+      
+      scene.attach(node)
+      i += 1
+    }
+    
+    scene
+  }
+  
+  def test() {
+    println("\nTesting...")
+    
+    val serialTime = cullFrames(mkScene(false, 1))
+    val parallelTimes = parallelismLevels.map(p => cullFrames(mkScene(true, p)))
+    
+    println("\nResults for " + nodeCount*meshesPerNode + " meshes:")
+    println("Serial: " + serialTime/frames/1000 + " us per frame.")
+    for ((parallelism, time) <- parallelismLevels zip parallelTimes) {
+      println("Parallelism " + parallelism + ": " + time/frames/1000 + " us per frame.")
+    }
+  }
+  
+  /** The first frame resolves the techniques and is not timed.
+   * The camera moves every frame, so the visible set keeps changing.
+   */
+  def cullFrames(scene: SceneGraph[T, G]) :Long = {
+    val result = new SortBuffer[AbstractMesh]
+    val time = new TimeStamp(0, 0)
+    
+    scene.buildRenderArray(pass, time, result)
+    
+    var elapsed = 0L
+    var frame = 0; while (frame < frames) {
+      scene.camera.transformation.update.translation := Vec3(frame*2 - frames, 0, 0)
+      result.clear()
+      
+      val start = System.nanoTime
+      scene.buildRenderArray(pass, time, result)
+      elapsed += System.nanoTime - start
+      
+      frame += 1
+    }
+    
+    elapsed
+  }
+}
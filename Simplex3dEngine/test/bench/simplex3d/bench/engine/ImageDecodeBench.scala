@@ -0,0 +1,116 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.bench.engine
+
+import java.awt.image.BufferedImage
+import java.nio.ByteBuffer
+import simplex3d.engine.asset._
+
+
+/** Compares per-pixel getRGB() conversion against the bulk raster decoding.
+ *
+ * @author Aleksey Nikiforov (lex)
+ */
+object ImageDecodeBench {
+  
+  def main(args: Array[String]) {
+    init()
+    
+    test()
+    test()
+    test()
+  }
+  
+  val size = 2048
+  val imageCount = 8
+  
+  val types = Seq(
+    ("TYPE_3BYTE_BGR", BufferedImage.TYPE_3BYTE_BGR),
+    ("TYPE_4BYTE_ABGR", BufferedImage.TYPE_4BYTE_ABGR),
+    ("TYPE_INT_ARGB", BufferedImage.TYPE_INT_ARGB)
+  )
+  
+  var images: Seq[(String, BufferedImage)] = _
+  val buffer = ByteBuffer.allocateDirect(size*size*4)
+  
+  
+  def init() {
+    val random = new java.util.Random(1)
+    images = for ((name, imageType) <- types) yield {
+      val img = new BufferedImage(size, size, imageType)
+      for (y <- 0 until size; x <- 0 until size) img.setRGB(x, y, random.nextInt())
+      (name, img)
+    }
+  }
+  
+  
+  def test() {
+    println("\nResults for " + size + "x" + size + " RGBA:")
+    
+    for ((name, img) <- images) {
+      var start = System.nanoTime
+      decodePerPixel(img, buffer)
+      val perPixelTime = System.nanoTime - start
+      
+      start = System.nanoTime
+      ImageDecoder.decode(img, buffer, 4)
+      val bulkTime = System.nanoTime - start
+      
+      println(name + ": getRGB() per pixel " + perPixelTime/1000000 + " ms, bulk " + bulkTime/1000000 + " ms.")
+    }
+    
+    val img = images(1)._2
+    val buffers = Array.fill(imageCount)(ByteBuffer.allocateDirect(size*size*4))
+    
+    var start = System.nanoTime
+    for (b <- buffers) ImageDecoder.decode(img, b, 4)
+    val sequentialTime = System.nanoTime - start
+    
+    start = System.nanoTime
+    for (b <- buffers.par) ImageDecoder.decode(img, b, 4)
+    val parallelTime = System.nanoTime - start
+    
+    println(
+      imageCount + " images: sequential " + sequentialTime/1000000 + " ms, " +
+      "parallel " + parallelTime/1000000 + " ms."
+    )
+  }
+  
+  /** The conversion used before the bulk decoding.
+   */
+  def decodePerPixel(img: BufferedImage, buffer: ByteBuffer) {
+    val width = img.getWidth
+    val height = img.getHeight
+    
+    var y = 0; while (y < height) {
+      var x = 0; while (x < width) {
+        val pixel = img.getRGB(x, y)
+        val index = (x + (height - 1 - y)*width)*4
+        buffer.put(index, (pixel >> 16).toByte)
+        buffer.put(index + 1, (pixel >> 8).toByte)
+        buffer.put(index + 2, pixel.toByte)
+        buffer.put(index + 3, (pixel >> 24).toByte)
+        x += 1
+      }
+      y += 1
+    }
+  }
+}
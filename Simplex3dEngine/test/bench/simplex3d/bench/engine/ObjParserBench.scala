@@ -0,0 +1,114 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.bench.engine
+
+import java.io._
+import simplex3d.engine.asset._
+
+
+/** Measures the throughput of the obj parser on a generated grid model,
+ * parsing as a single chunk and in parallel chunks.
+ *
+ * @author Aleksey Nikiforov (lex)
+ */
+object ObjParserBench {
+  
+  def main(args: Array[String]) {
+    init()
+    
+    test()
+    test()
+    test()
+  }
+  
+  // 2M triangles.
+  val gridSize = 1000
+  val loops = 3
+  
+  var src: Array[Byte] = _
+  
+  
+  def init() {
+    val out = new ByteArrayOutputStream
+    val writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")))
+    
+    val n = gridSize + 1
+    var y = 0; while (y < n) {
+      var x = 0; while (x < n) {
+        writer.print("v " + x*0.01 + " " + y*0.01 + " " + (x*y % 7)*0.001 + "\n")
+        writer.print("vt " + x.toDouble/gridSize + " " + y.toDouble/gridSize + "\n")
+        writer.print("vn 0 0 1\n")
+        x += 1
+      }
+      y += 1
+    }
+    
+    y = 0; while (y < gridSize) {
+      var x = 0; while (x < gridSize) {
+        val a = y*n + x + 1
+        val b = a + 1
+        val c = a + n + 1
+        val d = a + n
+        writer.print("f " + a + "/" + a + "/" + a + " " + b + "/" + b + "/" + b + " " +
+          c + "/" + c + "/" + c + " " + d + "/" + d + "/" + d + "\n")
+        x += 1
+      }
+      y += 1
+    }
+    
+    writer.close()
+    src = out.toByteArray
+  }
+  
+  
+  def test() {
+    val singleChunkTime = time(src.length + 1)
+    val chunkedTime = time(ObjParser.DefaultChunkSize)
+    
+    val megabytes = src.length/(1024.0*1024.0)
+    val triangles = gridSize.toLong*gridSize*2
+    
+    println("\nResults for " + triangles + " triangles, " + src.length/1024 + " KB:")
+    println(
+      "Single chunk: " + singleChunkTime/1000000 + " ms, " +
+      (megabytes/(singleChunkTime/1e9)).toInt + " MB/s."
+    )
+    println(
+      "Parallel chunks: " + chunkedTime/1000000 + " ms, " +
+      (megabytes/(chunkedTime/1e9)).toInt + " MB/s."
+    )
+  }
+  
+  def time(chunkSize: Int) :Long = {
+    var total = 0L
+    var i = 0; while (i < loops) {
+      val start = System.nanoTime
+      val (indices, vertices, _, _) = ObjParser.parse("bench", new ByteArrayInputStream(src), chunkSize)
+      total += System.nanoTime - start
+      
+      if (indices.size != gridSize*gridSize*6) throw new AssertionError("Wrong index count " + indices.size + ".")
+      if (vertices.size != (gridSize + 1)*(gridSize + 1)) throw new AssertionError("Wrong vertex count.")
+      i += 1
+    }
+    
+    total/loops
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.bench.engine
+
+import java.util.Comparator
+import simplex3d.engine.util._
+import simplex3d.engine.graphics._
+
+
+/** Compares the comparator sort by program against radix sort on packed keys,
+ * and counts the state switches each ordering would issue.
+ * 
+ * @author Aleksey Nikiforov (lex)
+ */
+object RenderSortBench {
+
+  def main(args: Array[String]) {
+    init()
+    
+    test()
+    test()
+    test()
+  }
+  
+  val length = 100000
+  val loops = 50
+  
+  val programCount = 20
+  val textureCount = 200
+  val environmentCount = 50
+  val transparentRatio = 0.1
+  
+  
+  final class BenchMesh(
+    val program: Int, val textures: Int, val environment: Int,
+    val depth: Double, val transparent: Boolean
+  )
+  
+  /** Stands in for GL, records the state changes issued while rendering in a given order.
+   */
+  final class RecordingGl {
+    private var program = -1
+    private var textures = -1
+    private var environment = -1
+    var switches = 0
+    
+    def useProgram(id: Int) { if (id != program) { program = id; switches += 1 } }
+    def bindTextures(id: Int) { if (id != textures) { textures = id; switches += 1 } }
+    def bindEnvironment(id: Int) { if (id != environment) { environment = id; switches += 1 } }
+  }
+  
+  
+  val random = new java.util.Random()
+  
+  val meshes = new Array[BenchMesh](length)
+  val renderArray = new SortBuffer[BenchMesh](length)
+  val keys = new Array[Long](length)
+  
+  val comparator = new Comparator[BenchMesh] {
+    def compare(a: BenchMesh, b: BenchMesh) :Int = {
+      if (a.program < b.program) -1 else if (a.program > b.program) 1 else 0
+    }
+  }
+  
+  def init() {
+    random.setSeed(1)
+    var i = 0; while (i < length) {
+      meshes(i) = new BenchMesh(
+        random.nextInt(programCount), random.nextInt(textureCount), random.nextInt(environmentCount),
+        random.nextDouble*1000, random.nextDouble < transparentRatio
+      )
+      i += 1
+    }
+  }
+  
+  def reset() {
+    renderArray.clear()
+    var i = 0; while (i < length) {
+      renderArray += meshes(i)
+      i += 1
+    }
+  }
+  
+  
+  def test() {
+    var start = 0L
+    
+    var comparatorTime = 0L
+    var i = 0; while (i < loops) {
+      reset()
+      start = System.nanoTime
+      testComparatorSort()
+      comparatorTime += System.nanoTime - start
+      i += 1
+    }
+    val comparatorSwitches = countSwitches()
+    
+    var radixTime = 0L
+    i = 0; while (i < loops) {
+      reset()
+      start = System.nanoTime
+      testRadixSort()
+      radixTime += System.nanoTime - start
+      i += 1
+    }
+    val radixSwitches = countSwitches()
+    checkSorted()
+    
+    println("\nResults for " + length + " meshes:")
+    println("Comparator sort: " + comparatorTime/loops/1000 + " us, state switches: " + comparatorSwitches + ".")
+    println("Radix sort with keys: " + radixTime/loops/1000 + " us, state switches: " + radixSwitches + ".")
+  }
+  
+  def testComparatorSort() {
+    renderArray.inplaceSort(comparator)
+  }
+  
+  def testRadixSort() {
+    var i = 0; while (i < length) {
+      val mesh = renderArray(i)
+      keys(i) =
+        if (mesh.transparent) {
+          SortKey.transparent(0, mesh.program, mesh.textures, mesh.environment, mesh.depth)
+        }
+        else {
+          SortKey.opaque(0, mesh.program, mesh.textures, mesh.environment, mesh.depth)
+        }
+      i += 1
+    }
+    renderArray.inplaceSort(keys)
+  }
+  
+  def countSwitches() :Int = {
+    val gl = new RecordingGl
+    var i = 0; while (i < length) {
+      val mesh = renderArray(i)
+      gl.useProgram(mesh.program)
+      gl.bindTextures(mesh.textures)
+      gl.bindEnvironment(mesh.environment)
+      i += 1
+    }
+    gl.switches
+  }
+  
+  def checkSorted() {
+    var i = 1; while (i < length) {
+      if ((keys(i - 1) ^ Long.MinValue) > (keys(i) ^ Long.MinValue)) { // Unsigned comparison.
+        throw new AssertionError("Keys are not sorted at " + i + ".")
+      }
+      i += 1
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.bench.engine
+
+import java.io.File
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine.util._
+import simplex3d.engine.graphics.pluggable._
+import simplex3d.renderer._
+import simplex3d.renderer.lighting._
+
+
+/** Measures the startup cost of resolving the techniques for a set of structures,
+ * without the persistent cache, with an empty cache, and with the cache filled by the previous launch.
+ *
+ * @author Aleksey Nikiforov (lex)
+ */
+object TechniqueCacheBench {
+  
+  def main(args: Array[String]) {
+    init()
+    
+    test()
+    test()
+    test()
+  }
+  
+  implicit val graphicsContext = new GraphicsContext
+  
+  val maxLights = 8
+  val shaderDebugging = new ShaderDebugging
+  
+  val cacheDirectory = new File(System.getProperty("java.io.tmpdir"), "simplex3d-technique-cache-bench")
+  
+  
+  final class Structure(
+    val geometry: Geometry,
+    val material: Material,
+    val environment: Environment
+  )
+  
+  val structures = new scala.collection.mutable.ArrayBuffer[Structure]
+  
+  def init() {
+    for (lights <- 0 until maxLights; fog <- Seq(false, true); normals <- Seq(false, true)) {
+      val geometry = graphicsContext.mkGeometry()
+      geometry.vertices := Attributes[Vec3, RFloat](3)
+      if (normals) geometry.normals := Attributes[Vec3, RFloat](3)
+      
+      val material = graphicsContext.mkMaterial(null)
+      
+      val environment = graphicsContext.mkEnvironment(null)
+      var i = 0; while (i < lights) {
+        environment.lighting.update.pointLights += new PointLight
+        i += 1
+      }
+      if (fog) environment.fog.update.density := 0.01
+      
+      structures += new Structure(geometry, material, environment)
+    }
+  }
+  
+  
+  def test() {
+    new PersistentTechniqueCache(cacheDirectory).clear()
+    
+    val uncachedTime = resolveAll(TechniqueProvider.assembleTechniqueManager())
+    val coldTime = resolveAll(TechniqueProvider.assembleTechniqueManager(cacheDirectory))
+    val warmTime = resolveAll(TechniqueProvider.assembleTechniqueManager(cacheDirectory))
+    
+    println("\nResults for " + structures.size + " structures:")
+    println("Without the cache: " + uncachedTime/1000 + " us.")
+    println("First launch, storing the cache: " + coldTime/1000 + " us.")
+    println("Next launch, loading the cache: " + warmTime/1000 + " us.")
+  }
+  
+  /** Includes assembling the technique manager, which hashes the shader pack.
+   */
+  def resolveAll(assemble: => TechniqueManager[GraphicsContext]) :Long = {
+    val start = System.nanoTime
+    val manager = assemble
+    
+    var i = 0; while (i < structures.size) {
+      val s = structures(i)
+      val technique = manager.resolveTechnique("Bench", shaderDebugging, s.geometry, s.material, s.environment)
+      if (technique == null) throw new AssertionError("Unable to resolve the technique " + i + ".")
+      i += 1
+    }
+    
+    System.nanoTime - start
+  }
+}
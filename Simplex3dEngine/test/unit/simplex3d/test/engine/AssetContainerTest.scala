@@ -0,0 +1,180 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import java.awt.image.BufferedImage
+import java.io._
+import javax.imageio.ImageIO
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine.asset._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class AssetContainerTest extends FunSuite {
+  
+  private val obj =
+    "v 0 0 0\nv 1 0 0\nv 1 1 -2\nv 0 1 0\n" +
+    "vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\n" +
+    "f 1/1 2/2 3/3 4/4\n"
+  
+  private def mkDirectory() :File = {
+    val file = File.createTempFile("asset-container", "")
+    file.delete()
+    file.mkdirs()
+    file
+  }
+  
+  private def write(file: File, text: String) {
+    val out = new FileOutputStream(file)
+    try out.write(text.getBytes("UTF-8")) finally out.close()
+  }
+  
+  private def writeImage(file: File, imageType: Int) {
+    val img = new BufferedImage(5, 3, imageType)
+    val random = new java.util.Random(1)
+    for (y <- 0 until 3; x <- 0 until 5) img.setRGB(x, y, random.nextInt())
+    ImageIO.write(img, "png", file)
+  }
+  
+  private def mkSources(directory: File) {
+    write(new File(directory, "quad.obj"), obj)
+    writeImage(new File(directory, "rgb.png"), BufferedImage.TYPE_INT_RGB)
+    writeImage(new File(directory, "rgba.png"), BufferedImage.TYPE_INT_ARGB)
+  }
+  
+  private def cook(directory: File) :CookResult = {
+    AssetCooker.cook(
+      new File(directory, "assets.s3da"),
+      Seq(("quad.obj", new File(directory, "quad.obj"))),
+      Seq("rgb.png", "rgba.png").map(path => (path, new File(directory, path)))
+    )
+  }
+  
+  private def streamLoader(directory: File) = new StreamLoader {
+    protected def openStream(path: String) = new FileInputStream(new File(directory, path))
+  }
+  
+  private def delete(directory: File) {
+    directory.listFiles.foreach(_.delete())
+    directory.delete()
+  }
+  
+  private def sameBytes(a: ReadDataBuffer[_, _], b: ReadDataBuffer[_, _]) :Boolean = {
+    a.rawEnum == b.rawEnum && a.bindingBuffer() == b.bindingBuffer()
+  }
+  
+  
+  test("Cooked assets match the stream loader") {
+    val directory = mkDirectory()
+    mkSources(directory)
+    cook(directory)
+    
+    val loader = new ContainerLoader(new File(directory, "assets.s3da"))
+    val reference = streamLoader(directory)
+    
+    val (indices, vertices, normals, texCoords) = loader.loadObj("quad.obj").get
+    val (refIndices, refVertices, refNormals, refTexCoords) = reference.loadObj("quad.obj").get
+    assert(sameBytes(indices, refIndices))
+    assert(sameBytes(vertices, refVertices))
+    assert(normals.isEmpty && refNormals.isEmpty)
+    assert(sameBytes(texCoords.get, refTexCoords.get))
+    
+    val mesh = loader.mesh("quad.obj").get
+    assert(mesh.vertices.isReadOnly)
+    assert(mesh.boundsMin == Vec3(0, 0, -2))
+    assert(mesh.boundsMax == Vec3(1, 1, 0))
+    
+    val (rgbDims, rgbData) = loader.loadRgbImg("rgb.png").get
+    val (refRgbDims, refRgbData) = reference.loadRgbImg("rgb.png").get
+    assert(rgbDims == refRgbDims)
+    assert(rgbData.bindingBuffer() == refRgbData.bindingBuffer())
+    
+    val (rgbaDims, rgbaData) = loader.loadRgbaImg("rgba.png").get
+    val (refRgbaDims, refRgbaData) = reference.loadRgbaImg("rgba.png").get
+    assert(rgbaDims == refRgbaDims)
+    assert(rgbaData.bindingBuffer() == refRgbaData.bindingBuffer())
+    
+    // Textures are only returned with the cooked number of components.
+    assert(loader.loadRgbaImg("rgb.png").isEmpty)
+    assert(loader.loadRgbImg("rgba.png").isEmpty)
+    assert(loader.loadObj("missing.obj").isEmpty)
+    
+    loader.container.close()
+    delete(directory)
+  }
+  
+  test("Textures include the mip chain") {
+    val directory = mkDirectory()
+    mkSources(directory)
+    cook(directory)
+    
+    val container = new AssetContainer(new File(directory, "assets.s3da"))
+    val texture = container.rgbaTexture("rgba.png").get
+    assert(texture.mipLevels.map(_._1) == Seq(ConstVec2i(5, 3), ConstVec2i(2, 1), ConstVec2i(1, 1)))
+    assert(texture.mipLevels.forall { case (dims, data) => data.size == dims.x*dims.y })
+    
+    container.close()
+    delete(directory)
+  }
+  
+  test("Unchanged sources are not cooked again") {
+    val directory = mkDirectory()
+    mkSources(directory)
+    
+    val first = cook(directory)
+    assert(first.cooked.size == 3)
+    assert(first.reused.isEmpty)
+    
+    val second = cook(directory)
+    assert(second.cooked.isEmpty)
+    assert(second.reused.size == 3)
+    
+    write(new File(directory, "quad.obj"), obj + "f 1 2 3\n")
+    val third = cook(directory)
+    assert(third.cooked == Seq("quad.obj"))
+    assert(third.reused.size == 2)
+    
+    val container = new AssetContainer(new File(directory, "assets.s3da"))
+    assert(container.mesh("quad.obj").get.indices.size == 9)
+    assert(container.rgbTexture("rgb.png").isDefined)
+    container.close()
+    
+    delete(directory)
+  }
+  
+  test("Invalid containers are rejected") {
+    val directory = mkDirectory()
+    val file = new File(directory, "invalid.s3da")
+    write(file, "not a container")
+    
+    intercept[IOException] {
+      new AssetContainer(file)
+    }
+    
+    delete(directory)
+  }
+}
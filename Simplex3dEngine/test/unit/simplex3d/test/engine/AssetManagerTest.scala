@@ -0,0 +1,114 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine.asset._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class AssetManagerTest extends FunSuite {
+  
+  private class CountingLoader extends AssetLoader {
+    val loads = new AtomicInteger
+    val release = new CountDownLatch(1)
+    
+    def loadRgbImg(path: String) :Option[(ConstVec2i, RgbTextureData)] = None
+    def loadRgbaImg(path: String) :Option[(ConstVec2i, RgbaTextureData)] = None
+    
+    def loadObj(path: String)
+    :Option[(
+      DataBuffer[SInt, Unsigned],
+      DataBuffer[Vec3, RFloat],
+      Option[DataBuffer[Vec3, RFloat]],
+      Option[DataBuffer[Vec2, RFloat]]
+    )] = {
+      loads.incrementAndGet()
+      release.await()
+      
+      if (path == "missing") None
+      else Some((DataBuffer[SInt, Unsigned](3), DataBuffer[Vec3, RFloat](3), None, None))
+    }
+  }
+  
+  private def mkManager(loader: AssetLoader) = new AssetManager {
+    loaders += loader
+  }
+  
+  
+  test("Concurrent requests share a single load") {
+    val loader = new CountingLoader
+    val manager = mkManager(loader)
+    
+    val a = manager.requestObj("mesh")
+    val b = manager.requestObj("mesh")
+    assert(a eq b)
+    
+    loader.release.countDown()
+    assert(a.get.isDefined)
+    assert(loader.loads.get == 1)
+    
+    // Completed requests are served from the cache.
+    val c = manager.requestObj("mesh")
+    assert(c.get.get._1 eq a.get.get._1)
+    assert(loader.loads.get == 1)
+    
+    manager.shutdown()
+  }
+  
+  test("Missing assets are not cached") {
+    val loader = new CountingLoader
+    val manager = mkManager(loader)
+    loader.release.countDown()
+    
+    assert(manager.requestObj("missing").get.isEmpty)
+    assert(manager.requestObj("missing").get.isEmpty)
+    assert(loader.loads.get == 2)
+    
+    manager.shutdown()
+  }
+  
+  test("Least recently used assets are evicted") {
+    val cache = new AssetCache(100)
+    
+    cache.put("a", "A", 40)
+    cache.put("b", "B", 40)
+    assert(cache.get("a") == "A")
+    
+    cache.put("c", "C", 40)
+    assert(cache.get("b") == null)
+    assert(cache.get("a") == "A")
+    assert(cache.get("c") == "C")
+    assert(cache.size == 80)
+    
+    cache.put("d", "D", 200)
+    assert(cache.get("d") == null)
+    assert(cache.evictions == 1)
+  }
+}
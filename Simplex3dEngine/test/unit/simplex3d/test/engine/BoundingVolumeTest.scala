@@ -0,0 +1,64 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.math.double.functions._
+import simplex3d.algorithm.intersection.{ Frustum, Collision }
+import simplex3d.engine.bounding._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class BoundingVolumeTest extends FunSuite {
+  
+  /** Scales by 4 along x, then rotates x towards (1, 0, 1), and moves to the position. */
+  private def mkStretched(position: inVec3) :Mat4x3 = {
+    val m = Mat4x3(rotationMat(radians(-45), Vec3.UnitY)*Mat3(4, 0, 0, 0, 1, 0, 0, 0, 1))
+    m.m30 = position.x; m.m31 = position.y; m.m32 = position.z
+    m
+  }
+  
+  
+  test("Max scale is the length of the longest column") {
+    assert(approxEqual(BoundingVolume.maxScale(Mat4x3(1)), 1, 1e-12))
+    assert(approxEqual(BoundingVolume.maxScale(Mat4x3(Mat3(1, 0, 0, 0, 3, 0, 0, 0, 2))), 3, 1e-12))
+    assert(approxEqual(BoundingVolume.maxScale(mkStretched(Vec3(10, 20, 30))), 4, 1e-12))
+  }
+  
+  test("Rotated and non-uniformly scaled spheres are not culled while visible") {
+    // The right plane of this frustum is x = -z, with the outward normal (1, 0, 1)/sqrt(2).
+    val frustum = Frustum(perspectiveProj(radians(90), 1, 1, 1000))
+    
+    // The stretched axis points straight at the plane, the sphere surface is 4 - 5/sqrt(2) inside the view.
+    val matrix = mkStretched(Vec3(55, 0, -50))
+    val sphere = new Sphere(Vec3(0), 1)
+    val center = matrix.transformPoint(sphere.center)
+    
+    assert(frustum.intersectSphere(center, sphere.radius*BoundingVolume.maxScale(matrix)) == Collision.Intersecting)
+    
+    // Summing the rows gives sqrt(8.5), which would cull the sphere.
+    assert(frustum.intersectSphere(center, sphere.radius*sqrt(8.5)) == Collision.Outside)
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import java.util.concurrent.atomic.AtomicIntegerArray
+import org.scalatest._
+import simplex3d.engine._
+import simplex3d.engine.scene._
+import simplex3d.engine.scene.api._
+import simplex3d.scenegraph._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class ControllerManagerTest extends FunSuite with SceneGraphFixture {
+  
+  private def attachNode(scene: SceneGraph[T, G], name: String) = {
+    val node = new Node[T, G](name)
+    scene.attach(node)
+    node
+  }
+  
+  
+  test("Controllers registered during an update run from the next update") {
+    val scene = mkScene()
+    val a = attachNode(scene, "A")
+    val b = attachNode(scene, "B")
+    
+    var aRuns = 0
+    var bRuns = 0
+    a.controller { time =>
+      aRuns += 1
+      if (aRuns == 1) b.controller { time => bRuns += 1; true }
+      true
+    }
+    
+    scene.update(time)
+    assert(aRuns == 1 && bRuns == 0)
+    
+    scene.update(time)
+    assert(aRuns == 2 && bRuns == 1)
+  }
+  
+  test("Controllers unregistered during an update stop running") {
+    val scene = mkScene()
+    val a = attachNode(scene, "A")
+    val b = attachNode(scene, "B")
+    
+    var aRuns = 0
+    var bRuns = 0
+    var bController: Updater = null
+    
+    // A is registered first, so it removes the controller of B before B runs.
+    a.controller { time =>
+      aRuns += 1
+      b.removeController(bController)
+      aRuns < 2 // Removes itself on the second run.
+    }
+    bController = b.controller { time => bRuns += 1; true }
+    
+    scene.update(time)
+    assert(aRuns == 1)
+    assert(bRuns == 0)
+    
+    scene.update(time)
+    scene.update(time)
+    assert(aRuns == 2)
+    assert(bRuns == 0)
+  }
+  
+  test("Every controller runs once per update when split into chunks") {
+    val scene = mkScene(new SceneGraphSettings(
+      multithreadedParsing = false, multithreadedControllers = true, multithreadedControllers_Grain = 4
+    ))
+    
+    val count = 100
+    val runs = new AtomicIntegerArray(count)
+    for (i <- 0 until count) {
+      attachNode(scene, "Node " + i).controller { time => runs.incrementAndGet(i); true }
+    }
+    
+    for (frame <- 1 to 3) {
+      scene.update(time)
+      for (i <- 0 until count) assert(runs.get(i) == frame)
+    }
+  }
+}
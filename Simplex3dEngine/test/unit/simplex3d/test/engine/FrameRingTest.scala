@@ -0,0 +1,131 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import simplex3d.engine.util._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class FrameRingTest extends FunSuite {
+  
+  private final class Packet { var frame = 0 }
+  
+  private def produce(ring: FrameRing[Packet], frame: Int) {
+    val packet = ring.acquireWrite()
+    packet.frame = frame
+    ring.publish(packet)
+  }
+  
+  
+  test("Consumer takes the latest packet") {
+    val ring = new FrameRing[Packet](3, () => new Packet)
+    
+    produce(ring, 1)
+    produce(ring, 2)
+    
+    val packet = ring.acquireLatest()
+    assert(packet.frame == 2)
+    assert(ring.droppedFrames == 1)
+    ring.release(packet)
+  }
+  
+  test("Triple buffering overwrites stale packets") {
+    val ring = new FrameRing[Packet](3, () => new Packet)
+    
+    produce(ring, 1)
+    val reading = ring.acquireLatest()
+    
+    // One packet is being read, the producer never waits.
+    var frame = 2; while (frame < 10) {
+      produce(ring, frame)
+      frame += 1
+    }
+    ring.release(reading)
+    
+    val packet = ring.acquireLatest()
+    assert(packet.frame == 9)
+    assert(ring.producerStallNanos == 0)
+    assert(ring.droppedFrames == 7)
+    ring.release(packet)
+  }
+  
+  test("Double buffering waits for the consumer") {
+    val ring = new FrameRing[Packet](2, () => new Packet)
+    
+    produce(ring, 1)
+    val reading = ring.acquireLatest()
+    produce(ring, 2)
+    
+    val producer = new Thread { override def run() { produce(ring, 3) } }
+    producer.start()
+    Thread.sleep(50)
+    assert(producer.isAlive)
+    
+    ring.release(reading)
+    producer.join()
+    assert(ring.producerStallNanos > 0)
+    
+    val packet = ring.acquireLatest()
+    assert(packet.frame == 3)
+    ring.release(packet)
+  }
+  
+  test("Double buffering does not overwrite packets the consumer has not seen") {
+    val ring = new FrameRing[Packet](2, () => new Packet)
+    
+    // The consumer holds no packet, both are published.
+    produce(ring, 1)
+    produce(ring, 2)
+    
+    val producer = new Thread { override def run() { produce(ring, 3) } }
+    producer.start()
+    Thread.sleep(50)
+    assert(producer.isAlive)
+    assert(ring.droppedFrames == 0)
+    
+    val packet = ring.acquireLatest()
+    assert(packet.frame == 2)
+    producer.join()
+    assert(ring.droppedFrames == 1)
+    ring.release(packet)
+    
+    val next = ring.acquireLatest()
+    assert(next.frame == 3)
+    ring.release(next)
+  }
+  
+  test("Close wakes up both sides") {
+    val ring = new FrameRing[Packet](2, () => new Packet)
+    
+    @volatile var result: Packet = new Packet
+    val consumer = new Thread { override def run() { result = ring.acquireLatest() } }
+    consumer.start()
+    Thread.sleep(50)
+    
+    ring.close()
+    consumer.join()
+    assert(result == null)
+    assert(ring.acquireWrite() == null)
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import scala.collection.mutable.ArrayBuffer
+import simplex3d.backend.lwjgl._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class GlStateTest extends FunSuite {
+  
+  private class RecordingGl extends StateGl {
+    val calls = new ArrayBuffer[String]
+    
+    def glEnable(cap: Int) { calls += "enable(" + cap + ")" }
+    def glDisable(cap: Int) { calls += "disable(" + cap + ")" }
+    def glBlendFunc(src: Int, dst: Int) { calls += "blendFunc(" + src + ", " + dst + ")" }
+    def glBlendEquation(mode: Int) { calls += "blendEquation(" + mode + ")" }
+    def glDepthFunc(func: Int) { calls += "depthFunc(" + func + ")" }
+    def glDepthMask(flag: Boolean) { calls += "depthMask(" + flag + ")" }
+    def glCullFace(mode: Int) { calls += "cullFace(" + mode + ")" }
+    def glPointSize(size: Float) { calls += "pointSize(" + size + ")" }
+    def glLineWidth(width: Float) { calls += "lineWidth(" + width + ")" }
+    def glPointParameteri(name: Int, value: Int) { calls += "pointParameter(" + value + ")" }
+    def glEnableVertexAttribArray(index: Int) { calls += "enableArray(" + index + ")" }
+    def glDisableVertexAttribArray(index: Int) { calls += "disableArray(" + index + ")" }
+  }
+  
+  
+  test("Redundant calls are elided") {
+    val gl = new RecordingGl
+    val state = new GlState(gl, 4)
+    
+    var frame = 0; while (frame < 3) {
+      state.enable(1)
+      state.depthFunc(2)
+      state.depthMask(true)
+      state.blendFunc(3, 4)
+      state.lineWidth(2)
+      frame += 1
+    }
+    
+    assert(gl.calls == Seq("enable(1)", "depthFunc(2)", "depthMask(true)", "blendFunc(3, 4)", "lineWidth(2.0)"))
+    assert(state.issuedCalls == 5)
+    assert(state.elidedCalls == 10)
+  }
+  
+  test("Changes are issued") {
+    val gl = new RecordingGl
+    val state = new GlState(gl, 4)
+    
+    state.enable(1)
+    state.disable(1)
+    state.enable(2)
+    state.cullFace(5)
+    state.cullFace(6)
+    state.pointSize(1)
+    state.pointSize(4)
+    state.blendFunc(3, 4)
+    state.blendFunc(3, 5)
+    
+    assert(gl.calls == Seq(
+      "enable(1)", "disable(1)", "enable(2)", "cullFace(5)", "cullFace(6)",
+      "pointSize(1.0)", "pointSize(4.0)", "blendFunc(3, 4)", "blendFunc(3, 5)"
+    ))
+    assert(state.elidedCalls == 0)
+  }
+  
+  test("Reset forgets the state") {
+    val gl = new RecordingGl
+    val state = new GlState(gl, 4)
+    
+    state.enable(1)
+    state.pointSpriteCoordOrigin(7)
+    state.reset()
+    state.enable(1)
+    state.pointSpriteCoordOrigin(7)
+    
+    assert(gl.calls == Seq("enable(1)", "pointParameter(7)", "enable(1)", "pointParameter(7)"))
+  }
+  
+  test("Many capabilities") {
+    val gl = new RecordingGl
+    val state = new GlState(gl, 4)
+    
+    var i = 0; while (i < 20) { state.enable(i); i += 1 }
+    i = 0; while (i < 20) { state.enable(i); i += 1 }
+    
+    assert(gl.calls.size == 20)
+    assert(state.elidedCalls == 20)
+  }
+  
+  test("Vertex attribute arrays") {
+    val gl = new RecordingGl
+    val state = new GlState(gl, 4)
+    
+    state.requestAttribArray(0)
+    state.requestAttribArray(2)
+    state.applyAttribArrays()
+    assert(gl.calls == Seq("enableArray(0)", "disableArray(1)", "enableArray(2)", "disableArray(3)"))
+    
+    gl.calls.clear()
+    state.requestAttribArray(0)
+    state.requestAttribArray(2)
+    state.applyAttribArrays()
+    assert(gl.calls.isEmpty)
+    
+    state.requestAttribArray(0)
+    state.requestAttribArray(1)
+    state.applyAttribArrays()
+    assert(gl.calls == Seq("enableArray(1)", "disableArray(2)"))
+  }
+}
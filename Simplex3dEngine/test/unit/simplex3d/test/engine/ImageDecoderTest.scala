@@ -0,0 +1,87 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import java.awt.image.BufferedImage
+import java.nio.ByteBuffer
+import org.scalatest._
+import simplex3d.engine.asset._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class ImageDecoderTest extends FunSuite {
+  
+  private val width = 5
+  private val height = 3
+  
+  private def mkImage(imageType: Int) = {
+    val img = new BufferedImage(width, height, imageType)
+    val random = new java.util.Random(1)
+    for (y <- 0 until height; x <- 0 until width) img.setRGB(x, y, random.nextInt())
+    img
+  }
+  
+  /** Per-pixel reference conversion.
+   */
+  private def expected(img: BufferedImage, components: Int) :Seq[Byte] = {
+    val result = new Array[Byte](width*height*components)
+    for (y <- 0 until height; x <- 0 until width) {
+      val pixel = img.getRGB(x, y)
+      val index = (x + (height - 1 - y)*width)*components
+      result(index) = (pixel >> 16).toByte
+      result(index + 1) = (pixel >> 8).toByte
+      result(index + 2) = pixel.toByte
+      if (components == 4) result(index + 3) = (pixel >> 24).toByte
+    }
+    result
+  }
+  
+  private def decoded(img: BufferedImage, components: Int) :Seq[Byte] = {
+    val buffer = ByteBuffer.allocate(width*height*components)
+    ImageDecoder.decode(img, buffer, components)
+    buffer.array
+  }
+  
+  
+  test("Decoding matches getRGB()") {
+    val types = Seq(
+      BufferedImage.TYPE_3BYTE_BGR,
+      BufferedImage.TYPE_4BYTE_ABGR,
+      BufferedImage.TYPE_INT_ARGB,
+      BufferedImage.TYPE_INT_RGB,
+      BufferedImage.TYPE_INT_BGR,
+      BufferedImage.TYPE_USHORT_565_RGB
+    )
+    
+    for (imageType <- types; components <- Seq(3, 4)) {
+      val img = mkImage(imageType)
+      assert(decoded(img, components) == expected(img, components), "Image type " + imageType + ".")
+    }
+  }
+  
+  test("Small buffers are rejected") {
+    intercept[IllegalArgumentException] {
+      ImageDecoder.decode(mkImage(BufferedImage.TYPE_INT_RGB), ByteBuffer.allocate(4), 3)
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import scala.collection.mutable.ArrayBuffer
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine.graphics._
+import simplex3d.backend.lwjgl._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class InstancedDrawTest extends FunSuite {
+
+  private class RecordingGl extends InstancingGl {
+    val calls = new ArrayBuffer[String]
+
+    def glVertexAttribDivisor(index: Int, divisor: Int) { calls += "divisor(" + index + ", " + divisor + ")" }
+    def glDisableVertexAttribArray(index: Int) { calls += "disable(" + index + ")" }
+    def glVertexAttrib3f(index: Int, x: Float, y: Float, z: Float) {
+      calls += "attrib3(" + index + ", " + x + ", " + y + ", " + z + ")"
+    }
+    def glVertexAttrib4f(index: Int, x: Float, y: Float, z: Float, w: Float) {
+      calls += "attrib4(" + index + ", " + x + ", " + y + ", " + z + ", " + w + ")"
+    }
+
+    def glDrawArrays(mode: Int, first: Int, count: Int) { calls += "drawArrays(" + count + ")" }
+    def glDrawArraysInstanced(mode: Int, first: Int, count: Int, instances: Int) {
+      calls += "drawArraysInstanced(" + count + ", " + instances + ")"
+    }
+    def glDrawElements(mode: Int, count: Int, indexType: Int, offset: Long) { calls += "drawElements(" + count + ")" }
+    def glDrawElementsInstanced(mode: Int, count: Int, indexType: Int, offset: Long, instances: Int) {
+      calls += "drawElementsInstanced(" + count + ", " + instances + ")"
+    }
+  }
+
+  private def mkRows() = {
+    val rows = Attributes[Vec4, RFloat](2, Caching.Dynamic, 1)
+    rows.write(0) = Vec4(1, 2, 3, 4)
+    rows.write(1) = Vec4(5, 6, 7, 8)
+    rows
+  }
+
+  private def mkNormalRows() = {
+    val rows = Attributes[Vec3, RFloat](2, Caching.Dynamic, 1)
+    rows.write(0) = Vec3(1, 0, 0)
+    rows.write(1) = Vec3(0, 1, 0)
+    rows
+  }
+
+
+  test("Instanced draw") {
+    val gl = new RecordingGl
+    val draw = new InstancedDraw(gl, true, 16)
+    draw.resetState()
+
+    draw.setDivisor(4, 1, 1)
+    draw.setDivisor(5, 1, 1)
+    draw.drawElements(0, 36, 0, 0, 100)
+
+    draw.setDivisor(4, 1, 1)
+    draw.setDivisor(5, 1, 1)
+    draw.drawElements(0, 36, 0, 0, 50)
+
+    assert(gl.calls == Seq(
+      "divisor(4, 1)", "divisor(5, 1)",
+      "drawElementsInstanced(36, 100)",
+      "drawElementsInstanced(36, 50)"
+    ))
+  }
+
+  test("Divisor reset") {
+    val gl = new RecordingGl
+    val draw = new InstancedDraw(gl, true, 16)
+    draw.resetState()
+
+    draw.setDivisor(4, 2, 1)
+    draw.setDivisor(4, 2, 0)
+    draw.setDivisor(4, 2, 0)
+    draw.drawArrays(0, 0, 3, 0)
+
+    assert(gl.calls == Seq(
+      "divisor(4, 1)", "divisor(5, 1)",
+      "divisor(4, 0)", "divisor(5, 0)",
+      "drawArrays(3)"
+    ))
+  }
+
+  test("Fallback without instancing support") {
+    val gl = new RecordingGl
+    val draw = new InstancedDraw(gl, false, 16)
+    draw.resetState()
+
+    draw.setDivisor(4, 1, 1)
+    draw.defer(4, 4, mkRows())
+    draw.defer(5, 3, mkNormalRows())
+    draw.drawArrays(0, 0, 3, 2)
+
+    assert(gl.calls == Seq(
+      "attrib4(4, 1.0, 2.0, 3.0, 4.0)", "attrib3(5, 1.0, 0.0, 0.0)", "drawArrays(3)",
+      "attrib4(4, 5.0, 6.0, 7.0, 8.0)", "attrib3(5, 0.0, 1.0, 0.0)", "drawArrays(3)"
+    ))
+
+    // Deferred attributes only apply to a single draw call.
+    gl.calls.clear()
+    draw.drawElements(0, 6, 0, 0, 0)
+    assert(gl.calls == Seq("drawElements(6)"))
+  }
+
+  test("Non-instanced draw") {
+    val gl = new RecordingGl
+    val draw = new InstancedDraw(gl, true, 16)
+    draw.resetState()
+
+    draw.drawArrays(0, 0, 3, 0)
+    draw.drawElements(0, 6, 0, 0, 0)
+
+    assert(gl.calls == Seq("drawArrays(3)", "drawElements(6)"))
+  }
+}
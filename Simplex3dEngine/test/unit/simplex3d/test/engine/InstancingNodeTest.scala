@@ -0,0 +1,136 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine.graphics._
+import simplex3d.engine.scene.api._
+import simplex3d.scenegraph._
+import simplex3d.renderer.texturing.TextureUnit
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class InstancingNodeTest extends FunSuite with SceneGraphFixture {
+  
+  private def mkNode(scene: SceneGraph[T, G], cullingEnabled: Boolean) = {
+    val node = new InstancingNode[T, G]("Instances", cullingEnabled)
+    val vertices = Attributes[Vec3, RFloat](3)
+    vertices.write(0) = Vec3(0, 0, 0)
+    vertices.write(1) = Vec3(1, 0, 0)
+    vertices.write(2) = Vec3(0, 1, 0)
+    node.geometry.vertices := vertices
+    scene.attach(node)
+    node
+  }
+  
+  private def appendInstance(node: InstancingNode[T, G], name: String, position: inVec3) = {
+    val instance = node.appendInstance(name)
+    instance.transformation.update.translation := position
+    instance
+  }
+  
+  private def mkTexture(size: Int) :Texture2d[Vec4] = {
+    val levels = Iterator.iterate(size)(_/2).takeWhile(_ > 0).map { s =>
+      (ConstVec2i(s), DataBuffer[Vec4, UByte](s*s))
+    }
+    Texture2d.fromMipChain(levels.toIndexedSeq)
+  }
+  
+  private def checkMovedSlot(cullingEnabled: Boolean) {
+    val scene = mkScene()
+    val node = mkNode(scene, cullingEnabled)
+    appendInstance(node, "A", Vec3(0, 0, -50))
+    val b = appendInstance(node, "B", Vec3(10, 0, -50))
+    appendInstance(node, "C", Vec3(20, 0, -50))
+    
+    val vertices = displayVertices(cull(scene))
+    assert(vertices.read(3) == Vec3(10, 0, -50))
+    vertices.sharedState.clearDataChanges()
+    
+    // Nothing has changed, nothing is rewritten.
+    cull(scene)
+    assertRegions(vertices)
+    
+    b.transformation.update.translation := Vec3(10, 5, -50)
+    val display = cull(scene)
+    
+    assert(displayVertices(display) eq vertices)
+    assertRegions(vertices, (3, 3))
+    assert(vertices.read(3) == Vec3(10, 5, -50))
+    assert(vertices.read(4) == Vec3(11, 5, -50))
+    assert(vertices.read(0) == Vec3(0, 0, -50))
+    assert(vertices.read(6) == Vec3(20, 0, -50))
+    assert(display.elementRange.get.count.toConst == 9)
+  }
+  
+  
+  test("Only the slot of the moved instance is rewritten") {
+    checkMovedSlot(true)
+  }
+  
+  test("Only the slot of the moved instance is rewritten without culling") {
+    checkMovedSlot(false)
+  }
+  
+  test("Slots of hidden instances are filled from the end") {
+    val scene = mkScene()
+    val node = mkNode(scene, true)
+    val a = appendInstance(node, "A", Vec3(0, 0, -50))
+    appendInstance(node, "B", Vec3(10, 0, -50))
+    appendInstance(node, "C", Vec3(20, 0, -50))
+    
+    val vertices = displayVertices(cull(scene))
+    vertices.sharedState.clearDataChanges()
+    
+    a.transformation.update.translation := Vec3(500, 0, -50)
+    val display = cull(scene)
+    
+    // The last instance is moved into the slot of the hidden one, the remaining slots are untouched.
+    assertRegions(vertices, (0, 3))
+    assert(vertices.read(0) == Vec3(20, 0, -50))
+    assert(vertices.read(3) == Vec3(10, 0, -50))
+    assert(display.elementRange.get.count.toConst == 6)
+  }
+  
+  test("Streamed textures are requested from the volume of the instancing node") {
+    val scene = mkScene()
+    val node = mkNode(scene, true)
+    appendInstance(node, "A", Vec3(0, 0, -50))
+    appendInstance(node, "B", Vec3(10, 0, -50))
+    
+    val texture = mkTexture(64)
+    node.material.textureUnits.update += new TextureUnit(texture)
+    
+    // The display mesh has no bounding volume of its own.
+    cull(scene)
+    
+    val context = new RecordingContext
+    scene.textureStreamer.update(context, 1)
+    assert(context.residencyCalls.nonEmpty)
+    assert(context.residencyCalls.forall(_._1 eq texture))
+  }
+}
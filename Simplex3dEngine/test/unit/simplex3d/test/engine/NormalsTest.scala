@@ -0,0 +1,107 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.math.double.functions._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.algorithm.mesh._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class NormalsTest extends FunSuite {
+  
+  private val gridDimensions = ConstVec2i(64, 48)
+  
+  private def heightMap(x: Double, y: Double) = sin(x*0.7)*cos(y*0.3)*3
+  
+  private def mkGrid() = {
+    val indices = DataBuffer[SInt, UInt](QuadMeshGen.indexSize(gridDimensions))
+    val vertices = DataBuffer[Vec3, RDouble](QuadMeshGen.dataSize(gridDimensions))
+    QuadMeshGen.genIndex(gridDimensions, indices)
+    QuadMeshGen.genData(heightMap, Vec2(0), Vec2(64, 48), gridDimensions, vertices, null)
+    (indices, vertices)
+  }
+  
+  private def serialNormals(indices: inIndex, vertices: inData[Vec3]) = {
+    val normals = DataBuffer[Vec3, RDouble](vertices.size)
+    Util.buildNormals(indices, vertices, normals)
+    normals
+  }
+  
+  private def assertSame(expected: inData[Vec3], actual: inData[Vec3]) {
+    assert(expected.size == actual.size)
+    var i = 0; while (i < expected.size) {
+      assert(approxEqual(expected(i), actual(i), 1e-8), "Normal " + i + ": " + actual(i) + " != " + expected(i) + ".")
+      i += 1
+    }
+  }
+  
+  
+  test("Parallel normals match the serial normals") {
+    val (indices, vertices) = mkGrid()
+    val adjacency = VertexAdjacency(indices, vertices.size)
+    
+    val normals = DataBuffer[Vec3, RDouble](vertices.size)
+    Util.buildNormals(indices, vertices, normals, adjacency)
+    
+    assertSame(serialNormals(indices, vertices), normals)
+  }
+  
+  test("Rebuilt normals match the serial normals after the dirty range has changed") {
+    val (indices, vertices) = mkGrid()
+    val adjacency = VertexAdjacency(indices, vertices.size)
+    
+    val normals = DataBuffer[Vec3, RDouble](vertices.size)
+    Util.buildNormals(indices, vertices, normals, adjacency)
+    
+    for ((first, count) <- Seq((0, 1), (100, 65), (vertices.size - 200, 200))) {
+      var i = first; while (i < first + count) {
+        vertices(i) = vertices(i) + Vec3(0, 1 + i % 3, 0)
+        i += 1
+      }
+      
+      Util.rebuildNormals(indices, vertices, normals, adjacency, first, count)
+      assertSame(serialNormals(indices, vertices), normals)
+    }
+  }
+  
+  test("Adjacency must match the normals") {
+    val (indices, vertices) = mkGrid()
+    val adjacency = VertexAdjacency(indices, vertices.size)
+    val normals = DataBuffer[Vec3, RDouble](vertices.size + 1)
+    
+    intercept[IllegalArgumentException] {
+      Util.buildNormals(indices, vertices, normals, adjacency)
+    }
+    intercept[IllegalArgumentException] {
+      Util.rebuildNormals(indices, vertices, normals, adjacency, 0, 1)
+    }
+    intercept[IndexOutOfBoundsException] {
+      Util.rebuildNormals(indices, vertices, DataBuffer[Vec3, RDouble](vertices.size), adjacency, vertices.size - 1, 2)
+    }
+  }
+}
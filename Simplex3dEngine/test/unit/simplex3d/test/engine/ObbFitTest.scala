@@ -0,0 +1,104 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.math.double.functions._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.algorithm.intersection.Obb
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class ObbFitTest extends FunSuite {
+  
+  private val random = new java.util.Random(0)
+  
+  /** Corners and random interior points of a box with the given half extents, rotated and moved.
+   */
+  private def mkRotatedBox(extents: inVec3, rotation: inMat3, offset: inVec3, count: Int) :DataBuffer[Vec3, RFloat] = {
+    val vertices = DataBuffer[Vec3, RFloat](8 + count)
+    
+    var i = 0; while (i < 8) {
+      val corner = Vec3(
+        if ((i & 1) == 0) -extents.x else extents.x,
+        if ((i & 2) == 0) -extents.y else extents.y,
+        if ((i & 4) == 0) -extents.z else extents.z
+      )
+      vertices(i) = rotation*corner + offset
+      i += 1
+    }
+    while (i < vertices.size) {
+      val point = Vec3(random.nextDouble, random.nextDouble, random.nextDouble)*2 - 1
+      vertices(i) = rotation*(point*extents) + offset
+      i += 1
+    }
+    
+    vertices
+  }
+  
+  private def assertContains(vertices: inData[Vec3], min: inVec3, max: inVec3, transformation: inMat4x3) {
+    val tolerance = 1e-4
+    val toBox = inverse(transformation)
+    
+    var i = 0; while (i < vertices.size) {
+      val p = toBox.transformPoint(vertices(i))
+      assert(
+        all(greaterThanEqual(p, min - tolerance)) && all(lessThanEqual(p, max + tolerance)),
+        "Vertex " + i + " " + vertices(i) + " is outside the fitted box."
+      )
+      i += 1
+    }
+  }
+  
+  
+  test("Fitted box contains the rotated vertices") {
+    val extents = Vec3(4, 1, 0.5)
+    val rotation = rotationMat(radians(35), normalize(Vec3(1, 2, 3)))
+    val vertices = mkRotatedBox(extents, rotation, Vec3(10, -3, 7), 500)
+    
+    val min = Vec3(0); val max = Vec3(0); val transformation = Mat4x3(0)
+    Obb.fitObb(vertices)(min, max, transformation)
+    
+    assertContains(vertices, min, max, transformation)
+    
+    // A rotation that matches the box is much tighter than the axis-aligned box around it.
+    val size = max - min
+    assert(size.x*size.y*size.z < 8*extents.x*extents.y*extents.z*1.1)
+  }
+  
+  test("Fitted box contains the vertices for several rotations") {
+    for (k <- 0 until 10) {
+      val axis = normalize(Vec3(random.nextDouble, random.nextDouble, random.nextDouble) - 0.5)
+      val rotation = rotationMat(random.nextDouble*radians(180), axis)
+      val vertices = mkRotatedBox(Vec3(3, 2, 1), rotation, Vec3(0), 200)
+      
+      val min = Vec3(0); val max = Vec3(0); val transformation = Mat4x3(0)
+      Obb.fitObb(vertices)(min, max, transformation)
+      
+      assertContains(vertices, min, max, transformation)
+    }
+  }
+}
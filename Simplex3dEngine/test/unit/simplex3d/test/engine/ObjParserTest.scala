@@ -0,0 +1,113 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import java.io.ByteArrayInputStream
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.engine.asset._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class ObjParserTest extends FunSuite {
+  
+  private def parse(src: String, chunkSize: Int = ObjParser.DefaultChunkSize) = {
+    ObjParser.parse("test", new ByteArrayInputStream(src.getBytes("UTF-8")), chunkSize)
+  }
+  
+  private val quad =
+    "# quad\n" +
+    "v 0 0 0\n" +
+    "v 1.0 0 0\r\n" +
+    "v 1 1e0 0\n" +
+    "v -0 1 -2.5E-1\n" +
+    "vt 0 0\n" +
+    "vt 1 0\n" +
+    "vt 1 1\n" +
+    "vt 0 1\n" +
+    "vn 0 0 1\n" +
+    "f 1/1/1 2/2/1 3/3/1 4/4/1\n"
+  
+  
+  test("Quads are triangulated") {
+    val (indices, vertices, normals, texCoords) = parse(quad)
+    
+    assert(indices.size == 6)
+    assert(vertices.size == 4)
+    assert((0 until 6).map(indices(_)) == Seq(0, 1, 2, 0, 2, 3))
+    
+    assert(vertices(2) == Vec3(1, 1, 0))
+    assert(vertices(3) == Vec3(0, 1, -0.25))
+    assert(texCoords.get(2) == Vec2(1, 1))
+    assert(normals.get(3) == Vec3(0, 0, 1))
+  }
+  
+  test("Shared corners are de-duplicated") {
+    val src =
+      "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n" +
+      "vn 0 0 1\n" +
+      "f 1//1 2//1 3//1\n" +
+      "f -4//-1 -2//-1 -1//-1\n"
+    
+    val (indices, vertices, normals, texCoords) = parse(src)
+    
+    assert(vertices.size == 4)
+    assert((0 until 6).map(indices(_)) == Seq(0, 1, 2, 0, 2, 3))
+    assert(normals.isDefined)
+    assert(texCoords.isEmpty)
+  }
+  
+  test("Chunked parsing gives the same result") {
+    val src = quad + quad.replace("f 1/1/1 2/2/1 3/3/1 4/4/1", "f -4/-4/-1 -3/-3/-1 -2/-2/-1")
+    
+    val (indices, vertices, _, _) = parse(src)
+    val (chunkedIndices, chunkedVertices, _, _) = parse(src, 16)
+    
+    assert(chunkedIndices.size == indices.size)
+    assert(chunkedVertices.size == vertices.size)
+    for (i <- 0 until indices.size) assert(chunkedIndices(i) == indices(i))
+    for (i <- 0 until vertices.size) assert(chunkedVertices(i) == vertices(i))
+  }
+  
+  test("Consecutive lines longer than the chunk are parsed") {
+    val src =
+      "v 0.000000000000 0.000000000000 0.000000000000\n" +
+      "v 1.000000000000 0.000000000000 0.000000000000\n" +
+      "v 1.000000000000 1.000000000000 0.000000000000\n" +
+      "f 1 2 3\n"
+    
+    val (indices, vertices, _, _) = parse(src, 8)
+    
+    assert((0 until 3).map(indices(_)) == Seq(0, 1, 2))
+    assert(vertices.size == 3)
+    assert(vertices(2) == Vec3(1, 1, 0))
+  }
+  
+  test("Errors report the line") {
+    val e = intercept[RuntimeException] { parse("v 0 0 0\nv 1 0 0\nv 1 x 0\n", 8) }
+    assert(e.getMessage.contains("line 3"))
+    
+    intercept[RuntimeException] { parse("v 0 0 0\nf 1 2 3\n") }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import java.io.File
+import org.scalatest._
+import simplex3d.engine.graphics.pluggable._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class PersistentTechniqueCacheTest extends FunSuite {
+  
+  private def mkDirectory() :File = {
+    val file = File.createTempFile("technique-cache", "")
+    file.delete()
+    file.mkdirs()
+    file
+  }
+  
+  private def mkEntry() = new PersistentTechniqueCache.Entry(
+    Array(3, 0, 7), Array("void a() {}\n", "void b() {}\n", "// ü\n"), "void main() {}\n", "void main() { }\n"
+  )
+  
+  
+  test("Stored entries are loaded") {
+    val directory = mkDirectory()
+    new PersistentTechniqueCache(directory).store(1L, 2L, mkEntry())
+    
+    val entry = new PersistentTechniqueCache(directory).load(1L, 2L)
+    assert(entry != null)
+    assert(entry.chain.toSeq == mkEntry().chain.toSeq)
+    assert(entry.sources.toSeq == mkEntry().sources.toSeq)
+    assert(entry.fragmentMain == mkEntry().fragmentMain)
+    assert(entry.vertexMain == mkEntry().vertexMain)
+    
+    new PersistentTechniqueCache(directory).clear()
+    directory.delete()
+  }
+  
+  test("Missing entries") {
+    val directory = mkDirectory()
+    val cache = new PersistentTechniqueCache(directory)
+    cache.store(1L, 2L, mkEntry())
+    
+    assert(cache.load(1L, 3L) == null)
+    
+    cache.clear()
+    directory.delete()
+  }
+  
+  test("Changing the shader pack removes stale entries") {
+    val directory = mkDirectory()
+    new PersistentTechniqueCache(directory).store(1L, 2L, mkEntry())
+    
+    val cache = new PersistentTechniqueCache(directory)
+    assert(cache.load(5L, 2L) == null)
+    assert(cache.load(1L, 2L) == null)
+    assert(directory.listFiles().isEmpty)
+    
+    cache.clear()
+    directory.delete()
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import simplex3d.engine.util._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class RollingWindowTest extends FunSuite {
+  
+  test("Empty window") {
+    val window = new RollingWindow(4)
+    assert(window.count == 0)
+    assert(window.last == 0)
+    assert(window.percentile(0.5) == 0)
+  }
+  
+  test("Percentiles") {
+    val window = new RollingWindow(100)
+    var i = 100; while (i > 0) {
+      window.add(i)
+      i -= 1
+    }
+    
+    assert(window.count == 100)
+    assert(window.last == 1)
+    assert(window.percentile(0) == 1)
+    assert(window.percentile(0.5) == 50)
+    assert(window.percentile(0.95) == 95)
+    assert(window.percentile(0.99) == 99)
+    assert(window.percentile(1) == 100)
+  }
+  
+  test("Old samples roll out") {
+    val window = new RollingWindow(3)
+    window.add(1000)
+    window.add(1)
+    window.add(2)
+    window.add(3)
+    
+    assert(window.count == 3)
+    assert(window.last == 3)
+    assert(window.percentile(1) == 3)
+    assert(window.percentile(0) == 1)
+    
+    window.clear()
+    assert(window.count == 0)
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import scala.collection.mutable.ArrayBuffer
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine._
+import simplex3d.engine.util._
+import simplex3d.engine.graphics._
+import simplex3d.engine.scene._
+import simplex3d.engine.scene.api._
+import simplex3d.engine.transformation.ComponentTransformation3dContext
+import simplex3d.scenegraph._
+import simplex3d.renderer.TechniqueProvider
+
+
+/** Scene setup shared by the scene graph suites.
+ * 
+ * @author Aleksey Nikiforov (lex)
+ */
+trait SceneGraphFixture { self: FunSuite =>
+  
+  type T = ComponentTransformation3dContext
+  type G = simplex3d.renderer.GraphicsContext
+  
+  implicit val transformationContext = new T
+  implicit val graphicsContext = new G
+  
+  protected val pass = new Pass(new FrameBuffer(Vec2i(100)))
+  protected val time = new TimeStamp(0, 0)
+  
+  /** Records the resources passed to the backend, streamed levels are made resident immediately. */
+  protected class RecordingContext extends RenderContext {
+    val capabilities: GraphicsCapabilities = null
+    val initialized = new ArrayBuffer[AnyRef]
+    val residencyCalls = new ArrayBuffer[(Texture2d[_], Int)]
+    
+    def init(attributes: Attributes[_, _]) { initialized += attributes }
+    def release(attributes: Attributes[_, _]) {}
+    def init(texture: Texture[_]) { initialized += texture }
+    def release(texture: Texture[_]) {}
+    
+    def updateResidency(texture: Texture2d[_], level: Int) :Long = {
+      residencyCalls += ((texture, level))
+      texture.updateResidentLevel(level)
+      0
+    }
+    
+    def clearFrameBuffer() {}
+    def viewportDimensions() = ConstVec2i(0)
+    def manage() {}
+    def cleanup() {}
+  }
+  
+  // The default camera is orthographic, looking down -z, with the view spanning from -100 to 100 along x.
+  protected def mkScene(settings: SceneGraphSettings = new SceneGraphSettings(multithreadedParsing = false)) = {
+    new SceneGraph[T, G](
+      "World",
+      settings,
+      new Camera[T, G]("Main Camera"),
+      TechniqueProvider.assembleTechniqueManager[G]()
+    )
+  }
+  
+  protected def renderArray(scene: SceneGraph[T, G]) :SortBuffer[AbstractMesh] = {
+    val result = new SortBuffer[AbstractMesh]
+    scene.buildRenderArray(pass, time, result)
+    result
+  }
+  
+  /** @return the only mesh drawn, or null when nothing is drawn. */
+  protected def cull(scene: SceneGraph[T, G]) :Mesh[T, G] = {
+    val result = renderArray(scene)
+    assert(result.size <= 1)
+    if (result.size == 0) null else result(0).asInstanceOf[Mesh[T, G]]
+  }
+  
+  protected def displayVertices(display: Mesh[T, G]) = {
+    display.geometry.vertices.get.asInstanceOf[Attributes[Vec3, RFloat]]
+  }
+  
+  protected def assertRegions(vertices: Attributes[Vec3, RFloat], expected: (Int, Int)*) {
+    val regions = vertices.sharedState.updatedRegions
+    val actual = (0 until regions.size).map(i => (regions.first(i), regions.count(i)))
+    assert(actual == expected)
+  }
+}
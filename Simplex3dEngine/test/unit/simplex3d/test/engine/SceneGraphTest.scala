@@ -0,0 +1,85 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine.graphics._
+import simplex3d.scenegraph._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class SceneGraphTest extends FunSuite with SceneGraphFixture {
+  
+  private def mkMesh(name: String, position: inVec3) = {
+    val mesh = new Mesh[T, G](name)
+    val vertices = Attributes[Vec3, RFloat](3)
+    vertices.write(0) = Vec3(0, 0, 0)
+    vertices.write(1) = Vec3(1, 0, 0)
+    vertices.write(2) = Vec3(0, 1, 0)
+    mesh.geometry.vertices := vertices
+    mesh.transformation.update.translation := position
+    mesh
+  }
+  
+  
+  test("Only the changed paths are updated") {
+    val scene = mkScene()
+    
+    // Root -> A -> (B -> D, C -> E)
+    val a = new Node[T, G]("A")
+    val b = new Node[T, G]("B")
+    val c = new Node[T, G]("C")
+    val d = mkMesh("D", Vec3(0, 0, -50))
+    val e = mkMesh("E", Vec3(10, 0, -50))
+    b.appendChild(d)
+    c.appendChild(e)
+    a.appendChild(b)
+    a.appendChild(c)
+    scene.attach(a)
+    
+    assert(renderArray(scene).size == 2)
+    assert(scene.nodesUpdated > 0)
+    
+    // Nothing has changed, the elements are visited for culling only.
+    renderArray(scene)
+    assert(scene.nodesVisited > 0)
+    assert(scene.nodesUpdated == 0)
+    
+    // A deep change marks its ancestors: Root, A, B, and D are updated, the C subtree is not revisited.
+    d.transformation.update.translation := Vec3(0, 5, -50)
+    renderArray(scene)
+    assert(scene.nodesUpdated == 4)
+    
+    renderArray(scene)
+    assert(scene.nodesUpdated == 0)
+    
+    // Moving a node updates its whole subtree.
+    a.transformation.update.translation := Vec3(5, 0, 0)
+    renderArray(scene)
+    assert(scene.nodesUpdated == 6)
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine._
+import simplex3d.engine.graphics._
+import simplex3d.engine.scene.api._
+import simplex3d.scenegraph._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class ScenePreloadTest extends FunSuite with SceneGraphFixture {
+  
+  private object Timer extends FrameTimer {
+    def frameTime() = 1.0/60
+  }
+  
+  private def mkVertices() = {
+    val vertices = Attributes[Vec3, RFloat](3)
+    vertices.write(0) = Vec3(-1, -1, 0)
+    vertices.write(1) = Vec3(1, -1, 0)
+    vertices.write(2) = Vec3(0, 1, 0)
+    vertices
+  }
+  
+  private def mkMesh(name: String, vertices: Attributes[Vec3, RFloat], position: inVec3) = {
+    val mesh = new Mesh[T, G](name)
+    mesh.geometry.vertices := vertices
+    mesh.transformation.update.translation := position
+    mesh
+  }
+  
+  /** Runs a preload pass, uploading one resource per call, and returns the number of calls. */
+  private def preloadPass(scene: SceneGraph[T, G], context: RenderContext) :Int = {
+    var calls = 1
+    var progress = scene.preload(context, Timer, 0)
+    while (progress < 1) {
+      val next = scene.preload(context, Timer, 0)
+      assert(next >= progress)
+      progress = next
+      calls += 1
+      
+      if (calls > 10000) fail("The preload pass does not complete.")
+      if (progress < 1) Thread.sleep(1)
+    }
+    calls
+  }
+  
+  
+  test("Preload pass completes and the next call starts a new pass") {
+    val scene = mkScene(new SceneGraphSettings(preloadEverything = true))
+    val context = new RecordingContext
+    val a = mkVertices()
+    val b = mkVertices()
+    scene.attach(mkMesh("A", a, Vec3(0, 0, -50)))
+    scene.attach(mkMesh("B", b, Vec3(10, 0, -50)))
+    
+    val calls = preloadPass(scene, context)
+    assert(calls >= 2)
+    assert(context.initialized.toSet == Set[AnyRef](a, b))
+    
+    preloadPass(scene, context)
+    assert(context.initialized.size == 4)
+  }
+  
+  test("Shared resources are uploaded once per pass") {
+    val scene = mkScene(new SceneGraphSettings(preloadEverything = true))
+    val context = new RecordingContext
+    val shared = mkVertices()
+    for (i <- 0 until 5) scene.attach(mkMesh("Mesh " + i, shared, Vec3(i*10, 0, -50)))
+    
+    preloadPass(scene, context)
+    assert(context.initialized.size == 1)
+    assert(context.initialized.head eq shared)
+  }
+  
+  test("Streamed attributes are not preloaded") {
+    val scene = mkScene(new SceneGraphSettings(preloadEverything = true))
+    val context = new RecordingContext
+    val vertices = mkVertices()
+    val mesh = mkMesh("Mesh", vertices, Vec3(0, 0, -50))
+    val streamed = Attributes[Vec3, RFloat](3, Caching.Stream)
+    mesh.geometry.normals := streamed
+    scene.attach(mesh)
+    
+    preloadPass(scene, context)
+    assert(context.initialized.size == 1)
+    assert(context.initialized.head eq vertices)
+  }
+  
+  test("Only the meshes within the extended view are preloaded") {
+    val scene = mkScene(new SceneGraphSettings(preloadEverything = false))
+    val context = new RecordingContext
+    val visible = mkVertices()
+    val nearby = mkVertices()
+    val distant = mkVertices()
+    
+    // The view is extended by the default factor of 2, to 200 along x.
+    scene.attach(mkMesh("Visible", visible, Vec3(0, 0, -50)))
+    scene.attach(mkMesh("Nearby", nearby, Vec3(150, 0, -50)))
+    scene.attach(mkMesh("Distant", distant, Vec3(300, 0, -50)))
+    
+    preloadPass(scene, context)
+    assert(context.initialized.toSet == Set[AnyRef](visible, nearby))
+  }
+}
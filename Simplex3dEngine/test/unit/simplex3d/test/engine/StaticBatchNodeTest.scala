@@ -0,0 +1,130 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine.graphics._
+import simplex3d.engine.scene.api._
+import simplex3d.scenegraph._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class StaticBatchNodeTest extends FunSuite with SceneGraphFixture {
+  
+  private def mkVertices(count: Int) = {
+    val vertices = Attributes[Vec3, RFloat](count)
+    var i = 0; while (i < count) {
+      vertices.write(i) = Vec3(i, 0, 0)
+      i += 1
+    }
+    vertices
+  }
+  
+  private def appendMember(batch: StaticBatchNode[T, G], name: String, vertexCount: Int, position: inVec3) = {
+    val member = batch.appendMember(name)
+    member.geometry.vertices := mkVertices(vertexCount)
+    member.transformation.update.translation := position
+    member
+  }
+  
+  private def drawnIndices(display: Mesh[T, G]) :IndexedSeq[Int] = {
+    val indices = display.geometry.indices.read
+    (0 until display.elementRange.get.count.toConst).map(indices(_))
+  }
+  
+  
+  test("Layout is rebuilt when members are added or resized") {
+    val scene = mkScene()
+    val batch = new StaticBatchNode[T, G]("Batch")
+    scene.attach(batch)
+    
+    appendMember(batch, "A", 3, Vec3(0, 0, -50))
+    var display = cull(scene)
+    assert(displayVertices(display).src.size == 3)
+    assert(drawnIndices(display) == (0 until 3))
+    
+    val b = appendMember(batch, "B", 6, Vec3(10, 0, -50))
+    display = cull(scene)
+    assert(displayVertices(display).src.size == 9)
+    assert(displayVertices(display).read(3) == Vec3(10, 0, -50))
+    assert(drawnIndices(display) == (0 until 9))
+    
+    b.geometry.vertices := mkVertices(4)
+    display = cull(scene)
+    assert(displayVertices(display).src.size == 7)
+    assert(drawnIndices(display) == (0 until 7))
+  }
+  
+  test("Only the moved member is rewritten") {
+    val scene = mkScene()
+    val batch = new StaticBatchNode[T, G]("Batch")
+    scene.attach(batch)
+    
+    appendMember(batch, "A", 3, Vec3(0, 0, -50))
+    val b = appendMember(batch, "B", 3, Vec3(10, 0, -50))
+    appendMember(batch, "C", 3, Vec3(20, 0, -50))
+    
+    val vertices = displayVertices(cull(scene))
+    vertices.sharedState.clearDataChanges()
+    
+    b.transformation.update.translation := Vec3(10, 5, -50)
+    val display = cull(scene)
+    
+    // The combined buffer is kept, only the region of the moved member is marked for upload.
+    assert(displayVertices(display) eq vertices)
+    assertRegions(vertices, (3, 3))
+    
+    assert(vertices.read(3) == Vec3(10, 5, -50))
+    assert(vertices.read(5) == Vec3(12, 5, -50))
+    assert(vertices.read(0) == Vec3(0, 0, -50))
+    assert(vertices.read(6) == Vec3(20, 0, -50))
+  }
+  
+  test("Only the visible ranges are drawn, compacted to the front") {
+    val scene = mkScene()
+    val batch = new StaticBatchNode[T, G]("Batch")
+    scene.attach(batch)
+    
+    val a = appendMember(batch, "A", 3, Vec3(0, 0, -50))
+    appendMember(batch, "B", 3, Vec3(10, 0, -50))
+    val c = appendMember(batch, "C", 3, Vec3(20, 0, -50))
+    
+    assert(drawnIndices(cull(scene)) == (0 until 9))
+    
+    a.transformation.update.translation := Vec3(500, 0, -50)
+    var display = cull(scene)
+    assert(drawnIndices(display) == (3 until 9))
+    
+    c.transformation.update.translation := Vec3(500, 0, -50)
+    display = cull(scene)
+    assert(drawnIndices(display) == (3 until 6))
+    
+    a.transformation.update.translation := Vec3(0, 0, -50)
+    display = cull(scene)
+    assert(drawnIndices(display) == (0 until 6))
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import java.nio._
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.engine.graphics._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class Std140LayoutTest extends FunSuite {
+  
+  private def mkBuffer(size: Int) = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder)
+  
+  
+  test("Offsets") {
+    val layout = new Std140Layout("Test", Seq(
+      "float" -> "a",
+      "vec3" -> "b",
+      "float" -> "c",
+      "vec2" -> "d",
+      "int" -> "e",
+      "mat3" -> "f",
+      "ivec2" -> "g",
+      "mat4x3" -> "h",
+      "mat2x4" -> "i"
+    ))
+    
+    assert(layout.offsets == Seq(0, 16, 28, 32, 40, 48, 96, 112, 176))
+    assert(layout.size == 208)
+  }
+  
+  test("Block size is a multiple of 16") {
+    assert(new Std140Layout("Test", Seq("float" -> "a")).size == 16)
+    assert(new Std140Layout("Test", Seq("vec3" -> "a", "float" -> "b")).size == 16)
+    assert(new Std140Layout("Test", Seq("vec4" -> "a", "vec2" -> "b")).size == 32)
+  }
+  
+  test("Unsupported types") {
+    intercept[IllegalArgumentException] {
+      new Std140Layout("Test", Seq("sampler2D" -> "a"))
+    }
+  }
+  
+  test("Declaration") {
+    val layout = new Std140Layout("Test", Seq("mat4" -> "a", "float" -> "b"))
+    assert(layout.declaration == "layout(std140) uniform Test {\n  mat4 a;\n  float b;\n};")
+  }
+  
+  test("Matrix columns are padded") {
+    val layout = new Std140Layout("Test", Seq("float" -> "a", "mat4x3" -> "m"))
+    val buffer = mkBuffer(layout.size + 8)
+    
+    val m = Mat4x3(
+      1, 2, 3,
+      4, 5, 6,
+      7, 8, 9,
+      10, 11, 12
+    )
+    layout.write(buffer, 8, 1, m)
+    
+    var column = 0; while (column < 4) {
+      val o = 8 + 16 + column*16
+      assert(buffer.getFloat(o) == column*3 + 1)
+      assert(buffer.getFloat(o + 4) == column*3 + 2)
+      assert(buffer.getFloat(o + 8) == column*3 + 3)
+      assert(buffer.getFloat(o + 12) == 0)
+      column += 1
+    }
+  }
+  
+  test("Frame block") {
+    val layout = PredefinedUniforms.FrameBlock
+    assert(layout.size == 144)
+    
+    val uniforms = new PredefinedUniforms
+    uniforms.se_projectionMatrix := Mat4(2)
+    uniforms.se_viewMatrix.m32 = 5
+    uniforms.se_viewDimensions := Vec2i(640, 480)
+    uniforms.se_timeTotal := 10
+    uniforms.se_timeInterval := 0.5
+    
+    val buffer = mkBuffer(layout.size)
+    PredefinedUniforms.packFrameBlock(uniforms, buffer, 0)
+    
+    assert(buffer.getFloat(0) == 2)
+    assert(buffer.getFloat(4) == 0)
+    assert(buffer.getFloat(60) == 2)
+    assert(buffer.getFloat(64 + 48 + 8) == 5)
+    assert(buffer.getInt(128) == 640)
+    assert(buffer.getInt(132) == 480)
+    assert(buffer.getFloat(136) == 10)
+    assert(buffer.getFloat(140) == 0.5f)
+  }
+}
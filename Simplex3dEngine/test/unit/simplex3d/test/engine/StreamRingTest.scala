@@ -0,0 +1,162 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import simplex3d.backend.opengl._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class StreamRingTest extends FunSuite {
+  
+  test("Aligned allocation") {
+    val ring = new StreamRing(256, 16)
+    
+    assert(ring.allocate(10) == 0)
+    assert(ring.allocate(20) == 16)
+    assert(ring.allocate(16) == 48)
+    assert(ring.offset(48) == 48)
+    assert(ring.allocatedBytes == 46)
+  }
+  
+  test("Current frame is never overwritten") {
+    val ring = new StreamRing(256, 16)
+    
+    assert(ring.allocate(128) == 0)
+    assert(ring.allocate(100) == 128)
+    assert(ring.allocate(64) == -1)
+    
+    // Nothing is retired until the frame has finished on the GPU.
+    ring.endFrame()
+    assert(ring.allocate(64) == -1)
+    
+    ring.retireFrame()
+    assert(ring.allocate(64) == 256)
+    assert(ring.offset(256) == 0)
+    assert(ring.wraparounds == 1)
+  }
+  
+  test("Ranges that do not fit start at the next lap") {
+    val ring = new StreamRing(256, 16)
+    
+    assert(ring.allocate(200) == 0)
+    ring.endFrame()
+    ring.retireFrame()
+    
+    // 56 bytes left before the end of the buffer.
+    assert(ring.allocate(64) == 256)
+    assert(ring.allocate(32) == 320)
+    assert(ring.wraparounds == 1)
+  }
+  
+  test("Frames are retired in order") {
+    val ring = new StreamRing(256, 16, 2)
+    
+    ring.allocate(96)
+    ring.endFrame()
+    ring.allocate(96)
+    ring.endFrame()
+    assert(ring.pendingFrames == 2)
+    intercept[IllegalStateException] { ring.endFrame() }
+    
+    assert(ring.allocate(96) == -1)
+    
+    ring.retireFrame()
+    assert(ring.allocate(96) == 256)
+    assert(ring.allocate(96) == -1)
+    
+    ring.retireFrame()
+    assert(ring.allocate(96) == 352)
+  }
+  
+  test("Intact ranges") {
+    val ring = new StreamRing(256, 16)
+    
+    val kept = ring.allocate(64)
+    assert(ring.isIntact(kept, ring.epoch))
+    
+    ring.endFrame()
+    assert(ring.isIntact(kept, ring.epoch))
+    
+    ring.retireFrame()
+    assert(!ring.isIntact(kept, ring.epoch))
+    assert(!ring.isIntact(-1, ring.epoch))
+  }
+  
+  test("Retired ranges are not intact once allocations pass them") {
+    val ring = new StreamRing(256, 16)
+    
+    val kept = ring.allocate(64)
+    ring.endFrame()
+    ring.retireFrame()
+    
+    // The next lap starts over the retired range.
+    assert(ring.allocate(192) == 64)
+    val reused = ring.allocate(16)
+    assert(ring.offset(reused) == ring.offset(kept))
+    assert(!ring.isIntact(kept, ring.epoch))
+  }
+  
+  test("Retained ranges are kept until the current frame is retired") {
+    val ring = new StreamRing(256, 16)
+    
+    val kept = ring.allocate(64)
+    ring.endFrame()
+    
+    // The current frame draws from the range of the frame in flight.
+    assert(ring.isIntact(kept, ring.epoch))
+    ring.retain(kept)
+    assert(ring.allocate(192) == 64)
+    
+    ring.retireFrame()
+    assert(ring.isIntact(kept, ring.epoch))
+    assert(ring.allocate(16) == -1)
+    
+    ring.endFrame()
+    ring.retireFrame()
+    assert(!ring.isIntact(kept, ring.epoch))
+    assert(ring.allocate(16) == 256)
+  }
+  
+  test("Orphaning frees the whole buffer") {
+    val ring = new StreamRing(256, 16)
+    
+    val old = ring.allocate(200)
+    val oldEpoch = ring.epoch
+    ring.endFrame()
+    assert(ring.allocate(100) == -1)
+    
+    ring.orphan()
+    assert(ring.epoch == 1)
+    assert(ring.pendingFrames == 0)
+    assert(!ring.isIntact(old, oldEpoch))
+    
+    assert(ring.allocate(100) == 256)
+    assert(ring.allocate(100) == 368)
+  }
+  
+  test("Invalid sizes") {
+    intercept[IllegalArgumentException] { new StreamRing(100, 16) }
+    intercept[IllegalArgumentException] { new StreamRing(256, 16).allocate(257) }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import java.util.HashMap
+import org.scalatest._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine.graphics._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class StructuralSignatureTest extends FunSuite {
+  
+  private def mkMap(entries: (String, Int)*) = {
+    val map = new HashMap[String, Integer]
+    for ((key, value) <- entries) map.put(key, value)
+    map
+  }
+  
+  
+  test("Equal keys are interned") {
+    val a = StructuralSignature(IndexedSeq("Test", mkMap("a" -> 1, "b" -> 2), Array(true, false).toIndexedSeq))
+    val b = StructuralSignature(IndexedSeq("Test", mkMap("b" -> 2, "a" -> 1), Array(true, false).toIndexedSeq))
+    
+    assert(a eq b)
+    assert(a.hash == b.hash)
+  }
+  
+  test("Different keys") {
+    val a = StructuralSignature(IndexedSeq("Test", mkMap("a" -> 1)))
+    val b = StructuralSignature(IndexedSeq("Test", mkMap("a" -> 2)))
+    val c = StructuralSignature(IndexedSeq("Other", mkMap("a" -> 1)))
+    
+    assert(a != b)
+    assert(a != c)
+    assert(StructuralSignature.hash(IndexedSeq(1, 2)) != StructuralSignature.hash(IndexedSeq(2, 1)))
+  }
+  
+  test("Geometry signature follows structural changes") {
+    val context = MinimalGraphicsContext
+    val geometry = context.mkGeometry()
+    
+    val empty = context.geometrySignature(geometry)
+    assert(context.geometrySignature(geometry) eq empty)
+    
+    geometry.vertices := Attributes[Vec3, RFloat](3)
+    val withVertices = context.geometrySignature(geometry)
+    assert(withVertices ne empty)
+    
+    // The same structure has the same signature.
+    val other = context.mkGeometry()
+    other.vertices := Attributes[Vec3, RFloat](6)
+    assert(context.geometrySignature(other) eq withVertices)
+    
+    geometry.vertices.undefine()
+    assert(context.geometrySignature(geometry) eq empty)
+  }
+}
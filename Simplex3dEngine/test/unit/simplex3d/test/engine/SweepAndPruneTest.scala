@@ -0,0 +1,178 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import scala.collection.mutable.HashSet
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.algorithm.intersection._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class SweepAndPruneTest extends FunSuite {
+  
+  private class PairTracker extends PairListener {
+    val pairs = new HashSet[(Int, Int)]
+    
+    def pairAdded(a: Int, b: Int) {
+      assert(pairs.add(ordered(a, b)), "Duplicate pair " + (a, b) + ".")
+    }
+    def pairRemoved(a: Int, b: Int) {
+      assert(pairs.remove(ordered(a, b)), "Unknown pair " + (a, b) + ".")
+    }
+  }
+  
+  private def ordered(a: Int, b: Int) = if (a < b) (a, b) else (b, a)
+  
+  private def randomBox(random: java.util.Random) :(Vec3, Vec3) = {
+    val min = Vec3(random.nextDouble, random.nextDouble, random.nextDouble)*100
+    val size = Vec3(random.nextDouble, random.nextDouble, random.nextDouble)*8
+    (min, min + size)
+  }
+  
+  private def bruteForce(boxes: collection.Map[Int, (Vec3, Vec3)]) :Set[(Int, Int)] = {
+    val ids = boxes.keys.toIndexedSeq
+    val result = for {
+      i <- 0 until ids.size
+      j <- (i + 1) until ids.size
+      (amin, amax) = boxes(ids(i))
+      (bmin, bmax) = boxes(ids(j))
+      if (
+        amin.x <= bmax.x && bmin.x <= amax.x &&
+        amin.y <= bmax.y && bmin.y <= amax.y &&
+        amin.z <= bmax.z && bmin.z <= amax.z
+      )
+    } yield ordered(ids(i), ids(j))
+    result.toSet
+  }
+  
+  private def check(multithreaded: Boolean) {
+    val random = new java.util.Random(0)
+    val sap = new SweepAndPrune(16, multithreaded)
+    val tracker = new PairTracker
+    val boxes = collection.mutable.HashMap[Int, (Vec3, Vec3)]()
+    
+    def addBox() {
+      val (min, max) = randomBox(random)
+      boxes(sap.add(min, max)) = (min, max)
+    }
+    
+    def verify() {
+      sap.sweep(tracker)
+      val expected = bruteForce(boxes)
+      assert(tracker.pairs == expected)
+      assert(sap.pairCount == expected.size)
+      assert(sap.size == boxes.size)
+    }
+    
+    // Bulk add goes through the full sort.
+    for (i <- 0 until 1000) addBox()
+    verify()
+    
+    for (frame <- 0 until 20) {
+      // Small moves, so most of the work is done by the incremental sort.
+      for ((id, (min, max)) <- boxes.toIndexedSeq) {
+        if (random.nextInt(4) == 0) {
+          val offset = Vec3(random.nextDouble - 0.5, random.nextDouble - 0.5, random.nextDouble - 0.5)*4
+          sap.update(id, min + offset, max + offset)
+          boxes(id) = (min + offset, max + offset)
+        }
+      }
+      
+      for (id <- boxes.keys.take(random.nextInt(20)).toIndexedSeq) {
+        sap.remove(id)
+        boxes.remove(id)
+      }
+      
+      for (i <- 0 until random.nextInt(20)) addBox()
+      
+      // Every few frames add enough boxes to trigger the full sort with removals pending.
+      if (frame % 5 == 4) {
+        for (id <- boxes.keys.take(50).toIndexedSeq) {
+          sap.remove(id)
+          boxes.remove(id)
+        }
+        for (i <- 0 until 500) addBox()
+      }
+      
+      verify()
+    }
+  }
+  
+  
+  test("Pairs match brute force") {
+    check(false)
+  }
+  
+  test("Pairs match brute force when multithreaded") {
+    check(true)
+  }
+  
+  test("Removed boxes release their pairs") {
+    val sap = new SweepAndPrune
+    val tracker = new PairTracker
+    
+    val a = sap.add(Vec3(0), Vec3(2))
+    val b = sap.add(Vec3(1), Vec3(3))
+    val c = sap.add(Vec3(10), Vec3(11))
+    sap.sweep(tracker)
+    assert(tracker.pairs == Set(ordered(a, b)))
+    assert(sap.isOverlapping(a, b))
+    
+    sap.remove(a)
+    sap.sweep(tracker)
+    assert(tracker.pairs.isEmpty)
+    
+    sap.update(c, Vec3(2), Vec3(4))
+    sap.sweep(tracker)
+    assert(tracker.pairs == Set(ordered(b, c)))
+  }
+  
+  test("Removing both boxes of a pair releases the pair") {
+    val sap = new SweepAndPrune
+    val tracker = new PairTracker
+    
+    val a = sap.add(Vec3(0), Vec3(2))
+    val b = sap.add(Vec3(1), Vec3(3))
+    val c = sap.add(Vec3(10), Vec3(11))
+    val d = sap.add(Vec3(20), Vec3(21))
+    sap.sweep(tracker)
+    assert(tracker.pairs == Set(ordered(a, b)))
+    
+    sap.remove(a)
+    sap.remove(b)
+    sap.sweep(tracker)
+    assert(tracker.pairs.isEmpty)
+    assert(sap.pairCount == 0)
+    assert(!sap.isOverlapping(a, b))
+    
+    // The ids are reused by boxes that do not overlap.
+    val e = sap.add(Vec3(10), Vec3(11))
+    val f = sap.add(Vec3(30), Vec3(31))
+    sap.sweep(tracker)
+    assert(Set(e, f) == Set(a, b))
+    assert(tracker.pairs == Set(ordered(c, e)))
+    assert(sap.pairCount == 1)
+  }
+}
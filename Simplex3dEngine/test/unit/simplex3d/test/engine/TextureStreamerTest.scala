@@ -0,0 +1,154 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import scala.collection.mutable.ArrayBuffer
+import org.scalatest._
+import simplex3d.math._
+import simplex3d.math.double._
+import simplex3d.data._
+import simplex3d.data.double._
+import simplex3d.engine.graphics._
+import simplex3d.engine.backend.api._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class TextureStreamerTest extends FunSuite {
+  
+  private class RecordingContext extends RenderContext {
+    val capabilities: GraphicsCapabilities = null
+    val calls = new ArrayBuffer[(Texture2d[_], Int)]
+    
+    def init(attributes: Attributes[_, _]) {}
+    def release(attributes: Attributes[_, _]) {}
+    def init(texture: Texture[_]) {}
+    def release(texture: Texture[_]) {}
+    
+    def updateResidency(texture: Texture2d[_], level: Int) :Long = {
+      calls += ((texture, level))
+      val previous = texture.residentLevel
+      texture.updateResidentLevel(level)
+      (level until previous).map(texture.levelBytes(_)).sum
+    }
+    
+    def clearFrameBuffer() {}
+    def viewportDimensions() = ConstVec2i(0)
+    def manage() {}
+    def cleanup() {}
+  }
+  
+  private def mkTexture(size: Int) :Texture2d[Vec4] = {
+    val levels = Iterator.iterate(size)(_/2).takeWhile(_ > 0).map { s =>
+      (ConstVec2i(s), DataBuffer[Vec4, UByte](s*s))
+    }
+    Texture2d.fromMipChain(levels.toIndexedSeq)
+  }
+  
+  private def bytes(size: Int, fromLevel: Int) :Long = {
+    Iterator.iterate(size)(_/2).takeWhile(_ > 0).drop(fromLevel).map(s => s.toLong*s*4).sum
+  }
+  
+  
+  test("Mip chains are validated") {
+    assert(mkTexture(256).levelCount == 9)
+    assert(mkTexture(256).levelDimensions(2) == ConstVec2i(64))
+    
+    intercept[IllegalArgumentException] {
+      Texture2d.fromMipChain(IndexedSeq((ConstVec2i(4), DataBuffer[Vec4, UByte](16))))
+    }
+    intercept[IllegalArgumentException] {
+      Texture2d.fromMipChain(IndexedSeq(
+        (ConstVec2i(2), DataBuffer[Vec4, UByte](4)),
+        (ConstVec2i(1), DataBuffer[Vec4, UByte](4))
+      ))
+    }
+  }
+  
+  test("Required level follows the size on screen") {
+    val streamer = new TextureStreamer
+    val texture = mkTexture(256)
+    
+    assert(streamer.requiredLevel(texture, 256) == 0)
+    assert(streamer.requiredLevel(texture, 1000) == 0)
+    assert(streamer.requiredLevel(texture, Double.PositiveInfinity) == 0)
+    assert(streamer.requiredLevel(texture, 64) == 2)
+    assert(streamer.requiredLevel(texture, 50) == 2)
+    assert(streamer.requiredLevel(texture, 0.1) == 8)
+    
+    streamer.lodBias = 1
+    assert(streamer.requiredLevel(texture, 256) == 1)
+  }
+  
+  test("Coarse levels are uploaded first") {
+    val context = new RecordingContext
+    val streamer = new TextureStreamer
+    val a = mkTexture(256)
+    val b = mkTexture(256)
+    
+    streamer.requestLevel(a, 0)
+    streamer.requestLevel(b, 0)
+    streamer.update(context, 1)
+    
+    assert(context.calls.map(_._2) == Seq(2, 2, 1, 1, 0, 0))
+    assert(a.residentLevel == 0 && b.residentLevel == 0)
+    assert(streamer.uploadedBytes == bytes(256, 0)*2)
+    assert(streamer.pendingTextures == 0)
+  }
+  
+  test("Uploads are limited by the budget") {
+    val context = new RecordingContext
+    val streamer = new TextureStreamer(uploadBudget = 1)
+    val texture = mkTexture(256)
+    
+    for (level <- Seq(2, 1, 0)) {
+      streamer.request(texture, 256)
+      streamer.update(context, 1)
+      assert(texture.residentLevel == level)
+    }
+    assert(context.calls.size == 3)
+    
+    // Textures that are not requested are left alone.
+    streamer.update(context, 1)
+    assert(context.calls.size == 3)
+  }
+  
+  test("Textures that are not visible are evicted under the memory budget") {
+    val context = new RecordingContext
+    val streamer = new TextureStreamer(memoryBudget = bytes(256, 0) + bytes(256, 2), evictionDelay = 0)
+    val a = mkTexture(256)
+    val b = mkTexture(256)
+    
+    streamer.requestLevel(a, 0)
+    streamer.update(context, 1)
+    assert(a.residentLevel == 0)
+    
+    streamer.requestLevel(b, 0)
+    streamer.update(context, 1)
+    
+    assert(a.residentLevel == 2)
+    assert(b.residentLevel == 0)
+    
+    streamer.update(context, 1)
+    assert(streamer.residentBytes == bytes(256, 0) + bytes(256, 2))
+  }
+}
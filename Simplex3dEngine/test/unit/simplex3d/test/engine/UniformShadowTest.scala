@@ -0,0 +1,69 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import org.scalatest._
+import simplex3d.backend.lwjgl._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class UniformShadowTest extends FunSuite {
+  
+  test("Unchanged values are skipped") {
+    val shadow = new UniformShadow(2, 4)
+    val values = Array(1, 2, 3, 4)
+    
+    assert(shadow.update(0, values, 4))
+    assert(!shadow.update(0, values, 4))
+    
+    // Slots are independent.
+    assert(shadow.update(1, values, 4))
+    
+    values(3) = 5
+    assert(shadow.update(0, values, 4))
+    assert(!shadow.update(0, values, 4))
+    assert(!shadow.update(1, Array(1, 2, 3, 4), 4))
+  }
+  
+  test("Float values") {
+    val shadow = new UniformShadow(1, 16)
+    val matrix = Array.tabulate(16)(_.toFloat)
+    
+    assert(shadow.update(0, matrix, 16))
+    assert(!shadow.update(0, matrix, 16))
+    
+    matrix(15) = 0.5f
+    assert(shadow.update(0, matrix, 16))
+    
+    matrix(0) = -0.0f
+    assert(shadow.update(0, matrix, 16))
+  }
+  
+  test("Zero values are uploaded the first time") {
+    val shadow = new UniformShadow(1, 4)
+    val values = Array(0, 0, 0, 0)
+    
+    assert(shadow.update(0, values, 1))
+    assert(!shadow.update(0, values, 1))
+  }
+}
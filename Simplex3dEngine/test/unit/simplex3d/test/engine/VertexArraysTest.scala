@@ -0,0 +1,178 @@
+/*
+ * Simplex3dEngine - Test Package
+ * Copyright (C) 2013, Aleksey Nikiforov
+ *
+ * This file is part of Simplex3dEngineTest.
+ *
+ * Simplex3dEngineTest is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simplex3dEngineTest is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package simplex3d.test.engine
+
+import java.nio.IntBuffer
+import org.scalatest._
+import scala.collection.mutable.ArrayBuffer
+import simplex3d.math.types._
+import simplex3d.math._
+import simplex3d.engine.util._
+import simplex3d.engine.scene._
+import simplex3d.engine.graphics._
+import simplex3d.backend.opengl._
+import simplex3d.backend.opengl.api._
+import simplex3d.backend.lwjgl._
+
+
+/**
+ * @author Aleksey Nikiforov (lex)
+ */
+class VertexArraysTest extends FunSuite {
+  
+  private class RecordingGl extends VertexArrayGl {
+    val calls = new ArrayBuffer[String]
+    private var nextId = 1
+    
+    def glGenVertexArrays(ids: IntBuffer) {
+      var i = 0; while (i < ids.capacity) {
+        ids.put(i, nextId)
+        nextId += 1
+        i += 1
+      }
+    }
+    def glDeleteVertexArrays(ids: IntBuffer) {
+      var i = 0; while (i < ids.limit) {
+        calls += "delete(" + ids.get(i) + ")"
+        i += 1
+      }
+    }
+    def glBindVertexArray(id: Int) { calls += "bind(" + id + ")" }
+  }
+  
+  private def mkResourceManager(gl: RecordingGl) = {
+    def noIds(ids: IntBuffer) {}
+    new GlResourceManager(
+      attributeManager = new IdManager(4)(noIds, noIds),
+      textureManager = new IdManager(4)(noIds, noIds),
+      vertexArrayManager = new IdManager(4)(gl.glGenVertexArrays(_), gl.glDeleteVertexArrays(_)),
+      _ => (),
+      _ => ()
+    )
+  }
+  
+  private def mkMesh(name: String) = {
+    val mesh = new BaseMesh(name)
+    remap(mesh)
+    mesh
+  }
+  
+  private def remap(mesh: AbstractMesh) {
+    mesh.mapping = new MeshMapping(
+      new ReadArray(new Array[VectorLike](0)),
+      new ReadArray(new Array[AnyMat[_]](0)),
+      new ReadArray(new Array[ReadTextureBinding[_]](0)),
+      new ReadArray(new Array[Attributes[_, _]](2))
+    )
+  }
+  
+  
+  test("Recorded setup is reused") {
+    val gl = new RecordingGl
+    val vertexArrays = new VertexArrays(gl, true, mkResourceManager(gl))
+    val mesh = mkMesh("mesh")
+    val buffers = Array(5, 6)
+    
+    assert(!vertexArrays.bind(mesh, buffers, 2, 7, false))
+    assert(vertexArrays.bind(mesh, buffers, 2, 7, false))
+    assert(vertexArrays.bind(mesh, buffers, 2, 7, false))
+    
+    assert(gl.calls == Seq("bind(1)"))
+    assert(vertexArrays.recordedArrays == 1)
+    assert(vertexArrays.reusedArrays == 2)
+  }
+  
+  test("Each mesh has its own array") {
+    val gl = new RecordingGl
+    val vertexArrays = new VertexArrays(gl, true, mkResourceManager(gl))
+    val mesh1 = mkMesh("mesh1")
+    val mesh2 = mkMesh("mesh2")
+    val buffers = Array(5, 6)
+    
+    assert(!vertexArrays.bind(mesh1, buffers, 2, 0, false))
+    assert(!vertexArrays.bind(mesh2, buffers, 2, 0, false))
+    assert(vertexArrays.bind(mesh1, buffers, 2, 0, false))
+    assert(vertexArrays.bind(mesh2, buffers, 2, 0, false))
+    
+    assert(gl.calls == Seq("bind(1)", "bind(2)", "bind(1)", "bind(2)"))
+  }
+  
+  test("Changes are recorded again") {
+    val gl = new RecordingGl
+    val vertexArrays = new VertexArrays(gl, true, mkResourceManager(gl))
+    val mesh = mkMesh("mesh")
+    
+    assert(!vertexArrays.bind(mesh, Array(5, 6), 2, 0, false))
+    
+    // Reassigned attributes.
+    assert(!vertexArrays.bind(mesh, Array(5, 6), 2, 0, true))
+    assert(vertexArrays.bind(mesh, Array(5, 6), 2, 0, false))
+    
+    // Reallocated buffer.
+    assert(!vertexArrays.bind(mesh, Array(5, 8), 2, 0, false))
+    
+    // New index buffer.
+    assert(!vertexArrays.bind(mesh, Array(5, 8), 2, 9, false))
+    
+    // New technique.
+    remap(mesh)
+    assert(!vertexArrays.bind(mesh, Array(5, 8), 2, 9, false))
+    
+    // Released buffers.
+    vertexArrays.invalidate()
+    assert(!vertexArrays.bind(mesh, Array(5, 8), 2, 9, false))
+    assert(vertexArrays.bind(mesh, Array(5, 8), 2, 9, false))
+    
+    // The same array is recorded again.
+    assert(gl.calls == Seq("bind(1)"))
+    assert(engineInfo(mesh).managedFields.id == 1)
+  }
+  
+  test("Reset state binds again") {
+    val gl = new RecordingGl
+    val vertexArrays = new VertexArrays(gl, true, mkResourceManager(gl))
+    val mesh = mkMesh("mesh")
+    val buffers = Array(5, 6)
+    
+    vertexArrays.bind(mesh, buffers, 2, 0, false)
+    vertexArrays.bindDefault()
+    vertexArrays.bindDefault()
+    vertexArrays.resetState()
+    assert(vertexArrays.boundArray == -1)
+    assert(vertexArrays.bind(mesh, buffers, 2, 0, false))
+    
+    assert(gl.calls == Seq("bind(1)", "bind(0)", "bind(1)"))
+  }
+  
+  test("Arrays are released through the resource manager") {
+    val gl = new RecordingGl
+    val resourceManager = mkResourceManager(gl)
+    val vertexArrays = new VertexArrays(gl, true, resourceManager)
+    val mesh = mkMesh("mesh")
+    
+    vertexArrays.bind(mesh, Array(5, 6), 2, 0, false)
+    resourceManager.delete(engineInfo(mesh))
+    resourceManager.manage()
+    
+    assert(gl.calls == Seq("bind(1)", "delete(1)"))
+    assert(engineInfo(mesh).managedFields.id == 0)
+  }
+}
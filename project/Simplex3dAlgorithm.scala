@@ -45,7 +45,7 @@ object Simplex3dAlgorithm extends Build {
       target := new File("target/algorithm/intersection"),
       scalaSource in Compile <<= baseDirectory(_ / "src/intersection")
     )
-  ) dependsOn(Simplex3dMath.core, Simplex3dMath.double)
+  ) dependsOn(Simplex3dMath.core, Simplex3dMath.double, Simplex3dData.core, Simplex3dData.double)
   
   lazy val mesh = Project(
     id = "algorithm-mesh",